@@ -16,18 +16,25 @@
 
 package com.google.android.apps.mytracks;
 
+import com.google.android.apps.mytracks.content.AggregatesColumns;
 import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
-import com.google.android.apps.mytracks.content.Track;
 import com.google.android.apps.mytracks.stats.TripStatistics;
+import com.google.android.apps.mytracks.util.PreferencesUtils;
 import com.google.android.apps.mytracks.util.StatsUtils;
+import com.google.android.apps.mytracks.util.StringUtils;
 import com.google.android.maps.mytracks.R;
 
+import android.database.Cursor;
 import android.os.Bundle;
-
-import java.util.List;
+import android.text.format.DateUtils;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
 
 /**
- * An activity to view aggregated stats from all recorded tracks.
+ * An activity to view aggregated stats from all recorded tracks, and the
+ * totals of each month. The stats are read from the aggregates kept by the
+ * content provider, without reading the tracks.
  *
  * @author Fergus Nelson
  */
@@ -36,8 +43,10 @@ public class AggregatedStatsActivity extends AbstractMyTracksActivity {
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
-    StatsUtils.setTripStatisticsValues(this, getTripStatistics());
+    MyTracksProviderUtils myTracksProviderUtils = MyTracksProviderUtils.Factory.get(this);
+    StatsUtils.setTripStatisticsValues(this, myTracksProviderUtils.getAggregatedTripStatistics());
     StatsUtils.setLocationValues(this, null, false);
+    setMonths(myTracksProviderUtils);
   }
 
   @Override
@@ -46,18 +55,46 @@ public class AggregatedStatsActivity extends AbstractMyTracksActivity {
   }
 
   /**
-   * Gets the aggregated trip statistics for all the recorded tracks or null if
-   * there is no track.
+   * Adds the distance and the total time of each month, the most recent month
+   * first.
+   * 
+   * @param myTracksProviderUtils the my tracks provider utils
    */
-  private TripStatistics getTripStatistics() {
-    List<Track> tracks = MyTracksProviderUtils.Factory.get(this).getAllTracks();
-    TripStatistics tripStatistics = null;
-    if (!tracks.isEmpty()) {
-      tripStatistics = new TripStatistics(tracks.iterator().next().getTripStatistics());
-      for (int i = 1; i < tracks.size(); i++) {
-        tripStatistics.merge(tracks.get(i).getTripStatistics());
+  private void setMonths(MyTracksProviderUtils myTracksProviderUtils) {
+    boolean metricUnits = PreferencesUtils.getBoolean(
+        this, R.string.metric_units_key, PreferencesUtils.METRIC_UNITS_DEFAULT);
+    ViewGroup table = (ViewGroup) findViewById(R.id.aggregated_stats_table);
+    Cursor cursor = null;
+    try {
+      cursor = myTracksProviderUtils.getAggregatesCursor(AggregatesColumns.TYPE_MONTH);
+      if (cursor == null) {
+        return;
+      }
+      int keyIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.KEY);
+      while (cursor.moveToNext()) {
+        TripStatistics tripStatistics = myTracksProviderUtils.createAggregatedTripStatistics(
+            cursor);
+        int index = table.getChildCount();
+        getLayoutInflater().inflate(R.layout.aggregated_stats_month, table, true);
+        View nameRow = table.getChildAt(index);
+        View valueRow = table.getChildAt(index + 1);
+
+        String name = DateUtils.formatDateTime(this, cursor.getLong(keyIndex),
+            DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_NO_MONTH_DAY
+                | DateUtils.FORMAT_SHOW_YEAR);
+        ((TextView) nameRow.findViewById(R.id.aggregated_stats_month_name)).setText(name);
+        ((TextView) valueRow.findViewById(R.id.aggregated_stats_month_distance)).setText(
+            StringUtils.formatDistance(this, tripStatistics.getTotalDistance(), metricUnits));
+        ((TextView) valueRow.findViewById(R.id.aggregated_stats_month_total_time)).setText(
+            StringUtils.formatElapsedTime(tripStatistics.getTotalTime()));
+      }
+      if (cursor.getCount() != 0) {
+        findViewById(R.id.aggregated_stats_months_label).setVisibility(View.VISIBLE);
+      }
+    } finally {
+      if (cursor != null) {
+        cursor.close();
       }
     }
-    return tripStatistics;
   }
 }
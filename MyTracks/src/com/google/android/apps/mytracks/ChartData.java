@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks;
+
+/**
+ * The data points of the chart, stored in one growable primitive array per
+ * column instead of one array per data point. A data point has a x value (time
+ * or distance) and a value per chart value series, NaN if not available.
+ * <p>
+ * Not thread safe.
+ */
+public class ChartData {
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  private final int numberOfSeries;
+  private double[] xValues;
+  private double[][] seriesValues;
+  private int size = 0;
+
+  /**
+   * Creates the chart data.
+   *
+   * @param numberOfSeries the number of chart value series
+   */
+  public ChartData(int numberOfSeries) {
+    this.numberOfSeries = numberOfSeries;
+    xValues = new double[INITIAL_CAPACITY];
+    seriesValues = new double[numberOfSeries][INITIAL_CAPACITY];
+  }
+
+  /**
+   * Gets the number of data points.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Removes all the data points. Keeps the allocated arrays.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Adds a data point.
+   *
+   * @param dataPoint the data point, the x value followed by the value of each
+   *          chart value series
+   */
+  public void add(double[] dataPoint) {
+    ensureCapacity(size + 1);
+    xValues[size] = dataPoint[0];
+    for (int i = 0; i < numberOfSeries; i++) {
+      seriesValues[i][size] = dataPoint[i + 1];
+    }
+    size++;
+  }
+
+  /**
+   * Adds the data points of another chart data with the same number of chart
+   * value series.
+   *
+   * @param chartData the chart data
+   */
+  public void addAll(ChartData chartData) {
+    ensureCapacity(size + chartData.size);
+    System.arraycopy(chartData.xValues, 0, xValues, size, chartData.size);
+    for (int i = 0; i < numberOfSeries; i++) {
+      System.arraycopy(chartData.seriesValues[i], 0, seriesValues[i], size, chartData.size);
+    }
+    size += chartData.size;
+  }
+
+  /**
+   * Gets the x value of a data point.
+   *
+   * @param index the data point index
+   */
+  public double getX(int index) {
+    return xValues[index];
+  }
+
+  /**
+   * Gets the value of a chart value series in a data point.
+   *
+   * @param seriesIndex the chart value series index
+   * @param index the data point index
+   */
+  public double getValue(int seriesIndex, int index) {
+    return seriesValues[seriesIndex][index];
+  }
+
+  /**
+   * Gets the index of the first data point with a x value greater than or
+   * equal to a value, or {@link #size()} if none. Expects the x values to be
+   * non-decreasing.
+   *
+   * @param x the x value
+   */
+  public int getIndex(double x) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (xValues[middle] < x) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Ensures the chart data can hold n data points.
+   *
+   * @param n the number of data points
+   */
+  private void ensureCapacity(int n) {
+    if (n <= xValues.length) {
+      return;
+    }
+    int capacity = Math.max(n, 2 * xValues.length);
+    xValues = copyOf(xValues, capacity);
+    for (int i = 0; i < numberOfSeries; i++) {
+      seriesValues[i] = copyOf(seriesValues[i], capacity);
+    }
+  }
+
+  /**
+   * Copies an array into a larger array.
+   *
+   * @param array the array
+   * @param capacity the new capacity
+   */
+  private double[] copyOf(double[] array, int capacity) {
+    double[] newArray = new double[capacity];
+    System.arraycopy(array, 0, newArray, 0, size);
+    return newArray;
+  }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import android.graphics.Path;
+
+/**
+ * Downsamples the values of a chart value series to at most 4 path vertices
+ * per pixel column, the first, min, max, and last values of the column (M4
+ * aggregation). The line drawn looks the same as with all the values, keeping
+ * the extremes, while the number of vertices only depends on the chart width.
+ * <p>
+ * As values are added, they are aggregated into a bounded number of buckets of
+ * equal x width. When all the buckets are used, the bucket width doubles and
+ * pairs of buckets are merged. Adding a value is O(1) amortized and building a
+ * path from the buckets doesn't depend on the number of values. When zoomed in
+ * further than the bucket width, the path is built from the values in the x
+ * window instead, expecting the x values to be non-decreasing.
+ * <p>
+ * Not thread safe.
+ */
+public class ChartDownsampler {
+
+  @VisibleForTesting
+  static final int MAX_BUCKETS = 8192;
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  /**
+   * The first, min, max, and last values of consecutive values.
+   */
+  private static class Aggregate {
+    int count;
+    double firstX;
+    double lastX;
+    double first;
+    double last;
+    double min;
+    double max;
+    // True if the min value comes before the max value
+    boolean minFirst;
+
+    /**
+     * Sets to a single value.
+     *
+     * @param x the x value
+     * @param value the value
+     */
+    void set(double x, double value) {
+      count = 1;
+      firstX = x;
+      lastX = x;
+      first = value;
+      last = value;
+      min = value;
+      max = value;
+      minFirst = true;
+    }
+
+    /**
+     * Sets to another aggregate.
+     *
+     * @param other the other aggregate
+     */
+    void set(Aggregate other) {
+      count = other.count;
+      firstX = other.firstX;
+      lastX = other.lastX;
+      first = other.first;
+      last = other.last;
+      min = other.min;
+      max = other.max;
+      minFirst = other.minFirst;
+    }
+
+    /**
+     * Adds a value after the aggregated values.
+     *
+     * @param x the x value
+     * @param value the value
+     */
+    void add(double x, double value) {
+      if (count == 0) {
+        set(x, value);
+        return;
+      }
+      count++;
+      lastX = x;
+      last = value;
+      if (value < min) {
+        min = value;
+        minFirst = false;
+      }
+      if (value > max) {
+        max = value;
+        minFirst = true;
+      }
+    }
+
+    /**
+     * Merges another aggregate of values coming after the aggregated values.
+     *
+     * @param other the other aggregate
+     */
+    void merge(Aggregate other) {
+      if (other.count == 0) {
+        return;
+      }
+      if (count == 0) {
+        set(other);
+        return;
+      }
+      boolean minFromThis = min <= other.min;
+      boolean maxFromThis = max >= other.max;
+      if (minFromThis != maxFromThis) {
+        minFirst = minFromThis;
+      } else if (!minFromThis) {
+        minFirst = other.minFirst;
+      }
+      count += other.count;
+      lastX = other.lastX;
+      last = other.last;
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+    }
+  }
+
+  private Aggregate[] buckets = null;
+  private int numberOfBuckets = 0;
+
+  // The x width of a bucket, 0 until a positive x value is added
+  private double bucketWidth = 0.0;
+
+  // State while building a path
+  private final Aggregate column = new Aggregate();
+  private final Aggregate single = new Aggregate();
+  private long columnIndex;
+  private boolean hasPath = false;
+  private double pathFirstX;
+  private double pathFirstValue;
+  private double pathLastX;
+  private int numberOfVertices = 0;
+
+  /**
+   * Removes all the values.
+   */
+  public void reset() {
+    numberOfBuckets = 0;
+    bucketWidth = 0.0;
+  }
+
+  /**
+   * Adds a value.
+   *
+   * @param x the x value
+   * @param value the value
+   */
+  public void add(double x, double value) {
+    if (bucketWidth == 0.0 && x > 0) {
+      bucketWidth = x;
+    }
+    while (bucketWidth != 0.0 && x / bucketWidth >= MAX_BUCKETS) {
+      mergeBuckets();
+    }
+    int index = bucketWidth == 0.0 ? 0 : (int) Math.max(x / bucketWidth, 0);
+    // Keep the buckets in order if the x values are not
+    index = Math.max(index, numberOfBuckets - 1);
+    ensureCapacity(index + 1);
+    for (int i = numberOfBuckets; i <= index; i++) {
+      buckets[i].count = 0;
+    }
+    numberOfBuckets = Math.max(numberOfBuckets, index + 1);
+    buckets[index].add(x, value);
+  }
+
+  /**
+   * Builds a path, in chart data coordinates, of the values between two x
+   * values. Includes the values just outside the window so the path continues
+   * to the window edges. Afterwards, {@link #hasPath()} and the path getters
+   * return the path end points.
+   *
+   * @param path the path
+   * @param chartData the chart data, to build the path from the values when
+   *          zoomed in further than the bucket width
+   * @param seriesIndex the index of the series in the chart data
+   * @param fromX the start of the x window
+   * @param toX the end of the x window
+   * @param columnWidth the x width of a pixel column
+   */
+  public void buildPath(Path path, ChartData chartData, int seriesIndex, double fromX, double toX,
+      double columnWidth) {
+    path.reset();
+    hasPath = false;
+    numberOfVertices = 0;
+    column.count = 0;
+    if (numberOfBuckets == 0) {
+      return;
+    }
+    if (bucketWidth == 0.0 || bucketWidth <= columnWidth) {
+      int start = 0;
+      int end = numberOfBuckets - 1;
+      if (bucketWidth != 0.0) {
+        start = (int) Math.max(Math.floor(fromX / bucketWidth) - 1, 0);
+        end = (int) Math.min(Math.floor(toX / bucketWidth) + 1, end);
+      }
+      for (int i = start; i <= end; i++) {
+        if (buckets[i].count != 0) {
+          addToColumn(path, buckets[i], columnWidth);
+        }
+      }
+    } else {
+      int start = Math.max(chartData.getIndex(fromX) - 1, 0);
+      for (int i = start; i < chartData.size(); i++) {
+        double value = chartData.getValue(seriesIndex, i);
+        if (Double.isNaN(value)) {
+          continue;
+        }
+        double x = chartData.getX(i);
+        single.set(x, value);
+        addToColumn(path, single, columnWidth);
+        if (x > toX) {
+          break;
+        }
+      }
+    }
+    flushColumn(path);
+  }
+
+  /**
+   * Returns true if the last path built has vertices.
+   */
+  public boolean hasPath() {
+    return hasPath;
+  }
+
+  /**
+   * Gets the x value of the first vertex of the last path built.
+   */
+  public double getPathFirstX() {
+    return pathFirstX;
+  }
+
+  /**
+   * Gets the value of the first vertex of the last path built.
+   */
+  public double getPathFirstValue() {
+    return pathFirstValue;
+  }
+
+  /**
+   * Gets the x value of the last vertex of the last path built.
+   */
+  public double getPathLastX() {
+    return pathLastX;
+  }
+
+  /**
+   * Gets the number of vertices of the last path built.
+   */
+  @VisibleForTesting
+  int getNumberOfVertices() {
+    return numberOfVertices;
+  }
+
+  /**
+   * Adds an aggregate to the current pixel column. Adds the current pixel
+   * column to the path if the aggregate starts a new one.
+   *
+   * @param path the path
+   * @param aggregate the aggregate
+   * @param columnWidth the x width of a pixel column
+   */
+  private void addToColumn(Path path, Aggregate aggregate, double columnWidth) {
+    long index = columnWidth > 0 ? (long) Math.floor(aggregate.firstX / columnWidth) : 0L;
+    if (column.count != 0 && index != columnIndex) {
+      flushColumn(path);
+    }
+    if (column.count == 0) {
+      columnIndex = index;
+    }
+    column.merge(aggregate);
+  }
+
+  /**
+   * Adds the vertices of the current pixel column to the path.
+   *
+   * @param path the path
+   */
+  private void flushColumn(Path path) {
+    if (column.count == 0) {
+      return;
+    }
+    addVertex(path, column.firstX, column.first);
+    if (column.count > 1) {
+      double middleX = (column.firstX + column.lastX) / 2;
+      if (column.minFirst) {
+        addVertex(path, middleX, column.min);
+        addVertex(path, middleX, column.max);
+      } else {
+        addVertex(path, middleX, column.max);
+        addVertex(path, middleX, column.min);
+      }
+      addVertex(path, column.lastX, column.last);
+    }
+    column.count = 0;
+  }
+
+  /**
+   * Adds a vertex to the path.
+   *
+   * @param path the path
+   * @param x the x value
+   * @param value the value
+   */
+  private void addVertex(Path path, double x, double value) {
+    if (!hasPath) {
+      hasPath = true;
+      pathFirstX = x;
+      pathFirstValue = value;
+      path.moveTo((float) x, (float) value);
+    } else {
+      path.lineTo((float) x, (float) value);
+    }
+    pathLastX = x;
+    numberOfVertices++;
+  }
+
+  /**
+   * Doubles the bucket width, merging pairs of buckets.
+   */
+  private void mergeBuckets() {
+    int count = (numberOfBuckets + 1) / 2;
+    for (int i = 0; i < count; i++) {
+      buckets[i].set(buckets[2 * i]);
+      if (2 * i + 1 < numberOfBuckets) {
+        buckets[i].merge(buckets[2 * i + 1]);
+      }
+    }
+    numberOfBuckets = count;
+    bucketWidth *= 2;
+  }
+
+  /**
+   * Ensures there are n buckets.
+   *
+   * @param n the number of buckets
+   */
+  private void ensureCapacity(int n) {
+    if (buckets != null && n <= buckets.length) {
+      return;
+    }
+    int capacity = buckets == null ? INITIAL_CAPACITY : 2 * buckets.length;
+    capacity = Math.min(Math.max(capacity, n), MAX_BUCKETS);
+    Aggregate[] newBuckets = new Aggregate[capacity];
+    int oldCapacity = 0;
+    if (buckets != null) {
+      oldCapacity = buckets.length;
+      System.arraycopy(buckets, 0, newBuckets, 0, oldCapacity);
+    }
+    for (int i = oldCapacity; i < capacity; i++) {
+      newBuckets[i] = new Aggregate();
+    }
+    buckets = newBuckets;
+  }
+}
@@ -21,6 +21,7 @@ import com.google.common.annotations.VisibleForTesting;
 
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
 import android.graphics.Paint.Style;
@@ -49,7 +50,12 @@ public class ChartValueSeries {
   private final ExtremityMonitor extremityMonitor;
   private final NumberFormat numberFormat;
   private final Path path;
-  
+
+  // The path of the downsampled values in chart data coordinates
+  private final Path dataPath;
+  private final ChartDownsampler downsampler;
+  private final float[] points = new float[4];
+
   private int interval = 1;
   private int minMarkerValue = 0;
   private int maxMarkerValue = interval * ChartView.Y_AXIS_INTERVALS;
@@ -102,6 +108,8 @@ public class ChartValueSeries {
     extremityMonitor = new ExtremityMonitor();
     numberFormat = NumberFormat.getIntegerInstance();
     path = new Path();
+    dataPath = new Path();
+    downsampler = new ChartDownsampler();
   }
 
   /**
@@ -143,6 +151,61 @@ public class ChartValueSeries {
     return path;
   }
 
+  /**
+   * Resets the path.
+   */
+  public void resetPath() {
+    downsampler.reset();
+    dataPath.reset();
+    path.reset();
+  }
+
+  /**
+   * Appends a value to the path. Call
+   * {@link #updatePath(Matrix, float, ChartData, int, double, double, double)}
+   * to update the path drawn.
+   * 
+   * @param x the x value
+   * @param value the value
+   */
+  public void appendToPath(double x, double value) {
+    downsampler.add(x, value);
+  }
+
+  /**
+   * Updates the path drawn from the appended values between two x values,
+   * downsampled to the pixel columns and closed at the bottom of the chart.
+   * 
+   * @param matrix the matrix to map the x values and the values to view
+   *          coordinates
+   * @param bottom the y view coordinate of the bottom of the chart
+   * @param chartData the chart data
+   * @param seriesIndex the index of the series in the chart data
+   * @param fromX the start of the x window
+   * @param toX the end of the x window
+   * @param columnWidth the x width of a pixel column
+   */
+  public void updatePath(Matrix matrix, float bottom, ChartData chartData, int seriesIndex,
+      double fromX, double toX, double columnWidth) {
+    downsampler.buildPath(dataPath, chartData, seriesIndex, fromX, toX, columnWidth);
+    if (!downsampler.hasPath()) {
+      path.reset();
+      return;
+    }
+    dataPath.transform(matrix, path);
+    points[0] = (float) downsampler.getPathFirstX();
+    points[1] = (float) downsampler.getPathFirstValue();
+    points[2] = (float) downsampler.getPathLastX();
+    points[3] = 0f;
+    matrix.mapPoints(points);
+    // Bottom right corner
+    path.lineTo(points[2], bottom);
+    // Bottom left corner
+    path.lineTo(points[0], bottom);
+    // Top left corner
+    path.lineTo(points[0], points[1]);
+  }
+
   /**
    * Draws the path on canvas.
    * 
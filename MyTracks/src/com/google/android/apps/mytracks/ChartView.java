@@ -29,10 +29,10 @@ import android.content.Intent;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.DashPathEffect;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
 import android.graphics.Paint.Style;
-import android.graphics.Path;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.view.MotionEvent;
@@ -82,10 +82,15 @@ public class ChartView extends View {
   private static final int Y_AXIS_OFFSET = 16;
 
   private final ChartValueSeries[] series = new ChartValueSeries[NUM_SERIES];
-  private final ArrayList<double[]> chartData = new ArrayList<double[]>();
+  private final ChartData chartData = new ChartData(NUM_SERIES);
   private final ArrayList<Waypoint> waypoints = new ArrayList<Waypoint>();
   private final ExtremityMonitor xExtremityMonitor = new ExtremityMonitor();
   private double maxX = 1.0;
+  private final Matrix pathMatrix = new Matrix();
+
+  // The x window of the paths
+  private double pathFromX = 0.0;
+  private double pathToX = 0.0;
 
   private final Paint axisPaint;
   private final Paint xAxisMarkerPaint;
@@ -265,17 +270,20 @@ public class ChartView extends View {
   /**
    * Adds data points.
    * 
-   * @param dataPoints an array of data points to be added
+   * @param dataPoints the data points to be added, with {@link #NUM_SERIES}
+   *          chart value series
    */
-  public void addDataPoints(ArrayList<double[]> dataPoints) {
+  public void addDataPoints(ChartData dataPoints) {
     synchronized (chartData) {
       chartData.addAll(dataPoints);
       for (int i = 0; i < dataPoints.size(); i++) {
-        double[] dataPoint = dataPoints.get(i);
-        xExtremityMonitor.update(dataPoint[0]);
+        double x = dataPoints.getX(i);
+        xExtremityMonitor.update(x);
         for (int j = 0; j < series.length; j++) {
-          if (!Double.isNaN(dataPoint[j])) {
-            series[j].update(dataPoint[j + 1]);
+          double value = dataPoints.getValue(j, i);
+          if (!Double.isNaN(value)) {
+            series[j].update(value);
+            series[j].appendToPath(x, value);
           }
         }
       }
@@ -291,6 +299,9 @@ public class ChartView extends View {
     synchronized (chartData) {
       chartData.clear();
       xExtremityMonitor.reset();
+      for (ChartValueSeries chartValueSeries : series) {
+        chartValueSeries.resetPath();
+      }
       zoomLevel = 1;
       updateDimensions();
     }
@@ -796,89 +807,69 @@ public class ChartView extends View {
     }
     if (index != -1 && chartData.size() > 0) {
       int dx = getX(maxX) - pointer.getIntrinsicWidth() / 2;
-      int dy = getY(series[index], chartData.get(chartData.size() - 1)[index + 1])
+      int dy = getY(series[index], chartData.getValue(index, chartData.size() - 1))
           - pointer.getIntrinsicHeight();
       canvas.translate(dx, dy);
       pointer.draw(canvas);
     }
   }
 
-  /**
-   * Updates paths. The path needs to be updated any time after the data or the
-   * dimensions change.
-   */
-  private void updatePaths() {
+  @Override
+  protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+    super.onScrollChanged(l, t, oldl, oldt);
     synchronized (chartData) {
-      for (ChartValueSeries chartValueSeries : series) {
-        chartValueSeries.getPath().reset();
+      double columnWidth = getColumnWidth();
+      if (l * columnWidth < pathFromX || (l + effectiveWidth) * columnWidth > pathToX) {
+        updatePaths();
       }
-      drawPaths();
-      closePaths();
     }
   }
 
   /**
-   * Draws all paths.
+   * Updates paths. The path needs to be updated any time after the data, the
+   * dimensions, or the scrolled window change. The paths are downsampled to
+   * the pixel columns of the visible window and of one window on each side, so
+   * updating them doesn't depend on the number of data points when zoomed out.
    */
-  private void drawPaths() {
-    boolean[] hasMoved = new boolean[series.length];
-    
-    for (int i = 0; i < chartData.size(); i++) {
-      double[] dataPoint = chartData.get(i);
-      for (int j = 0; j < series.length; j++) {
-        double value = dataPoint[j + 1];
-        if (Double.isNaN(value)) {
-          continue;
-        }
-        ChartValueSeries chartValueSeries = series[j];
-        Path path = chartValueSeries.getPath();
-        int x = getX(dataPoint[0]);
-        int y = getY(chartValueSeries, value);
-        if (!hasMoved[j]) {
-          hasMoved[j] = true;
-          path.moveTo(x, y);
-        } else {
-          path.lineTo(x, y);
-        }
+  private void updatePaths() {
+    synchronized (chartData) {
+      double columnWidth = getColumnWidth();
+      int scrollX = getScrollX();
+      pathFromX = (scrollX - effectiveWidth) * columnWidth;
+      pathToX = (scrollX + 2 * effectiveWidth) * columnWidth;
+      float bottom = topBorder + effectiveHeight;
+      for (int i = 0; i < series.length; i++) {
+        ChartValueSeries chartValueSeries = series[i];
+        updatePathMatrix(chartValueSeries);
+        chartValueSeries.updatePath(
+            pathMatrix, bottom, chartData, i, pathFromX, pathToX, columnWidth);
       }
     }
   }
 
   /**
-   * Closes all paths.
+   * Gets the x width of a pixel column.
    */
-  private void closePaths() {
-    for (int i = 0; i < series.length; i++) {
-      int first = getFirstPopulatedChartDataIndex(i);
-
-      if (first != -1) {
-        int xCorner = getX(chartData.get(first)[0]);
-        int yCorner = topBorder + effectiveHeight;
-        ChartValueSeries chartValueSeries = series[i];
-        Path path = chartValueSeries.getPath();
-        // Bottom right corner
-        path.lineTo(getX(chartData.get(chartData.size() - 1)[0]), yCorner);
-        // Bottom left corner
-        path.lineTo(xCorner, yCorner);
-        // Top right corner
-        path.lineTo(xCorner, getY(chartValueSeries, chartData.get(first)[i + 1]));
-      }
-    }
+  private double getColumnWidth() {
+    return maxX / Math.max(effectiveWidth * zoomLevel, 1);
   }
 
   /**
-   * Finds the index of the first data point containing data for a series.
-   * Returns -1 if no data point contains data for the series.
+   * Updates the path matrix to map the x values and the values of a chart value
+   * series to view coordinates, like {@link #getX(double)} and
+   * {@link #getY(ChartValueSeries, double)} without the rounding.
    * 
-   * @param seriesIndex the series's index
+   * @param chartValueSeries the chart value series
    */
-  private int getFirstPopulatedChartDataIndex(int seriesIndex) {
-    for (int i = 0; i < chartData.size(); i++) {
-      if (!Double.isNaN(chartData.get(i)[seriesIndex + 1])) {
-        return i;
-      }
-    }
-    return -1;
+  private void updatePathMatrix(ChartValueSeries chartValueSeries) {
+    int effectiveSpread = chartValueSeries.getInterval() * Y_AXIS_INTERVALS;
+    int rangeHeight = effectiveHeight - 2 * yAxisOffset;
+    // Like getX, maps all the x values to the left border if maxX is 0
+    float scaleX = maxX > 0 ? (float) (effectiveWidth * zoomLevel / maxX) : 0f;
+    float scaleY = (float) -rangeHeight / effectiveSpread;
+    pathMatrix.setScale(scaleX, scaleY);
+    pathMatrix.postTranslate(leftBorder, topBorder + yAxisOffset + rangeHeight
+        - scaleY * chartValueSeries.getMinMarkerValue());
   }
 
   /**
@@ -991,7 +982,7 @@ public class ChartView extends View {
    * @param index the index
    */
   private boolean allowIfEmpty(int index) {
-    if (!chartData.isEmpty()) {
+    if (chartData.size() != 0) {
       return false;
     }
     switch (index) {
@@ -78,6 +78,18 @@ public abstract class Constants {
    */
   public static final int MAX_LOADED_TRACK_POINTS_PER_BATCH = 1000;
 
+  /**
+   * Maximum number of track points buffered by the recording service before
+   * writing them to the provider.
+   */
+  public static final int MAX_BUFFERED_TRACK_POINTS = 20;
+
+  /**
+   * Maximum time in milliseconds a track point is buffered by the recording
+   * service before writing it to the provider.
+   */
+  public static final long MAX_BUFFERED_TRACK_POINTS_AGE = 10 * 1000;  // 10 seconds
+
   /**
    * Maximum number of way points displayed by the map overlay.
    */
@@ -17,7 +17,7 @@
 package com.google.android.apps.mytracks;
 
 import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
-import com.google.android.apps.mytracks.io.file.GpxImporter;
+import com.google.android.apps.mytracks.io.file.ParallelGpxImporter;
 import com.google.android.apps.mytracks.util.FileUtils;
 import com.google.android.apps.mytracks.util.PreferencesUtils;
 import com.google.android.apps.mytracks.util.SystemUtils;
@@ -28,16 +28,9 @@ import android.os.PowerManager.WakeLock;
 import android.util.Log;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.xml.sax.SAXException;
-
 /**
  * AsyncTask to import GPX files from the SD card.
  *
@@ -129,16 +122,26 @@ public class ImportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
         return true;
       }
 
-      for (int i = 0; i < totalCount; i++) {
-        if (isCancelled()) {
-          // If cancelled, return true to show the number of files imported
-          return true;
-        }
-        File file = files.get(i);
-        if (importFile(file)) {
-          successCount++;
-        }
-        publishProgress(i + 1, totalCount);
+      int minRecordingDistance = PreferencesUtils.getInt(importActivity,
+          R.string.min_recording_distance_key, PreferencesUtils.MIN_RECORDING_DISTANCE_DEFAULT);
+      ParallelGpxImporter parallelGpxImporter = new ParallelGpxImporter(
+          myTracksProviderUtils, minRecordingDistance);
+      try {
+        parallelGpxImporter.importFiles(files, new ParallelGpxImporter.Listener() {
+            @Override
+          public void onFileDone(File file, long[] trackIds, int number, int total) {
+            if (trackIds != null) {
+              successCount++;
+              if (trackIds.length > 0) {
+                trackId = trackIds[trackIds.length - 1];
+              }
+            }
+            publishProgress(number, total);
+          }
+        });
+      } catch (InterruptedException e) {
+        // If cancelled, return true to show the number of files imported
+        Log.d(TAG, "Import cancelled", e);
       }
       return true;
     } finally {
@@ -165,37 +168,6 @@ public class ImportAsyncTask extends AsyncTask<Void, Integer, Boolean> {
     }
   }
 
-  /**
-   * Imports a GPX file.
-   *
-   * @param file the file
-   */
-  private boolean importFile(final File file) {
-    try {
-      int minRecordingDistance = PreferencesUtils.getInt(importActivity,
-          R.string.min_recording_distance_key, PreferencesUtils.MIN_RECORDING_DISTANCE_DEFAULT);
-      long trackIds[] = GpxImporter.importGPXFile(
-          new FileInputStream(file), myTracksProviderUtils, minRecordingDistance);
-      int length = trackIds.length;
-      if (length > 0) {
-        trackId = trackIds[length - 1];
-      }
-      return true;
-    } catch (FileNotFoundException e) {
-      Log.d(TAG, "file: " + file.getAbsolutePath(), e);
-      return false;
-    } catch (ParserConfigurationException e) {
-      Log.d(TAG, "file: " + file.getAbsolutePath(), e);
-      return false;
-    } catch (SAXException e) {
-      Log.d(TAG, "file: " + file.getAbsolutePath(), e);
-      return false;
-    } catch (IOException e) {
-      Log.d(TAG, "file: " + file.getAbsolutePath(), e);
-      return false;
-    }
-  }
-
   /**
    * Gets a list of GPX files. If importAll is true, returns a list of GPX files
    * under the path directory. If importAll is false, returns a list containing
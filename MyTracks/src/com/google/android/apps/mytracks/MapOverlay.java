@@ -18,17 +18,18 @@ package com.google.android.apps.mytracks;
 
 import static com.google.android.apps.mytracks.Constants.TAG;
 
+import com.google.android.apps.mytracks.content.TrackPointBlock;
 import com.google.android.apps.mytracks.content.Waypoint;
 import com.google.android.apps.mytracks.maps.TrackPath;
 import com.google.android.apps.mytracks.maps.TrackPathFactory;
-import com.google.android.apps.mytracks.util.LocationUtils;
+import com.google.android.apps.mytracks.maps.TrackPathOverlay;
 import com.google.android.apps.mytracks.util.PreferencesUtils;
 import com.google.android.apps.mytracks.util.UnitConversions;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
-import com.google.android.gms.maps.model.Polyline;
 import com.google.android.maps.mytracks.R;
 
 import android.content.Context;
@@ -39,8 +40,6 @@ import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 
 /**
  * A map overlay that displays my location arrow, error circle, and track info.
@@ -55,6 +54,7 @@ public class MapOverlay {
   private static final float MARKER_X_ANCHOR = 50f / 96f;
   private static final float MARKER_Y_ANCHOR = 90f / 96f;
   private static final int INITIAL_LOCATIONS_SIZE = 1024;
+  private static final int INITIAL_WAYPOINTS_SIZE = 64;
 
   private final OnSharedPreferenceChangeListener
       sharedPreferenceChangeListener = new OnSharedPreferenceChangeListener() {
@@ -65,19 +65,28 @@ public class MapOverlay {
             trackColorMode = PreferencesUtils.getString(
                 context, R.string.track_color_mode_key, PreferencesUtils.TRACK_COLOR_MODE_DEFAULT);
             trackPath = TrackPathFactory.getTrackPath(context, trackColorMode);
+            trackPathChanged = true;
           }
         }
       };
 
   private final Context context;
-  private final List<CachedLocation> locations;
-  private final BlockingQueue<CachedLocation> pendingLocations;
+  private final List<CachedLocation> pendingLocations;
   private final List<Waypoint> waypoints;
+  private final TrackPathOverlay trackPathOverlay;
+  private final List<Marker> waypointMarkers;
 
   private String trackColorMode = PreferencesUtils.TRACK_COLOR_MODE_DEFAULT;
 
   private boolean showEndMarker = true;
   private TrackPath trackPath;
+  private boolean trackPathChanged = false;
+
+  // The first and last valid locations
+  private LatLng startLatLng;
+  private LatLng endLatLng;
+  private Marker startMarker;
+  private Marker endMarker;
 
   /**
    * A pre-processed {@link Location} to speed up drawing.
@@ -100,12 +109,16 @@ public class MapOverlay {
     }
 
     /**
-     * Constructor for a potentially valid cached location.
+     * Constructor for a valid cached location.
+     * 
+     * @param latitude the latitude
+     * @param longitude the longitude
+     * @param speed the speed in meters per second
      */
-    public CachedLocation(Location location) {
-      this.valid = LocationUtils.isValidLocation(location);
-      this.latLng = valid ? new LatLng(location.getLatitude(), location.getLongitude()) : null;
-      this.speed = (int) Math.floor(location.getSpeed() * UnitConversions.MS_TO_KMH);
+    public CachedLocation(double latitude, double longitude, float speed) {
+      this.valid = true;
+      this.latLng = new LatLng(latitude, longitude);
+      this.speed = (int) Math.floor(speed * UnitConversions.MS_TO_KMH);
     }
 
     /**
@@ -133,9 +146,9 @@ public class MapOverlay {
   public MapOverlay(Context context) {
     this.context = context;
     this.waypoints = new ArrayList<Waypoint>();
-    this.locations = new ArrayList<CachedLocation>(INITIAL_LOCATIONS_SIZE);
-    this.pendingLocations = new ArrayBlockingQueue<CachedLocation>(
-        Constants.MAX_DISPLAYED_TRACK_POINTS, true);
+    this.pendingLocations = new ArrayList<CachedLocation>(INITIAL_LOCATIONS_SIZE);
+    this.trackPathOverlay = new TrackPathOverlay();
+    this.waypointMarkers = new ArrayList<Marker>(INITIAL_WAYPOINTS_SIZE);
 
     context.getSharedPreferences(Constants.SETTINGS_NAME, Context.MODE_PRIVATE)
         .registerOnSharedPreferenceChangeListener(sharedPreferenceChangeListener);
@@ -143,33 +156,42 @@ public class MapOverlay {
   }
 
   /**
-   * Add a location.
+   * Adds the sampled in track points and the segment splits of a block of
+   * track points.
    * 
-   * @param location the location
-   */
-  public void addLocation(Location location) {
-    // Queue up in the pendingLocations until it's merged with locations
-    if (!pendingLocations.offer(new CachedLocation(location))) {
-      Log.e(TAG, "Unable to add to pendingLocations.");
-    }
-  }
-
-  /**
-   * Adds a segment split.
+   * @param block the block of track points
    */
-  public void addSegmentSplit() {
-    // Queue up in the pendingLocations until it's merged with locations
-    if (!pendingLocations.offer(new CachedLocation())) {
-      Log.e(TAG, "Unable to add to pendingLocations.");
+  public void addTrackPoints(TrackPointBlock block) {
+    // Queue up in the pendingLocations until it's added to the track path
+    synchronized (pendingLocations) {
+      for (int i = 0; i < block.getSize(); i++) {
+        CachedLocation cachedLocation;
+        switch (block.getType(i)) {
+          case TrackPointBlock.SAMPLED_IN:
+            cachedLocation = new CachedLocation(
+                block.getLatitude(i), block.getLongitude(i), block.getSpeed(i));
+            break;
+          case TrackPointBlock.SEGMENT_SPLIT:
+            cachedLocation = new CachedLocation();
+            break;
+          default:
+            continue;
+        }
+        if (pendingLocations.size() >= Constants.MAX_DISPLAYED_TRACK_POINTS) {
+          Log.e(TAG, "Unable to add to pendingLocations.");
+          return;
+        }
+        pendingLocations.add(cachedLocation);
+      }
     }
   }
 
   /**
-   * Clears the locations.
+   * Clears the pending locations. The locations already on the map are cleared
+   * by the next reload.
    */
   public void clearPoints() {
-    synchronized (locations) {
-      locations.clear();
+    synchronized (pendingLocations) {
       pendingLocations.clear();
     }
   }
@@ -204,30 +226,51 @@ public class MapOverlay {
   }
 
   /**
-   * Updates the track, start and end markers, and waypoints.
+   * Updates the track and the start and end markers. Only the new locations
+   * are added to the track path, and only the polylines of the changed or
+   * newly visible chunks are redrawn.
    * 
    * @param googleMap the google map
-   * @param paths the paths
    * @param reload true to reload all points
    */
-  public void update(GoogleMap googleMap, ArrayList<Polyline> paths, boolean reload) {
-    synchronized (locations) {
-      // Merge pendingLocations with locations
-      int newLocations = pendingLocations.drainTo(locations);
-      boolean needReload = reload || trackPath.updateState();
-      if (needReload) {
-        googleMap.clear();
-        paths.clear();
-        trackPath.updatePath(googleMap, paths, 0, locations);
-        updateStartAndEndMarkers(googleMap);
-        updateWaypoints(googleMap);
-      } else {
-        if (newLocations != 0) {
-          int numLocations = locations.size();
-          trackPath.updatePath(googleMap, paths, numLocations - newLocations, locations);
+  public void update(GoogleMap googleMap, boolean reload) {
+    if (reload) {
+      trackPathOverlay.clear();
+      startLatLng = null;
+      endLatLng = null;
+    }
+    synchronized (pendingLocations) {
+      for (CachedLocation cachedLocation : pendingLocations) {
+        if (cachedLocation.isValid()) {
+          LatLng latLng = cachedLocation.getLatLng();
+          trackPathOverlay.add(latLng.latitude, latLng.longitude, cachedLocation.getSpeed(), true);
+          if (startLatLng == null) {
+            startLatLng = latLng;
+          }
+          endLatLng = latLng;
+        } else {
+          trackPathOverlay.add(0.0, 0.0, cachedLocation.getSpeed(), false);
         }
       }
+      pendingLocations.clear();
     }
+    if (trackPath.updateState() || trackPathChanged) {
+      trackPathOverlay.invalidate();
+      trackPathChanged = false;
+    }
+    trackPathOverlay.update(googleMap, trackPath);
+    updateStartAndEndMarkers(googleMap);
+  }
+
+  /**
+   * Updates the track for a new camera position. Redraws the polylines
+   * simplified for another zoom level and shows or hides the chunks entering
+   * or leaving the visible region.
+   * 
+   * @param googleMap the google map
+   */
+  public void updateCamera(GoogleMap googleMap) {
+    trackPathOverlay.update(googleMap, trackPath);
   }
 
   /**
@@ -236,31 +279,34 @@ public class MapOverlay {
    * @param googleMap the google map
    */
   private void updateStartAndEndMarkers(GoogleMap googleMap) {
-    // Add the end marker
-    if (showEndMarker) {
-      for (int i = locations.size() - 1; i >= 0; i--) {
-        CachedLocation cachedLocation = locations.get(i);
-        if (cachedLocation.valid) {
-          MarkerOptions markerOptions = new MarkerOptions().position(cachedLocation.getLatLng())
-              .anchor(MARKER_X_ANCHOR, MARKER_Y_ANCHOR).draggable(false).visible(true)
-              .icon(BitmapDescriptorFactory.fromResource(R.drawable.red_dot));
-          googleMap.addMarker(markerOptions);
-          break;
-        }
-      }
-    }
+    endMarker = updateMarker(
+        googleMap, endMarker, showEndMarker ? endLatLng : null, R.drawable.red_dot);
+    startMarker = updateMarker(googleMap, startMarker, startLatLng, R.drawable.green_dot);
+  }
 
-    // Add the start marker
-    for (int i = 0; i < locations.size(); i++) {
-      CachedLocation cachedLocation = locations.get(i);
-      if (cachedLocation.valid) {
-        MarkerOptions markerOptions = new MarkerOptions().position(cachedLocation.getLatLng())
-            .anchor(MARKER_X_ANCHOR, MARKER_Y_ANCHOR).draggable(false).visible(true)
-            .icon(BitmapDescriptorFactory.fromResource(R.drawable.green_dot));
-        googleMap.addMarker(markerOptions);
-        break;
+  /**
+   * Updates a start or end marker. Returns the marker, or null if removed.
+   * 
+   * @param googleMap the google map
+   * @param marker the marker, null if not added
+   * @param latLng the marker position, null to remove the marker
+   * @param drawableId the marker drawable id
+   */
+  private Marker updateMarker(GoogleMap googleMap, Marker marker, LatLng latLng, int drawableId) {
+    if (latLng == null) {
+      if (marker != null) {
+        marker.remove();
       }
+      return null;
+    }
+    if (marker == null) {
+      MarkerOptions markerOptions = new MarkerOptions().position(latLng)
+          .anchor(MARKER_X_ANCHOR, MARKER_Y_ANCHOR).draggable(false).visible(true)
+          .icon(BitmapDescriptorFactory.fromResource(drawableId));
+      return googleMap.addMarker(markerOptions);
     }
+    marker.setPosition(latLng);
+    return marker;
   }
 
   /**
@@ -268,7 +314,11 @@ public class MapOverlay {
    * 
    * @param googleMap the google map.
    */
-  private void updateWaypoints(GoogleMap googleMap) {
+  public void updateWaypoints(GoogleMap googleMap) {
+    for (Marker marker : waypointMarkers) {
+      marker.remove();
+    }
+    waypointMarkers.clear();
     synchronized (waypoints) {
       for (Waypoint waypoint : waypoints) {
         Location location = waypoint.getLocation();
@@ -279,7 +329,7 @@ public class MapOverlay {
             .anchor(WAYPOINT_X_ANCHOR, WAYPOINT_Y_ANCHOR).draggable(false).visible(true)
             .icon(BitmapDescriptorFactory.fromResource(drawableId))
             .title(String.valueOf(waypoint.getId()));
-        googleMap.addMarker(markerOptions);
+        waypointMarkers.add(googleMap.addMarker(markerOptions));
       }
     }
   }
@@ -288,6 +288,12 @@ public class TrackDetailActivity extends AbstractMyTracksActivity implements Del
         .setTitle(getString(R.string.menu_save_format, fileTypes[2]));
     menu.findItem(R.id.track_detail_save_tcx)
         .setTitle(getString(R.string.menu_save_format, fileTypes[3]));
+    menu.findItem(R.id.track_detail_save_kmz)
+        .setTitle(getString(R.string.menu_save_format, fileTypes[4]));
+    menu.findItem(R.id.track_detail_save_gpx_gz)
+        .setTitle(getString(R.string.menu_save_format, fileTypes[5]));
+    menu.findItem(R.id.track_detail_save_csv_gz)
+        .setTitle(getString(R.string.menu_save_format, fileTypes[6]));
 
     insertMarkerMenuItem = menu.findItem(R.id.track_detail_insert_marker);
     playMenuItem = menu.findItem(R.id.track_detail_play);
@@ -367,6 +373,15 @@ public class TrackDetailActivity extends AbstractMyTracksActivity implements Del
       case R.id.track_detail_save_tcx:
         startSaveActivity(TrackFileFormat.TCX);
         return true;
+      case R.id.track_detail_save_kmz:
+        startSaveActivity(TrackFileFormat.KMZ);
+        return true;
+      case R.id.track_detail_save_gpx_gz:
+        startSaveActivity(TrackFileFormat.GPX_GZ);
+        return true;
+      case R.id.track_detail_save_csv_gz:
+        startSaveActivity(TrackFileFormat.CSV_GZ);
+        return true;
       case R.id.track_detail_edit:
         intent = IntentUtils.newIntent(this, TrackEditActivity.class)
             .putExtra(TrackEditActivity.EXTRA_TRACK_ID, trackId);
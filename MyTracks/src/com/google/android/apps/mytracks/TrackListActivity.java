@@ -20,6 +20,7 @@ import com.google.android.apps.mytracks.content.Track;
 import com.google.android.apps.mytracks.content.TrackDataHub;
 import com.google.android.apps.mytracks.content.TrackDataListener;
 import com.google.android.apps.mytracks.content.TrackDataType;
+import com.google.android.apps.mytracks.content.TrackPointBlock;
 import com.google.android.apps.mytracks.content.TracksColumns;
 import com.google.android.apps.mytracks.content.Waypoint;
 import com.google.android.apps.mytracks.fragments.DeleteAllTrackDialogFragment;
@@ -236,17 +237,7 @@ public class TrackListActivity extends FragmentActivity implements DeleteOneTrac
     }
 
       @Override
-    public void onSegmentSplit(Location location) {
-      // Ignore
-    }
-
-      @Override
-    public void onSampledOutTrackPoint(Location location) {
-      // Ignore
-    }
-
-      @Override
-    public void onSampledInTrackPoint(Location location) {
+    public void onNewTrackPoints(TrackPointBlock block) {
       // Ignore
     }
 
@@ -493,6 +484,12 @@ public class TrackListActivity extends FragmentActivity implements DeleteOneTrac
         .setTitle(getString(R.string.menu_save_format, fileTypes[2]));
     menu.findItem(R.id.track_list_save_all_tcx)
         .setTitle(getString(R.string.menu_save_format, fileTypes[3]));
+    menu.findItem(R.id.track_list_save_all_kmz)
+        .setTitle(getString(R.string.menu_save_format, fileTypes[4]));
+    menu.findItem(R.id.track_list_save_all_gpx_gz)
+        .setTitle(getString(R.string.menu_save_format, fileTypes[5]));
+    menu.findItem(R.id.track_list_save_all_csv_gz)
+        .setTitle(getString(R.string.menu_save_format, fileTypes[6]));
 
     searchMenuItem = menu.findItem(R.id.track_list_search);
     startGpsMenuItem = menu.findItem(R.id.track_list_start_gps);
@@ -546,6 +543,15 @@ public class TrackListActivity extends FragmentActivity implements DeleteOneTrac
       case R.id.track_list_save_all_tcx:
         startSaveActivity(TrackFileFormat.TCX);
         return true;
+      case R.id.track_list_save_all_kmz:
+        startSaveActivity(TrackFileFormat.KMZ);
+        return true;
+      case R.id.track_list_save_all_gpx_gz:
+        startSaveActivity(TrackFileFormat.GPX_GZ);
+        return true;
+      case R.id.track_list_save_all_csv_gz:
+        startSaveActivity(TrackFileFormat.CSV_GZ);
+        return true;
       case R.id.track_list_delete_all:
         new DeleteAllTrackDialogFragment().show(
             getSupportFragmentManager(), DeleteAllTrackDialogFragment.DELETE_ALL_TRACK_DIALOG_TAG);
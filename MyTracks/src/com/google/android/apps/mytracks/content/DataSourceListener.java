@@ -40,6 +40,15 @@ public interface DataSourceListener {
    */
   public void notifyTrackPointsTableUpdated();
 
+  /**
+   * Notifies when track points of a track are inserted.
+   * 
+   * @param trackId the track id
+   * @param minTrackPointId the min inserted track point id
+   * @param maxTrackPointId the max inserted track point id
+   */
+  public void notifyTrackPointsInserted(long trackId, long minTrackPointId, long maxTrackPointId);
+
   /**
    * Notifies when the current location changes.
    * 
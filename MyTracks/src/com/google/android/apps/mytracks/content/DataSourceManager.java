@@ -30,6 +30,7 @@ import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.location.LocationProvider;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.util.Log;
@@ -95,6 +96,26 @@ public class DataSourceManager {
     public void onChange(boolean selfChange) {
       dataSourceListener.notifyTrackPointsTableUpdated();
     }
+
+    @Override
+    public void onChange(boolean selfChange, Uri uri) {
+      // The uri is only available from API level 16
+      String inserted = uri != null
+          ? uri.getQueryParameter(MyTracksProviderUtils.INSERTED_QUERY_PARAMETER) : null;
+      String[] ids = inserted != null ? inserted.split(",") : null;
+      if (ids != null && ids.length == 3) {
+        try {
+          long trackId = Long.parseLong(ids[0]);
+          long minTrackPointId = Long.parseLong(ids[1]);
+          long maxTrackPointId = Long.parseLong(ids[2]);
+          dataSourceListener.notifyTrackPointsInserted(trackId, minTrackPointId, maxTrackPointId);
+          return;
+        } catch (NumberFormatException e) {
+          Log.w(TAG, "Invalid track points inserted uri " + uri, e);
+        }
+      }
+      onChange(selfChange);
+    }
   }
 
   /**
@@ -21,22 +21,34 @@ import com.google.android.maps.mytracks.R;
 import com.google.common.annotations.VisibleForTesting;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.os.Binder;
+import android.os.Parcel;
 import android.os.Process;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TimeZone;
+
 /**
  * A {@link ContentProvider} that handles access to track points, tracks, and
  * waypoints tables.
@@ -48,7 +60,7 @@ public class MyTracksProvider extends ContentProvider {
   private static final String TAG = MyTracksProvider.class.getSimpleName();
   @VisibleForTesting
   static final String DATABASE_NAME = "mytracks.db";
-  private static final int DATABASE_VERSION = 20;
+  private static final int DATABASE_VERSION = 26;
 
   /**
    * Database helper for creating and upgrading the database.
@@ -70,6 +82,12 @@ public class MyTracksProvider extends ContentProvider {
       db.execSQL(TrackPointsColumns.CREATE_TABLE);
       db.execSQL(TracksColumns.CREATE_TABLE);
       db.execSQL(WaypointsColumns.CREATE_TABLE);
+      db.execSQL(TrackPointsColumns.CREATE_TRACKID_INDEX);
+      db.execSQL(WaypointsColumns.CREATE_TRACKID_INDEX);
+      db.execSQL(TrackPointsColumns.CREATE_LEVEL_INDEX);
+      SearchIndex.create(db);
+      SpatialIndex.create(db);
+      StatsAggregates.create(db);
     }
   
     @Override
@@ -102,10 +120,122 @@ public class MyTracksProvider extends ContentProvider {
           db.execSQL(
               "ALTER TABLE " + TracksColumns.TABLE_NAME + " ADD " + TracksColumns.ICON + " STRING");
         }
+        // Add track points and waypoints TRACKID indexes
+        if (oldVersion <= 20) {
+          Log.w(TAG, "Upgrade DB: Adding trackid indexes.");
+          db.execSQL(TrackPointsColumns.CREATE_TRACKID_INDEX);
+          db.execSQL(WaypointsColumns.CREATE_TRACKID_INDEX);
+          db.execSQL("ANALYZE");
+        }
+        // Add track points LEVEL column
+        if (oldVersion <= 21) {
+          Log.w(TAG, "Upgrade DB: Adding level column.");
+          db.execSQL("ALTER TABLE " + TrackPointsColumns.TABLE_NAME + " ADD "
+              + TrackPointsColumns.LEVEL + " INTEGER");
+          updateLevels(db);
+          db.execSQL(TrackPointsColumns.CREATE_LEVEL_INDEX);
+        }
+        // Add tracks and waypoints search indexes
+        if (oldVersion <= 22) {
+          Log.w(TAG, "Upgrade DB: Adding search indexes.");
+          SearchIndex.create(db);
+        }
+        // Add tracks and waypoints spatial indexes
+        if (oldVersion <= 23) {
+          Log.w(TAG, "Upgrade DB: Adding spatial indexes.");
+          SpatialIndex.create(db);
+        }
+        // Add tracks statistics aggregates
+        if (oldVersion <= 25) {
+          Log.w(TAG, "Upgrade DB: Adding statistics aggregates.");
+          StatsAggregates.create(db);
+        }
+      }
+    }
+
+    /**
+     * Sets the level of all the track points.
+     * 
+     * @param db the database
+     */
+    private void updateLevels(SQLiteDatabase db) {
+      SQLiteStatement statement = db.compileStatement("UPDATE " + TrackPointsColumns.TABLE_NAME
+          + " SET " + TrackPointsColumns.LEVEL + "=? WHERE " + TrackPointsColumns._ID + "=?");
+      Cursor cursor = null;
+      try {
+        cursor = db.query(TrackPointsColumns.TABLE_NAME,
+            new String[] { TrackPointsColumns._ID, TrackPointsColumns.TRACKID,
+                TrackPointsColumns.LATITUDE, TrackPointsColumns.LONGITUDE },
+            null, null, null, null, TrackPointsColumns.TRACKID + "," + TrackPointsColumns._ID);
+        long trackId = -1L;
+        LevelCounter levelCounter = null;
+        while (cursor.moveToNext()) {
+          if (levelCounter == null || cursor.getLong(1) != trackId) {
+            trackId = cursor.getLong(1);
+            levelCounter = new LevelCounter(0L);
+          }
+          statement.bindLong(1, levelCounter.next(cursor.getInt(2), cursor.getInt(3)));
+          statement.bindLong(2, cursor.getLong(0));
+          statement.execute();
+        }
+      } finally {
+        if (cursor != null) {
+          cursor.close();
+        }
+        statement.close();
       }
     }
   }
 
+  /**
+   * Counter assigning the {@link TrackPointsColumns#LEVEL} of the track points
+   * of a track, in insertion order.
+   */
+  @VisibleForTesting
+  static class LevelCounter {
+
+    // The ordinal of the next track point in the current segment
+    private long ordinal;
+
+    /**
+     * Creates a level counter.
+     * 
+     * @param ordinal the ordinal of the next track point in the current segment
+     */
+    LevelCounter(long ordinal) {
+      this.ordinal = ordinal;
+    }
+
+    /**
+     * Gets the level of the next track point.
+     * 
+     * @param latitude the latitude E6
+     * @param longitude the longitude E6
+     */
+    int next(int latitude, int longitude) {
+      if (isSegmentSplit(latitude, longitude)) {
+        // The next track point starts a new segment
+        ordinal = 0L;
+        return TrackPointsColumns.MAX_LEVEL;
+      }
+      int level = ordinal == 0L ? TrackPointsColumns.MAX_LEVEL
+          : Math.min(Long.numberOfTrailingZeros(ordinal), TrackPointsColumns.MAX_LEVEL);
+      ordinal++;
+      return level;
+    }
+
+    /**
+     * Returns true if a track point is a segment split, i.e., an invalid
+     * location.
+     * 
+     * @param latitude the latitude E6
+     * @param longitude the longitude E6
+     */
+    static boolean isSegmentSplit(int latitude, int longitude) {
+      return Math.abs(latitude) > 90E6 || Math.abs(longitude) > 180E6;
+    }
+  }
+
   /**
    * Types of url.
    * 
@@ -113,12 +243,22 @@ public class MyTracksProvider extends ContentProvider {
    */
   @VisibleForTesting
   enum UrlType {
-    TRACKPOINTS, TRACKPOINTS_ID, TRACKS, TRACKS_ID, WAYPOINTS, WAYPOINTS_ID
+    TRACKPOINTS, TRACKPOINTS_ID, TRACKS, TRACKS_ID, WAYPOINTS, WAYPOINTS_ID, AGGREGATES
   }
 
   private final UriMatcher uriMatcher;
+
+  // Level counters by track id, guarded by itself
+  private final HashMap<Long, LevelCounter> levelCounters = new HashMap<Long, LevelCounter>();
+
+  // The urls to notify once the batch of the current thread is committed, null
+  // if not in a batch
+  private final ThreadLocal<Set<Uri>> batchUrls = new ThreadLocal<Set<Uri>>();
   private SQLiteDatabase db;
 
+  // The time zone of the periods of the statistics aggregates, null if unknown
+  private volatile String aggregatesTimeZone;
+
   public MyTracksProvider() {
     uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
     uriMatcher.addURI(MyTracksProviderUtils.AUTHORITY, TrackPointsColumns.TABLE_NAME,
@@ -133,6 +273,8 @@ public class MyTracksProvider extends ContentProvider {
         MyTracksProviderUtils.AUTHORITY, WaypointsColumns.TABLE_NAME, UrlType.WAYPOINTS.ordinal());
     uriMatcher.addURI(MyTracksProviderUtils.AUTHORITY, WaypointsColumns.TABLE_NAME + "/#",
         UrlType.WAYPOINTS_ID.ordinal());
+    uriMatcher.addURI(MyTracksProviderUtils.AUTHORITY, AggregatesColumns.TABLE_NAME,
+        UrlType.AGGREGATES.ordinal());
   }
 
   @Override
@@ -156,6 +298,8 @@ public class MyTracksProvider extends ContentProvider {
     } catch (SQLiteException e) {
       Log.e(TAG, "Unable to open database for writing.", e);
     }
+    aggregatesTimeZone = PreferencesUtils.getString(
+        context, R.string.stats_aggregates_time_zone_key, null);
     return db != null;
   }
 
@@ -173,6 +317,7 @@ public class MyTracksProvider extends ContentProvider {
       case TRACKS:
         table = TracksColumns.TABLE_NAME;
         shouldVacuum = true;
+        checkAggregatesTimeZone();
         break;
       case WAYPOINTS:
         table = WaypointsColumns.TABLE_NAME;
@@ -189,10 +334,15 @@ public class MyTracksProvider extends ContentProvider {
       db.setTransactionSuccessful();
     } finally {
       db.endTransaction();
+      if (TrackPointsColumns.TABLE_NAME.equals(table)) {
+        synchronized (levelCounters) {
+          levelCounters.clear();
+        }
+      }
     }
-    getContext().getContentResolver().notifyChange(url, null, true);
+    notifyChange(url);
   
-    if (shouldVacuum) {
+    if (shouldVacuum && !db.inTransaction()) {
       // If a potentially large amount of data was deleted, reclaim its space.
       Log.i(TAG, "Vacuuming the database.");
       db.execSQL("VACUUM");
@@ -218,6 +368,8 @@ public class MyTracksProvider extends ContentProvider {
         return WaypointsColumns.CONTENT_TYPE;
       case WAYPOINTS_ID:
         return WaypointsColumns.CONTENT_ITEMTYPE;
+      case AGGREGATES:
+        return AggregatesColumns.CONTENT_TYPE;
       default:
         throw new IllegalArgumentException("Unknown URL " + url);
     }
@@ -231,14 +383,27 @@ public class MyTracksProvider extends ContentProvider {
     if (initialValues == null) {
       initialValues = new ContentValues();
     }
+    UrlType urlType = getUrlType(url);
+    if (urlType == UrlType.TRACKS) {
+      checkAggregatesTimeZone();
+    }
     Uri result = null;
+    boolean success = false;
     try {
       db.beginTransaction();
-      result = insertContentValues(url, getUrlType(url), initialValues);
+      result = insertContentValues(url, urlType, initialValues);
       db.setTransactionSuccessful();
+      success = true;
     } finally {
       db.endTransaction();
+      if (!success) {
+        // The level counters may have counted a rolled back track point
+        synchronized (levelCounters) {
+          levelCounters.clear();
+        }
+      }
     }
+    notifyInsert(url, urlType, new ContentValues[] { initialValues }, new Uri[] { result }, 1);
     return result;
   }
 
@@ -247,26 +412,76 @@ public class MyTracksProvider extends ContentProvider {
     if (!canAccess()) {
       return 0;
     }
+    UrlType urlType = getUrlType(url);
+    if (urlType == UrlType.TRACKS) {
+      checkAggregatesTimeZone();
+    }
+    Uri[] results = new Uri[valuesBulk.length];
     int numInserted = 0;
+    boolean success = false;
     try {
       // Use a transaction in order to make the insertions run as a single batch
       db.beginTransaction();
   
-      UrlType urlType = getUrlType(url);
       for (numInserted = 0; numInserted < valuesBulk.length; numInserted++) {
         ContentValues contentValues = valuesBulk[numInserted];
         if (contentValues == null) {
           contentValues = new ContentValues();
         }
-        insertContentValues(url, urlType, contentValues);
+        results[numInserted] = insertContentValues(url, urlType, contentValues);
       }
       db.setTransactionSuccessful();
+      success = true;
     } finally {
       db.endTransaction();
+      if (!success) {
+        // The level counters may have counted rolled back track points
+        synchronized (levelCounters) {
+          levelCounters.clear();
+        }
+      }
     }
+    notifyInsert(url, urlType, valuesBulk, results, numInserted);
     return numInserted;
   }
 
+  @Override
+  public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+      throws OperationApplicationException {
+    if (!canAccess()) {
+      return new ContentProviderResult[0];
+    }
+    // Before the batch transaction, so that a rollback keeps the aggregates
+    checkAggregatesTimeZone();
+    Set<Uri> urls = new HashSet<Uri>();
+    ContentProviderResult[] results;
+    boolean success = false;
+    batchUrls.set(urls);
+    try {
+      // Use a transaction in order to apply the operations as a single batch
+      db.beginTransaction();
+      try {
+        results = super.applyBatch(operations);
+        db.setTransactionSuccessful();
+        success = true;
+      } finally {
+        db.endTransaction();
+      }
+    } finally {
+      batchUrls.remove();
+      if (!success) {
+        // The level counters may have counted rolled back track points
+        synchronized (levelCounters) {
+          levelCounters.clear();
+        }
+      }
+    }
+    for (Uri url : urls) {
+      notifyChange(url);
+    }
+    return results;
+  }
+
   @Override
   public Cursor query(
       Uri url, String[] projection, String selection, String[] selectionArgs, String sort) {
@@ -275,6 +490,7 @@ public class MyTracksProvider extends ContentProvider {
     }
     SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
     String sortOrder = null;
+    int[] bounds;
     switch (getUrlType(url)) {
       case TRACKPOINTS:
         queryBuilder.setTables(TrackPointsColumns.TABLE_NAME);
@@ -286,6 +502,10 @@ public class MyTracksProvider extends ContentProvider {
         break;
       case TRACKS:
         queryBuilder.setTables(TracksColumns.TABLE_NAME);
+        bounds = getBounds(url);
+        if (bounds != null) {
+          queryBuilder.appendWhere(SpatialIndex.getTracksSelection(bounds));
+        }
         sortOrder = sort != null ? sort : TracksColumns.DEFAULT_SORT_ORDER;
         break;
       case TRACKS_ID:
@@ -294,12 +514,21 @@ public class MyTracksProvider extends ContentProvider {
         break;
       case WAYPOINTS:
         queryBuilder.setTables(WaypointsColumns.TABLE_NAME);
+        bounds = getBounds(url);
+        if (bounds != null) {
+          queryBuilder.appendWhere(SpatialIndex.getWaypointsSelection(bounds));
+        }
         sortOrder = sort != null ? sort : WaypointsColumns.DEFAULT_SORT_ORDER;
         break;
       case WAYPOINTS_ID:
         queryBuilder.setTables(WaypointsColumns.TABLE_NAME);
         queryBuilder.appendWhere("_id=" + url.getPathSegments().get(1));
         break;
+      case AGGREGATES:
+        checkAggregatesTimeZone();
+        queryBuilder.setTables(AggregatesColumns.TABLE_NAME);
+        sortOrder = sort != null ? sort : AggregatesColumns.DEFAULT_SORT_ORDER;
+        break;
       default:
         throw new IllegalArgumentException("Unknown url " + url);
     }
@@ -331,6 +560,7 @@ public class MyTracksProvider extends ContentProvider {
       case TRACKS:
         table = TracksColumns.TABLE_NAME;
         whereClause = where;
+        checkAggregatesTimeZone();
         break;
       case TRACKS_ID:
         table = TracksColumns.TABLE_NAME;
@@ -338,6 +568,7 @@ public class MyTracksProvider extends ContentProvider {
         if (!TextUtils.isEmpty(where)) {
           whereClause += " AND (" + where + ")";
         }
+        checkAggregatesTimeZone();
         break;
       case WAYPOINTS:
         table = WaypointsColumns.TABLE_NAME;
@@ -361,7 +592,7 @@ public class MyTracksProvider extends ContentProvider {
     } finally {
       db.endTransaction();
     }
-    getContext().getContentResolver().notifyChange(url, null, true);
+    notifyChange(url);
     return count;
   }
 
@@ -377,6 +608,54 @@ public class MyTracksProvider extends ContentProvider {
     }
   }
 
+  /**
+   * Recomputes the statistics aggregates if the time zone of the device
+   * changed since they were computed. Their weeks and months are in local
+   * time, and the triggers updating them need the time zone in which the
+   * tracks were added. Called before the tracks are changed and before the
+   * aggregates are read.
+   */
+  private void checkAggregatesTimeZone() {
+    String timeZone = TimeZone.getDefault().getID();
+    if (timeZone.equals(aggregatesTimeZone)) {
+      return;
+    }
+    Log.i(TAG, "Recomputing the statistics aggregates in " + timeZone);
+    try {
+      db.beginTransaction();
+      StatsAggregates.create(db);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+    aggregatesTimeZone = timeZone;
+    PreferencesUtils.setString(getContext(), R.string.stats_aggregates_time_zone_key, timeZone);
+    notifyChange(AggregatesColumns.CONTENT_URI);
+  }
+
+  /**
+   * Gets the bounds of the {@link MyTracksProviderUtils#BOUNDS_QUERY_PARAMETER}
+   * of a url: bottom, left, top, and right. Returns null if the url has no
+   * bounds.
+   * 
+   * @param url the url
+   */
+  private int[] getBounds(Uri url) {
+    String value = url.getQueryParameter(MyTracksProviderUtils.BOUNDS_QUERY_PARAMETER);
+    if (value == null) {
+      return null;
+    }
+    String[] values = value.split(",");
+    if (values.length != 4) {
+      throw new IllegalArgumentException("Invalid bounds " + value);
+    }
+    int[] bounds = new int[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bounds[i] = Integer.parseInt(values[i]);
+    }
+    return bounds;
+  }
+
   /**
    * Gets the {@link UrlType} for a url.
    * 
@@ -386,6 +665,94 @@ public class MyTracksProvider extends ContentProvider {
     return UrlType.values()[uriMatcher.match(url)];
   }
 
+  /**
+   * Gets the uri notified when track points of a single track are inserted,
+   * see {@link MyTracksProviderUtils#INSERTED_QUERY_PARAMETER}.
+   * 
+   * @param trackId the track id
+   * @param minTrackPointId the min inserted track point id
+   * @param maxTrackPointId the max inserted track point id
+   */
+  @VisibleForTesting
+  static Uri getTrackPointsInsertedUri(long trackId, long minTrackPointId, long maxTrackPointId) {
+    return TrackPointsColumns.CONTENT_URI.buildUpon()
+        .appendQueryParameter(MyTracksProviderUtils.INSERTED_QUERY_PARAMETER,
+            trackId + "," + minTrackPointId + "," + maxTrackPointId)
+        .build();
+  }
+
+  /**
+   * Notifies observers of inserted rows. Called once the insert transaction is
+   * committed, so that an insert or a bulk insert is notified once. If all the
+   * inserted rows are track points of the same track, notifies the track points
+   * uri with the track id and the inserted id range as a query parameter, which
+   * still reaches all the observers of the track points uri. Otherwise,
+   * notifies the content url.
+   * 
+   * @param url the content url
+   * @param urlType the url type
+   * @param values the inserted content values
+   * @param results the inserted content uris
+   * @param count the number of inserted rows
+   */
+  private void notifyInsert(
+      Uri url, UrlType urlType, ContentValues[] values, Uri[] results, int count) {
+    if (count == 0) {
+      return;
+    }
+    if (batchUrls.get() != null) {
+      // Notified once the batch is committed
+      notifyChange(url);
+      return;
+    }
+    Uri uri = url;
+    if (urlType == UrlType.TRACKPOINTS) {
+      // A chunk of track points only returns the uri of its last track point
+      Long trackId = values[0] != null
+          && !values[0].containsKey(MyTracksProviderUtils.TRACK_POINTS_CHUNK_KEY)
+          ? values[0].getAsLong(TrackPointsColumns.TRACKID) : null;
+      long minId = Long.MAX_VALUE;
+      long maxId = -1L;
+      for (int i = 0; i < count && trackId != null; i++) {
+        if (values[i] == null
+            || !trackId.equals(values[i].getAsLong(TrackPointsColumns.TRACKID))) {
+          trackId = null;
+          break;
+        }
+        long id = ContentUris.parseId(results[i]);
+        minId = Math.min(minId, id);
+        maxId = Math.max(maxId, id);
+      }
+      if (trackId != null) {
+        uri = getTrackPointsInsertedUri(trackId, minId, maxId);
+      }
+    }
+    notifyChange(uri);
+  }
+
+  /**
+   * Notifies observers of a change, or records the url to notify once the
+   * batch of the current thread is committed. A change of the tracks is also a
+   * change of the aggregates.
+   * 
+   * @param url the url
+   */
+  private void notifyChange(Uri url) {
+    boolean tracksChange = url.toString().startsWith(TracksColumns.CONTENT_URI.toString());
+    Set<Uri> urls = batchUrls.get();
+    if (urls != null) {
+      urls.add(url);
+      if (tracksChange) {
+        urls.add(AggregatesColumns.CONTENT_URI);
+      }
+    } else {
+      getContext().getContentResolver().notifyChange(url, null, true);
+      if (tracksChange) {
+        getContext().getContentResolver().notifyChange(AggregatesColumns.CONTENT_URI, null, true);
+      }
+    }
+  }
+
   /**
    * Inserts a content based on the url type.
    * 
@@ -413,21 +780,125 @@ public class MyTracksProvider extends ContentProvider {
    * @param values the content values
    */
   private Uri insertTrackPoint(Uri url, ContentValues values) {
+    if (values.containsKey(MyTracksProviderUtils.TRACK_POINTS_CHUNK_KEY)) {
+      return insertTrackPointsChunk(url, values);
+    }
     boolean hasLatitude = values.containsKey(TrackPointsColumns.LATITUDE);
     boolean hasLongitude = values.containsKey(TrackPointsColumns.LONGITUDE);
     boolean hasTime = values.containsKey(TrackPointsColumns.TIME);
     if (!hasLatitude || !hasLongitude || !hasTime) {
       throw new IllegalArgumentException("Latitude, longitude, and time values are required.");
     }
+    Long trackId = values.getAsLong(TrackPointsColumns.TRACKID);
+    if (trackId != null && !values.containsKey(TrackPointsColumns.LEVEL)) {
+      Integer latitude = values.getAsInteger(TrackPointsColumns.LATITUDE);
+      Integer longitude = values.getAsInteger(TrackPointsColumns.LONGITUDE);
+      if (latitude != null && longitude != null) {
+        synchronized (levelCounters) {
+          values.put(TrackPointsColumns.LEVEL, getLevelCounter(trackId).next(latitude, longitude));
+        }
+      }
+    } else if (trackId != null) {
+      synchronized (levelCounters) {
+        levelCounters.remove(trackId);
+      }
+    }
     long rowId = db.insert(TrackPointsColumns.TABLE_NAME, TrackPointsColumns._ID, values);
     if (rowId >= 0) {
-      Uri uri = ContentUris.appendId(TrackPointsColumns.CONTENT_URI.buildUpon(), rowId).build();
-      getContext().getContentResolver().notifyChange(url, null, true);
-      return uri;
+      return ContentUris.appendId(TrackPointsColumns.CONTENT_URI.buildUpon(), rowId).build();
     }
     throw new SQLiteException("Failed to insert a track point " + url);
   }
 
+  /**
+   * Inserts a chunk of track points, see
+   * {@link MyTracksProviderUtils#TRACK_POINTS_CHUNK_KEY}. The track points are
+   * read from the chunk one at a time, so only the chunk is held in memory.
+   * Sets the start id, if not set, and the stop id of the track. Returns the
+   * uri of the last inserted track point.
+   * 
+   * @param url the content url
+   * @param values the content values
+   */
+  private Uri insertTrackPointsChunk(Uri url, ContentValues values) {
+    Long trackId = values.getAsLong(TrackPointsColumns.TRACKID);
+    byte[] chunk = values.getAsByteArray(MyTracksProviderUtils.TRACK_POINTS_CHUNK_KEY);
+    if (trackId == null || chunk == null) {
+      throw new IllegalArgumentException("Track id and track points values are required.");
+    }
+    TrackPointBuffer trackPointBuffer;
+    Parcel parcel = Parcel.obtain();
+    try {
+      parcel.unmarshall(chunk, 0, chunk.length);
+      parcel.setDataPosition(0);
+      trackPointBuffer = TrackPointBuffer.CREATOR.createFromParcel(parcel);
+    } finally {
+      parcel.recycle();
+    }
+    if (trackPointBuffer.size() == 0) {
+      throw new IllegalArgumentException("Track points are required.");
+    }
+
+    long startId = -1L;
+    Uri result = null;
+    for (int i = 0; i < trackPointBuffer.size(); i++) {
+      result = insertTrackPoint(
+          url, MyTracksProviderUtilsImpl.createContentValues(trackPointBuffer, i, trackId));
+      if (startId == -1L) {
+        startId = ContentUris.parseId(result);
+      }
+    }
+    db.execSQL("UPDATE " + TracksColumns.TABLE_NAME + " SET " + TracksColumns.STARTID
+        + "=CASE WHEN " + TracksColumns.STARTID + "<0 THEN ? ELSE " + TracksColumns.STARTID
+        + " END, " + TracksColumns.STOPID + "=? WHERE " + TracksColumns._ID + "=?",
+        new Object[] { startId, ContentUris.parseId(result), trackId });
+    return result;
+  }
+
+  /**
+   * Gets the level counter of a track. Must be called while holding the
+   * {@link #levelCounters} lock.
+   * 
+   * @param trackId the track id
+   */
+  private LevelCounter getLevelCounter(long trackId) {
+    LevelCounter levelCounter = levelCounters.get(trackId);
+    if (levelCounter != null) {
+      return levelCounter;
+    }
+
+    /*
+     * The last track point at MAX_LEVEL is either the first track point of the
+     * current segment or a segment split before it. Count the track points of
+     * the current segment from there.
+     */
+    String[] trackIdArgs = new String[] { Long.toString(trackId) };
+    long ordinal = 0L;
+    Cursor cursor = null;
+    try {
+      cursor = db.query(TrackPointsColumns.TABLE_NAME,
+          new String[] { TrackPointsColumns._ID, TrackPointsColumns.LATITUDE,
+              TrackPointsColumns.LONGITUDE },
+          TrackPointsColumns.TRACKID + "=? AND " + TrackPointsColumns.LEVEL + "="
+              + TrackPointsColumns.MAX_LEVEL, trackIdArgs, null, null,
+          TrackPointsColumns._ID + " DESC", "1");
+      if (cursor.moveToFirst()) {
+        long id = cursor.getLong(0);
+        boolean isSplit = LevelCounter.isSegmentSplit(cursor.getInt(1), cursor.getInt(2));
+        ordinal = DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM "
+            + TrackPointsColumns.TABLE_NAME + " WHERE " + TrackPointsColumns.TRACKID + "=? AND "
+            + TrackPointsColumns._ID + (isSplit ? ">" : ">=") + id, trackIdArgs);
+      }
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+    levelCounter = new LevelCounter(ordinal);
+    levelCounters.put(trackId, levelCounter);
+    return levelCounter;
+  }
+
   /**
    * Inserts a track.
    * 
@@ -442,9 +913,7 @@ public class MyTracksProvider extends ContentProvider {
     }
     long rowId = db.insert(TracksColumns.TABLE_NAME, TracksColumns._ID, contentValues);
     if (rowId >= 0) {
-      Uri uri = ContentUris.appendId(TracksColumns.CONTENT_URI.buildUpon(), rowId).build();
-      getContext().getContentResolver().notifyChange(url, null, true);
-      return uri;
+      return ContentUris.appendId(TracksColumns.CONTENT_URI.buildUpon(), rowId).build();
     }
     throw new SQLException("Failed to insert a track " + url);
   }
@@ -458,9 +927,7 @@ public class MyTracksProvider extends ContentProvider {
   private Uri insertWaypoint(Uri url, ContentValues contentValues) {
     long rowId = db.insert(WaypointsColumns.TABLE_NAME, WaypointsColumns._ID, contentValues);
     if (rowId >= 0) {
-      Uri uri = ContentUris.appendId(WaypointsColumns.CONTENT_URI.buildUpon(), rowId).build();
-      getContext().getContentResolver().notifyChange(url, null, true);
-      return uri;
+      return ContentUris.appendId(WaypointsColumns.CONTENT_URI.buildUpon(), rowId).build();
     }
     throw new SQLException("Failed to insert a waypoint " + url);
   }
@@ -25,34 +25,40 @@ import android.location.Location;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 /**
- * Engine for searching for tracks and waypoints by text.
+ * Engine for searching for tracks and waypoints by text. Tracks and waypoints
+ * are retrieved from the {@link SearchIndex}, already ranked by the fields in
+ * which the match occured, so that the limits keep the best matches.
  *
  * @author Rodrigo Damazio
  */
 public class SearchEngine {
 
-  /** WHERE query to get tracks by name. */
+  /** WHERE query to get tracks by name, for queries without words. */
   private static final String TRACK_SELECTION_QUERY =
       TracksColumns.NAME + " LIKE ? OR " +
       TracksColumns.DESCRIPTION + " LIKE ? OR " +
       TracksColumns.CATEGORY + " LIKE ?";
 
-  /** WHERE query to get waypoints by name. */
+  /** WHERE query to get waypoints by name, for queries without words. */
   private static final String WAYPOINT_SELECTION_QUERY =
       WaypointsColumns.NAME + " LIKE ? OR " +
       WaypointsColumns.DESCRIPTION + " LIKE ? OR " +
       WaypointsColumns.CATEGORY + " LIKE ?";
 
   /** Order of track results. */
-  private static final String TRACK_SELECTION_ORDER = TracksColumns._ID + " DESC LIMIT 1000";
+  private static final String TRACK_SELECTION_ORDER = TracksColumns._ID + " DESC";
 
   /** Order of waypoint results. */
   private static final String WAYPOINT_SELECTION_ORDER = WaypointsColumns._ID + " DESC";
 
+  /** Maximum number of tracks which will be retrieved and scored. */
+  private static final int MAX_SCORED_TRACKS = 1000;
+
   /** How much we promote a match in the track category. */
   private static final double TRACK_CATEGORY_PROMOTION = 2.0;
 
@@ -62,6 +68,10 @@ public class SearchEngine {
   /** How much we promote a match in the track name. */
   private static final double TRACK_NAME_PROMOTION = 16.0;
 
+  /** How much we promote a match in the name, description, and category. */
+  private static final double[] TRACK_COLUMN_PROMOTIONS = {
+      TRACK_NAME_PROMOTION, TRACK_DESCRIPTION_PROMOTION, TRACK_CATEGORY_PROMOTION };
+
   /** How much we promote a waypoint result if it's in the currently-selected track. */
   private static final double CURRENT_TRACK_WAYPOINT_PROMOTION = 2.0;
 
@@ -84,12 +94,18 @@ public class SearchEngine {
       this.currentLocation = currentLocation;
       this.currentTrackId = currentTrackId;
       this.currentTimestamp = currentTimestamp;
+      this.queryTokens = SearchIndex.tokenize(textQuery);
+      this.matchQuery = SearchIndex.getMatchQuery(textQuery);
     }
 
     public final String textQuery;
     public final Location currentLocation;
     public final long currentTrackId;
     public final long currentTimestamp;
+
+    // The words of the query, and the search index query, null if no words
+    final List<String> queryTokens;
+    final String matchQuery;
   }
 
   /**
@@ -180,14 +196,24 @@ public class SearchEngine {
    * @param tracks list to fill with the resulting tracks
    */
   private void retrieveTracks(SearchQuery query, ArrayList<Track> tracks) {
-    String queryLikeSelection = "%" + query.textQuery + "%";
-    String[] trackSelectionArgs = new String[] {
-        queryLikeSelection,
-        queryLikeSelection,
-        queryLikeSelection };
-
-    Cursor tracksCursor = providerUtils.getTrackCursor(
-        TRACK_SELECTION_QUERY, trackSelectionArgs, TRACK_SELECTION_ORDER);
+    Cursor tracksCursor;
+    if (query.matchQuery != null) {
+      String order = SearchIndex.getColumnBoost(SearchIndex.TRACKS_INDEX, query.matchQuery,
+          TRACK_COLUMN_PROMOTIONS) + " * (CASE WHEN " + TracksColumns._ID + "="
+          + query.currentTrackId + " THEN " + CURRENT_TRACK_DEMOTION + " ELSE 1 END) DESC, "
+          + TRACK_SELECTION_ORDER + " LIMIT " + MAX_SCORED_TRACKS;
+      tracksCursor = providerUtils.getTrackCursor(
+          SearchIndex.getSelection(SearchIndex.TRACKS_INDEX), new String[] { query.matchQuery },
+          order);
+    } else {
+      String queryLikeSelection = "%" + query.textQuery + "%";
+      String[] trackSelectionArgs = new String[] {
+          queryLikeSelection,
+          queryLikeSelection,
+          queryLikeSelection };
+      tracksCursor = providerUtils.getTrackCursor(TRACK_SELECTION_QUERY, trackSelectionArgs,
+          TRACK_SELECTION_ORDER + " LIMIT " + MAX_SCORED_TRACKS);
+    }
     if (tracksCursor != null) {
       try {
         tracks.ensureCapacity(tracksCursor.getCount());
@@ -208,14 +234,28 @@ public class SearchEngine {
    * @param waypoints list to fill with the resulting waypoints
    */
   private void retrieveWaypoints(SearchQuery query, ArrayList<Waypoint> waypoints) {
-    String queryLikeSelection2 = "%" + query.textQuery + "%";
-    String[] waypointSelectionArgs = new String[] {
-        queryLikeSelection2,
-        queryLikeSelection2,
-        queryLikeSelection2 };
-    Cursor waypointCursor = providerUtils.getWaypointCursor(
-        WAYPOINT_SELECTION_QUERY, waypointSelectionArgs, WAYPOINT_SELECTION_ORDER,
-        MAX_SCORED_WAYPOINTS);
+    Cursor waypointCursor;
+    if (query.matchQuery != null) {
+      String order = SearchIndex.getColumnBoost(SearchIndex.WAYPOINTS_INDEX, query.matchQuery,
+          TRACK_COLUMN_PROMOTIONS);
+      if (query.currentTrackId != -1) {
+        order += " * (CASE WHEN " + WaypointsColumns.TRACKID + "=" + query.currentTrackId
+            + " THEN " + CURRENT_TRACK_WAYPOINT_PROMOTION + " ELSE 1 END)";
+      }
+      order += " DESC, " + WAYPOINT_SELECTION_ORDER;
+      waypointCursor = providerUtils.getWaypointCursor(
+          SearchIndex.getSelection(SearchIndex.WAYPOINTS_INDEX),
+          new String[] { query.matchQuery }, order, MAX_SCORED_WAYPOINTS);
+    } else {
+      String queryLikeSelection2 = "%" + query.textQuery + "%";
+      String[] waypointSelectionArgs = new String[] {
+          queryLikeSelection2,
+          queryLikeSelection2,
+          queryLikeSelection2 };
+      waypointCursor = providerUtils.getWaypointCursor(
+          WAYPOINT_SELECTION_QUERY, waypointSelectionArgs, WAYPOINT_SELECTION_ORDER,
+          MAX_SCORED_WAYPOINTS);
+    }
     if (waypointCursor != null) {
       try {
         waypoints.ensureCapacity(waypointCursor.getCount());
@@ -330,18 +370,32 @@ public class SearchEngine {
       String name, String description, String category) {
     // Title boost: track name > description > category.
     double boost = 1.0;
-    if (name.toLowerCase().contains(query.textQuery)) {
+    if (matches(query, name)) {
       boost *= TRACK_NAME_PROMOTION;
     }
-    if (description.toLowerCase().contains(query.textQuery)) {
+    if (matches(query, description)) {
       boost *= TRACK_DESCRIPTION_PROMOTION;
     }
-    if (category.toLowerCase().contains(query.textQuery)) {
+    if (matches(query, category)) {
       boost *= TRACK_CATEGORY_PROMOTION;
     }
     return boost;
   }
 
+  /**
+   * Returns true if a field matches the query, the same way as the search
+   * index if the query has words.
+   *
+   * @param query the query
+   * @param field the field
+   */
+  private boolean matches(SearchQuery query, String field) {
+    if (query.matchQuery != null) {
+      return SearchIndex.matches(field, query.queryTokens);
+    }
+    return field.toLowerCase().contains(query.textQuery);
+  }
+
   /**
    * Calculates the boosting of the score due to the recency of the matched entity.
    *
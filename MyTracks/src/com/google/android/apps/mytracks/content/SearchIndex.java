@@ -0,0 +1,210 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.content;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The full-text search index of the tracks and the waypoints. Each table has
+ * an FTS3 table with the name, the description, and the category of its rows,
+ * kept in sync by triggers, with the row id as the docid.
+ * <p>
+ * The text is split into tokens like the FTS3 simple tokenizer: a token is a
+ * run of ASCII letters and digits, and non ASCII characters, lowercased. A
+ * query matches the rows with all the query tokens as token prefixes.
+ */
+class SearchIndex {
+
+  static final String TRACKS_INDEX = TracksColumns.TABLE_NAME + "_fts";
+  static final String WAYPOINTS_INDEX = WaypointsColumns.TABLE_NAME + "_fts";
+
+  // The indexed columns, the same for the tracks and the waypoints
+  private static final String[] COLUMNS = {
+      TracksColumns.NAME, TracksColumns.DESCRIPTION, TracksColumns.CATEGORY };
+
+  private SearchIndex() {}
+
+  /**
+   * Creates the search indexes of the tracks and the waypoints, and indexes
+   * the existing rows. Existing search indexes are dropped first, so that
+   * creating them again rebuilds them.
+   *
+   * @param db the database
+   */
+  static void create(SQLiteDatabase db) {
+    create(db, TracksColumns.TABLE_NAME, TRACKS_INDEX);
+    create(db, WaypointsColumns.TABLE_NAME, WAYPOINTS_INDEX);
+  }
+
+  /**
+   * Creates the search index of a table, and indexes the existing rows.
+   *
+   * @param db the database
+   * @param table the table
+   * @param index the index
+   */
+  private static void create(SQLiteDatabase db, String table, String index) {
+    drop(db, index);
+
+    String columns = TracksColumns.NAME + ", " + TracksColumns.DESCRIPTION + ", "
+        + TracksColumns.CATEGORY;
+    db.execSQL("CREATE VIRTUAL TABLE " + index + " USING fts3(" + columns + ");");
+
+    StringBuilder newValues = new StringBuilder();
+    StringBuilder setValues = new StringBuilder();
+    for (String column : COLUMNS) {
+      if (newValues.length() != 0) {
+        newValues.append(", ");
+        setValues.append(", ");
+      }
+      newValues.append("new.").append(column);
+      setValues.append(column).append("=new.").append(column);
+    }
+    db.execSQL("CREATE TRIGGER " + index + "_insert AFTER INSERT ON " + table
+        + " BEGIN INSERT INTO " + index + " (docid, " + columns + ") VALUES (new."
+        + BaseColumns._ID + ", " + newValues + "); END;");
+    db.execSQL("CREATE TRIGGER " + index + "_update AFTER UPDATE OF " + columns + " ON " + table
+        + " BEGIN UPDATE " + index + " SET " + setValues + " WHERE docid=old." + BaseColumns._ID
+        + "; END;");
+    db.execSQL("CREATE TRIGGER " + index + "_delete AFTER DELETE ON " + table
+        + " BEGIN DELETE FROM " + index + " WHERE docid=old." + BaseColumns._ID + "; END;");
+
+    db.execSQL("INSERT INTO " + index + " (docid, " + columns + ") SELECT " + BaseColumns._ID
+        + ", " + columns + " FROM " + table + ";");
+  }
+
+  /**
+   * Drops a search index and its triggers, if they exist.
+   *
+   * @param db the database
+   * @param index the index
+   */
+  private static void drop(SQLiteDatabase db, String index) {
+    db.execSQL("DROP TRIGGER IF EXISTS " + index + "_insert;");
+    db.execSQL("DROP TRIGGER IF EXISTS " + index + "_update;");
+    db.execSQL("DROP TRIGGER IF EXISTS " + index + "_delete;");
+    db.execSQL("DROP TABLE IF EXISTS " + index + ";");
+  }
+
+  /**
+   * Gets the selection of the rows matching a query. The only selection arg is
+   * the match query.
+   *
+   * @param index the search index of the table
+   */
+  static String getSelection(String index) {
+    return BaseColumns._ID + " IN (SELECT docid FROM " + index + " WHERE " + index
+        + " MATCH ?)";
+  }
+
+  /**
+   * Gets an SQL expression for the boost of a row due to the columns matching
+   * a query, the product of the boost of each matching column.
+   *
+   * @param index the search index of the table
+   * @param matchQuery the match query
+   * @param boosts the boost of each column: name, description, and category
+   */
+  static String getColumnBoost(String index, String matchQuery, double[] boosts) {
+    String escapedMatchQuery = DatabaseUtils.sqlEscapeString(matchQuery);
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < COLUMNS.length; i++) {
+      if (i != 0) {
+        builder.append(" * ");
+      }
+      builder.append("(CASE WHEN ").append(BaseColumns._ID).append(" IN (SELECT docid FROM ")
+          .append(index).append(" WHERE ").append(COLUMNS[i]).append(" MATCH ")
+          .append(escapedMatchQuery).append(") THEN ").append(boosts[i])
+          .append(" ELSE 1 END)");
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Gets the match query of a text, the prefix queries of its tokens. Returns
+   * null if the text has no tokens.
+   *
+   * @param text the text
+   */
+  static String getMatchQuery(String text) {
+    List<String> tokens = tokenize(text);
+    if (tokens.isEmpty()) {
+      return null;
+    }
+    StringBuilder builder = new StringBuilder();
+    for (String token : tokens) {
+      if (builder.length() != 0) {
+        builder.append(' ');
+      }
+      builder.append(token).append('*');
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Returns true if a text matches the tokens of a query, each query token
+   * being the prefix of a token of the text.
+   *
+   * @param text the text, can be null
+   * @param queryTokens the query tokens
+   */
+  static boolean matches(String text, List<String> queryTokens) {
+    if (text == null) {
+      return false;
+    }
+    List<String> tokens = tokenize(text);
+    for (String queryToken : queryTokens) {
+      boolean found = false;
+      for (String token : tokens) {
+        if (token.startsWith(queryToken)) {
+          found = true;
+          break;
+        }
+      }
+      if (!found) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Splits a text into tokens, like the FTS3 simple tokenizer.
+   *
+   * @param text the text
+   */
+  static List<String> tokenize(String text) {
+    List<String> tokens = new ArrayList<String>();
+    StringBuilder builder = new StringBuilder();
+    int length = text.length();
+    for (int i = 0; i <= length; i++) {
+      char c = i < length ? text.charAt(i) : ' ';
+      if (c >= 0x80 || Character.isLetterOrDigit(c)) {
+        builder.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+      } else if (builder.length() != 0) {
+        tokens.add(builder.toString());
+        builder.setLength(0);
+      }
+    }
+    return tokens;
+  }
+}
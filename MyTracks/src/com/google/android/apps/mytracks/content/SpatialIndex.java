@@ -0,0 +1,209 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.content;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+
+/**
+ * The spatial index of the track bounding boxes and the waypoint locations, a
+ * loose quadtree stored in a table per indexed table and kept in sync by
+ * triggers.
+ * <p>
+ * At level n, the world is divided in square cells of 2^(28 - n) microdegrees,
+ * about 30 m at the deepest level. A row is indexed in the cell containing the
+ * center of its bounding box, at the deepest level whose cells are at least as
+ * large as the bounding box. The bounding box is then inside the cell extended
+ * by half a cell on each side, thus a bounding box query only reads, at each
+ * level, the cells close enough to the query bounding box.
+ * <p>
+ * Longitudes are not wrapped, a bounding box doesn't cross the 180th meridian.
+ * <p>
+ * The provider applies the index to the tracks and waypoints queries with the
+ * {@link MyTracksProviderUtils#BOUNDS_QUERY_PARAMETER}.
+ */
+class SpatialIndex {
+
+  static final String TRACKS_INDEX = TracksColumns.TABLE_NAME + "_spatial";
+  static final String WAYPOINTS_INDEX = WaypointsColumns.TABLE_NAME + "_spatial";
+
+  // The index columns. The id is the id of the indexed row.
+  static final String LEVEL = "level";
+  static final String X = "x";
+  static final String Y = "y";
+
+  // The cell size at level 0 is 2^MAX_SHIFT microdegrees
+  private static final int MAX_SHIFT = 28;
+  private static final int MAX_LEVEL = 20;
+
+  private static final int MAX_LATITUDE = 90000000;
+  private static final int MAX_LONGITUDE = 180000000;
+
+  private SpatialIndex() {}
+
+  /**
+   * Creates the spatial indexes of the tracks and the waypoints, and indexes
+   * the existing rows. Existing spatial indexes are dropped first, so that
+   * creating them again rebuilds them.
+   *
+   * @param db the database
+   */
+  static void create(SQLiteDatabase db) {
+    create(db, TracksColumns.TABLE_NAME, TRACKS_INDEX, TracksColumns.MINLAT,
+        TracksColumns.MAXLAT, TracksColumns.MINLON, TracksColumns.MAXLON);
+    create(db, WaypointsColumns.TABLE_NAME, WAYPOINTS_INDEX, WaypointsColumns.LATITUDE,
+        WaypointsColumns.LATITUDE, WaypointsColumns.LONGITUDE, WaypointsColumns.LONGITUDE);
+  }
+
+  /**
+   * Creates the spatial index of a table, and indexes the existing rows.
+   *
+   * @param db the database
+   * @param table the table
+   * @param index the index
+   * @param minLat the minimum latitude column
+   * @param maxLat the maximum latitude column
+   * @param minLon the minimum longitude column
+   * @param maxLon the maximum longitude column
+   */
+  private static void create(SQLiteDatabase db, String table, String index, String minLat,
+      String maxLat, String minLon, String maxLon) {
+    db.execSQL("DROP TRIGGER IF EXISTS " + index + "_insert;");
+    db.execSQL("DROP TRIGGER IF EXISTS " + index + "_update;");
+    db.execSQL("DROP TRIGGER IF EXISTS " + index + "_delete;");
+    db.execSQL("DROP TABLE IF EXISTS " + index + ";");
+
+    db.execSQL("CREATE TABLE " + index + " (" + BaseColumns._ID + " INTEGER PRIMARY KEY, "
+        + LEVEL + " INTEGER, " + X + " INTEGER, " + Y + " INTEGER);");
+    db.execSQL("CREATE INDEX " + index + "_index ON " + index + " (" + LEVEL + ", " + X + ", " + Y
+        + ");");
+
+    String columns = minLat + ", " + maxLat + ", " + minLon + ", " + maxLon;
+    String insert = getInsert(index, null, minLat, maxLat, minLon, maxLon) + ";";
+    db.execSQL("CREATE TRIGGER " + index + "_insert AFTER INSERT ON " + table + " BEGIN "
+        + insert + " END;");
+    db.execSQL("CREATE TRIGGER " + index + "_update AFTER UPDATE OF " + columns + " ON " + table
+        + " BEGIN DELETE FROM " + index + " WHERE " + BaseColumns._ID + "=old."
+        + BaseColumns._ID + "; " + insert + " END;");
+    db.execSQL("CREATE TRIGGER " + index + "_delete AFTER DELETE ON " + table + " BEGIN DELETE FROM "
+        + index + " WHERE " + BaseColumns._ID + "=old." + BaseColumns._ID + "; END;");
+
+    db.execSQL(getInsert(index, table, minLat, maxLat, minLon, maxLon) + ";");
+  }
+
+  /**
+   * Gets the statement inserting the index rows of the valid bounding boxes of
+   * a table, or of the new row in a trigger.
+   *
+   * @param index the index
+   * @param table the indexed table, null in a trigger
+   * @param minLat the minimum latitude column
+   * @param maxLat the maximum latitude column
+   * @param minLon the minimum longitude column
+   * @param maxLon the maximum longitude column
+   */
+  private static String getInsert(String index, String table, String minLat, String maxLat,
+      String minLon, String maxLon) {
+    String prefix = table == null ? "new." : "";
+    minLat = prefix + minLat;
+    maxLat = prefix + maxLat;
+    minLon = prefix + minLon;
+    maxLon = prefix + maxLon;
+
+    // The deepest level whose cell size is at least the bounding box size
+    StringBuilder level = new StringBuilder("(CASE");
+    String size = "max(" + maxLat + " - " + minLat + ", " + maxLon + " - " + minLon + ")";
+    for (int i = MAX_LEVEL; i > 0; i--) {
+      level.append(" WHEN ").append(size).append(" <= ").append(1 << (MAX_SHIFT - i))
+          .append(" THEN ").append(i);
+    }
+    level.append(" ELSE 0 END)");
+    String shift = "(" + MAX_SHIFT + " - " + level + ")";
+
+    String x = "((" + minLon + " + " + maxLon + ") / 2 + " + MAX_LONGITUDE + ") >> " + shift;
+    String y = "((" + minLat + " + " + maxLat + ") / 2 + " + MAX_LATITUDE + ") >> " + shift;
+    String valid = minLat + " <= " + maxLat + " AND " + minLon + " <= " + maxLon + " AND "
+        + minLat + " >= " + -MAX_LATITUDE + " AND " + maxLat + " <= " + MAX_LATITUDE + " AND "
+        + minLon + " >= " + -MAX_LONGITUDE + " AND " + maxLon + " <= " + MAX_LONGITUDE;
+    return "INSERT INTO " + index + " (" + BaseColumns._ID + ", " + LEVEL + ", " + X + ", " + Y
+        + ") SELECT " + prefix + BaseColumns._ID + ", " + level + ", " + x + ", " + y
+        + (table == null ? "" : " FROM " + table) + " WHERE " + valid;
+  }
+
+  /**
+   * Gets the selection of the tracks whose bounding box intersects a bounding
+   * box, in microdegrees.
+   *
+   * @param bounds the bottom, left, top, and right bounds of the bounding box
+   */
+  static String getTracksSelection(int[] bounds) {
+    return getSelection(TRACKS_INDEX, TracksColumns.MINLAT, TracksColumns.MAXLAT,
+        TracksColumns.MINLON, TracksColumns.MAXLON, bounds[0], bounds[1], bounds[2], bounds[3]);
+  }
+
+  /**
+   * Gets the selection of the waypoints inside a bounding box, in
+   * microdegrees.
+   *
+   * @param bounds the bottom, left, top, and right bounds of the bounding box
+   */
+  static String getWaypointsSelection(int[] bounds) {
+    return getSelection(WAYPOINTS_INDEX, WaypointsColumns.LATITUDE, WaypointsColumns.LATITUDE,
+        WaypointsColumns.LONGITUDE, WaypointsColumns.LONGITUDE, bounds[0], bounds[1], bounds[2],
+        bounds[3]);
+  }
+
+  /**
+   * Gets the selection of the rows of the indexed table whose bounding box
+   * intersects a bounding box, in microdegrees.
+   *
+   * @param index the index
+   * @param minLat the minimum latitude column
+   * @param maxLat the maximum latitude column
+   * @param minLon the minimum longitude column
+   * @param maxLon the maximum longitude column
+   * @param bottom the minimum latitude of the bounding box
+   * @param left the minimum longitude of the bounding box
+   * @param top the maximum latitude of the bounding box
+   * @param right the maximum longitude of the bounding box
+   */
+  private static String getSelection(String index, String minLat, String maxLat, String minLon,
+      String maxLon, int bottom, int left, int top, int right) {
+    StringBuilder builder = new StringBuilder();
+    builder.append(BaseColumns._ID).append(" IN (");
+    for (int level = 0; level <= MAX_LEVEL; level++) {
+      int shift = MAX_SHIFT - level;
+      long halfCell = 1L << (shift - 1);
+      if (level != 0) {
+        builder.append(" UNION ALL ");
+      }
+      builder.append("SELECT ").append(BaseColumns._ID).append(" FROM ").append(index)
+          .append(" WHERE ").append(LEVEL).append("=").append(level)
+          .append(" AND ").append(X).append(" BETWEEN ")
+          .append(Math.max(left + MAX_LONGITUDE - halfCell, 0) >> shift)
+          .append(" AND ").append((right + MAX_LONGITUDE + halfCell) >> shift)
+          .append(" AND ").append(Y).append(" BETWEEN ")
+          .append(Math.max(bottom + MAX_LATITUDE - halfCell, 0) >> shift)
+          .append(" AND ").append((top + MAX_LATITUDE + halfCell) >> shift);
+    }
+    builder.append(") AND ").append(minLat).append("<=").append(top)
+        .append(" AND ").append(maxLat).append(">=").append(bottom)
+        .append(" AND ").append(minLon).append("<=").append(right)
+        .append(" AND ").append(maxLon).append(">=").append(left);
+    return builder.toString();
+  }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.content;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Maintains the {@link AggregatesColumns} table with triggers on the tracks
+ * table, in the same transaction as the track changes.
+ * <p>
+ * Inserting a track adds its statistics to the aggregates of its groups, and
+ * deleting a track subtracts them. The sums are updated in place. A minimum or
+ * a maximum is only recomputed from the tracks of the group when the removed
+ * value was the extreme of the group, which is rare while recording since the
+ * values of the recorded track grow. Updating a track moves its statistics
+ * between groups when its category or start time changes.
+ * <p>
+ * The weeks start on Monday, and the periods are in the time zone of the
+ * device. A change of the time zone can move a track to another period, and
+ * the triggers would then subtract it from another group than the group it
+ * was added to, so the aggregates are recomputed with {@link #create} when the
+ * time zone changes. Tracks without a start time are only in the overall and
+ * the category aggregates.
+ */
+class StatsAggregates {
+
+  private static final int[] TYPES = { AggregatesColumns.TYPE_ALL,
+      AggregatesColumns.TYPE_CATEGORY, AggregatesColumns.TYPE_WEEK,
+      AggregatesColumns.TYPE_MONTH };
+
+  // The summed, minimum, and maximum columns, the same in both tables
+  private static final String[] SUM_COLUMNS = { AggregatesColumns.TOTALDISTANCE,
+      AggregatesColumns.TOTALTIME, AggregatesColumns.MOVINGTIME,
+      AggregatesColumns.ELEVATIONGAIN };
+  private static final String[] MIN_COLUMNS = { AggregatesColumns.STARTTIME,
+      AggregatesColumns.MINLAT, AggregatesColumns.MINLON, AggregatesColumns.MINELEVATION,
+      AggregatesColumns.MINGRADE };
+  private static final String[] MAX_COLUMNS = { AggregatesColumns.STOPTIME,
+      AggregatesColumns.MAXLAT, AggregatesColumns.MAXLON, AggregatesColumns.MAXSPEED,
+      AggregatesColumns.MAXELEVATION, AggregatesColumns.MAXGRADE };
+
+  private static final String TABLE = AggregatesColumns.TABLE_NAME;
+  private static final String DELETE_EMPTY = "DELETE FROM " + TABLE + " WHERE "
+      + AggregatesColumns.NUMTRACKS + "=0";
+
+  private StatsAggregates() {}
+
+  /**
+   * Creates the aggregates table and its triggers, and aggregates the existing
+   * tracks. An existing aggregates table is dropped first, so that creating it
+   * again recomputes the aggregates.
+   *
+   * @param db the database
+   */
+  static void create(SQLiteDatabase db) {
+    db.execSQL("DROP TRIGGER IF EXISTS " + TABLE + "_insert;");
+    db.execSQL("DROP TRIGGER IF EXISTS " + TABLE + "_delete;");
+    db.execSQL("DROP TRIGGER IF EXISTS " + TABLE + "_update;");
+    db.execSQL("DROP TABLE IF EXISTS " + TABLE + ";");
+    db.execSQL(AggregatesColumns.CREATE_TABLE);
+
+    StringBuilder insert = new StringBuilder();
+    StringBuilder delete = new StringBuilder();
+    StringBuilder update = new StringBuilder();
+    for (int type : TYPES) {
+      insert.append(getInsert(type, "1")).append(getAdd(type, "1"));
+      delete.append(getRemove(type, "1"));
+      String moved = "NOT (" + getSameGroup(type) + ")";
+      update.append(getUpdate(type)).append(getRemove(type, moved))
+          .append(getInsert(type, moved)).append(getAdd(type, moved));
+    }
+    String columns = TracksColumns.CATEGORY + ", " + getStatisticsColumns();
+    db.execSQL("CREATE TRIGGER " + TABLE + "_insert AFTER INSERT ON " + TracksColumns.TABLE_NAME
+        + " BEGIN " + insert + "END;");
+    db.execSQL("CREATE TRIGGER " + TABLE + "_delete AFTER DELETE ON " + TracksColumns.TABLE_NAME
+        + " BEGIN " + delete + DELETE_EMPTY + "; END;");
+    db.execSQL("CREATE TRIGGER " + TABLE + "_update AFTER UPDATE OF " + columns + " ON "
+        + TracksColumns.TABLE_NAME + " BEGIN " + update + DELETE_EMPTY + "; END;");
+
+    for (int type : TYPES) {
+      StringBuilder builder = new StringBuilder();
+      builder.append("INSERT INTO ").append(TABLE).append(" (").append(AggregatesColumns.TYPE)
+          .append(", ").append(AggregatesColumns.KEY).append(", ")
+          .append(AggregatesColumns.NUMTRACKS).append(", ").append(getStatisticsColumns())
+          .append(") SELECT ").append(type).append(", ").append(getKey(type, ""))
+          .append(", COUNT(*)");
+      appendAggregates(builder, SUM_COLUMNS, "SUM");
+      appendAggregates(builder, MIN_COLUMNS, "MIN");
+      appendAggregates(builder, MAX_COLUMNS, "MAX");
+      builder.append(" FROM ").append(TracksColumns.TABLE_NAME).append(" WHERE ")
+          .append(getCondition(type, ""));
+      // Without tracks, the overall aggregate has no tracks and is deleted
+      if (type != AggregatesColumns.TYPE_ALL) {
+        builder.append(" GROUP BY ").append(getKey(type, ""));
+      }
+      db.execSQL(builder.toString());
+    }
+    db.execSQL(DELETE_EMPTY);
+  }
+
+  /**
+   * Gets the key of the group of a track.
+   *
+   * @param type the aggregate type
+   * @param prefix the prefix of the track columns
+   */
+  private static String getKey(int type, String prefix) {
+    switch (type) {
+      case AggregatesColumns.TYPE_CATEGORY:
+        return "IFNULL(" + prefix + TracksColumns.CATEGORY + ", '')";
+      case AggregatesColumns.TYPE_WEEK:
+        return getPeriodKey(prefix, "'weekday 0', '-6 days', 'start of day'");
+      case AggregatesColumns.TYPE_MONTH:
+        return getPeriodKey(prefix, "'start of month'");
+      default:
+        return "0";
+    }
+  }
+
+  /**
+   * Gets the start time of the period of a track, in milliseconds.
+   *
+   * @param prefix the prefix of the track columns
+   * @param modifiers the date modifiers of the period start in local time
+   */
+  private static String getPeriodKey(String prefix, String modifiers) {
+    return "(CAST(strftime('%s', " + prefix + TracksColumns.STARTTIME
+        + " / 1000, 'unixepoch', 'localtime', " + modifiers + ", 'utc') AS INTEGER) * 1000)";
+  }
+
+  /**
+   * Gets the condition for a track to be in a group of a type.
+   *
+   * @param type the aggregate type
+   * @param prefix the prefix of the track columns
+   */
+  private static String getCondition(int type, String prefix) {
+    if (type == AggregatesColumns.TYPE_WEEK || type == AggregatesColumns.TYPE_MONTH) {
+      return prefix + TracksColumns.STARTTIME + " >= 0";
+    }
+    return "1";
+  }
+
+  /**
+   * Gets the condition for an updated track to stay in the same group.
+   *
+   * @param type the aggregate type
+   */
+  private static String getSameGroup(int type) {
+    return getCondition(type, "old.") + " AND " + getCondition(type, "new.") + " AND "
+        + getKey(type, "old.") + " = " + getKey(type, "new.");
+  }
+
+  /**
+   * Gets the statement creating the empty aggregate of the group of the new
+   * track, if missing.
+   *
+   * @param type the aggregate type
+   * @param condition the condition to create it
+   */
+  private static String getInsert(int type, String condition) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("INSERT OR IGNORE INTO ").append(TABLE).append(" (")
+        .append(AggregatesColumns.TYPE).append(", ").append(AggregatesColumns.KEY).append(", ")
+        .append(AggregatesColumns.NUMTRACKS).append(", ").append(getStatisticsColumns())
+        .append(") SELECT ").append(type).append(", ").append(getKey(type, "new.")).append(", 0");
+    for (int i = 0; i < SUM_COLUMNS.length; i++) {
+      builder.append(", 0");
+    }
+    // The extremes start with the values of the track, added next
+    for (String column : MIN_COLUMNS) {
+      builder.append(", new.").append(column);
+    }
+    for (String column : MAX_COLUMNS) {
+      builder.append(", new.").append(column);
+    }
+    builder.append(" WHERE ").append(getCondition(type, "new.")).append(" AND ")
+        .append(condition).append("; ");
+    return builder.toString();
+  }
+
+  /**
+   * Gets the statement adding the new track to the aggregate of its group.
+   *
+   * @param type the aggregate type
+   * @param condition the condition to add it
+   */
+  private static String getAdd(int type, String condition) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("UPDATE ").append(TABLE).append(" SET ").append(AggregatesColumns.NUMTRACKS)
+        .append("=").append(AggregatesColumns.NUMTRACKS).append(" + 1");
+    for (String column : SUM_COLUMNS) {
+      builder.append(", ").append(column).append("=").append(column).append(" + new.")
+          .append(column);
+    }
+    for (String column : MIN_COLUMNS) {
+      builder.append(", ").append(column).append("=min(").append(column).append(", new.")
+          .append(column).append(")");
+    }
+    for (String column : MAX_COLUMNS) {
+      builder.append(", ").append(column).append("=max(").append(column).append(", new.")
+          .append(column).append(")");
+    }
+    appendWhere(builder, type, "new.", condition);
+    return builder.toString();
+  }
+
+  /**
+   * Gets the statement removing the old track from the aggregate of its group.
+   *
+   * @param type the aggregate type
+   * @param condition the condition to remove it
+   */
+  private static String getRemove(int type, String condition) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("UPDATE ").append(TABLE).append(" SET ").append(AggregatesColumns.NUMTRACKS)
+        .append("=").append(AggregatesColumns.NUMTRACKS).append(" - 1");
+    for (String column : SUM_COLUMNS) {
+      builder.append(", ").append(column).append("=").append(column).append(" - old.")
+          .append(column);
+    }
+    for (String column : MIN_COLUMNS) {
+      builder.append(", ").append(column).append("=CASE WHEN old.").append(column).append(" > ")
+          .append(column).append(" THEN ").append(column).append(" ELSE ")
+          .append(getExtreme(type, "MIN", column)).append(" END");
+    }
+    for (String column : MAX_COLUMNS) {
+      builder.append(", ").append(column).append("=CASE WHEN old.").append(column).append(" < ")
+          .append(column).append(" THEN ").append(column).append(" ELSE ")
+          .append(getExtreme(type, "MAX", column)).append(" END");
+    }
+    appendWhere(builder, type, "old.", condition);
+    return builder.toString();
+  }
+
+  /**
+   * Gets the statement updating the aggregate of the group of a track staying
+   * in the same group.
+   *
+   * @param type the aggregate type
+   */
+  private static String getUpdate(int type) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("UPDATE ").append(TABLE).append(" SET ");
+    for (int i = 0; i < SUM_COLUMNS.length; i++) {
+      String column = SUM_COLUMNS[i];
+      if (i != 0) {
+        builder.append(", ");
+      }
+      builder.append(column).append("=").append(column).append(" - old.").append(column)
+          .append(" + new.").append(column);
+    }
+    for (String column : MIN_COLUMNS) {
+      builder.append(", ").append(column).append("=CASE WHEN new.").append(column)
+          .append(" <= old.").append(column).append(" THEN min(").append(column)
+          .append(", new.").append(column).append(") WHEN old.").append(column).append(" > ")
+          .append(column).append(" THEN ").append(column).append(" ELSE ")
+          .append(getExtreme(type, "MIN", column)).append(" END");
+    }
+    for (String column : MAX_COLUMNS) {
+      builder.append(", ").append(column).append("=CASE WHEN new.").append(column)
+          .append(" >= old.").append(column).append(" THEN max(").append(column)
+          .append(", new.").append(column).append(") WHEN old.").append(column).append(" < ")
+          .append(column).append(" THEN ").append(column).append(" ELSE ")
+          .append(getExtreme(type, "MAX", column)).append(" END");
+    }
+    appendWhere(builder, type, "new.", getSameGroup(type));
+    return builder.toString();
+  }
+
+  /**
+   * Gets the subquery recomputing an extreme from the tracks of the group of
+   * the updated aggregate.
+   *
+   * @param type the aggregate type
+   * @param function MIN or MAX
+   * @param column the column
+   */
+  private static String getExtreme(int type, String function, String column) {
+    String prefix = TracksColumns.TABLE_NAME + ".";
+    return "(SELECT " + function + "(" + prefix + column + ") FROM " + TracksColumns.TABLE_NAME
+        + " WHERE " + getCondition(type, prefix) + " AND " + getKey(type, prefix) + " = "
+        + TABLE + "." + AggregatesColumns.KEY + ")";
+  }
+
+  /**
+   * Appends the where clause selecting the aggregate of the group of a track.
+   *
+   * @param builder the builder
+   * @param type the aggregate type
+   * @param prefix the prefix of the track columns, "new." or "old."
+   * @param condition the additional condition
+   */
+  private static void appendWhere(
+      StringBuilder builder, int type, String prefix, String condition) {
+    builder.append(" WHERE ").append(AggregatesColumns.TYPE).append("=").append(type)
+        .append(" AND ").append(AggregatesColumns.KEY).append("=").append(getKey(type, prefix))
+        .append(" AND ").append(getCondition(type, prefix)).append(" AND ").append(condition)
+        .append("; ");
+  }
+
+  /**
+   * Appends aggregate functions of columns.
+   *
+   * @param builder the builder
+   * @param columns the columns
+   * @param function the aggregate function
+   */
+  private static void appendAggregates(StringBuilder builder, String[] columns, String function) {
+    for (String column : columns) {
+      builder.append(", ").append(function).append("(").append(column).append(")");
+    }
+  }
+
+  /**
+   * Gets the summed, minimum, and maximum columns, separated by commas.
+   */
+  private static String getStatisticsColumns() {
+    StringBuilder builder = new StringBuilder();
+    for (String[] columns : new String[][] { SUM_COLUMNS, MIN_COLUMNS, MAX_COLUMNS }) {
+      for (String column : columns) {
+        if (builder.length() != 0) {
+          builder.append(", ");
+        }
+        builder.append(column);
+      }
+    }
+    return builder.toString();
+  }
+}
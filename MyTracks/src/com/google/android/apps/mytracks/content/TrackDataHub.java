@@ -55,6 +55,9 @@ public class TrackDataHub implements DataSourceListener {
   // One hour in milliseconds
   private static final int ONE_HOUR = 60 * 60 * 1000;
 
+  // The maximum number of track points notified in a single call
+  private static final int TRACK_POINT_BLOCK_SIZE = 1024;
+
   private final Context context;
   private final TrackDataManager trackDataManager;
   private final MyTracksProviderUtils myTracksProviderUtils;
@@ -91,6 +94,15 @@ public class TrackDataHub implements DataSourceListener {
   private long firstSeenLocationId;
   private long lastSeenLocationId;
 
+  /*
+   * The level of the track points pyramid of the loaded track points, picked
+   * once per load, or -1 if not picked.
+   */
+  private int samplingLevel;
+
+  // The track points to notify, only used in the handler thread
+  private final TrackPointBlock trackPointBlock = new TrackPointBlock(TRACK_POINT_BLOCK_SIZE);
+
   /**
    * Creates a new instance.
    */
@@ -292,6 +304,24 @@ public class TrackDataHub implements DataSourceListener {
     });
   }
 
+  @Override
+  public void notifyTrackPointsInserted(
+      final long trackId, final long minTrackPointId, final long maxTrackPointId) {
+    runInHanderThread(new Runnable() {
+        @Override
+      public void run() {
+        // Ignore track points of other tracks and track points already loaded
+        if (trackId != selectedTrackId || maxTrackPointId <= lastSeenLocationId) {
+          return;
+        }
+        notifyTrackPointsTableUpdate(true,
+            trackDataManager.getListeners(TrackDataType.SAMPLED_IN_TRACK_POINTS_TABLE),
+            trackDataManager.getListeners(TrackDataType.SAMPLED_OUT_TRACK_POINTS_TABLE),
+            maxTrackPointId);
+      }
+    });
+  }
+
   @Override
   public void notifyPreferenceChanged(final String key) {
     runInHanderThread(new Runnable() {
@@ -598,6 +628,22 @@ public class TrackDataHub implements DataSourceListener {
    */
   private void notifyTrackPointsTableUpdate(boolean updateSamplingState,
       Set<TrackDataListener> sampledInListeners, Set<TrackDataListener> sampledOutListeners) {
+    notifyTrackPointsTableUpdate(updateSamplingState, sampledInListeners, sampledOutListeners, -1L);
+  }
+
+  /**
+   * Notifies track points table update. To be run in the {@link #handler}
+   * thread.
+   * 
+   * @param updateSamplingState true to update the sampling state
+   * @param sampledInListeners the sampled-in listeners
+   * @param sampledOutListeners the sampled-out listeners
+   * @param knownLastTrackPointId the last track point id of the selected track
+   *          if known, e.g., from a track points inserted notification, else -1L
+   */
+  private void notifyTrackPointsTableUpdate(boolean updateSamplingState,
+      Set<TrackDataListener> sampledInListeners, Set<TrackDataListener> sampledOutListeners,
+      long knownLastTrackPointId) {
     if (sampledInListeners.isEmpty() && sampledOutListeners.isEmpty()) {
       return;
     }
@@ -610,12 +656,20 @@ public class TrackDataHub implements DataSourceListener {
       }
     }
 
+    if (sampledOutListeners.isEmpty()) {
+      // Only read the sampled-in track points
+      notifyTrackPointsTableUpdateByLevel(
+          updateSamplingState, sampledInListeners, knownLastTrackPointId);
+      return;
+    }
+
     int localNumLoadedPoints = updateSamplingState ? numLoadedPoints : 0;
     long localFirstSeenLocationId = updateSamplingState ? firstSeenLocationId : -1L;
     long localLastSeenLocationId = updateSamplingState ? lastSeenLocationId : -1L;
     long maxPointId = updateSamplingState ? -1L : lastSeenLocationId;
 
-    long lastTrackPointId = myTracksProviderUtils.getLastTrackPointId(selectedTrackId);
+    long lastTrackPointId = knownLastTrackPointId != -1L ? knownLastTrackPointId
+        : myTracksProviderUtils.getLastTrackPointId(selectedTrackId);
     int samplingFrequency = -1;
     LocationIterator iterator = myTracksProviderUtils.getTrackPointLocationIterator(selectedTrackId,
         localLastSeenLocationId + 1, false, MyTracksProviderUtils.DEFAULT_LOCATION_FACTORY);
@@ -640,22 +694,19 @@ public class TrackDataHub implements DataSourceListener {
 
       if (!LocationUtils.isValidLocation(location)) {
         // TODO: also include the last valid point before a split
-        for (TrackDataListener trackDataListener : sampledInListeners) {
-          trackDataListener.onSegmentSplit(location);
-          includeNextPoint = true;
-        }
+        addTrackPoint(TrackPointBlock.SEGMENT_SPLIT, location, sampledInListeners,
+            sampledOutListeners);
+        includeNextPoint = true;
       } else {
         // Also include the last point if the selected track is not recording.
         if (includeNextPoint || (localNumLoadedPoints % samplingFrequency == 0)
             || (locationId == lastTrackPointId && !isSelectedTrackRecording())) {
           includeNextPoint = false;
-          for (TrackDataListener trackDataListener : sampledInListeners) {
-            trackDataListener.onSampledInTrackPoint(location);
-          }
+          addTrackPoint(
+              TrackPointBlock.SAMPLED_IN, location, sampledInListeners, sampledOutListeners);
         } else {
-          for (TrackDataListener trackDataListener : sampledOutListeners) {
-            trackDataListener.onSampledOutTrackPoint(location);
-          }
+          addTrackPoint(
+              TrackPointBlock.SAMPLED_OUT, location, sampledInListeners, sampledOutListeners);
         }
       }
 
@@ -663,6 +714,7 @@ public class TrackDataHub implements DataSourceListener {
       localLastSeenLocationId = locationId;
     }
     iterator.close();
+    notifyTrackPoints(sampledInListeners, sampledOutListeners);
 
     if (updateSamplingState) {
       numLoadedPoints = localNumLoadedPoints;
@@ -675,6 +727,146 @@ public class TrackDataHub implements DataSourceListener {
     }
   }
 
+  /**
+   * Notifies track points table update to sampled-in listeners, reading only
+   * the level of detail of the track points pyramid with less than
+   * {@link #targetNumPoints} track points, see {@link TrackPointsColumns#LEVEL}.
+   * To be run in the {@link #handler} thread.
+   * 
+   * @param updateSamplingState true to update the sampling state
+   * @param sampledInListeners the sampled-in listeners
+   * @param knownLastTrackPointId the last track point id of the selected track
+   *          if known, else -1L
+   */
+  private void notifyTrackPointsTableUpdateByLevel(boolean updateSamplingState,
+      Set<TrackDataListener> sampledInListeners, long knownLastTrackPointId) {
+    int localNumLoadedPoints = updateSamplingState ? numLoadedPoints : 0;
+    long localFirstSeenLocationId = updateSamplingState ? firstSeenLocationId : -1L;
+    long localLastSeenLocationId = updateSamplingState ? lastSeenLocationId : -1L;
+    long maxPointId = updateSamplingState ? -1L : lastSeenLocationId;
+    Set<TrackDataListener> noListeners = Collections.emptySet();
+
+    long lastTrackPointId = knownLastTrackPointId != -1L ? knownLastTrackPointId
+        : myTracksProviderUtils.getLastTrackPointId(selectedTrackId);
+
+    /*
+     * Keep the level of the loaded track points so that a track doesn't mix
+     * levels. Once the track grows past the target number of points at this
+     * level, it is fully reloaded and the level picked again. The track point
+     * ids are shared by all the tracks, so size the level from the number of
+     * points of the track rather than from its ids.
+     */
+    if (samplingLevel == -1) {
+      Track track = myTracksProviderUtils.getTrack(selectedTrackId);
+      samplingLevel = getSamplingLevel(track != null ? track.getNumberOfPoints() : 0L);
+    }
+
+    LocationIterator iterator = myTracksProviderUtils.getTrackPointLocationIterator(
+        selectedTrackId, localLastSeenLocationId + 1, false, samplingLevel,
+        MyTracksProviderUtils.DEFAULT_LOCATION_FACTORY);
+    while (iterator.hasNext()) {
+      Location location = iterator.next();
+      long locationId = iterator.getLocationId();
+
+      // Stop if past the last wanted point
+      if (maxPointId != -1L && locationId > maxPointId) {
+        break;
+      }
+      if (localFirstSeenLocationId == -1L) {
+        localFirstSeenLocationId = locationId;
+      }
+      byte type = LocationUtils.isValidLocation(location) ? TrackPointBlock.SAMPLED_IN
+          : TrackPointBlock.SEGMENT_SPLIT;
+      addTrackPoint(type, location, sampledInListeners, noListeners);
+      localNumLoadedPoints++;
+      localLastSeenLocationId = locationId;
+    }
+    iterator.close();
+
+    // Also include the last point if the selected track is not recording
+    if (localLastSeenLocationId < lastTrackPointId
+        && (maxPointId == -1L || lastTrackPointId <= maxPointId)
+        && !isSelectedTrackRecording()) {
+      iterator = myTracksProviderUtils.getTrackPointLocationIterator(selectedTrackId,
+          lastTrackPointId, false, MyTracksProviderUtils.DEFAULT_LOCATION_FACTORY);
+      if (iterator.hasNext()) {
+        Location location = iterator.next();
+        if (LocationUtils.isValidLocation(location)) {
+          addTrackPoint(TrackPointBlock.SAMPLED_IN, location, sampledInListeners, noListeners);
+          localNumLoadedPoints++;
+        }
+      }
+      iterator.close();
+    }
+    notifyTrackPoints(sampledInListeners, noListeners);
+
+    if (updateSamplingState) {
+      numLoadedPoints = localNumLoadedPoints;
+      firstSeenLocationId = localFirstSeenLocationId;
+      // The track points up to the last track point not in the level are seen
+      lastSeenLocationId = Math.max(localLastSeenLocationId, lastTrackPointId);
+    }
+
+    for (TrackDataListener listener : sampledInListeners) {
+      listener.onNewTrackPointsDone();
+    }
+  }
+
+  /**
+   * Adds a track point to the {@link #trackPointBlock}, notifying the track
+   * points first if the block is full. To be run in the {@link #handler}
+   * thread.
+   * 
+   * @param type the track point type
+   * @param location the location
+   * @param sampledInListeners the sampled-in listeners
+   * @param sampledOutListeners the sampled-out listeners
+   */
+  private void addTrackPoint(byte type, Location location,
+      Set<TrackDataListener> sampledInListeners, Set<TrackDataListener> sampledOutListeners) {
+    if (trackPointBlock.isFull()) {
+      notifyTrackPoints(sampledInListeners, sampledOutListeners);
+    }
+    trackPointBlock.add(type, location);
+  }
+
+  /**
+   * Notifies the track points of the {@link #trackPointBlock}, and clears it.
+   * To be run in the {@link #handler} thread.
+   * 
+   * @param sampledInListeners the sampled-in listeners
+   * @param sampledOutListeners the sampled-out listeners
+   */
+  private void notifyTrackPoints(
+      Set<TrackDataListener> sampledInListeners, Set<TrackDataListener> sampledOutListeners) {
+    if (trackPointBlock.isEmpty()) {
+      return;
+    }
+    for (TrackDataListener trackDataListener : sampledInListeners) {
+      trackDataListener.onNewTrackPoints(trackPointBlock);
+    }
+    for (TrackDataListener trackDataListener : sampledOutListeners) {
+      if (!sampledInListeners.contains(trackDataListener)) {
+        trackDataListener.onNewTrackPoints(trackPointBlock);
+      }
+    }
+    trackPointBlock.clear();
+  }
+
+  /**
+   * Gets the lowest level of the track points pyramid with less than
+   * {@link #targetNumPoints} track points.
+   * 
+   * @param numTotalPoints the total number of track points
+   */
+  private int getSamplingLevel(long numTotalPoints) {
+    int level = 0;
+    while (level < TrackPointsColumns.MAX_LEVEL && (numTotalPoints >> level) >= targetNumPoints) {
+      level++;
+    }
+    return level;
+  }
+
   /**
    * Notifies location state changed. To be run in the {@link #handler} thread.
    * 
@@ -768,6 +960,7 @@ public class TrackDataHub implements DataSourceListener {
     numLoadedPoints = 0;
     firstSeenLocationId = -1L;
     lastSeenLocationId = -1L;
+    samplingLevel = -1;
   }
 
   /**
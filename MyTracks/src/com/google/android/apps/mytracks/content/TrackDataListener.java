@@ -41,9 +41,8 @@ public interface TrackDataListener {
 
   /**
    * Called when the location changes. This is meant for location display only,
-   * track point data is reported with other methods like
-   * {@link #onSampledInTrackPoint(Location)} and
-   * {@link #onSampledOutTrackPoint(Location)}.
+   * track point data is reported with
+   * {@link #onNewTrackPoints(TrackPointBlock)}.
    * 
    * @param location the location
    */
@@ -59,7 +58,7 @@ public interface TrackDataListener {
   /**
    * Called when the selected track changes. This will be followed by calls to
    * data methods such as {@link #onTrackUpdated(Track)},
-   * {@link #clearTrackPoints()}, {@link #onSampledInTrackPoint(Location)},
+   * {@link #clearTrackPoints()}, {@link #onNewTrackPoints(TrackPointBlock)},
    * etc., even if no track is currently selected (in which case you'll only get
    * calls to clear the current data).
    * 
@@ -80,29 +79,19 @@ public interface TrackDataListener {
   public void clearTrackPoints();
 
   /**
-   * Called when a sampled in track point is read.
+   * Called when a block of track points is read: sampled in track points,
+   * segment splits, and, if a listener of the sampled out track points is
+   * notified, sampled out track points. Listeners not interested in a type of
+   * track points skip them, see {@link TrackPointBlock#getType(int)}. The block
+   * is only valid during the call.
    * 
-   * @param location the location
-   */
-  public void onSampledInTrackPoint(Location location);
-
-  /**
-   * Called when a sampled out track point is read.
-   * 
-   * @param location the location
-   */
-  public void onSampledOutTrackPoint(Location location);
-
-  /**
-   * Called when an invalid track point representing a segment split is read.
+   * @param block the track points
    */
-  public void onSegmentSplit(Location location);
+  public void onNewTrackPoints(TrackPointBlock block);
 
   /**
    * Called when finish sending new track points. This gets called after every
-   * batch of calls to {@link #onSampledInTrackPoint(Location)},
-   * {@link #onSampledOutTrackPoint(Location)} and
-   * {@link #onSegmentSplit(Location)}.
+   * batch of calls to {@link #onNewTrackPoints(TrackPointBlock)}.
    */
   public void onNewTrackPointsDone();
 
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.content;
+
+import android.location.Location;
+
+/**
+ * A block of consecutive track points sent to the {@link TrackDataListener}s
+ * in a single call. The track point values are stored in an array per column,
+ * so that a listener reads them without a call per track point. The locations
+ * are kept for the listeners needing all the values, e.g., the sensor data.
+ * <p>
+ * The block is reused for the next track points, a listener must copy the
+ * values it keeps.
+ */
+public class TrackPointBlock {
+
+  /**
+   * A sampled in track point.
+   */
+  public static final byte SAMPLED_IN = 0;
+
+  /**
+   * A sampled out track point.
+   */
+  public static final byte SAMPLED_OUT = 1;
+
+  /**
+   * An invalid track point representing a segment split.
+   */
+  public static final byte SEGMENT_SPLIT = 2;
+
+  private final byte[] types;
+  private final double[] latitudes;
+  private final double[] longitudes;
+  private final float[] speeds;
+  private final Location[] locations;
+  private int size;
+
+  /**
+   * Constructor.
+   *
+   * @param capacity the maximum number of track points
+   */
+  public TrackPointBlock(int capacity) {
+    types = new byte[capacity];
+    latitudes = new double[capacity];
+    longitudes = new double[capacity];
+    speeds = new float[capacity];
+    locations = new Location[capacity];
+  }
+
+  /**
+   * Adds a track point.
+   *
+   * @param type the type, {@link #SAMPLED_IN}, {@link #SAMPLED_OUT}, or
+   *          {@link #SEGMENT_SPLIT}
+   * @param location the location
+   */
+  public void add(byte type, Location location) {
+    types[size] = type;
+    latitudes[size] = location.getLatitude();
+    longitudes[size] = location.getLongitude();
+    speeds[size] = location.getSpeed();
+    locations[size] = location;
+    size++;
+  }
+
+  /**
+   * Removes all the track points.
+   */
+  public void clear() {
+    // Release the locations
+    for (int i = 0; i < size; i++) {
+      locations[i] = null;
+    }
+    size = 0;
+  }
+
+  /**
+   * Gets the number of track points.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Returns true if the block has no track points.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns true if no more track points can be added.
+   */
+  public boolean isFull() {
+    return size == types.length;
+  }
+
+  /**
+   * Gets the type of a track point.
+   *
+   * @param index the track point index
+   */
+  public byte getType(int index) {
+    return types[index];
+  }
+
+  /**
+   * Gets the latitude of a track point.
+   *
+   * @param index the track point index
+   */
+  public double getLatitude(int index) {
+    return latitudes[index];
+  }
+
+  /**
+   * Gets the longitude of a track point.
+   *
+   * @param index the track point index
+   */
+  public double getLongitude(int index) {
+    return longitudes[index];
+  }
+
+  /**
+   * Gets the speed of a track point in meters per second.
+   *
+   * @param index the track point index
+   */
+  public float getSpeed(int index) {
+    return speeds[index];
+  }
+
+  /**
+   * Gets the location of a track point.
+   *
+   * @param index the track point index
+   */
+  public Location getLocation(int index) {
+    return locations[index];
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.google.android.apps.mytracks.fragments;
 
+import com.google.android.apps.mytracks.ChartData;
 import com.google.android.apps.mytracks.ChartView;
 import com.google.android.apps.mytracks.TrackDetailActivity;
 import com.google.android.apps.mytracks.content.MyTracksLocation;
@@ -25,8 +26,8 @@ import com.google.android.apps.mytracks.content.Track;
 import com.google.android.apps.mytracks.content.TrackDataHub;
 import com.google.android.apps.mytracks.content.TrackDataListener;
 import com.google.android.apps.mytracks.content.TrackDataType;
+import com.google.android.apps.mytracks.content.TrackPointBlock;
 import com.google.android.apps.mytracks.content.Waypoint;
-import com.google.android.apps.mytracks.stats.TripStatistics;
 import com.google.android.apps.mytracks.stats.TripStatisticsUpdater;
 import com.google.android.apps.mytracks.util.LocationUtils;
 import com.google.android.apps.mytracks.util.PreferencesUtils;
@@ -43,7 +44,6 @@ import android.view.ViewGroup;
 import android.view.ViewGroup.LayoutParams;
 import android.widget.ZoomControls;
 
-import java.util.ArrayList;
 import java.util.EnumSet;
 
 /**
@@ -56,7 +56,8 @@ public class ChartFragment extends Fragment implements TrackDataListener {
 
   public static final String CHART_FRAGMENT_TAG = "chartFragment";
 
-  private final ArrayList<double[]> pendingPoints = new ArrayList<double[]>();
+  private final ChartData pendingPoints = new ChartData(ChartView.NUM_SERIES);
+  private final double[] dataPoint = new double[ChartView.NUM_SERIES + 1];
 
   private TrackDataHub trackDataHub;
 
@@ -204,25 +205,18 @@ public class ChartFragment extends Fragment implements TrackDataListener {
   }
 
   @Override
-  public void onSampledInTrackPoint(Location location) {
+  public void onNewTrackPoints(TrackPointBlock block) {
     if (isResumed()) {
-      double[] data = new double[ChartView.NUM_SERIES + 1];
-      fillDataPoint(location, data);
-      pendingPoints.add(data);
-    }
-  }
-
-  @Override
-  public void onSampledOutTrackPoint(Location location) {
-    if (isResumed()) {
-      fillDataPoint(location, null);
-    }
-  }
-
-  @Override
-  public void onSegmentSplit(Location location) {
-    if (isResumed()) {
-      fillDataPoint(location, null);
+      int size = block.getSize();
+      for (int i = 0; i < size; i++) {
+        // All the track points update the statistics, only the sampled in ones are charted
+        if (block.getType(i) == TrackPointBlock.SAMPLED_IN) {
+          fillDataPoint(block.getLocation(i), dataPoint);
+          pendingPoints.add(dataPoint);
+        } else {
+          fillDataPoint(block.getLocation(i), null);
+        }
+      }
     }
   }
 
@@ -454,15 +448,14 @@ public class ChartFragment extends Fragment implements TrackDataListener {
 
     if (tripStatisticsUpdater != null) {
       tripStatisticsUpdater.addLocation(location, minRecordingDistance);
-      TripStatistics tripStatistics = tripStatisticsUpdater.getTripStatistics();
       if (chartByDistance) {
-        double distance = tripStatistics.getTotalDistance() * UnitConversions.M_TO_KM;
+        double distance = tripStatisticsUpdater.getTotalDistance() * UnitConversions.M_TO_KM;
         if (!metricUnits) {
           distance *= UnitConversions.KM_TO_MI;
         }
         timeOrDistance = distance;
       } else {
-        timeOrDistance = tripStatistics.getTotalTime();
+        timeOrDistance = tripStatisticsUpdater.getTotalTime();
       }
 
       elevation = tripStatisticsUpdater.getSmoothedElevation();
@@ -25,6 +25,7 @@ import com.google.android.apps.mytracks.content.Track;
 import com.google.android.apps.mytracks.content.TrackDataHub;
 import com.google.android.apps.mytracks.content.TrackDataListener;
 import com.google.android.apps.mytracks.content.TrackDataType;
+import com.google.android.apps.mytracks.content.TrackPointBlock;
 import com.google.android.apps.mytracks.content.Waypoint;
 import com.google.android.apps.mytracks.stats.TripStatistics;
 import com.google.android.apps.mytracks.util.ApiAdapterFactory;
@@ -43,7 +44,6 @@ import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.Marker;
-import com.google.android.gms.maps.model.Polyline;
 import com.google.android.maps.mytracks.R;
 
 import android.content.Context;
@@ -63,7 +63,6 @@ import android.widget.RelativeLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.ArrayList;
 import java.util.EnumSet;
 
 /**
@@ -110,8 +109,6 @@ public class MyTracksMapFragment extends SupportMapFragment implements TrackData
   // Current track
   private Track currentTrack;
 
-  // Current paths
-  private ArrayList<Polyline> paths = new ArrayList<Polyline>();
   boolean reloadPaths = true;
 
   // UI elements
@@ -207,6 +204,7 @@ public class MyTracksMapFragment extends SupportMapFragment implements TrackData
             keepCurrentLocationVisible = false;
             zoomToCurrentLocation = false;
           }
+          mapOverlay.updateCamera(googleMap);
         }
       });
       googleMap.moveCamera(
@@ -469,21 +467,9 @@ public class MyTracksMapFragment extends SupportMapFragment implements TrackData
   }
 
   @Override
-  public void onSampledInTrackPoint(final Location location) {
+  public void onNewTrackPoints(TrackPointBlock block) {
     if (isResumed()) {
-      mapOverlay.addLocation(location);
-    }
-  }
-
-  @Override
-  public void onSampledOutTrackPoint(Location location) {
-    // We don't care.
-  }
-
-  @Override
-  public void onSegmentSplit(Location location) {
-    if (isResumed()) {
-      mapOverlay.addSegmentSplit();
+      mapOverlay.addTrackPoints(block);
     }
   }
 
@@ -493,7 +479,7 @@ public class MyTracksMapFragment extends SupportMapFragment implements TrackData
       getActivity().runOnUiThread(new Runnable() {
         public void run() {
           if (isResumed() && googleMap != null) {
-            mapOverlay.update(googleMap, paths, reloadPaths);
+            mapOverlay.update(googleMap, reloadPaths);
             reloadPaths = false;
           }
         }
@@ -521,7 +507,7 @@ public class MyTracksMapFragment extends SupportMapFragment implements TrackData
       getActivity().runOnUiThread(new Runnable() {
         public void run() {
           if (isResumed() && googleMap != null) {
-            mapOverlay.update(googleMap, paths, true);
+            mapOverlay.updateWaypoints(googleMap);
           }
         }
       });
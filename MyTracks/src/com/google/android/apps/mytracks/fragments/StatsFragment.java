@@ -21,6 +21,7 @@ import com.google.android.apps.mytracks.content.Track;
 import com.google.android.apps.mytracks.content.TrackDataHub;
 import com.google.android.apps.mytracks.content.TrackDataListener;
 import com.google.android.apps.mytracks.content.TrackDataType;
+import com.google.android.apps.mytracks.content.TrackPointBlock;
 import com.google.android.apps.mytracks.content.Waypoint;
 import com.google.android.apps.mytracks.stats.TripStatistics;
 import com.google.android.apps.mytracks.util.StatsUtils;
@@ -167,17 +168,7 @@ public class StatsFragment extends Fragment implements TrackDataListener {
   }
 
   @Override
-  public void onSampledInTrackPoint(Location location) {
-    // We don't care.
-  }
-
-  @Override
-  public void onSampledOutTrackPoint(Location location) {
-    // We don't care.
-  }
-
-  @Override
-  public void onSegmentSplit(Location location) {
+  public void onNewTrackPoints(TrackPointBlock block) {
     // We don't care.
   }
 
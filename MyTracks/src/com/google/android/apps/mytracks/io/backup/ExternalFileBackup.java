@@ -29,6 +29,8 @@ import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -39,6 +41,7 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.TimeZone;
 import java.util.zip.ZipEntry;
@@ -47,6 +50,15 @@ import java.util.zip.ZipOutputStream;
 
 /**
  * Handler for writing or reading single-file backups.
+ * <p>
+ * A backup is either full or incremental. An incremental backup only has the
+ * track points added since the previous backup, chained through a manifest,
+ * while the tracks, the waypoints and the preferences are always complete,
+ * since they are small and can be modified. Track points are never modified
+ * and their ids are never reused, thus the points newer than the highest id
+ * of the previous backup are the new points. Restoring an incremental backup
+ * replays the track points of the full backup and of each incremental backup
+ * of the chain.
  *
  * @author Rodrigo Damazio
  */
@@ -59,15 +71,65 @@ class ExternalFileBackup {
   }
 
   private static final String BACKUPS_SUBDIR = "backups";
-  private static final int BACKUP_FORMAT_VERSION = 1;
-  private static final String ZIP_ENTRY_NAME =
-      "backup.mytracks.v" + BACKUP_FORMAT_VERSION;
+  private static final int BACKUP_FORMAT_VERSION = 2;
+
+  // The single entry of the backups of version 1
+  private static final String LEGACY_ZIP_ENTRY_NAME = "backup.mytracks.v1";
+
+  // The entries of the backups of version 2
+  private static final String MANIFEST_ZIP_ENTRY_NAME =
+      "manifest.mytracks.v" + BACKUP_FORMAT_VERSION;
+  private static final String TRACKS_ZIP_ENTRY_NAME = "tracks";
+  private static final String WAYPOINTS_ZIP_ENTRY_NAME = "waypoints";
+  private static final String TRACK_POINTS_ZIP_ENTRY_NAME = "trackpoints";
+  private static final String PREFERENCES_ZIP_ENTRY_NAME = "preferences";
+
   private static final int COMPRESSION_LEVEL = 8;
 
+  // The max number of incremental backups after a full backup. Limits the
+  // number of files needed to restore, a week of daily backups.
+  private static final int MAX_INCREMENTAL_BACKUPS = 6;
+
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * The manifest of a backup.
+   */
+  private static class Manifest {
+    // The file name of the previous backup, null for a full backup
+    final String previousFileName;
+
+    // The number of incremental backups since the full backup
+    final int incrementalCount;
+
+    // The highest track point id in the backup and the previous backups
+    final long maxTrackPointId;
+
+    Manifest(String previousFileName, int incrementalCount, long maxTrackPointId) {
+      this.previousFileName = previousFileName;
+      this.incrementalCount = incrementalCount;
+      this.maxTrackPointId = maxTrackPointId;
+    }
+  }
+
   private final Context context;
 
+  // The backups directory, null for the default directory
+  private final File backupsDirectory;
+
   public ExternalFileBackup(Context context) {
+    this(context, null);
+  }
+
+  /**
+   * Creates a backup handler for a custom backups directory.
+   *
+   * @param context the context
+   * @param backupsDirectory the backups directory, null for the default
+   */
+  ExternalFileBackup(Context context, File backupsDirectory) {
     this.context = context;
+    this.backupsDirectory = backupsDirectory;
   }
 
   /**
@@ -85,8 +147,8 @@ class ExternalFileBackup {
    * @param create whether to try creating the directory if it doesn't exist
    */
   private File getBackupsDirectory(boolean create) {
-    String dirName = FileUtils.buildExternalDirectoryPath(BACKUPS_SUBDIR);
-    final File dir = new File(dirName);
+    final File dir = backupsDirectory != null ? backupsDirectory
+        : new File(FileUtils.buildExternalDirectoryPath(BACKUPS_SUBDIR));
     Log.d(Constants.TAG, "Dir: " + dir.getAbsolutePath());
     if (create) {
       // Try to create - if that fails, return null
@@ -122,7 +184,33 @@ class ExternalFileBackup {
    * Writes the backup to the default file.
    */
   public void writeToDefaultFile() throws IOException {
-    writeToFile(getFileForDate(new Date()));
+    writeToDate(new Date());
+  }
+
+  /**
+   * Writes the backup for the given date. The backup is incremental if the
+   * latest previous backup can be chained to.
+   */
+  void writeToDate(Date when) throws IOException {
+    File outputFile = getFileForDate(when);
+    File previousFile = getPreviousBackupFile(when);
+    Manifest previousManifest = null;
+    if (previousFile != null) {
+      try {
+        // Checks the whole chain can be read
+        getBackupChain(previousFile);
+        previousManifest = readManifest(previousFile);
+      } catch (IOException e) {
+        Log.w(TAG, "Unable to chain to " + previousFile.getAbsolutePath(), e);
+      }
+    }
+    if (previousManifest != null
+        && (previousManifest.incrementalCount >= MAX_INCREMENTAL_BACKUPS
+        || getMaxTrackPointId() < previousManifest.maxTrackPointId)) {
+      // Time for a full backup, or the database is not the backed up one
+      previousManifest = null;
+    }
+    writeToFile(outputFile, previousManifest == null ? null : previousFile, previousManifest);
   }
 
   /**
@@ -135,17 +223,41 @@ class ExternalFileBackup {
   /**
    * Produces the proper file descriptor for the given backup date.
    */
-  private File getFileForDate(Date when) {
+  File getFileForDate(Date when) {
     File dir = getBackupsDirectory(false);
     String fileName = BACKUP_FILENAME_FORMAT.format(when);
     File file = new File(dir, fileName);
     return file;
   }
 
+  /**
+   * Returns the file of the latest backup before the given date, or null if
+   * none.
+   */
+  private File getPreviousBackupFile(Date when) {
+    Date[] backupDates = getAvailableBackups();
+    if (backupDates == null) {
+      return null;
+    }
+    Date latest = null;
+    for (Date date : backupDates) {
+      if (date.before(when) && (latest == null || date.after(latest))) {
+        latest = date;
+      }
+    }
+    return latest == null ? null : getFileForDate(latest);
+  }
+
   /**
    * Synchronously writes a backup to the given file.
+   *
+   * @param outputFile the file to write to
+   * @param previousFile the previous backup, null for a full backup
+   * @param previousManifest the manifest of the previous backup, null for a
+   *          full backup
    */
-  private void writeToFile(File outputFile) throws IOException {
+  private void writeToFile(File outputFile, File previousFile, Manifest previousManifest)
+      throws IOException {
     Log.d(Constants.TAG,
         "Writing backup to file " + outputFile.getAbsolutePath());
 
@@ -166,14 +278,16 @@ class ExternalFileBackup {
 
     // Open the target for writing
     FileOutputStream outputStream = new FileOutputStream(outputFile);
-    ZipOutputStream compressedStream = new ZipOutputStream(outputStream);
+    ZipOutputStream compressedStream = new ZipOutputStream(
+        new BufferedOutputStream(outputStream, BUFFER_SIZE));
     compressedStream.setLevel(COMPRESSION_LEVEL);
-    compressedStream.putNextEntry(new ZipEntry(ZIP_ENTRY_NAME));
-    DataOutputStream outWriter = new DataOutputStream(compressedStream);
+    DataOutputStream outWriter = new DataOutputStream(
+        new BufferedOutputStream(compressedStream, BUFFER_SIZE));
 
     try {
-      // Dump the entire contents of each table
+      // Dump the entire contents of the tracks and the waypoints
       ContentResolver contentResolver = context.getContentResolver();
+      compressedStream.putNextEntry(new ZipEntry(TRACKS_ZIP_ENTRY_NAME));
       Cursor tracksCursor = contentResolver.query(
           TracksColumns.CONTENT_URI, null, null, null, null);
       try {
@@ -181,7 +295,9 @@ class ExternalFileBackup {
       } finally {
         tracksCursor.close();
       }
+      closeEntry(compressedStream, outWriter);
 
+      compressedStream.putNextEntry(new ZipEntry(WAYPOINTS_ZIP_ENTRY_NAME));
       Cursor waypointsCursor = contentResolver.query(
           WaypointsColumns.CONTENT_URI, null, null, null, null);
       try {
@@ -189,20 +305,46 @@ class ExternalFileBackup {
       } finally {
         waypointsCursor.close();
       }
+      closeEntry(compressedStream, outWriter);
 
-      Cursor pointsCursor = contentResolver.query(
-          TrackPointsColumns.CONTENT_URI, null, null, null, null);
+      // Dump the track points newer than the previous backup
+      long maxTrackPointId = previousManifest == null ? -1L : previousManifest.maxTrackPointId;
+      compressedStream.putNextEntry(new ZipEntry(TRACK_POINTS_ZIP_ENTRY_NAME));
+      Cursor pointsCursor = contentResolver.query(TrackPointsColumns.CONTENT_URI, null,
+          TrackPointsColumns._ID + ">?", new String[] { Long.toString(maxTrackPointId) },
+          TrackPointsColumns._ID);
       try {
         pointDumper.writeAllRows(pointsCursor, outWriter);
+        if (pointsCursor.moveToLast()) {
+          maxTrackPointId = pointsCursor.getLong(
+              pointsCursor.getColumnIndexOrThrow(TrackPointsColumns._ID));
+        }
       } finally {
         pointsCursor.close();
       }
+      closeEntry(compressedStream, outWriter);
 
       // Dump preferences
+      compressedStream.putNextEntry(new ZipEntry(PREFERENCES_ZIP_ENTRY_NAME));
       SharedPreferences preferences = context.getSharedPreferences(
           Constants.SETTINGS_NAME, Context.MODE_PRIVATE);
       preferencesHelper.exportPreferences(preferences, outWriter);
+      closeEntry(compressedStream, outWriter);
+
+      compressedStream.putNextEntry(new ZipEntry(MANIFEST_ZIP_ENTRY_NAME));
+      writeManifest(previousManifest == null
+          ? new Manifest(null, 0, maxTrackPointId)
+          : new Manifest(previousFile.getName(), previousManifest.incrementalCount + 1,
+              maxTrackPointId), outWriter);
+      closeEntry(compressedStream, outWriter);
+      compressedStream.close();
     } catch (IOException e) {
+      try {
+        compressedStream.close();
+      } catch (IOException closeException) {
+        Log.w(TAG, "Failed to close file " + outputFile.getAbsolutePath(), closeException);
+      }
+
       // We tried to delete the partially created file, but do nothing
       // if that also fails.
       if (!outputFile.delete()) {
@@ -210,9 +352,6 @@ class ExternalFileBackup {
       }
 
       throw e;
-    } finally {
-      compressedStream.closeEntry();
-      compressedStream.close();
     }
   }
 
@@ -223,6 +362,67 @@ class ExternalFileBackup {
     Log.d(Constants.TAG,
         "Restoring from file " + inputFile.getAbsolutePath());
 
+    // Fail before deleting anything if a backup of the chain is missing
+    List<File> chain = getBackupChain(inputFile);
+    ContentResolver resolver = context.getContentResolver();
+
+    ZipFile zipFile = new ZipFile(inputFile, ZipFile.OPEN_READ);
+    try {
+      if (zipFile.getEntry(MANIFEST_ZIP_ENTRY_NAME) == null) {
+        restoreFromLegacyFile(zipFile);
+        return;
+      }
+
+      // Delete all previous contents of the tables and preferences.
+      resolver.delete(TracksColumns.CONTENT_URI, null, null);
+      resolver.delete(TrackPointsColumns.CONTENT_URI, null, null);
+      resolver.delete(WaypointsColumns.CONTENT_URI, null, null);
+
+      // Import the tracks and the waypoints of the last backup
+      importAllRows(zipFile, TRACKS_ZIP_ENTRY_NAME,
+          new DatabaseImporter(TracksColumns.CONTENT_URI, resolver, false));
+      importAllRows(zipFile, WAYPOINTS_ZIP_ENTRY_NAME,
+          new DatabaseImporter(WaypointsColumns.CONTENT_URI, resolver, false));
+
+      // Replay the track points of each backup of the chain
+      DatabaseImporter pointImporter =
+          new DatabaseImporter(TrackPointsColumns.CONTENT_URI, resolver, false);
+      for (File file : chain) {
+        if (file.equals(inputFile)) {
+          importAllRows(zipFile, TRACK_POINTS_ZIP_ENTRY_NAME, pointImporter);
+          continue;
+        }
+        ZipFile chainZipFile = new ZipFile(file, ZipFile.OPEN_READ);
+        try {
+          importAllRows(chainZipFile, TRACK_POINTS_ZIP_ENTRY_NAME, pointImporter);
+        } finally {
+          chainZipFile.close();
+        }
+      }
+
+      // Delete the track points of the tracks deleted since the full backup
+      resolver.delete(TrackPointsColumns.CONTENT_URI, TrackPointsColumns.TRACKID + " NOT IN "
+          + "(SELECT " + TracksColumns._ID + " FROM " + TracksColumns.TABLE_NAME + ")", null);
+
+      // Restore preferences
+      DataInputStream reader = openEntry(zipFile, PREFERENCES_ZIP_ENTRY_NAME);
+      try {
+        SharedPreferences preferences = context.getSharedPreferences(
+            Constants.SETTINGS_NAME, Context.MODE_PRIVATE);
+        new PreferenceBackupHelper(context).importPreferences(reader, preferences);
+      } finally {
+        reader.close();
+      }
+    } finally {
+      zipFile.close();
+    }
+  }
+
+  /**
+   * Synchronously restores a backup of version 1, a full backup in a single
+   * entry.
+   */
+  private void restoreFromLegacyFile(ZipFile zipFile) throws IOException {
     PreferenceBackupHelper preferencesHelper = new PreferenceBackupHelper(context);
     ContentResolver resolver = context.getContentResolver();
     DatabaseImporter trackImporter =
@@ -232,8 +432,7 @@ class ExternalFileBackup {
     DatabaseImporter pointImporter =
         new DatabaseImporter(TrackPointsColumns.CONTENT_URI, resolver, false);
 
-    ZipFile zipFile = new ZipFile(inputFile, ZipFile.OPEN_READ);
-    ZipEntry zipEntry = zipFile.getEntry(ZIP_ENTRY_NAME);
+    ZipEntry zipEntry = zipFile.getEntry(LEGACY_ZIP_ENTRY_NAME);
     if (zipEntry == null) {
       throw new IOException("Invalid backup ZIP file");
     }
@@ -258,7 +457,125 @@ class ExternalFileBackup {
       preferencesHelper.importPreferences(reader, preferences);
     } finally {
       compressedStream.close();
+    }
+  }
+
+  /**
+   * Returns the backups needed to restore a backup, from the full backup to
+   * the given backup.
+   *
+   * @param file the backup file
+   * @throws IOException if a backup is missing or invalid
+   */
+  private List<File> getBackupChain(File file) throws IOException {
+    LinkedList<File> chain = new LinkedList<File>();
+    chain.addFirst(file);
+    Manifest manifest = readManifest(file);
+    while (manifest != null && manifest.previousFileName != null) {
+      File previousFile = new File(file.getParentFile(), manifest.previousFileName);
+      Manifest previousManifest = readManifest(previousFile);
+      if (previousManifest == null
+          || previousManifest.incrementalCount != manifest.incrementalCount - 1) {
+        throw new IOException("Invalid backup chain at " + previousFile.getAbsolutePath());
+      }
+      chain.addFirst(previousFile);
+      manifest = previousManifest;
+    }
+    return chain;
+  }
+
+  /**
+   * Reads the manifest of a backup. Returns null for a backup of version 1,
+   * without a manifest.
+   *
+   * @param file the backup file
+   * @throws IOException if the backup can't be read
+   */
+  private Manifest readManifest(File file) throws IOException {
+    ZipFile zipFile = new ZipFile(file, ZipFile.OPEN_READ);
+    try {
+      if (zipFile.getEntry(MANIFEST_ZIP_ENTRY_NAME) == null) {
+        return null;
+      }
+      DataInputStream reader = openEntry(zipFile, MANIFEST_ZIP_ENTRY_NAME);
+      try {
+        int version = reader.readInt();
+        if (version != BACKUP_FORMAT_VERSION) {
+          throw new IOException("Unknown backup version " + version);
+        }
+        String previousFileName = reader.readBoolean() ? reader.readUTF() : null;
+        int incrementalCount = reader.readInt();
+        long maxTrackPointId = reader.readLong();
+        return new Manifest(previousFileName, incrementalCount, maxTrackPointId);
+      } finally {
+        reader.close();
+      }
+    } finally {
       zipFile.close();
     }
   }
+
+  /**
+   * Writes the manifest of a backup.
+   */
+  private void writeManifest(Manifest manifest, DataOutputStream writer) throws IOException {
+    writer.writeInt(BACKUP_FORMAT_VERSION);
+    writer.writeBoolean(manifest.previousFileName != null);
+    if (manifest.previousFileName != null) {
+      writer.writeUTF(manifest.previousFileName);
+    }
+    writer.writeInt(manifest.incrementalCount);
+    writer.writeLong(manifest.maxTrackPointId);
+  }
+
+  /**
+   * Returns the highest track point id in the database, or -1 if none.
+   */
+  private long getMaxTrackPointId() {
+    Cursor cursor = context.getContentResolver().query(TrackPointsColumns.CONTENT_URI,
+        new String[] { TrackPointsColumns._ID }, null, null,
+        TrackPointsColumns._ID + " DESC LIMIT 1");
+    if (cursor == null) {
+      return -1L;
+    }
+    try {
+      return cursor.moveToFirst() ? cursor.getLong(0) : -1L;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Imports all the rows of a zip entry.
+   */
+  private void importAllRows(ZipFile zipFile, String entryName, DatabaseImporter importer)
+      throws IOException {
+    DataInputStream reader = openEntry(zipFile, entryName);
+    try {
+      importer.importAllRows(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Opens a zip entry for reading.
+   */
+  private DataInputStream openEntry(ZipFile zipFile, String entryName) throws IOException {
+    ZipEntry zipEntry = zipFile.getEntry(entryName);
+    if (zipEntry == null) {
+      throw new IOException("Invalid backup ZIP file");
+    }
+    return new DataInputStream(
+        new BufferedInputStream(zipFile.getInputStream(zipEntry), BUFFER_SIZE));
+  }
+
+  /**
+   * Flushes the buffered writer and closes the current zip entry.
+   */
+  private void closeEntry(ZipOutputStream compressedStream, DataOutputStream writer)
+      throws IOException {
+    writer.flush();
+    compressedStream.closeEntry();
+  }
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.io.file;
+
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.content.Waypoint;
+
+import android.location.Location;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A {@link TrackFormatWriter} compressing the output of another format writer,
+ * either as a single entry of a zip file, like a KMZ file, or as a gzip file.
+ * The output is compressed while it is written, the format writer closing the
+ * compressed stream finishes the file.
+ */
+public class CompressedTrackFormatWriter implements TrackFormatWriter {
+
+  /**
+   * The default compression level, trading a slightly bigger file for a much
+   * faster compression than {@link Deflater#BEST_COMPRESSION}.
+   */
+  public static final int DEFAULT_COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+  private static final String TAG = CompressedTrackFormatWriter.class.getSimpleName();
+
+  // The size of the buffer of compressed bytes
+  private static final int BUFFER_SIZE = 8192;
+
+  private final TrackFormatWriter writer;
+  private final String extension;
+  private final String zipEntryName;
+  private final int compressionLevel;
+
+  /**
+   * Creates a format writer for a zip file with a single entry.
+   *
+   * @param writer the format writer of the entry
+   * @param extension the file extension
+   * @param zipEntryName the name of the entry
+   * @param compressionLevel the compression level, from
+   *          {@link Deflater#NO_COMPRESSION} to
+   *          {@link Deflater#BEST_COMPRESSION}, or
+   *          {@link Deflater#DEFAULT_COMPRESSION}
+   */
+  public static CompressedTrackFormatWriter newZipWriter(TrackFormatWriter writer,
+      String extension, String zipEntryName, int compressionLevel) {
+    return new CompressedTrackFormatWriter(writer, extension, zipEntryName, compressionLevel);
+  }
+
+  /**
+   * Creates a format writer for a gzip file. The file extension is the
+   * extension of the format writer followed by ".gz".
+   *
+   * @param writer the format writer
+   * @param compressionLevel the compression level, from
+   *          {@link Deflater#NO_COMPRESSION} to
+   *          {@link Deflater#BEST_COMPRESSION}, or
+   *          {@link Deflater#DEFAULT_COMPRESSION}
+   */
+  public static CompressedTrackFormatWriter newGzipWriter(
+      TrackFormatWriter writer, int compressionLevel) {
+    return new CompressedTrackFormatWriter(
+        writer, writer.getExtension() + ".gz", null, compressionLevel);
+  }
+
+  private CompressedTrackFormatWriter(
+      TrackFormatWriter writer, String extension, String zipEntryName, int compressionLevel) {
+    this.writer = writer;
+    this.extension = extension;
+    this.zipEntryName = zipEntryName;
+    this.compressionLevel = compressionLevel;
+  }
+
+  @Override
+  public String getExtension() {
+    return extension;
+  }
+
+  @Override
+  public void prepare(Track track, OutputStream outputStream) {
+    OutputStream compressedOutputStream;
+    try {
+      compressedOutputStream = zipEntryName != null ? newZipOutputStream(outputStream)
+          : newGzipOutputStream(outputStream);
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to start the compressed file", e);
+      // Let the format writer fail on the closed stream, like any write error
+      try {
+        outputStream.close();
+      } catch (IOException closeException) {
+        Log.e(TAG, "Unable to close the file", closeException);
+      }
+      compressedOutputStream = outputStream;
+    }
+    writer.prepare(track, compressedOutputStream);
+  }
+
+  @Override
+  public void close() {
+    writer.close();
+  }
+
+  @Override
+  public void writeHeader() {
+    writer.writeHeader();
+  }
+
+  @Override
+  public void writeFooter() {
+    writer.writeFooter();
+  }
+
+  @Override
+  public void writeBeginWaypoints() {
+    writer.writeBeginWaypoints();
+  }
+
+  @Override
+  public void writeEndWaypoints() {
+    writer.writeEndWaypoints();
+  }
+
+  @Override
+  public void writeWaypoint(Waypoint waypoint) {
+    writer.writeWaypoint(waypoint);
+  }
+
+  @Override
+  public void writeBeginTrack(Location firstLocation) {
+    writer.writeBeginTrack(firstLocation);
+  }
+
+  @Override
+  public void writeEndTrack(Location lastLocation) {
+    writer.writeEndTrack(lastLocation);
+  }
+
+  @Override
+  public void writeOpenSegment() {
+    writer.writeOpenSegment();
+  }
+
+  @Override
+  public void writeCloseSegment() {
+    writer.writeCloseSegment();
+  }
+
+  @Override
+  public void writeLocation(Location location) {
+    writer.writeLocation(location);
+  }
+
+  /**
+   * Creates a zip output stream with a single entry. The zip output stream
+   * writes small headers and chunks, thus is buffered.
+   *
+   * @param outputStream the output stream
+   */
+  private OutputStream newZipOutputStream(OutputStream outputStream) throws IOException {
+    ZipOutputStream zipOutputStream = new ZipOutputStream(
+        new BufferedOutputStream(outputStream, BUFFER_SIZE));
+    zipOutputStream.setLevel(compressionLevel);
+    zipOutputStream.putNextEntry(new ZipEntry(zipEntryName));
+    return zipOutputStream;
+  }
+
+  /**
+   * Creates a gzip output stream with the compression level.
+   *
+   * @param outputStream the output stream
+   */
+  private OutputStream newGzipOutputStream(OutputStream outputStream) throws IOException {
+    return new GZIPOutputStream(outputStream, BUFFER_SIZE) {
+      {
+        def.setLevel(compressionLevel);
+      }
+    };
+  }
+}
@@ -22,14 +22,12 @@ import com.google.android.apps.mytracks.content.Sensor.SensorDataSet;
 import com.google.android.apps.mytracks.content.Track;
 import com.google.android.apps.mytracks.content.Waypoint;
 import com.google.android.apps.mytracks.io.file.TrackWriterFactory.TrackFileFormat;
-import com.google.android.apps.mytracks.util.StringUtils;
 import com.google.android.maps.mytracks.R;
 
 import android.content.Context;
 import android.location.Location;
 
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.text.NumberFormat;
 
 /**
@@ -51,20 +49,19 @@ import java.text.NumberFormat;
  */
 public class CsvTrackWriter implements TrackFormatWriter {
 
-  private static final NumberFormat SHORT_FORMAT = NumberFormat.getInstance();
+  private final Context context;
 
-  static {
-    SHORT_FORMAT.setMaximumFractionDigits(4);
-  }
+  // Not shared between writers since a NumberFormat is not thread safe
+  private final NumberFormat shortFormat = NumberFormat.getInstance();
 
-  private final Context context;
-  private PrintWriter printWriter;
+  private TrackFormatEmitter emitter;
   private Track track;
   private int segmentIndex;
   private int pointIndex;
 
   public CsvTrackWriter(Context context) {
     this.context = context;
+    shortFormat.setMaximumFractionDigits(4);
   }
 
   @Override
@@ -75,14 +72,14 @@ public class CsvTrackWriter implements TrackFormatWriter {
   @Override
   public void prepare(Track aTrack, OutputStream out) {
     track = aTrack;
-    printWriter = new PrintWriter(out);
+    emitter = new TrackFormatEmitter(out);
     segmentIndex = 0;
     pointIndex = 0;
   }
 
   @Override
   public void close() {
-    printWriter.close();
+    emitter.close();
   }
 
   @Override
@@ -120,17 +117,14 @@ public class CsvTrackWriter implements TrackFormatWriter {
 
   @Override
   public void writeWaypoint(Waypoint waypoint) {
-    Location location = waypoint.getLocation();
-    writeCommaSeparatedLine(waypoint.getName(),
-        waypoint.getCategory(),
-        waypoint.getDescription(),
-        Double.toString(location.getLatitude()),
-        Double.toString(location.getLongitude()),
-        Double.toString(location.getAltitude()),
-        Double.toString(location.getBearing()),
-        SHORT_FORMAT.format(location.getAccuracy()),
-        SHORT_FORMAT.format(location.getSpeed()),
-        StringUtils.formatDateTimeIso8601(location.getTime()));
+    emitter.writeCsvValue(waypoint.getName());
+    emitter.write(",");
+    emitter.writeCsvValue(waypoint.getCategory());
+    emitter.write(",");
+    emitter.writeCsvValue(waypoint.getDescription());
+    emitter.write(",");
+    writeLocationValues(waypoint.getLocation());
+    emitter.newLine();
   }
 
   @Override
@@ -167,46 +161,75 @@ public class CsvTrackWriter implements TrackFormatWriter {
 
   @Override
   public void writeLocation(Location location) {
-    String power = null;
-    String cadence = null;
-    String heartRate = null;
+    SensorData power = null;
+    SensorData cadence = null;
+    SensorData heartRate = null;
     if (location instanceof MyTracksLocation) {
       SensorDataSet sensorDataSet = ((MyTracksLocation) location).getSensorDataSet();
-
       if (sensorDataSet != null) {
         if (sensorDataSet.hasPower()) {
-          SensorData sensorData = sensorDataSet.getPower();
-          if (sensorData.hasValue() && sensorData.getState() == Sensor.SensorState.SENDING) {
-            power = Double.toString(sensorData.getValue());
-          }
+          power = sensorDataSet.getPower();
         }
         if (sensorDataSet.hasCadence()) {
-          SensorData sensorData = sensorDataSet.getCadence();
-          if (sensorData.hasValue() && sensorData.getState() == Sensor.SensorState.SENDING) {
-            cadence = Double.toString(sensorData.getValue());
-          }
+          cadence = sensorDataSet.getCadence();
         }
         if (sensorDataSet.hasHeartRate()) {
-          SensorData sensorData = sensorDataSet.getHeartRate();
-          if (sensorData.hasValue() && sensorData.getState() == Sensor.SensorState.SENDING) {
-            heartRate = Double.toString(sensorData.getValue());
-          }
+          heartRate = sensorDataSet.getHeartRate();
         }
       }
     }
     pointIndex++;
-    writeCommaSeparatedLine(Integer.toString(segmentIndex),
-        Integer.toString(pointIndex),
-        Double.toString(location.getLatitude()),
-        Double.toString(location.getLongitude()),
-        Double.toString(location.getAltitude()),
-        Double.toString(location.getBearing()),
-        SHORT_FORMAT.format(location.getAccuracy()),
-        SHORT_FORMAT.format(location.getSpeed()),
-        StringUtils.formatDateTimeIso8601(location.getTime()),
-        power,
-        cadence,
-        heartRate);
+    emitter.write("\"");
+    emitter.writeInt(segmentIndex);
+    emitter.write("\",\"");
+    emitter.writeInt(pointIndex);
+    emitter.write("\",");
+    writeLocationValues(location);
+    emitter.write(",");
+    writeSensorValue(power);
+    emitter.write(",");
+    writeSensorValue(cadence);
+    emitter.write(",");
+    writeSensorValue(heartRate);
+    emitter.newLine();
+  }
+
+  /**
+   * Writes the latitude, longitude, altitude, bearing, accuracy, speed, and
+   * time values of a location.
+   *
+   * @param location the location
+   */
+  private void writeLocationValues(Location location) {
+    emitter.write("\"");
+    emitter.writeDouble(location.getLatitude());
+    emitter.write("\",\"");
+    emitter.writeDouble(location.getLongitude());
+    emitter.write("\",\"");
+    emitter.writeDouble(location.getAltitude());
+    emitter.write("\",\"");
+    emitter.writeDouble(location.getBearing());
+    emitter.write("\",\"");
+    emitter.writeFormatted(shortFormat, location.getAccuracy());
+    emitter.write("\",\"");
+    emitter.writeFormatted(shortFormat, location.getSpeed());
+    emitter.write("\",\"");
+    emitter.writeDateTimeIso8601(location.getTime());
+    emitter.write("\"");
+  }
+
+  /**
+   * Writes a sensor value, empty if not available.
+   *
+   * @param sensorData the sensor data, can be null
+   */
+  private void writeSensorValue(SensorData sensorData) {
+    emitter.write("\"");
+    if (sensorData != null && sensorData.hasValue()
+        && sensorData.getState() == Sensor.SensorState.SENDING) {
+      emitter.writeDouble(sensorData.getValue());
+    }
+    emitter.write("\"");
   }
 
   /**
@@ -215,20 +238,14 @@ public class CsvTrackWriter implements TrackFormatWriter {
    * @param values the values to be written as CSV
    */
   private void writeCommaSeparatedLine(String... values) {
-    StringBuilder builder = new StringBuilder();
     boolean isFirst = true;
     for (String value : values) {
       if (!isFirst) {
-        builder.append(',');
+        emitter.write(",");
       }
       isFirst = false;
-
-      builder.append('"');
-      if (value != null) {
-        builder.append(value.replaceAll("\"", "\"\""));
-      }
-      builder.append('"');
+      emitter.writeCsvValue(value);
     }
-    printWriter.println(builder.toString());
+    emitter.newLine();
   }
 }
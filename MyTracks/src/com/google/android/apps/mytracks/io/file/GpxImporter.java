@@ -17,6 +17,7 @@ package com.google.android.apps.mytracks.io.file;
 
 import com.google.android.apps.mytracks.Constants;
 import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils.TrackImportSession;
 import com.google.android.apps.mytracks.content.Track;
 import com.google.android.apps.mytracks.services.TrackRecordingService;
 import com.google.android.apps.mytracks.stats.TripStatisticsUpdater;
@@ -25,7 +26,6 @@ import com.google.android.apps.mytracks.util.StringUtils;
 
 import android.location.Location;
 import android.location.LocationManager;
-import android.net.Uri;
 import android.util.Log;
 
 import java.io.IOException;
@@ -67,7 +67,82 @@ public class GpxImporter extends DefaultHandler {
   // The maximum number of buffered locations for bulk-insertion
   private static final int MAX_BUFFERED_LOCATIONS = 512;
 
-  private final MyTracksProviderUtils myTracksProviderUtils;
+  /**
+   * The destination of the imported tracks and track points. Called in the
+   * order the tracks are parsed, on the parsing thread.
+   */
+  public interface TrackSink {
+
+    /**
+     * Starts a new track.
+     * 
+     * @param track the track, without values yet
+     */
+    public void insertTrack(Track track);
+
+    /**
+     * Inserts track points of the current track. The locations are reused after
+     * the call.
+     * 
+     * @param track the current track
+     * @param locations the locations
+     * @param length the number of locations to insert
+     */
+    public void insertTrackPoints(Track track, Location[] locations, int length);
+
+    /**
+     * Finishes the current track, setting its id, start id, and stop id if
+     * available. The track is not modified by the importer afterwards.
+     * 
+     * @param track the current track
+     */
+    public void updateTrack(Track track);
+
+    /**
+     * Discards the current track when not finished.
+     * 
+     * @param track the current track
+     */
+    public void deleteTrack(Track track);
+  }
+
+  /**
+   * A {@link TrackSink} writing each track to the database when finished, with
+   * a {@link TrackImportSession}.
+   */
+  private static class ProviderTrackSink implements TrackSink {
+
+    private final MyTracksProviderUtils myTracksProviderUtils;
+    private TrackImportSession trackImportSession;
+
+    public ProviderTrackSink(MyTracksProviderUtils myTracksProviderUtils) {
+      this.myTracksProviderUtils = myTracksProviderUtils;
+    }
+
+      @Override
+    public void insertTrack(Track track) {
+      trackImportSession = myTracksProviderUtils.createTrackImportSession();
+    }
+
+      @Override
+    public void insertTrackPoints(Track track, Location[] locations, int length) {
+      trackImportSession.insertTrackPoints(locations, length);
+    }
+
+      @Override
+    public void updateTrack(Track track) {
+      trackImportSession.commit(track);
+      trackImportSession = null;
+    }
+
+      @Override
+    public void deleteTrack(Track track) {
+      trackImportSession.rollback();
+      trackImportSession = null;
+    }
+  }
+
+  private final TrackSink trackSink;
   private final int minRecordingDistance;
 
   // List of successfully imported track ids
@@ -76,8 +151,8 @@ public class GpxImporter extends DefaultHandler {
   // The SAX locator to get the current line information
   private Locator locator;
 
-  // The current element content
-  private String content;
+  // The current element content, reused for all the elements
+  private final StringBuilder content = new StringBuilder();
 
   // True if if we're inside a track's xml element
   private boolean isInTrackElement = false;
@@ -106,13 +181,21 @@ public class GpxImporter extends DefaultHandler {
   // The import time
   private long importTime;
 
-  // The current location
+  // The current location, either null or trackPoint
   private Location location;
 
-  // The last location in the current segment
+  // The location reused for all the track points
+  private final Location trackPoint = new Location(LocationManager.GPS_PROVIDER);
+
+  // The location reused for the pause and resume separators
+  private final Location separator = new Location(LocationManager.GPS_PROVIDER);
+
+  // The last location in the current segment, either null or a copy of the
+  // last track point
   private Location lastLocationInSegment;
+  private final Location lastTrackPoint = new Location(LocationManager.GPS_PROVIDER);
 
-  // The buffered locations
+  // The buffered locations. The location objects are reused after a flush.
   private Location[] bufferedLocations = new Location[MAX_BUFFERED_LOCATIONS];
 
   // The number of buffered locations
@@ -130,49 +213,53 @@ public class GpxImporter extends DefaultHandler {
   public static long[] importGPXFile(InputStream inputStream,
       MyTracksProviderUtils myTracksProviderUtils, int minRecordingDistance)
       throws ParserConfigurationException, SAXException, IOException {
+    GpxImporter gpxImporter = new GpxImporter(myTracksProviderUtils, minRecordingDistance);
+    gpxImporter.importFile(inputStream);
+    return gpxImporter.getImportedTrackIds();
+  }
+
+  public GpxImporter(MyTracksProviderUtils myTracksProviderUtils, int minRecordingDistance) {
+    this(new ProviderTrackSink(myTracksProviderUtils), minRecordingDistance);
+  }
+
+  public GpxImporter(TrackSink trackSink, int minRecordingDistance) {
+    this.trackSink = trackSink;
+    this.minRecordingDistance = minRecordingDistance;
+    tracksIds = new ArrayList<Long>();
+  }
+
+  /**
+   * Reads GPS tracks from a GPX file and writes them to the track sink. Discards
+   * the current track if not finished.
+   * 
+   * @param inputStream the input stream for the GPX file
+   * @throws IOException if no track is imported
+   */
+  public void importFile(InputStream inputStream)
+      throws ParserConfigurationException, SAXException, IOException {
     SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
     SAXParser saxParser = saxParserFactory.newSAXParser();
-    GpxImporter gpxImporter = new GpxImporter(myTracksProviderUtils, minRecordingDistance);
-    long[] trackIds = new long[0];
 
     try {
       long start = System.currentTimeMillis();
 
-      saxParser.parse(inputStream, gpxImporter);
+      saxParser.parse(inputStream, this);
 
       long end = System.currentTimeMillis();
       Log.d(Constants.TAG, "Total import time: " + (end - start) + "ms");
 
-      trackIds = gpxImporter.getImportedTrackIds();
-      if (trackIds.length == 0) {
+      if (tracksIds.size() == 0) {
         throw new IOException("No track imported.");
       }
     } finally {
-      // Delete the current track if not finished
-      gpxImporter.rollbackUnfinishedTracks();
+      // Discard the current track if not finished
+      rollbackUnfinishedTrack();
     }
-    return trackIds;
-  }
-
-  public GpxImporter(MyTracksProviderUtils myTracksProviderUtils, int minRecordingDistance) {
-    this.myTracksProviderUtils = myTracksProviderUtils;
-    this.minRecordingDistance = minRecordingDistance;
-    tracksIds = new ArrayList<Long>();
   }
 
   @Override
   public void characters(char[] ch, int start, int length) throws SAXException {
-    String newContent = new String(ch, start, length);
-    if (content == null) {
-      content = newContent;
-    } else {
-      /*
-       * In 99% of the cases, a single call to this method will be made for each
-       * sequence of characters we're interested in, so we'll rarely be
-       * concatenating strings, thus not justifying the use of a StringBuilder.
-       */
-      content += newContent;
-    }
+    content.append(ch, start, length);
   }
 
   @Override
@@ -197,7 +284,7 @@ public class GpxImporter extends DefaultHandler {
   @Override
   public void endElement(String uri, String localName, String name) throws SAXException {
     if (!isInTrackElement) {
-      content = null;
+      content.setLength(0);
       return;
     }
 
@@ -227,7 +314,7 @@ public class GpxImporter extends DefaultHandler {
     trackChildDepth--;
 
     // reset element content
-    content = null;
+    content.setLength(0);
   }
 
   @Override
@@ -236,12 +323,12 @@ public class GpxImporter extends DefaultHandler {
   }
 
   /**
-   * Rolls back last track if possible.
+   * Rolls back the current track if not finished.
    */
-  public void rollbackUnfinishedTracks() {
+  private void rollbackUnfinishedTrack() {
     if (!isCurrentTrackFinished && track != null) {
-      myTracksProviderUtils.deleteTrack(track.getId());
       isCurrentTrackFinished = true;
+      trackSink.deleteTrack(track);
     }
   }
 
@@ -250,8 +337,7 @@ public class GpxImporter extends DefaultHandler {
    */
   private void onTrackElementStart() {
     track = new Track();
-    Uri uri = myTracksProviderUtils.insertTrack(track);
-    track.setId(Long.parseLong(uri.getLastPathSegment()));
+    trackSink.insertTrack(track);
     isCurrentTrackFinished = false;
     numberOfTrackSegments = 0;
     numberOfLocations = 0;
@@ -268,10 +354,9 @@ public class GpxImporter extends DefaultHandler {
       tripStatisticsUpdater = new TripStatisticsUpdater(now);
       tripStatisticsUpdater.updateTime(now);
     }
-    track.setStopId(getLastPointId());
     track.setTripStatistics(tripStatisticsUpdater.getTripStatistics());
     track.setNumberOfPoints(numberOfLocations);
-    myTracksProviderUtils.updateTrack(track);
+    trackSink.updateTrack(track);
     tracksIds.add(track.getId());
     isCurrentTrackFinished = true;
   }
@@ -280,7 +365,7 @@ public class GpxImporter extends DefaultHandler {
    * On name element end.
    */
   private void onNameElementEnd() {
-    if (content != null) {
+    if (content.length() != 0) {
       track.setName(content.toString().trim());
     }
   }
@@ -289,7 +374,7 @@ public class GpxImporter extends DefaultHandler {
    * On description element end.
    */
   private void onDescriptionElementEnd() {
-    if (content != null) {
+    if (content.length() != 0) {
       track.setDescription(content.toString().trim());
     }
   }
@@ -302,7 +387,7 @@ public class GpxImporter extends DefaultHandler {
     // If not the first segment, add a pause separator if there is at least one
     // location in the last segment
     if (numberOfTrackSegments > 1 && lastLocationInSegment != null) {
-      insertPoint(createNewLocation(
+      insertPoint(setLocation(separator,
           TrackRecordingService.PAUSE_LATITUDE, 0.0, lastLocationInSegment.getTime()));
     }
     location = null;
@@ -334,15 +419,15 @@ public class GpxImporter extends DefaultHandler {
     double latitudeValue;
     double longitudeValue;
     try {
-      latitudeValue = Double.parseDouble(latitude);
-      longitudeValue = Double.parseDouble(longitude);
+      latitudeValue = StringUtils.parseDouble(latitude, 0, latitude.length());
+      longitudeValue = StringUtils.parseDouble(longitude, 0, longitude.length());
     } catch (NumberFormatException e) {
       throw new SAXException(
           createErrorMessage("Unable to parse latitude/longitude: " + latitude + "/" + longitude),
           e);
     }
     
-    location = createNewLocation(latitudeValue, longitudeValue, -1L);
+    location = setLocation(trackPoint, latitudeValue, longitudeValue, -1L);
   }
 
   /**
@@ -356,19 +441,15 @@ public class GpxImporter extends DefaultHandler {
     if (numberOfTrackSegments > 1 && lastLocationInSegment == null) {
       // If not the first segment, add a resume separator before adding the
       // first location.
-      insertPoint(
-          createNewLocation(TrackRecordingService.RESUME_LATITUDE, 0.0, location.getTime()));
+      insertPoint(setLocation(
+          separator, TrackRecordingService.RESUME_LATITUDE, 0.0, location.getTime()));
     }
 
     // insert in db
     insertPoint(location);
 
-    // set the start id if necessary
-    if (track.getStartId() == -1L) {
-      track.setStartId(getFirstPointId());
-    }
-
-    lastLocationInSegment = location;
+    lastTrackPoint.set(location);
+    lastLocationInSegment = lastTrackPoint;
     location = null;
   }
 
@@ -376,12 +457,12 @@ public class GpxImporter extends DefaultHandler {
    * On altitude element end.
    */
   private void onAltitudeElementEnd() throws SAXException {
-    if (location == null || content == null) {
+    if (location == null || content.length() == 0) {
       return;
     }
 
     try {
-      location.setAltitude(Double.parseDouble(content));
+      location.setAltitude(StringUtils.parseDouble(content, 0, content.length()));
     } catch (NumberFormatException e) {
       throw new SAXException(createErrorMessage("Unable to parse altitude: " + content), e);
     }
@@ -394,14 +475,14 @@ public class GpxImporter extends DefaultHandler {
    * root element.
    */
   private void onTimeElementEnd() throws SAXException {
-    if (location == null || content == null) {
+    if (location == null || content.length() == 0) {
       return;
     }
 
     // Parse the time
     long time;
     try {
-      time = StringUtils.getTime(content.trim());
+      time = StringUtils.getTime(content, 0, content.length());
     } catch (IllegalArgumentException e) {
       throw new SAXException(createErrorMessage("Unable to parse time: " + content), e);
     }
@@ -430,13 +511,14 @@ public class GpxImporter extends DefaultHandler {
   }
 
   /**
-   * Creates a new location
+   * Sets a location, clearing its other values.
+   * 
+   * @param loc the location to set
    * @param latitude location latitude
    * @param longitude location longitude
    * @param time location time
    */
-  private Location createNewLocation(double latitude, double longitude, long time) {
-    Location loc = new Location(LocationManager.GPS_PROVIDER);
+  private Location setLocation(Location loc, double latitude, double longitude, long time) {
     loc.setLatitude(latitude);
     loc.setLongitude(longitude);
     loc.setAltitude(0.0f);
@@ -463,8 +545,13 @@ public class GpxImporter extends DefaultHandler {
       newLocation.setTime(importTime);
     }
     tripStatisticsUpdater.addLocation(newLocation, minRecordingDistance);
-    
-    bufferedLocations[numBufferedLocations] = newLocation;
+
+    Location bufferedLocation = bufferedLocations[numBufferedLocations];
+    if (bufferedLocation == null) {
+      bufferedLocation = new Location(LocationManager.GPS_PROVIDER);
+      bufferedLocations[numBufferedLocations] = bufferedLocation;
+    }
+    bufferedLocation.set(newLocation);
     numBufferedLocations++;
     numberOfLocations++;
 
@@ -480,15 +567,14 @@ public class GpxImporter extends DefaultHandler {
     if (numBufferedLocations <= 0) {
       return;
     }
-    myTracksProviderUtils.bulkInsertTrackPoint(
-        bufferedLocations, numBufferedLocations, track.getId());
+    trackSink.insertTrackPoints(track, bufferedLocations, numBufferedLocations);
     numBufferedLocations = 0;
   }
 
   /**
-   * Gets the imported track ids.
+   * Gets the imported track ids, -1 if not set by the track sink.
    */
-  private long[] getImportedTrackIds() {
+  public long[] getImportedTrackIds() {
     long[] result = new long[tracksIds.size()];
     for (int i = 0; i < result.length; i++) {
       result[i] = tracksIds.get(i);
@@ -496,22 +582,6 @@ public class GpxImporter extends DefaultHandler {
     return result;
   }
 
-  /**
-   * Gets the first point id inserted into the database.
-   */
-  private long getFirstPointId() {
-    flushPoints();
-    return myTracksProviderUtils.getFirstTrackPointId(track.getId());
-  }
-
-  /**
-   * Gets the last point id inserted into the database.
-   */
-  private long getLastPointId() {
-    flushPoints();
-    return myTracksProviderUtils.getLastTrackPointId(track.getId());
-  }
-
   /**
    * Creates an error message.
    * 
@@ -18,14 +18,12 @@ package com.google.android.apps.mytracks.io.file;
 import com.google.android.apps.mytracks.content.Track;
 import com.google.android.apps.mytracks.content.Waypoint;
 import com.google.android.apps.mytracks.io.file.TrackWriterFactory.TrackFileFormat;
-import com.google.android.apps.mytracks.util.StringUtils;
 import com.google.android.maps.mytracks.R;
 
 import android.content.Context;
 import android.location.Location;
 
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.text.NumberFormat;
 import java.util.Locale;
 
@@ -36,25 +34,26 @@ import java.util.Locale;
  */
 public class GpxTrackWriter implements TrackFormatWriter {
 
-  private static final NumberFormat ELEVATION_FORMAT = NumberFormat.getInstance(Locale.US);
-  private static final NumberFormat COORDINATE_FORMAT = NumberFormat.getInstance(Locale.US);
-  static {
-    // GPX readers expect to see fractional numbers with US-style punctuation.
-    // That is, they want periods for decimal points, rather than commas.
-    ELEVATION_FORMAT.setMaximumFractionDigits(1);
-    ELEVATION_FORMAT.setGroupingUsed(false);
+  private final Context context;
 
-    COORDINATE_FORMAT.setMaximumFractionDigits(6);
-    COORDINATE_FORMAT.setMaximumIntegerDigits(3);
-    COORDINATE_FORMAT.setGroupingUsed(false);
-  }
+  // Not shared between writers since a NumberFormat is not thread safe
+  private final NumberFormat elevationFormat = NumberFormat.getInstance(Locale.US);
+  private final NumberFormat coordinateFormat = NumberFormat.getInstance(Locale.US);
 
-  private final Context context;
   private Track track;
-  private PrintWriter printWriter;
+  private TrackFormatEmitter emitter;
 
   public GpxTrackWriter(Context context) {
     this.context = context;
+
+    // GPX readers expect to see fractional numbers with US-style punctuation.
+    // That is, they want periods for decimal points, rather than commas.
+    elevationFormat.setMaximumFractionDigits(1);
+    elevationFormat.setGroupingUsed(false);
+
+    coordinateFormat.setMaximumFractionDigits(6);
+    coordinateFormat.setMaximumIntegerDigits(3);
+    coordinateFormat.setGroupingUsed(false);
   }
 
   @Override
@@ -65,81 +64,82 @@ public class GpxTrackWriter implements TrackFormatWriter {
   @Override
   public void prepare(Track aTrack, OutputStream outputStream) {
     this.track = aTrack;
-    this.printWriter = new PrintWriter(outputStream);
+    this.emitter = new TrackFormatEmitter(outputStream);
   }
 
   @Override
   public void close() {
-    if (printWriter != null) {
-      printWriter.close();
-      printWriter = null;
+    if (emitter != null) {
+      emitter.close();
+      emitter = null;
     }
   }
 
   @Override
   public void writeHeader() {
-    if (printWriter != null) {
-      printWriter.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-      printWriter.println("<gpx");
-      printWriter.println("version=\"1.1\"");
-      printWriter.println(
+    if (emitter != null) {
+      emitter.writeLine("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      emitter.writeLine("<gpx");
+      emitter.writeLine("version=\"1.1\"");
+      emitter.writeLine(
           "creator=\"" + context.getString(R.string.send_google_by_my_tracks, "", "") + "\"");
-      printWriter.println("xmlns=\"http://www.topografix.com/GPX/1/1\"");
-      printWriter.println(
+      emitter.writeLine("xmlns=\"http://www.topografix.com/GPX/1/1\"");
+      emitter.writeLine(
           "xmlns:topografix=\"http://www.topografix.com/GPX/Private/TopoGrafix/0/1\"");
-      printWriter.println("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
-      printWriter.println("xsi:schemaLocation=\"http://www.topografix.com/GPX/1/1"
+      emitter.writeLine("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
+      emitter.writeLine("xsi:schemaLocation=\"http://www.topografix.com/GPX/1/1"
           + " http://www.topografix.com/GPX/1/1/gpx.xsd"
           + " http://www.topografix.com/GPX/Private/TopoGrafix/0/1"
           + " http://www.topografix.com/GPX/Private/TopoGrafix/0/1/topografix.xsd\">");
-      printWriter.println("<metadata>");
-      printWriter.println("<name>" + StringUtils.formatCData(track.getName()) + "</name>");
-      printWriter.println("<desc>" + StringUtils.formatCData(track.getDescription()) + "</desc>");
-      printWriter.println("</metadata>");
+      emitter.writeLine("<metadata>");
+      writeCDataElement("name", track.getName());
+      writeCDataElement("desc", track.getDescription());
+      emitter.writeLine("</metadata>");
     }
   }
 
   @Override
   public void writeFooter() {
-    if (printWriter != null) {
-      printWriter.println("</gpx>");
+    if (emitter != null) {
+      emitter.writeLine("</gpx>");
     }
   }
 
   @Override
   public void writeBeginTrack(Location firstLocation) {
-    if (printWriter != null) {
-      printWriter.println("<trk>");
-      printWriter.println("<name>" + StringUtils.formatCData(track.getName()) + "</name>");
-      printWriter.println("<desc>" + StringUtils.formatCData(track.getDescription()) + "</desc>");
-      printWriter.println("<extensions><topografix:color>c0c0c0</topografix:color></extensions>");
+    if (emitter != null) {
+      emitter.writeLine("<trk>");
+      writeCDataElement("name", track.getName());
+      writeCDataElement("desc", track.getDescription());
+      emitter.writeLine("<extensions><topografix:color>c0c0c0</topografix:color></extensions>");
     }
   }
 
   @Override
   public void writeEndTrack(Location lastLocation) {
-    if (printWriter != null) {
-      printWriter.println("</trk>");
+    if (emitter != null) {
+      emitter.writeLine("</trk>");
     }
   }
 
   @Override
   public void writeOpenSegment() {
-    printWriter.println("<trkseg>");
+    emitter.writeLine("<trkseg>");
   }
 
   @Override
   public void writeCloseSegment() {
-    printWriter.println("</trkseg>");
+    emitter.writeLine("</trkseg>");
   }
 
   @Override
   public void writeLocation(Location location) {
-    if (printWriter != null) {
-      printWriter.println("<trkpt " + formatLocation(location) + ">");
-      printWriter.println("<ele>" + ELEVATION_FORMAT.format(location.getAltitude()) + "</ele>");
-      printWriter.println("<time>" + StringUtils.formatDateTimeIso8601(location.getTime()) + "</time>");
-      printWriter.println("</trkpt>");
+    if (emitter != null) {
+      emitter.write("<trkpt ");
+      writeCoordinates(location);
+      emitter.writeLine(">");
+      writeElevationAndTime(location);
+      emitter.writeLine("</trkpt>");
     }
   }
 
@@ -155,27 +155,60 @@ public class GpxTrackWriter implements TrackFormatWriter {
 
   @Override
   public void writeWaypoint(Waypoint waypoint) {
-    if (printWriter != null) {
+    if (emitter != null) {
       Location location = waypoint.getLocation();
       if (location != null) {
-        printWriter.println("<wpt " + formatLocation(location) + ">");
-        printWriter.println("<ele>" + ELEVATION_FORMAT.format(location.getAltitude()) + "</ele>");
-        printWriter.println("<time>" + StringUtils.formatDateTimeIso8601(location.getTime()) + "</time>");
-        printWriter.println("<name>" + StringUtils.formatCData(waypoint.getName()) + "</name>");
-        printWriter.println(
-            "<desc>" + StringUtils.formatCData(waypoint.getDescription()) + "</desc>");
-        printWriter.println("</wpt>");
+        emitter.write("<wpt ");
+        writeCoordinates(location);
+        emitter.writeLine(">");
+        writeElevationAndTime(location);
+        writeCDataElement("name", waypoint.getName());
+        writeCDataElement("desc", waypoint.getDescription());
+        emitter.writeLine("</wpt>");
       }
     }
   }
 
   /**
-   * Formats a location with latitude and longitude coordinates.
+   * Writes the latitude and longitude attributes of a location.
+   *
+   * @param location the location
+   */
+  private void writeCoordinates(Location location) {
+    emitter.write("lat=\"");
+    emitter.writeFormatted(coordinateFormat, location.getLatitude());
+    emitter.write("\" lon=\"");
+    emitter.writeFormatted(coordinateFormat, location.getLongitude());
+    emitter.write("\"");
+  }
+
+  /**
+   * Writes the elevation and time elements of a location.
    *
    * @param location the location
    */
-  private String formatLocation(Location location) {
-    return "lat=\"" + COORDINATE_FORMAT.format(location.getLatitude()) + "\" lon=\""
-        + COORDINATE_FORMAT.format(location.getLongitude()) + "\"";
+  private void writeElevationAndTime(Location location) {
+    emitter.write("<ele>");
+    emitter.writeFormatted(elevationFormat, location.getAltitude());
+    emitter.writeLine("</ele>");
+    emitter.write("<time>");
+    emitter.writeDateTimeIso8601(location.getTime());
+    emitter.writeLine("</time>");
+  }
+
+  /**
+   * Writes an element with a CDATA section on a line.
+   *
+   * @param name the element name
+   * @param text the element text
+   */
+  private void writeCDataElement(String name, String text) {
+    emitter.write("<");
+    emitter.write(name);
+    emitter.write(">");
+    emitter.writeCData(text);
+    emitter.write("</");
+    emitter.write(name);
+    emitter.writeLine(">");
   }
 }
@@ -24,7 +24,6 @@ import com.google.android.apps.mytracks.content.Sensor.SensorDataSet;
 import com.google.android.apps.mytracks.content.Track;
 import com.google.android.apps.mytracks.content.Waypoint;
 import com.google.android.apps.mytracks.io.file.TrackWriterFactory.TrackFileFormat;
-import com.google.android.apps.mytracks.util.StringUtils;
 import com.google.android.maps.mytracks.R;
 import com.google.common.annotations.VisibleForTesting;
 
@@ -32,7 +31,6 @@ import android.content.Context;
 import android.location.Location;
 
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 
 /**
@@ -71,7 +69,7 @@ public class KmlTrackWriter implements TrackFormatWriter {
   private final Context context;
   private final DescriptionGenerator descriptionGenerator;
   private Track track;
-  private PrintWriter printWriter;
+  private TrackFormatEmitter emitter;
   private ArrayList<Integer> powerList = new ArrayList<Integer>();
   private ArrayList<Integer> cadenceList = new ArrayList<Integer>();
   private ArrayList<Integer> heartRateList = new ArrayList<Integer>();
@@ -97,73 +95,72 @@ public class KmlTrackWriter implements TrackFormatWriter {
   @Override
   public void prepare(Track aTrack, OutputStream outputStream) {
     this.track = aTrack;
-    this.printWriter = new PrintWriter(outputStream);
+    this.emitter = new TrackFormatEmitter(outputStream);
   }
 
   @Override
   public void close() {
-    if (printWriter != null) {
-      printWriter.close();
-      printWriter = null;
+    if (emitter != null) {
+      emitter.close();
+      emitter = null;
     }
   }
 
   @Override
   public void writeHeader() {
-    if (printWriter != null) {
-      printWriter.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-      printWriter.println("<kml xmlns=\"http://www.opengis.net/kml/2.2\"");
-      printWriter.println("xmlns:atom=\"http://www.w3.org/2005/Atom\"");
-      printWriter.println("xmlns:gx=\"http://www.google.com/kml/ext/2.2\">");
-      printWriter.println("<Document>");
-      printWriter.println("<open>1</open>");
-      printWriter.println("<visibility>1</visibility>");
-      printWriter.println(
-          "<description>" + StringUtils.formatCData(track.getDescription()) + "</description>");
-      printWriter.println("<name>" + StringUtils.formatCData(track.getName()) + "</name>");
-      printWriter.println("<atom:author><atom:name>" + StringUtils.formatCData(
-          context.getString(R.string.send_google_by_my_tracks, "", ""))
-          + "</atom:name></atom:author>");
+    if (emitter != null) {
+      emitter.writeLine("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      emitter.writeLine("<kml xmlns=\"http://www.opengis.net/kml/2.2\"");
+      emitter.writeLine("xmlns:atom=\"http://www.w3.org/2005/Atom\"");
+      emitter.writeLine("xmlns:gx=\"http://www.google.com/kml/ext/2.2\">");
+      emitter.writeLine("<Document>");
+      emitter.writeLine("<open>1</open>");
+      emitter.writeLine("<visibility>1</visibility>");
+      writeCDataElement("description", track.getDescription());
+      writeCDataElement("name", track.getName());
+      emitter.write("<atom:author><atom:name>");
+      emitter.writeCData(context.getString(R.string.send_google_by_my_tracks, "", ""));
+      emitter.writeLine("</atom:name></atom:author>");
       writeTrackStyle();
       writePlacemarkerStyle(START_STYLE, START_ICON, 32, 1);
       writePlacemarkerStyle(END_STYLE, END_ICON, 32, 1);
       writePlacemarkerStyle(STATISTICS_STYLE, STATISTICS_ICON, 20, 2);
       writePlacemarkerStyle(WAYPOINT_STYLE, WAYPOINT_ICON, 20, 2);
-      printWriter.println("<Schema id=\"" + SCHEMA_ID + "\">");
+      emitter.writeLine("<Schema id=\"" + SCHEMA_ID + "\">");
       writeSensorStyle(POWER, context.getString(R.string.description_sensor_power));
       writeSensorStyle(CADENCE, context.getString(R.string.description_sensor_cadence));
       writeSensorStyle(HEART_RATE, context.getString(R.string.description_sensor_heart_rate));
-      printWriter.println("</Schema>");
+      emitter.writeLine("</Schema>");
     }
   }
 
   @Override
   public void writeFooter() {
-    if (printWriter != null) {
-      printWriter.println("</Document>");
-      printWriter.println("</kml>");
+    if (emitter != null) {
+      emitter.writeLine("</Document>");
+      emitter.writeLine("</kml>");
     }
   }
 
   @Override
   public void writeBeginWaypoints() {
-    if (printWriter != null) {
-      printWriter.println(
-          "<Folder><name>" + StringUtils.formatCData(context.getString(R.string.menu_markers))
-              + "</name>");
+    if (emitter != null) {
+      emitter.write("<Folder><name>");
+      emitter.writeCData(context.getString(R.string.menu_markers));
+      emitter.writeLine("</name>");
     }
   }
 
   @Override
   public void writeEndWaypoints() {
-    if (printWriter != null) {
-      printWriter.println("</Folder>");
+    if (emitter != null) {
+      emitter.writeLine("</Folder>");
     }
   }
 
   @Override
   public void writeWaypoint(Waypoint waypoint) {
-    if (printWriter != null) {
+    if (emitter != null) {
       String styleName = waypoint.getType() == Waypoint.TYPE_STATISTICS ? STATISTICS_STYLE
           : WAYPOINT_STYLE;
       writePlacemark(
@@ -173,25 +170,24 @@ public class KmlTrackWriter implements TrackFormatWriter {
 
   @Override
   public void writeBeginTrack(Location firstLocation) {
-    if (printWriter != null) {
+    if (emitter != null) {
       String name = context.getString(R.string.marker_label_start, track.getName());
       writePlacemark(name, track.getDescription(), START_STYLE, firstLocation);
-      printWriter.println("<Placemark id=\"" + TOUR_FEATURE_ID + "\">");
-      printWriter.println(
-          "<description>" + StringUtils.formatCData(track.getDescription()) + "</description>");
-      printWriter.println("<name>" + StringUtils.formatCData(track.getName()) + "</name>");
-      printWriter.println("<styleUrl>#" + TRACK_STYLE + "</styleUrl>");
-      printWriter.println("<gx:MultiTrack>");
-      printWriter.println("<altitudeMode>absolute</altitudeMode>");
-      printWriter.println("<gx:interpolate>1</gx:interpolate>");
+      emitter.writeLine("<Placemark id=\"" + TOUR_FEATURE_ID + "\">");
+      writeCDataElement("description", track.getDescription());
+      writeCDataElement("name", track.getName());
+      emitter.writeLine("<styleUrl>#" + TRACK_STYLE + "</styleUrl>");
+      emitter.writeLine("<gx:MultiTrack>");
+      emitter.writeLine("<altitudeMode>absolute</altitudeMode>");
+      emitter.writeLine("<gx:interpolate>1</gx:interpolate>");
     }
   }
 
   @Override
   public void writeEndTrack(Location lastLocation) {
-    if (printWriter != null) {
-      printWriter.println("</gx:MultiTrack>");
-      printWriter.println("</Placemark>");
+    if (emitter != null) {
+      emitter.writeLine("</gx:MultiTrack>");
+      emitter.writeLine("</Placemark>");
       String name = context.getString(R.string.marker_label_end, track.getName());
       String description = descriptionGenerator.generateTrackDescription(track, null, null, false);
       writePlacemark(name, description, END_STYLE, lastLocation);
@@ -200,8 +196,8 @@ public class KmlTrackWriter implements TrackFormatWriter {
 
   @Override
   public void writeOpenSegment() {
-    if (printWriter != null) {
-      printWriter.println("<gx:Track>");
+    if (emitter != null) {
+      emitter.writeLine("<gx:Track>");
       hasPower = false;
       hasCadence = false;
       hasHeartRate = false;
@@ -213,9 +209,9 @@ public class KmlTrackWriter implements TrackFormatWriter {
 
   @Override
   public void writeCloseSegment() {
-    if (printWriter != null) {
-      printWriter.println("<ExtendedData>");
-      printWriter.println("<SchemaData schemaUrl=\"#" + SCHEMA_ID + "\">");
+    if (emitter != null) {
+      emitter.writeLine("<ExtendedData>");
+      emitter.writeLine("<SchemaData schemaUrl=\"#" + SCHEMA_ID + "\">");
       if (hasPower) {
         writeSensorData(powerList, POWER);
       }
@@ -225,19 +221,21 @@ public class KmlTrackWriter implements TrackFormatWriter {
       if (hasHeartRate) {
         writeSensorData(heartRateList, HEART_RATE);
       }
-      printWriter.println("</SchemaData>");
-      printWriter.println("</ExtendedData>");
-      printWriter.println("</gx:Track>");
+      emitter.writeLine("</SchemaData>");
+      emitter.writeLine("</ExtendedData>");
+      emitter.writeLine("</gx:Track>");
     }
   }
 
   @Override
   public void writeLocation(Location location) {
-    if (printWriter != null) {
-      printWriter.println("<when>" + StringUtils.formatDateTimeIso8601(location.getTime()) + "</when>");
-      printWriter.println(
-          "<gx:coord>" + location.getLongitude() + " " + location.getLatitude() + " "
-              + location.getAltitude() + "</gx:coord>");
+    if (emitter != null) {
+      emitter.write("<when>");
+      emitter.writeDateTimeIso8601(location.getTime());
+      emitter.writeLine("</when>");
+      emitter.write("<gx:coord>");
+      writeCoordinates(location, " ");
+      emitter.writeLine("</gx:coord>");
       if (location instanceof MyTracksLocation) {
         SensorDataSet sensorDataSet = ((MyTracksLocation) location).getSensorDataSet();
         int power = -1;
@@ -281,11 +279,13 @@ public class KmlTrackWriter implements TrackFormatWriter {
    * @param name the name of the sensor data
    */
   private void writeSensorData(ArrayList<Integer> list, String name) {
-    printWriter.println("<gx:SimpleArrayData name=\"" + name + "\">");
+    emitter.writeLine("<gx:SimpleArrayData name=\"" + name + "\">");
     for (int i = 0; i < list.size(); i++) {
-      printWriter.println("<gx:value>" + list.get(i) + "</gx:value>");
+      emitter.write("<gx:value>");
+      emitter.writeInt(list.get(i));
+      emitter.writeLine("</gx:value>");
     }
-    printWriter.println("</gx:SimpleArrayData>");
+    emitter.writeLine("</gx:SimpleArrayData>");
   }
 
   /**
@@ -299,31 +299,60 @@ public class KmlTrackWriter implements TrackFormatWriter {
   private void writePlacemark(
       String name, String description, String styleName, Location location) {
     if (location != null) {
-      printWriter.println("<Placemark>");
-      printWriter.println(
-          "<description>" + StringUtils.formatCData(description) + "</description>");
-      printWriter.println("<name>" + StringUtils.formatCData(name) + "</name>");
-      printWriter.println("<styleUrl>#" + styleName + "</styleUrl>");
-      printWriter.println("<Point>");
-      printWriter.println(
-          "<coordinates>" + location.getLongitude() + "," + location.getLatitude() + ","
-              + location.getAltitude() + "</coordinates>");
-      printWriter.println("</Point>");
-      printWriter.println("</Placemark>");
+      emitter.writeLine("<Placemark>");
+      writeCDataElement("description", description);
+      writeCDataElement("name", name);
+      emitter.writeLine("<styleUrl>#" + styleName + "</styleUrl>");
+      emitter.writeLine("<Point>");
+      emitter.write("<coordinates>");
+      writeCoordinates(location, ",");
+      emitter.writeLine("</coordinates>");
+      emitter.writeLine("</Point>");
+      emitter.writeLine("</Placemark>");
     }
   }
 
+  /**
+   * Writes the longitude, latitude, and altitude of a location.
+   *
+   * @param location the location
+   * @param separator the separator between the values
+   */
+  private void writeCoordinates(Location location, String separator) {
+    emitter.writeDouble(location.getLongitude());
+    emitter.write(separator);
+    emitter.writeDouble(location.getLatitude());
+    emitter.write(separator);
+    emitter.writeDouble(location.getAltitude());
+  }
+
+  /**
+   * Writes an element with a CDATA section on a line.
+   *
+   * @param name the element name
+   * @param text the element text
+   */
+  private void writeCDataElement(String name, String text) {
+    emitter.write("<");
+    emitter.write(name);
+    emitter.write(">");
+    emitter.writeCData(text);
+    emitter.write("</");
+    emitter.write(name);
+    emitter.writeLine(">");
+  }
+
   /**
    * Writes the track style.
    */
   private void writeTrackStyle() {
-    printWriter.println("<Style id=\"" + TRACK_STYLE + "\">");
-    printWriter.println("<LineStyle><color>7f0000ff</color><width>4</width></LineStyle>");
-    printWriter.println("<IconStyle>");
-    printWriter.println("<scale>1.3</scale>");
-    printWriter.println("<Icon><href>" + TRACK_ICON + "</href></Icon>");
-    printWriter.println("</IconStyle>");
-    printWriter.println("</Style>");
+    emitter.writeLine("<Style id=\"" + TRACK_STYLE + "\">");
+    emitter.writeLine("<LineStyle><color>7f0000ff</color><width>4</width></LineStyle>");
+    emitter.writeLine("<IconStyle>");
+    emitter.writeLine("<scale>1.3</scale>");
+    emitter.writeLine("<Icon><href>" + TRACK_ICON + "</href></Icon>");
+    emitter.writeLine("</IconStyle>");
+    emitter.writeLine("</Style>");
   }
 
   /**
@@ -335,12 +364,12 @@ public class KmlTrackWriter implements TrackFormatWriter {
    * @param y the y position of the hotspot
    */
   private void writePlacemarkerStyle(String name, String url, int x, int y) {
-    printWriter.println("<Style id=\"" + name + "\"><IconStyle>");
-    printWriter.println("<scale>1.3</scale>");
-    printWriter.println("<Icon><href>" + url + "</href></Icon>");
-    printWriter.println(
+    emitter.writeLine("<Style id=\"" + name + "\"><IconStyle>");
+    emitter.writeLine("<scale>1.3</scale>");
+    emitter.writeLine("<Icon><href>" + url + "</href></Icon>");
+    emitter.writeLine(
         "<hotSpot x=\"" + x + "\" y=\"" + y + "\" xunits=\"pixels\" yunits=\"pixels\"/>");
-    printWriter.println("</IconStyle></Style>");
+    emitter.writeLine("</IconStyle></Style>");
   }
 
   /**
@@ -350,9 +379,8 @@ public class KmlTrackWriter implements TrackFormatWriter {
    * @param displayName the sensor display name
    */
   private void writeSensorStyle(String name, String displayName) {
-    printWriter.println("<gx:SimpleArrayField name=\"" + name + "\" type=\"int\">");
-    printWriter.println(
-        "<displayName>" + StringUtils.formatCData(displayName) + "</displayName>");
-    printWriter.println("</gx:SimpleArrayField>");
+    emitter.writeLine("<gx:SimpleArrayField name=\"" + name + "\" type=\"int\">");
+    writeCDataElement("displayName", displayName);
+    emitter.writeLine("</gx:SimpleArrayField>");
   }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.io.file;
+
+import com.google.android.apps.mytracks.content.Waypoint;
+
+import android.location.Location;
+
+/**
+ * Forwards the write calls of a track document to several
+ * {@link TrackFormatWriter}s, so that a track is read once and written to
+ * several formats. The format writers are prepared by the caller, each with
+ * its own output stream.
+ */
+class MultiTrackFormatWriter {
+
+  private final TrackFormatWriter[] writers;
+
+  /**
+   * Creates a writer.
+   *
+   * @param writers the prepared format writers
+   */
+  MultiTrackFormatWriter(TrackFormatWriter[] writers) {
+    this.writers = writers;
+  }
+
+  /**
+   * See {@link TrackFormatWriter#close}.
+   */
+  void close() {
+    for (TrackFormatWriter writer : writers) {
+      writer.close();
+    }
+  }
+
+  /**
+   * See {@link TrackFormatWriter#writeHeader}.
+   */
+  void writeHeader() {
+    for (TrackFormatWriter writer : writers) {
+      writer.writeHeader();
+    }
+  }
+
+  /**
+   * See {@link TrackFormatWriter#writeFooter}.
+   */
+  void writeFooter() {
+    for (TrackFormatWriter writer : writers) {
+      writer.writeFooter();
+    }
+  }
+
+  /**
+   * See {@link TrackFormatWriter#writeBeginWaypoints}.
+   */
+  void writeBeginWaypoints() {
+    for (TrackFormatWriter writer : writers) {
+      writer.writeBeginWaypoints();
+    }
+  }
+
+  /**
+   * See {@link TrackFormatWriter#writeEndWaypoints}.
+   */
+  void writeEndWaypoints() {
+    for (TrackFormatWriter writer : writers) {
+      writer.writeEndWaypoints();
+    }
+  }
+
+  /**
+   * See {@link TrackFormatWriter#writeWaypoint}.
+   */
+  void writeWaypoint(Waypoint waypoint) {
+    for (TrackFormatWriter writer : writers) {
+      writer.writeWaypoint(waypoint);
+    }
+  }
+
+  /**
+   * See {@link TrackFormatWriter#writeBeginTrack}.
+   */
+  void writeBeginTrack(Location firstLocation) {
+    for (TrackFormatWriter writer : writers) {
+      writer.writeBeginTrack(firstLocation);
+    }
+  }
+
+  /**
+   * See {@link TrackFormatWriter#writeEndTrack}.
+   */
+  void writeEndTrack(Location lastLocation) {
+    for (TrackFormatWriter writer : writers) {
+      writer.writeEndTrack(lastLocation);
+    }
+  }
+
+  /**
+   * See {@link TrackFormatWriter#writeOpenSegment}.
+   */
+  void writeOpenSegment() {
+    for (TrackFormatWriter writer : writers) {
+      writer.writeOpenSegment();
+    }
+  }
+
+  /**
+   * See {@link TrackFormatWriter#writeCloseSegment}.
+   */
+  void writeCloseSegment() {
+    for (TrackFormatWriter writer : writers) {
+      writer.writeCloseSegment();
+    }
+  }
+
+  /**
+   * See {@link TrackFormatWriter#writeLocation}.
+   */
+  void writeLocation(Location location) {
+    for (TrackFormatWriter writer : writers) {
+      writer.writeLocation(location);
+    }
+  }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.io.file;
+
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils.TrackImportSession;
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.io.file.GpxImporter.TrackSink;
+
+import android.database.SQLException;
+import android.location.Location;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Imports multiple GPX files to My Tracks. The files are parsed in parallel on
+ * a fixed pool of threads, each track being buffered in a
+ * {@link TrackImportSession}, while the finished tracks are committed to the
+ * database by the calling thread only, through a bounded queue. A file is
+ * imported if at least one track is imported, like with
+ * {@link GpxImporter#importGPXFile(InputStream, MyTracksProviderUtils, int)}.
+ * <p>
+ * Not thread safe, one import at a time.
+ */
+public class ParallelGpxImporter {
+
+  /**
+   * Listener for the import progress.
+   */
+  public interface Listener {
+
+    /**
+     * Called on the importing thread when a file is done.
+     *
+     * @param file the file
+     * @param trackIds the imported track ids, null if the file is not imported
+     * @param number the number of files done
+     * @param total the total number of files
+     */
+    public void onFileDone(File file, long[] trackIds, int number, int total);
+  }
+
+  private static final String TAG = ParallelGpxImporter.class.getSimpleName();
+
+  // The maximum number of parsing threads
+  private static final int MAX_THREADS = 4;
+
+  // The number of queued commands per parsing thread. Each queued commit holds
+  // the track points of a track.
+  private static final int QUEUE_SIZE_PER_THREAD = 2;
+
+  // The time to wait for the parsing threads to stop when interrupted
+  private static final long STOP_TIMEOUT = 5000L;
+
+  /**
+   * The state of a file. The track ids and the failed flag are only accessed
+   * by the importing thread.
+   */
+  private static class FileState {
+    final File file;
+    final List<Long> trackIds = new ArrayList<Long>();
+
+    // True if a track failed to commit
+    boolean failed = false;
+
+    FileState(File file) {
+      this.file = file;
+    }
+  }
+
+  /**
+   * A command from a parsing thread to the importing thread, either to commit
+   * a track or to end a file.
+   */
+  private static class Command {
+    final FileState fileState;
+
+    // The session and the track to commit, null to end the file
+    final TrackImportSession trackImportSession;
+    final Track track;
+
+    // True if the file is imported, when ending the file
+    final boolean success;
+
+    Command(FileState fileState, TrackImportSession trackImportSession, Track track,
+        boolean success) {
+      this.fileState = fileState;
+      this.trackImportSession = trackImportSession;
+      this.track = track;
+      this.success = success;
+    }
+  }
+
+  private final MyTracksProviderUtils myTracksProviderUtils;
+  private final int minRecordingDistance;
+  private final int numberOfThreads;
+  private final BlockingQueue<Command> commands;
+
+  public ParallelGpxImporter(
+      MyTracksProviderUtils myTracksProviderUtils, int minRecordingDistance) {
+    this(myTracksProviderUtils, minRecordingDistance,
+        Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS)));
+  }
+
+  public ParallelGpxImporter(
+      MyTracksProviderUtils myTracksProviderUtils, int minRecordingDistance, int numberOfThreads) {
+    this.myTracksProviderUtils = myTracksProviderUtils;
+    this.minRecordingDistance = minRecordingDistance;
+    this.numberOfThreads = numberOfThreads;
+    commands = new ArrayBlockingQueue<Command>(numberOfThreads * QUEUE_SIZE_PER_THREAD);
+  }
+
+  /**
+   * Imports GPX files. Returns when all the files are done. If the calling
+   * thread is interrupted, stops parsing and throws an
+   * {@link InterruptedException}. The tracks committed so far are kept.
+   *
+   * @param files the files
+   * @param listener the listener, can be null
+   * @return the number of files imported.
+   */
+  public int importFiles(List<File> files, Listener listener) throws InterruptedException {
+    ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+    for (File file : files) {
+      final FileState fileState = new FileState(file);
+      executorService.execute(new Runnable() {
+          @Override
+        public void run() {
+          parseFile(fileState);
+        }
+      });
+    }
+    executorService.shutdown();
+
+    boolean completed = false;
+    try {
+      int successCount = 0;
+      for (int number = 0; number < files.size();) {
+        Command command = commands.take();
+        FileState fileState = command.fileState;
+        if (command.trackImportSession != null) {
+          try {
+            fileState.trackIds.add(command.trackImportSession.commit(command.track));
+          } catch (SQLException e) {
+            Log.e(TAG, "file: " + fileState.file.getAbsolutePath(), e);
+            fileState.failed = true;
+          }
+          continue;
+        }
+        number++;
+        long[] trackIds = null;
+        if (command.success && !fileState.failed) {
+          successCount++;
+          trackIds = toArray(fileState.trackIds);
+        }
+        if (listener != null) {
+          listener.onFileDone(fileState.file, trackIds, number, files.size());
+        }
+      }
+      completed = true;
+      return successCount;
+    } finally {
+      if (!completed) {
+        stop(executorService);
+      }
+    }
+  }
+
+  /**
+   * Parses a file, sending the finished tracks to the importing thread. Always
+   * ends the file unless interrupted.
+   *
+   * @param fileState the file state
+   */
+  private void parseFile(final FileState fileState) {
+    boolean success = false;
+    try {
+      InputStream inputStream = new FileInputStream(fileState.file);
+      try {
+        TrackSink trackSink = new TrackSink() {
+          private TrackImportSession trackImportSession;
+
+            @Override
+          public void insertTrack(Track track) {
+            trackImportSession = myTracksProviderUtils.createTrackImportSession();
+          }
+
+            @Override
+          public void insertTrackPoints(Track track, Location[] locations, int length) {
+            trackImportSession.insertTrackPoints(locations, length);
+          }
+
+            @Override
+          public void updateTrack(Track track) {
+            put(new Command(fileState, trackImportSession, track, false));
+            trackImportSession = null;
+          }
+
+            @Override
+          public void deleteTrack(Track track) {
+            trackImportSession.rollback();
+            trackImportSession = null;
+          }
+        };
+        new GpxImporter(trackSink, minRecordingDistance).importFile(inputStream);
+        success = true;
+      } finally {
+        inputStream.close();
+      }
+    } catch (ParserConfigurationException e) {
+      Log.d(TAG, "file: " + fileState.file.getAbsolutePath(), e);
+    } catch (SAXException e) {
+      Log.d(TAG, "file: " + fileState.file.getAbsolutePath(), e);
+    } catch (IOException e) {
+      Log.d(TAG, "file: " + fileState.file.getAbsolutePath(), e);
+    } catch (CancellationException e) {
+      return;
+    } catch (RuntimeException e) {
+      Log.e(TAG, "file: " + fileState.file.getAbsolutePath(), e);
+    }
+    try {
+      put(new Command(fileState, null, null, success));
+    } catch (CancellationException e) {
+      // Interrupted
+    }
+  }
+
+  /**
+   * Puts a command in the queue, waiting for space if necessary.
+   *
+   * @param command the command
+   * @throws CancellationException if interrupted
+   */
+  private void put(Command command) {
+    try {
+      commands.put(command);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException();
+    }
+  }
+
+  /**
+   * Stops the parsing threads and discards the queued commands. Keeps the
+   * interrupted status of the calling thread.
+   *
+   * @param executorService the executor service of the parsing threads
+   */
+  private void stop(ExecutorService executorService) {
+    boolean interrupted = Thread.interrupted();
+    executorService.shutdownNow();
+    try {
+      if (!executorService.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        Log.w(TAG, "Parsing threads not stopped.");
+      }
+    } catch (InterruptedException e) {
+      interrupted = true;
+    }
+    commands.clear();
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Converts a list of track ids to an array.
+   *
+   * @param trackIds the track ids
+   */
+  private static long[] toArray(List<Long> trackIds) {
+    long[] result = new long[trackIds.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = trackIds.get(i);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.io.file;
+
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.io.file.TrackWriterFactory.TrackFileFormat;
+import com.google.android.apps.mytracks.util.FileUtils;
+import com.google.android.maps.mytracks.R;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports multiple tracks to one or more formats. Each track is read once and
+ * written to all the formats at the same time. The tracks are exported in
+ * parallel on a fixed pool of threads, while the progress is reported on the
+ * calling thread. Interrupting the calling thread cancels the export.
+ * <p>
+ * Not thread safe, one export at a time.
+ */
+public class ParallelTrackExporter {
+
+  /**
+   * Listener for the export progress.
+   */
+  public interface Listener {
+
+    /**
+     * Called on the exporting thread when a track is done.
+     *
+     * @param trackId the track id
+     * @param success true if the track is exported to all the formats
+     * @param messageId the message id of the result
+     * @param number the number of tracks done
+     * @param total the total number of tracks
+     */
+    public void onTrackDone(long trackId, boolean success, int messageId, int number, int total);
+  }
+
+  private static final String TAG = ParallelTrackExporter.class.getSimpleName();
+
+  // The default number of exporting threads. The tracks are read from the same
+  // database and written to the same storage, more threads don't help.
+  private static final int DEFAULT_THREADS = 2;
+
+  // The time to wait for the exporting threads to stop when interrupted
+  private static final long STOP_TIMEOUT = 5000L;
+
+  /**
+   * The result of exporting a track.
+   */
+  private static class Result {
+    final long trackId;
+    final boolean success;
+    final int messageId;
+
+    Result(long trackId, boolean success, int messageId) {
+      this.trackId = trackId;
+      this.success = success;
+      this.messageId = messageId;
+    }
+  }
+
+  private final Context context;
+  private final MyTracksProviderUtils myTracksProviderUtils;
+  private final TrackFileFormat[] trackFileFormats;
+  private final int numberOfThreads;
+  private File directory = null;
+
+  public ParallelTrackExporter(Context context, MyTracksProviderUtils myTracksProviderUtils,
+      TrackFileFormat[] trackFileFormats) {
+    this(context, myTracksProviderUtils, trackFileFormats, DEFAULT_THREADS);
+  }
+
+  public ParallelTrackExporter(Context context, MyTracksProviderUtils myTracksProviderUtils,
+      TrackFileFormat[] trackFileFormats, int numberOfThreads) {
+    this.context = context;
+    this.myTracksProviderUtils = myTracksProviderUtils;
+    this.trackFileFormats = trackFileFormats;
+    this.numberOfThreads = numberOfThreads;
+  }
+
+  /**
+   * Sets a custom directory where the files are written. By default, each
+   * format has its own directory.
+   *
+   * @param directory the directory
+   */
+  public void setDirectory(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Exports tracks. Returns when all the tracks are done. If the calling thread
+   * is interrupted, stops exporting, deletes the files being written, and
+   * throws an {@link InterruptedException}.
+   *
+   * @param trackIds the track ids
+   * @param listener the listener, can be null
+   * @return the number of tracks exported.
+   */
+  public int exportTracks(long[] trackIds, Listener listener) throws InterruptedException {
+    File[] directories = new File[trackFileFormats.length];
+    int messageId = getDirectories(directories);
+    if (messageId != -1) {
+      for (int i = 0; i < trackIds.length; i++) {
+        if (listener != null) {
+          listener.onTrackDone(trackIds[i], false, messageId, i + 1, trackIds.length);
+        }
+      }
+      return 0;
+    }
+
+    ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+    CompletionService<Result> completionService = new ExecutorCompletionService<Result>(
+        executorService);
+    for (final long trackId : trackIds) {
+      final File[] trackDirectories = directories;
+      completionService.submit(new Callable<Result>() {
+          @Override
+        public Result call() {
+          return exportTrack(trackId, trackDirectories);
+        }
+      });
+    }
+    executorService.shutdown();
+
+    boolean completed = false;
+    try {
+      int successCount = 0;
+      for (int number = 1; number <= trackIds.length; number++) {
+        Result result = getResult(completionService.take());
+        if (result.success) {
+          successCount++;
+        }
+        if (listener != null) {
+          listener.onTrackDone(
+              result.trackId, result.success, result.messageId, number, trackIds.length);
+        }
+      }
+      completed = true;
+      return successCount;
+    } finally {
+      if (!completed) {
+        stop(executorService);
+      }
+    }
+  }
+
+  /**
+   * Gets the directory of each format, creating them if necessary. Returns -1
+   * on success, otherwise the message id of the error.
+   *
+   * @param directories the directories to set
+   */
+  private int getDirectories(File[] directories) {
+    if (!FileUtils.isSdCardAvailable()) {
+      Log.i(TAG, "Could not find SD card.");
+      return R.string.external_storage_error_no_storage;
+    }
+    for (int i = 0; i < trackFileFormats.length; i++) {
+      directories[i] = directory != null ? directory
+          : new File(FileUtils.buildExternalDirectoryPath(trackFileFormats[i].getExtension()));
+      if (!FileUtils.ensureDirectoryExists(directories[i])) {
+        Log.i(TAG, "Could not create export directory.");
+        return R.string.external_storage_save_error_create_dir;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Exports a track to all the formats. Deletes the files if not successful.
+   *
+   * @param trackId the track id
+   * @param directories the directory of each format
+   */
+  private Result exportTrack(long trackId, File[] directories) {
+    Track track = myTracksProviderUtils.getTrack(trackId);
+    if (track == null) {
+      Log.d(TAG, "No track for " + trackId);
+      return new Result(trackId, false, R.string.external_storage_save_error);
+    }
+    TrackFormatWriter[] writers = new TrackFormatWriter[trackFileFormats.length];
+    File[] files = new File[trackFileFormats.length];
+    boolean success = false;
+    int messageId = R.string.external_storage_save_error;
+    try {
+      for (int i = 0; i < trackFileFormats.length; i++) {
+        TrackFormatWriter writer = trackFileFormats[i].newFormatWriter(context);
+        files[i] = openFile(track, writer, directories[i]);
+        if (files[i] == null) {
+          return new Result(trackId, false, messageId);
+        }
+        writers[i] = writer;
+      }
+      new TrackWriterImpl(
+          context, myTracksProviderUtils, track, new MultiTrackFormatWriter(writers))
+          .writeDocument();
+      success = true;
+      messageId = R.string.external_storage_save_success;
+    } catch (InterruptedException e) {
+      Log.i(TAG, "The track export was interrupted");
+      messageId = R.string.external_storage_canceled;
+    } catch (RuntimeException e) {
+      Log.e(TAG, "Unable to export track " + trackId, e);
+    } finally {
+      if (!success) {
+        for (int i = 0; i < writers.length; i++) {
+          if (writers[i] != null) {
+            writers[i].close();
+          }
+          if (files[i] != null && !files[i].delete()) {
+            Log.w(TAG, "Failed to delete file " + files[i].getAbsolutePath());
+          }
+        }
+      }
+    }
+    return new Result(trackId, success, messageId);
+  }
+
+  /**
+   * Opens a new file for a track and prepares the format writer for it.
+   * Returns the file, or null if not opened.
+   *
+   * @param track the track
+   * @param writer the format writer
+   * @param dir the directory
+   */
+  private File openFile(Track track, TrackFormatWriter writer, File dir) {
+    // Reserve the file name while holding the lock of the unique file names,
+    // since other tracks may have the same name
+    synchronized (FileUtils.class) {
+      String fileName = FileUtils.buildUniqueFileName(
+          dir, track.getName(), writer.getExtension());
+      if (fileName == null) {
+        Log.e(TAG, "Unable to get a unique filename for " + track.getName());
+        return null;
+      }
+      File file = new File(dir, fileName);
+      try {
+        writer.prepare(track, new FileOutputStream(file));
+      } catch (FileNotFoundException e) {
+        Log.e(TAG, "Failed to open output file.", e);
+        return null;
+      }
+      return file;
+    }
+  }
+
+  /**
+   * Gets the result of a completed export.
+   *
+   * @param future the future of the export
+   */
+  private static Result getResult(Future<Result> future)
+      throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      // exportTrack catches the runtime exceptions
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Stops the exporting threads. The interrupted exports delete their files.
+   * Keeps the interrupted status of the calling thread.
+   *
+   * @param executorService the executor service of the exporting threads
+   */
+  private void stop(ExecutorService executorService) {
+    boolean interrupted = Thread.interrupted();
+    executorService.shutdownNow();
+    try {
+      if (!executorService.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        Log.w(TAG, "Exporting threads not stopped.");
+      }
+    } catch (InterruptedException e) {
+      interrupted = true;
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -163,9 +163,11 @@ public class SaveAsyncTask extends AsyncTask<Void, Integer, Boolean> {
   }
 
   /**
-   * Saves all the tracks.
+   * Saves all the tracks. The tracks are saved in parallel, each track is read
+   * once. Stops when the task is cancelled.
    */
   private Boolean saveAllTracks() {
+    long[] trackIds;
     Cursor cursor = null;
     try {
       cursor = myTracksProviderUtils.getTrackCursor(null, null, TracksColumns._ID);
@@ -179,25 +181,47 @@ public class SaveAsyncTask extends AsyncTask<Void, Integer, Boolean> {
         return false;
       }
       int idIndex = cursor.getColumnIndexOrThrow(TracksColumns._ID);
+      trackIds = new long[count];
       for (int i = 0; i < count; i++) {
-        if (isCancelled()) {
-          return false;
-        }
         cursor.moveToPosition(i);
-        long id = cursor.getLong(idIndex);
-        if (!saveOneTrack(id, false)) {
-          return false;
-        }        
-        publishProgress(i + 1, count);
+        trackIds[i] = cursor.getLong(idIndex);
       }
-      messageId = R.string.external_storage_save_success;
-      return true;
     } finally {
       if (cursor != null) {
         cursor.close();
       }
     }
+
+    ParallelTrackExporter parallelTrackExporter = new ParallelTrackExporter(
+        context, myTracksProviderUtils, new TrackFileFormat[] { trackFileFormat });
+    if (useTempDir) {
+      parallelTrackExporter.setDirectory(new File(
+          FileUtils.buildExternalDirectoryPath(trackFileFormat.getExtension(), "tmp")));
+    }
+    final int[] failedMessageId = { -1 };
+    try {
+      parallelTrackExporter.exportTracks(trackIds, new ParallelTrackExporter.Listener() {
+          @Override
+        public void onTrackDone(
+            long id, boolean trackSuccess, int trackMessageId, int number, int total) {
+          if (!trackSuccess && failedMessageId[0] == -1) {
+            failedMessageId[0] = trackMessageId;
+          }
+          publishProgress(number, total);
+        }
+      });
+    } catch (InterruptedException e) {
+      messageId = R.string.external_storage_canceled;
+      return false;
+    }
+    if (failedMessageId[0] != -1) {
+      messageId = failedMessageId[0];
+      return false;
+    }
+    messageId = R.string.external_storage_save_success;
+    return true;
   }
+
   @Override
   protected void onProgressUpdate(Integer... values) {
     if (saveActivity != null) {
@@ -29,7 +29,6 @@ import android.content.Context;
 import android.location.Location;
 
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.util.Locale;
 
 /**
@@ -86,7 +85,7 @@ public class TcxTrackWriter implements TrackFormatWriter {
 
   private final Context context;
   private Track track;
-  private PrintWriter printWriter;
+  private TrackFormatEmitter emitter;
   private SportType sportType;
 
   public TcxTrackWriter(Context context) {
@@ -96,15 +95,15 @@ public class TcxTrackWriter implements TrackFormatWriter {
   @Override
   public void prepare(Track aTrack, OutputStream out) {
     this.track = aTrack;
-    this.printWriter = new PrintWriter(out);
+    this.emitter = new TrackFormatEmitter(out);
     this.sportType = getSportType(track.getCategory());
   }
 
   @Override
   public void close() {
-    if (printWriter != null) {
-      printWriter.close();
-      printWriter = null;
+    if (emitter != null) {
+      emitter.close();
+      emitter = null;
     }
   }
 
@@ -115,12 +114,12 @@ public class TcxTrackWriter implements TrackFormatWriter {
 
   @Override
   public void writeHeader() {
-    if (printWriter != null) {
-      printWriter.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-      printWriter.println("<TrainingCenterDatabase"
+    if (emitter != null) {
+      emitter.writeLine("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      emitter.writeLine("<TrainingCenterDatabase"
           + " xmlns=\"http://www.garmin.com/xmlschemas/TrainingCenterDatabase/v2\"");
-      printWriter.println("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
-      printWriter.println("xsi:schemaLocation=" 
+      emitter.writeLine("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
+      emitter.writeLine("xsi:schemaLocation=" 
           + "\"http://www.garmin.com/xmlschemas/TrainingCenterDatabase/v2"
           + " http://www.garmin.com/xmlschemas/TrainingCenterDatabasev2.xsd\">");
     }
@@ -128,86 +127,94 @@ public class TcxTrackWriter implements TrackFormatWriter {
 
   @Override
   public void writeFooter() {
-    if (printWriter != null) {
-      printWriter.println("<Author xsi:type=\"Application_t\">");
-      printWriter.println("<Name>" 
+    if (emitter != null) {
+      emitter.writeLine("<Author xsi:type=\"Application_t\">");
+      emitter.writeLine("<Name>" 
           + StringUtils.formatCData(context.getString(R.string.send_google_by_my_tracks, "", "")) 
           + "</Name>");
       // <Build>, <LangID>, and <PartNumber> are required by type=Application_t.
-      printWriter.println("<Build>");
+      emitter.writeLine("<Build>");
       writeVersion();
-      printWriter.println("</Build>");
-      printWriter.println("<LangID>" + Locale.getDefault().getLanguage() + "</LangID>");
-      printWriter.println("<PartNumber>000-00000-00</PartNumber>");
-      printWriter.println("</Author>");
-      printWriter.println("</TrainingCenterDatabase>");
+      emitter.writeLine("</Build>");
+      emitter.writeLine("<LangID>" + Locale.getDefault().getLanguage() + "</LangID>");
+      emitter.writeLine("<PartNumber>000-00000-00</PartNumber>");
+      emitter.writeLine("</Author>");
+      emitter.writeLine("</TrainingCenterDatabase>");
     }
   }
 
   @Override
   public void writeBeginTrack(Location firstPoint) {
-    if (printWriter != null) {
+    if (emitter != null) {
       String startTime = StringUtils.formatDateTimeIso8601(
           track.getTripStatistics().getStartTime());
       long totalTimeInSeconds = track.getTripStatistics().getTotalTime() / 1000;
 
-      printWriter.println("<Activities>");
-      printWriter.println("<Activity Sport=\"" + sportType.getName() + "\">");
-      printWriter.println("<Id>" + startTime + "</Id>");
-      printWriter.println("<Lap StartTime=\"" + startTime + "\">");
-      printWriter.println("<TotalTimeSeconds>" + totalTimeInSeconds + "</TotalTimeSeconds>");
-      printWriter.println("<DistanceMeters>" + track.getTripStatistics().getTotalDistance()
+      emitter.writeLine("<Activities>");
+      emitter.writeLine("<Activity Sport=\"" + sportType.getName() + "\">");
+      emitter.writeLine("<Id>" + startTime + "</Id>");
+      emitter.writeLine("<Lap StartTime=\"" + startTime + "\">");
+      emitter.writeLine("<TotalTimeSeconds>" + totalTimeInSeconds + "</TotalTimeSeconds>");
+      emitter.writeLine("<DistanceMeters>" + track.getTripStatistics().getTotalDistance()
           + "</DistanceMeters>");
       // <Calories> is required, just put in 0.
-      printWriter.println("<Calories>0</Calories>");
-      printWriter.println("<Intensity>Active</Intensity>");
-      printWriter.println("<TriggerMethod>Manual</TriggerMethod>");
+      emitter.writeLine("<Calories>0</Calories>");
+      emitter.writeLine("<Intensity>Active</Intensity>");
+      emitter.writeLine("<TriggerMethod>Manual</TriggerMethod>");
     }
   }
 
   @Override
   public void writeEndTrack(Location lastPoint) {
-    if (printWriter != null) {
-      printWriter.println("</Lap>");
-      printWriter.println("<Notes>" + StringUtils.formatCData(track.getDescription()) + "</Notes>");
-      printWriter.println("<Creator xsi:type=\"Device_t\">");
-      printWriter.println("<Name>" 
+    if (emitter != null) {
+      emitter.writeLine("</Lap>");
+      emitter.writeLine("<Notes>" + StringUtils.formatCData(track.getDescription()) + "</Notes>");
+      emitter.writeLine("<Creator xsi:type=\"Device_t\">");
+      emitter.writeLine("<Name>" 
           + StringUtils.formatCData(context.getString(R.string.send_google_by_my_tracks, "", "")) 
           + "</Name>");
       // <UnitId>, <ProductID>, and <Version> are required for type=Device_t.
-      printWriter.println("<UnitId>0</UnitId>");
-      printWriter.println("<ProductID>0</ProductID>");
+      emitter.writeLine("<UnitId>0</UnitId>");
+      emitter.writeLine("<ProductID>0</ProductID>");
       writeVersion();
-      printWriter.println("</Creator>");
-      printWriter.println("</Activity>");
-      printWriter.println("</Activities>");
+      emitter.writeLine("</Creator>");
+      emitter.writeLine("</Activity>");
+      emitter.writeLine("</Activities>");
     }
   }
 
   @Override
   public void writeOpenSegment() {
-    if (printWriter != null) {
-      printWriter.println("<Track>");
+    if (emitter != null) {
+      emitter.writeLine("<Track>");
     }
   }
 
   @Override
   public void writeCloseSegment() {
-    if (printWriter != null) {
-      printWriter.println("</Track>");
+    if (emitter != null) {
+      emitter.writeLine("</Track>");
     }
   }
 
   @Override
   public void writeLocation(Location location) {
-    if (printWriter != null) {
-      printWriter.println("<Trackpoint>");
-      printWriter.println("<Time>" + StringUtils.formatDateTimeIso8601(location.getTime()) + "</Time>");
-      printWriter.println("<Position>");
-      printWriter.println("<LatitudeDegrees>" + location.getLatitude() + "</LatitudeDegrees>");
-      printWriter.println("<LongitudeDegrees>" + location.getLongitude() + "</LongitudeDegrees>");
-      printWriter.println("</Position>");
-      printWriter.println("<AltitudeMeters>" + location.getAltitude() + "</AltitudeMeters>");
+    if (emitter != null) {
+      emitter.writeLine("<Trackpoint>");
+      emitter.write("<Time>");
+      emitter.writeDateTimeIso8601(location.getTime());
+      emitter.writeLine("</Time>");
+      emitter.writeLine("<Position>");
+      emitter.write("<LatitudeDegrees>");
+      emitter.writeDouble(location.getLatitude());
+      emitter.writeLine("</LatitudeDegrees>");
+      emitter.write("<LongitudeDegrees>");
+      emitter.writeDouble(location.getLongitude());
+      emitter.writeLine("</LongitudeDegrees>");
+      emitter.writeLine("</Position>");
+      emitter.write("<AltitudeMeters>");
+      emitter.writeDouble(location.getAltitude());
+      emitter.writeLine("</AltitudeMeters>");
 
       if (location instanceof MyTracksLocation) {
         SensorDataSet sensorDataSet = ((MyTracksLocation) location).getSensorDataSet();
@@ -223,9 +230,11 @@ public class TcxTrackWriter implements TrackFormatWriter {
             && sensorDataSet.getPower().getState() == Sensor.SensorState.SENDING;
           
           if (heartRateAvailable) {
-            printWriter.println("<HeartRateBpm>");
-            printWriter.println("<Value>" + sensorDataSet.getHeartRate().getValue() + "</Value>");
-            printWriter.println("</HeartRateBpm>");
+            emitter.writeLine("<HeartRateBpm>");
+            emitter.write("<Value>");
+            emitter.writeInt(sensorDataSet.getHeartRate().getValue());
+            emitter.writeLine("</Value>");
+            emitter.writeLine("</HeartRateBpm>");
           }
 
           // <Cadence> needs to be put before <Extensions>.
@@ -233,31 +242,35 @@ public class TcxTrackWriter implements TrackFormatWriter {
           // type. For others, use <RunCadence> in <Extensions>.
           if (cadenceAvailable && sportType == SportType.BIKING) {
             // The spec requires the max value be 254.
-            printWriter.println(
-                "<Cadence>" + Math.min(254, sensorDataSet.getCadence().getValue()) + "</Cadence>");
+            emitter.write("<Cadence>");
+            emitter.writeInt(Math.min(254, sensorDataSet.getCadence().getValue()));
+            emitter.writeLine("</Cadence>");
           }
 
           if ((cadenceAvailable && sportType != SportType.BIKING) || powerAvailable) {
-            printWriter.println("<Extensions>");
-            printWriter.println(
+            emitter.writeLine("<Extensions>");
+            emitter.writeLine(
                 "<TPX xmlns=\"http://www.garmin.com/xmlschemas/ActivityExtension/v2\">");
 
             // <RunCadence> needs to be put before <Watts>.
             if (cadenceAvailable && sportType != SportType.BIKING) {
               // The spec requires the max value to be 254.
-              printWriter.println("<RunCadence>"
-                  + Math.min(254, sensorDataSet.getCadence().getValue()) + "</RunCadence>");
+              emitter.write("<RunCadence>");
+              emitter.writeInt(Math.min(254, sensorDataSet.getCadence().getValue()));
+              emitter.writeLine("</RunCadence>");
             }
 
             if (powerAvailable) {
-              printWriter.println("<Watts>" + sensorDataSet.getPower().getValue() + "</Watts>");
+              emitter.write("<Watts>");
+              emitter.writeInt(sensorDataSet.getPower().getValue());
+              emitter.writeLine("</Watts>");
             }
-            printWriter.println("</TPX>");
-            printWriter.println("</Extensions>");
+            emitter.writeLine("</TPX>");
+            emitter.writeLine("</Extensions>");
           }
         }
       }
-      printWriter.println("</Trackpoint>");
+      emitter.writeLine("</Trackpoint>");
     }
   }
 
@@ -288,14 +301,14 @@ public class TcxTrackWriter implements TrackFormatWriter {
     int versionMinor = versionComponents.length > 1 ? Integer.valueOf(versionComponents[1]) : 0;
     int buildMajor = versionComponents.length > 2 ? Integer.valueOf(versionComponents[2]) : 0;
 
-    printWriter.println("<Version>");
-    printWriter.println("<VersionMajor>" + versionMajor + "</VersionMajor>");
-    printWriter.println("<VersionMinor>" + versionMinor + "</VersionMinor>");
+    emitter.writeLine("<Version>");
+    emitter.writeLine("<VersionMajor>" + versionMajor + "</VersionMajor>");
+    emitter.writeLine("<VersionMinor>" + versionMinor + "</VersionMinor>");
     // According to TCX spec, these are optional. But http://connect.garmin.com
     // requires them.
-    printWriter.println("<BuildMajor>" + buildMajor + "</BuildMajor>");
-    printWriter.println("<BuildMinor>0</BuildMinor>");
-    printWriter.println("</Version>");
+    emitter.writeLine("<BuildMajor>" + buildMajor + "</BuildMajor>");
+    emitter.writeLine("<BuildMinor>0</BuildMinor>");
+    emitter.writeLine("</Version>");
   }
 
   /**
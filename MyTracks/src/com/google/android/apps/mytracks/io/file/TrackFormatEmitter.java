@@ -0,0 +1,405 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.io.file;
+
+import com.google.android.apps.mytracks.util.StringUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.FieldPosition;
+import java.text.NumberFormat;
+
+/**
+ * A low-level emitter for the {@link TrackFormatWriter} implementations. Text
+ * is encoded as UTF-8 into a reusable byte buffer, and numbers and times are
+ * written as ASCII digits straight into the buffer. The output is the same as
+ * printing the values with a {@link java.io.PrintWriter}, with
+ * {@link Double#toString(double)} and
+ * {@link StringUtils#formatDateTimeIso8601(long)}, without allocating strings.
+ * <p>
+ * Like a {@link java.io.PrintWriter}, never throws an {@link IOException}. See
+ * {@link #checkError()}.
+ * <p>
+ * Not thread safe.
+ */
+class TrackFormatEmitter {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+  private static final String CDATA_START = "<![CDATA[";
+  private static final String CDATA_END = "]]>";
+  private static final String CDATA_END_ESCAPED = "]]]]><![CDATA[>";
+
+  // The powers of ten exactly represented as longs and doubles
+  private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1000L, 10000L, 100000L,
+      1000000L, 10000000L, 100000000L, 1000000000L };
+
+  // The max number of fraction digits written without Double.toString
+  private static final int MAX_FRACTION_DIGITS = POWERS_OF_TEN.length - 1;
+
+  // Double.toString uses the computerized scientific notation outside this
+  // range
+  private static final double MIN_DECIMAL_NOTATION = 1e-3;
+  private static final double MAX_DECIMAL_NOTATION = 1e7;
+
+  // Times before 10000-01-01T00:00:00.000Z have a 4 digit year
+  private static final long MAX_TIME = 253402300800000L;
+
+  private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+  private final OutputStream outputStream;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int count = 0;
+  private boolean error = false;
+
+  // Reused to format with a NumberFormat
+  private final StringBuffer formatBuffer = new StringBuffer();
+  private final FieldPosition fieldPosition = new FieldPosition(0);
+
+  TrackFormatEmitter(OutputStream outputStream) {
+    this.outputStream = outputStream;
+  }
+
+  /**
+   * Writes a string.
+   *
+   * @param text the string
+   */
+  void write(String text) {
+    write(text, 0, text.length());
+  }
+
+  /**
+   * Writes a string followed by a line separator.
+   *
+   * @param text the string
+   */
+  void writeLine(String text) {
+    write(text);
+    newLine();
+  }
+
+  /**
+   * Writes a line separator.
+   */
+  void newLine() {
+    write(LINE_SEPARATOR);
+  }
+
+  /**
+   * Writes a string as a CDATA section, like
+   * {@link StringUtils#formatCData(String)}.
+   *
+   * @param text the string
+   */
+  void writeCData(String text) {
+    write(CDATA_START);
+    int start = 0;
+    int index;
+    while ((index = text.indexOf(CDATA_END, start)) != -1) {
+      write(text, start, index);
+      write(CDATA_END_ESCAPED);
+      start = index + CDATA_END.length();
+    }
+    write(text, start, text.length());
+    write(CDATA_END);
+  }
+
+  /**
+   * Writes a CSV value, quoted and with the quotes doubled.
+   *
+   * @param text the string, can be null for an empty value
+   */
+  void writeCsvValue(String text) {
+    writeByte('"');
+    if (text != null) {
+      int start = 0;
+      int index;
+      while ((index = text.indexOf('"', start)) != -1) {
+        write(text, start, index + 1);
+        writeByte('"');
+        start = index + 1;
+      }
+      write(text, start, text.length());
+    }
+    writeByte('"');
+  }
+
+  /**
+   * Writes an int, like {@link Integer#toString(int)}.
+   *
+   * @param value the value
+   */
+  void writeInt(int value) {
+    writeLong(value);
+  }
+
+  /**
+   * Writes a long, like {@link Long#toString(long)}.
+   *
+   * @param value the value
+   */
+  void writeLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      write(Long.toString(value));
+      return;
+    }
+    if (value < 0) {
+      writeByte('-');
+      value = -value;
+    }
+    int digits = 1;
+    for (long i = value; i >= 10; i /= 10) {
+      digits++;
+    }
+    writeDigits(value, digits);
+  }
+
+  /**
+   * Writes a double, like {@link Double#toString(double)}. Values in the
+   * decimal notation range with at most {@link #MAX_FRACTION_DIGITS} fraction
+   * digits are written without allocating. The fraction digits are the fewest
+   * that uniquely distinguish the value from the adjacent doubles, found by
+   * checking that the decimal value converts back to the same double.
+   *
+   * @param value the value
+   */
+  void writeDouble(double value) {
+    if (value == 0.0) {
+      write(Double.doubleToRawLongBits(value) < 0 ? "-0.0" : "0.0");
+      return;
+    }
+    double abs = Math.abs(value);
+    if (abs >= MIN_DECIMAL_NOTATION && abs < MAX_DECIMAL_NOTATION) {
+      double ulp = Math.ulp(abs);
+      for (int digits = 1; digits <= MAX_FRACTION_DIGITS; digits++) {
+        double power = POWERS_OF_TEN[digits];
+        if (2 * ulp * power >= 1) {
+          // More than one decimal value may convert to the same double
+          break;
+        }
+        // Both are exact doubles, thus the division is correctly rounded like
+        // parsing the decimal value
+        long scaled = Math.round(abs * power);
+        if (scaled / power == abs) {
+          if (value < 0) {
+            writeByte('-');
+          }
+          writeLong(scaled / POWERS_OF_TEN[digits]);
+          writeByte('.');
+          writeDigits(scaled % POWERS_OF_TEN[digits], digits);
+          return;
+        }
+      }
+    }
+    write(Double.toString(value));
+  }
+
+  /**
+   * Writes a double with a number format.
+   *
+   * @param numberFormat the number format
+   * @param value the value
+   */
+  void writeFormatted(NumberFormat numberFormat, double value) {
+    formatBuffer.setLength(0);
+    numberFormat.format(value, formatBuffer, fieldPosition);
+    int length = formatBuffer.length();
+    for (int i = 0; i < length; i++) {
+      writeChar(formatBuffer.charAt(i));
+    }
+  }
+
+  /**
+   * Writes a time in the ISO 8601 format in UTC, like
+   * {@link StringUtils#formatDateTimeIso8601(long)}.
+   *
+   * @param time the time in milliseconds since the epoch
+   */
+  void writeDateTimeIso8601(long time) {
+    if (time < 0 || time >= MAX_TIME) {
+      write(StringUtils.formatDateTimeIso8601(time));
+      return;
+    }
+    long days = time / MILLIS_PER_DAY;
+    int millisOfDay = (int) (time % MILLIS_PER_DAY);
+
+    // Convert the days since the epoch to a date in the Gregorian calendar,
+    // counting the years from March so that February is the last month
+    long shiftedDays = days + 719468;
+    long era = shiftedDays / 146097;
+    int dayOfEra = (int) (shiftedDays - era * 146097);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int shiftedMonth = (5 * dayOfYear + 2) / 153;
+    int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+    int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+    long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+    writeDigits(year, 4);
+    writeByte('-');
+    writeDigits(month, 2);
+    writeByte('-');
+    writeDigits(day, 2);
+    writeByte('T');
+    writeDigits(millisOfDay / 3600000, 2);
+    writeByte(':');
+    writeDigits(millisOfDay / 60000 % 60, 2);
+    writeByte(':');
+    writeDigits(millisOfDay / 1000 % 60, 2);
+    writeByte('.');
+    writeDigits(millisOfDay % 1000, 3);
+    writeByte('Z');
+  }
+
+  /**
+   * Returns true if an {@link IOException} occurred. Flushes the buffer first.
+   */
+  boolean checkError() {
+    flush();
+    return error;
+  }
+
+  /**
+   * Flushes the buffer and the output stream.
+   */
+  void flush() {
+    flushBuffer();
+    try {
+      outputStream.flush();
+    } catch (IOException e) {
+      error = true;
+    }
+  }
+
+  /**
+   * Flushes the buffer and closes the output stream.
+   */
+  void close() {
+    flushBuffer();
+    try {
+      outputStream.close();
+    } catch (IOException e) {
+      error = true;
+    }
+  }
+
+  /**
+   * Writes a part of a string.
+   *
+   * @param text the string
+   * @param start the start index
+   * @param end the end index, exclusive
+   */
+  private void write(String text, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        writeByte(c);
+      } else if (Character.isHighSurrogate(c) && i + 1 < end
+          && Character.isLowSurrogate(text.charAt(i + 1))) {
+        writeCodePoint(Character.toCodePoint(c, text.charAt(i + 1)));
+        i++;
+      } else {
+        writeChar(c);
+      }
+    }
+  }
+
+  /**
+   * Writes a char, not part of a surrogate pair. Unpaired surrogates are
+   * replaced by '?', like the UTF-8 encoder of an {@link java.io.OutputStreamWriter}.
+   *
+   * @param c the char
+   */
+  private void writeChar(char c) {
+    if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+      writeByte('?');
+    } else {
+      writeCodePoint(c);
+    }
+  }
+
+  /**
+   * Writes a code point as UTF-8.
+   *
+   * @param codePoint the code point
+   */
+  private void writeCodePoint(int codePoint) {
+    if (codePoint < 0x80) {
+      writeByte(codePoint);
+    } else if (codePoint < 0x800) {
+      writeByte(0xc0 | (codePoint >> 6));
+      writeByte(0x80 | (codePoint & 0x3f));
+    } else if (codePoint < 0x10000) {
+      writeByte(0xe0 | (codePoint >> 12));
+      writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+      writeByte(0x80 | (codePoint & 0x3f));
+    } else {
+      writeByte(0xf0 | (codePoint >> 18));
+      writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+      writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+      writeByte(0x80 | (codePoint & 0x3f));
+    }
+  }
+
+  /**
+   * Writes the digits of a non-negative value, padded with leading zeros.
+   *
+   * @param value the value
+   * @param digits the number of digits
+   */
+  private void writeDigits(long value, int digits) {
+    if (count + digits > buffer.length) {
+      flushBuffer();
+    }
+    for (int i = count + digits - 1; i >= count; i--) {
+      buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    count += digits;
+  }
+
+  /**
+   * Writes a byte.
+   *
+   * @param b the byte
+   */
+  private void writeByte(int b) {
+    if (count == buffer.length) {
+      flushBuffer();
+    }
+    buffer[count++] = (byte) b;
+  }
+
+  /**
+   * Writes the buffer to the output stream.
+   */
+  private void flushBuffer() {
+    if (count == 0) {
+      return;
+    }
+    try {
+      outputStream.write(buffer, 0, count);
+    } catch (IOException e) {
+      error = true;
+    }
+    count = 0;
+  }
+}
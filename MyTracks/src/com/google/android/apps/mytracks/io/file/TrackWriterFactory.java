@@ -60,8 +60,59 @@ public class TrackWriterFactory {
       public TrackFormatWriter newFormatWriter(Context context) {
         return new TcxTrackWriter(context);
       }
+    },
+    KMZ {
+      @Override
+      TrackFormatWriter newFormatWriter(Context context) {
+        return CompressedTrackFormatWriter.newZipWriter(new KmlTrackWriter(context),
+            getExtension(), KMZ_ENTRY_NAME, CompressedTrackFormatWriter.DEFAULT_COMPRESSION_LEVEL);
+      }
+
+      @Override
+      public String getMimeType() {
+        return "application/vnd.google-earth.kmz";
+      }
+    },
+    GPX_GZ {
+      @Override
+      TrackFormatWriter newFormatWriter(Context context) {
+        return CompressedTrackFormatWriter.newGzipWriter(
+            new GpxTrackWriter(context), CompressedTrackFormatWriter.DEFAULT_COMPRESSION_LEVEL);
+      }
+
+      @Override
+      public String getMimeType() {
+        return GZIP_MIME_TYPE;
+      }
+
+      @Override
+      public String getExtension() {
+        return GPX.getExtension() + ".gz";
+      }
+    },
+    CSV_GZ {
+      @Override
+      TrackFormatWriter newFormatWriter(Context context) {
+        return CompressedTrackFormatWriter.newGzipWriter(
+            new CsvTrackWriter(context), CompressedTrackFormatWriter.DEFAULT_COMPRESSION_LEVEL);
+      }
+
+      @Override
+      public String getMimeType() {
+        return GZIP_MIME_TYPE;
+      }
+
+      @Override
+      public String getExtension() {
+        return CSV.getExtension() + ".gz";
+      }
     };
 
+    // The name of the KML document in a KMZ file
+    private static final String KMZ_ENTRY_NAME = "doc.kml";
+
+    private static final String GZIP_MIME_TYPE = "application/x-gzip";
+
     @Override
     public int describeContents() {
       return 0;
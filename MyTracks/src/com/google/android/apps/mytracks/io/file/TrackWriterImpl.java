@@ -51,7 +51,9 @@ class TrackWriterImpl implements TrackWriter {
   private final Context context;
   private final MyTracksProviderUtils providerUtils;
   private final Track track;
+  // The format writer to prepare, null if the format writers are prepared
   private final TrackFormatWriter writer;
+  private final MultiTrackFormatWriter documentWriter;
   private boolean success = false;
   private int errorMessage = R.string.external_storage_save_error;
   private File directory = null;
@@ -61,10 +63,32 @@ class TrackWriterImpl implements TrackWriter {
 
   TrackWriterImpl(Context context, MyTracksProviderUtils providerUtils,
       Track track, TrackFormatWriter writer) {
+    this(context, providerUtils, track, writer,
+        new MultiTrackFormatWriter(new TrackFormatWriter[] { writer }));
+  }
+
+  /**
+   * Creates a track writer writing the track to several format writers,
+   * already prepared by the caller. Only {@link #writeDocument()} can be
+   * called.
+   *
+   * @param context the context
+   * @param providerUtils the provider utils
+   * @param track the track
+   * @param documentWriter the prepared format writers
+   */
+  TrackWriterImpl(Context context, MyTracksProviderUtils providerUtils,
+      Track track, MultiTrackFormatWriter documentWriter) {
+    this(context, providerUtils, track, null, documentWriter);
+  }
+
+  private TrackWriterImpl(Context context, MyTracksProviderUtils providerUtils,
+      Track track, TrackFormatWriter writer, MultiTrackFormatWriter documentWriter) {
     this.context = context;
     this.providerUtils = providerUtils;
     this.track = track;
     this.writer = writer;
+    this.documentWriter = documentWriter;
   }
 
   @Override
@@ -252,11 +276,11 @@ class TrackWriterImpl implements TrackWriter {
           // as the 1st points holds the stats for the current/last segment.
           while (cursor.moveToNext()) {
             if (!hasWaypoints) {
-              writer.writeBeginWaypoints();
+              documentWriter.writeBeginWaypoints();
               hasWaypoints = true;
             }
             Waypoint wpt = providerUtils.createWaypoint(cursor);
-            writer.writeWaypoint(wpt);
+            documentWriter.writeWaypoint(wpt);
           }
         }
       } finally {
@@ -264,7 +288,7 @@ class TrackWriterImpl implements TrackWriter {
       }
     }
     if (hasWaypoints) {
-      writer.writeEndWaypoints();
+      documentWriter.writeEndWaypoints();
     }
   }
 
@@ -273,11 +297,11 @@ class TrackWriterImpl implements TrackWriter {
    */
   void writeDocument() throws InterruptedException {
     Log.d(Constants.TAG, "Started writing track.");
-    writer.writeHeader();
+    documentWriter.writeHeader();
     writeWaypoints(track.getId());
     writeLocations();
-    writer.writeFooter();
-    writer.close();
+    documentWriter.writeFooter();
+    documentWriter.close();
     success = true;
     Log.d(Constants.TAG, "Done writing track.");
     errorMessage = R.string.external_storage_save_success;
@@ -327,28 +351,28 @@ class TrackWriterImpl implements TrackWriter {
         boolean validSegment = isValid && isLastValid;
         if (!wroteFirst && validSegment) {
           // Found the first two consecutive points which are valid
-          writer.writeBeginTrack(locationFactory.lastLocation);
+          documentWriter.writeBeginTrack(locationFactory.lastLocation);
           wroteFirst = true;
         }
 
         if (validSegment) {
           if (!segmentOpen) {
             // Start a segment for this point
-            writer.writeOpenSegment();
+            documentWriter.writeOpenSegment();
             segmentOpen = true;
 
             // Write the previous point, which we had previously skipped
-            writer.writeLocation(locationFactory.lastLocation);
+            documentWriter.writeLocation(locationFactory.lastLocation);
           }
 
           // Write the current point
-          writer.writeLocation(location);
+          documentWriter.writeLocation(location);
           if (onWriteListener != null) {
             onWriteListener.onWrite(pointNumber, track.getNumberOfPoints());
           }
         } else {
           if (segmentOpen) {
-            writer.writeCloseSegment();
+            documentWriter.writeCloseSegment();
             segmentOpen = false;
           }
         }
@@ -357,15 +381,15 @@ class TrackWriterImpl implements TrackWriter {
         isLastValid = isValid;
       }
       if (segmentOpen) {
-        writer.writeCloseSegment();
+        documentWriter.writeCloseSegment();
         segmentOpen = false;
       }
       if (wroteFirst) {
-        writer.writeEndTrack(locationFactory.lastLocation);
+        documentWriter.writeEndTrack(locationFactory.lastLocation);
       } else {
         // Writes an empty track
-        writer.writeBeginTrack(null);
-        writer.writeEndTrack(null);
+        documentWriter.writeBeginTrack(null);
+        documentWriter.writeEndTrack(null);
       }
     } finally {
       it.close();
@@ -379,7 +379,7 @@ public class SendFusionTablesAsyncTask extends AbstractSendAsyncTask {
     String query = "INSERT INTO " + tableId
         + " (name,description,geometry) VALUES " + SendFusionTablesUtils.formatSqlValues(
             track.getName(), track.getDescription(),
-            SendFusionTablesUtils.getKmlLineString(track.getLocations()));
+            SendFusionTablesUtils.getKmlLineString(track.getTrackPointBuffer()));
     return sendQuery(query, false);
   }
 
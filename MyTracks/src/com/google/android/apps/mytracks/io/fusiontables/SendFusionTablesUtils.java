@@ -16,6 +16,7 @@
 package com.google.android.apps.mytracks.io.fusiontables;
 
 import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.content.TrackPointBuffer;
 import com.google.android.apps.mytracks.stats.TripStatistics;
 import com.google.api.client.util.Strings;
 import com.google.common.annotations.VisibleForTesting;
@@ -26,7 +27,6 @@ import android.util.Log;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
 import java.util.Locale;
 
 /**
@@ -128,19 +128,24 @@ public class SendFusionTablesUtils {
   }
 
   /**
-   * Gets a KML LineString value representing an array of locations.
+   * Gets a KML LineString value representing a buffer of track points.
    *
-   * @param locations the locations.
+   * @param trackPointBuffer the track points.
    * @return the KML LineString value.
    */
-  public static String getKmlLineString(ArrayList<Location> locations) {
+  public static String getKmlLineString(TrackPointBuffer trackPointBuffer) {
     StringBuilder builder = new StringBuilder("<LineString><coordinates>");
-    if (locations != null) {
-      for (int i = 0; i < locations.size(); i++) {
+    if (trackPointBuffer != null) {
+      for (int i = 0; i < trackPointBuffer.size(); i++) {
         if (i != 0) {
           builder.append(' ');
         }
-        appendLocation(locations.get(i), builder);
+        builder.append(trackPointBuffer.getLongitude(i)).append(",")
+            .append(trackPointBuffer.getLatitude(i));
+        if (trackPointBuffer.hasAltitude(i)) {
+          builder.append(",");
+          builder.append(trackPointBuffer.getAltitude(i));
+        }
       }
     }
     builder.append("</coordinates></LineString>");
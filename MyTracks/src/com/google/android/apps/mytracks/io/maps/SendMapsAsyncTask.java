@@ -20,6 +20,7 @@ import com.google.android.apps.mytracks.content.DescriptionGenerator;
 import com.google.android.apps.mytracks.content.DescriptionGeneratorImpl;
 import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
 import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.content.TrackPointBuffer;
 import com.google.android.apps.mytracks.content.Waypoint;
 import com.google.android.apps.mytracks.io.gdata.GDataClientFactory;
 import com.google.android.apps.mytracks.io.gdata.maps.MapsClient;
@@ -355,7 +356,7 @@ public class SendMapsAsyncTask extends AbstractSendAsyncTask {
         segment.setName(context.getString(
             R.string.send_google_track_part_label, segment.getName(), currentSegment));
       }
-      if (!uploadSegment(segment.getName(), segment.getLocations())) {
+      if (!uploadSegment(segment.getName(), segment.getTrackPointBuffer())) {
         Log.d(TAG, "Unable to upload segment");
         return false;
       }
@@ -401,16 +402,16 @@ public class SendMapsAsyncTask extends AbstractSendAsyncTask {
    * Uploads a segment
    * 
    * @param title segment title
-   * @param locations segment locations
+   * @param trackPointBuffer segment track points
    * @return true if success
    */
-  private boolean uploadSegment(String title, ArrayList<Location> locations) {
+  private boolean uploadSegment(String title, TrackPointBuffer trackPointBuffer) {
     if (isCancelled()) {
       return false;
     }
     try {
       if (!SendMapsUtils.uploadSegment(
-          mapId, title, locations, mapsClient, authToken, mapsGDataConverter)) {
+          mapId, title, trackPointBuffer, mapsClient, authToken, mapsGDataConverter)) {
         Log.d(TAG, "Unable to upload track points");
         return false;
       }
@@ -16,6 +16,7 @@
 package com.google.android.apps.mytracks.io.maps;
 
 import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.content.TrackPointBuffer;
 import com.google.android.apps.mytracks.content.Waypoint;
 import com.google.android.apps.mytracks.io.gdata.maps.MapsClient;
 import com.google.android.apps.mytracks.io.gdata.maps.MapsFeature;
@@ -31,7 +32,6 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  * Utilities for sending a track to Google Maps.
@@ -151,17 +151,18 @@ public class SendMapsUtils {
    *
    * @param mapId the map id
    * @param title the segment title
-   * @param locations the segment locations
+   * @param trackPointBuffer the segment track points
    * @param mapsClient the maps client
    * @param authToken the auth token
    * @param mapsGDataConverter the maps gdata converter
    * @return true if success.
    */
-  public static boolean uploadSegment(String mapId, String title, ArrayList<Location> locations,
-      MapsClient mapsClient, String authToken, MapsGDataConverter mapsGDataConverter)
-      throws ParseException, HttpException, IOException {
+  public static boolean uploadSegment(String mapId, String title,
+      TrackPointBuffer trackPointBuffer, MapsClient mapsClient, String authToken,
+      MapsGDataConverter mapsGDataConverter) throws ParseException, HttpException, IOException {
     String featuresFeed = MapsClient.getFeaturesFeed(mapId);
-    Entry entry = mapsGDataConverter.getEntryForFeature(buildMapsLineFeature(title, locations));
+    Entry entry = mapsGDataConverter.getEntryForFeature(
+        buildMapsLineFeature(title, trackPointBuffer));
     try {
       mapsClient.createEntry(featuresFeed, authToken, entry);
     } catch (IOException e) {
@@ -195,21 +196,21 @@ public class SendMapsUtils {
   }
 
   /**
-   * Builds a maps line feature from a set of locations.
+   * Builds a maps line feature from a set of track points.
    *
    * @param title the feature title
-   * @param locations set of locations
+   * @param trackPointBuffer set of track points
    */
   @VisibleForTesting
-  static MapsFeature buildMapsLineFeature(String title, ArrayList<Location> locations) {
+  static MapsFeature buildMapsLineFeature(String title, TrackPointBuffer trackPointBuffer) {
     MapsFeature mapsFeature = new MapsFeature();
     mapsFeature.setType(MapsFeature.LINE);
     mapsFeature.generateAndroidId();
     // Feature must have a name (otherwise GData upload may fail)
     mapsFeature.setTitle(TextUtils.isEmpty(title) ? EMPTY_TITLE : title);
     mapsFeature.setColor(LINE_COLOR);
-    for (Location location : locations) {
-      mapsFeature.addPoint(location);
+    for (int i = 0; i < trackPointBuffer.size(); i++) {
+      mapsFeature.addPoint(trackPointBuffer.createLocation(i));
     }
     return mapsFeature;
   }
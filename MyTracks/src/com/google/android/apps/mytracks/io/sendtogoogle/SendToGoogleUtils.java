@@ -18,7 +18,7 @@ package com.google.android.apps.mytracks.io.sendtogoogle;
 
 import com.google.android.apps.mytracks.content.Track;
 import com.google.android.apps.mytracks.stats.TripStatistics;
-import com.google.android.apps.mytracks.util.LocationUtils;
+import com.google.android.apps.mytracks.util.LocationSimplifier;
 import com.google.common.annotations.VisibleForTesting;
 
 import android.location.Location;
@@ -98,7 +98,7 @@ public class SendToGoogleUtils {
   @VisibleForTesting
   static boolean endSegment(Track segment, long stopTime, ArrayList<Track> splitTracks) {
     // Make sure the segment has at least 2 points
-    if (segment.getLocations().size() < 2) {
+    if (segment.getTrackPointBuffer().size() < 2) {
       Log.d(TAG, "segment has less than 2 points");
       return false;
     }
@@ -107,10 +107,10 @@ public class SendToGoogleUtils {
     segment.getTripStatistics().setStopTime(stopTime);
 
     /*
-     * Decimate to 2 meter precision. Google Maps and Google Fusion Tables do
+     * Simplify to 2 meter precision. Google Maps and Google Fusion Tables do
      * not like the locations to be too precise.
      */
-    LocationUtils.decimate(segment, 2.0);
+    new LocationSimplifier(2.0).simplify(segment);
 
     splitTracks.add(segment);
     return true;
@@ -15,17 +15,10 @@
  */
 package com.google.android.apps.mytracks.maps;
 
-import com.google.android.apps.mytracks.MapOverlay.CachedLocation;
-import com.google.android.gms.maps.GoogleMap;
-import com.google.android.gms.maps.model.LatLng;
-import com.google.android.gms.maps.model.Polyline;
 import com.google.android.maps.mytracks.R;
 
 import android.content.Context;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * A path painter that varies the path colors based on fixed speeds or average
  * speed margin depending of the TrackPathDescriptor passed to its constructor.
@@ -51,58 +44,7 @@ public class MultiColorTrackPath implements TrackPath {
   }
 
   @Override
-  public void updatePath(GoogleMap googleMap, ArrayList<Polyline> paths, int startIndex,
-      List<CachedLocation> locations) {
-    if (googleMap == null) {
-      return;
-    }
-    if (startIndex >= locations.size()) {
-      return;
-    }
-    
-    boolean newSegment = startIndex == 0 || !locations.get(startIndex - 1).isValid();
-    LatLng lastLatLng = startIndex != 0 ? locations.get(startIndex -1).getLatLng() : null;
-    
-    ArrayList<LatLng> lastSegmentPoints = new ArrayList<LatLng>();
-    int lastSegmentColor = paths.size() != 0  ? paths.get(paths.size() - 1).getColor() : slowColor;
-    boolean useLastPolyline = true;
-
-    for (int i = startIndex; i < locations.size(); ++i) {
-      CachedLocation cachedLocation = locations.get(i);
-
-      // If not valid, start a new segment
-      if (!cachedLocation.isValid()) {
-        newSegment = true;
-        lastLatLng = null;
-        continue;
-      }
-      LatLng latLng = cachedLocation.getLatLng();
-      int color = getColor(cachedLocation.getSpeed());
-      
-      // Either update point or draw a line from the last point
-      if (newSegment) {
-        TrackPathUtils.addPath(googleMap, paths, lastSegmentPoints, lastSegmentColor, useLastPolyline);
-        useLastPolyline = false;
-        lastSegmentColor = color;
-        newSegment = false;
-      }
-      if (lastSegmentColor == color) {
-        lastSegmentPoints.add(latLng);
-      } else {
-        TrackPathUtils.addPath(googleMap, paths, lastSegmentPoints, lastSegmentColor, useLastPolyline);
-        useLastPolyline = false;
-        if (lastLatLng != null) {
-          lastSegmentPoints.add(lastLatLng);
-        }
-        lastSegmentPoints.add(latLng);
-        lastSegmentColor = color;
-      }
-      lastLatLng = latLng;
-    }
-    TrackPathUtils.addPath(googleMap, paths, lastSegmentPoints, lastSegmentColor, useLastPolyline);
-  }
-
-  private int getColor(int speed) {
+  public int getColor(int speed) {
     if (speed <= trackPathDescriptor.getSlowSpeed()) {
       return slowColor;
     } else if (speed <= trackPathDescriptor.getNormalSpeed()) {
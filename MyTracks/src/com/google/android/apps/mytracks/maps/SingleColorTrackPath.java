@@ -15,17 +15,10 @@
  */
 package com.google.android.apps.mytracks.maps;
 
-import com.google.android.apps.mytracks.MapOverlay.CachedLocation;
-import com.google.android.gms.maps.GoogleMap;
-import com.google.android.gms.maps.model.LatLng;
-import com.google.android.gms.maps.model.Polyline;
 import com.google.android.maps.mytracks.R;
 
 import android.content.Context;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * A single color track path.
  * 
@@ -45,34 +38,7 @@ public class SingleColorTrackPath implements TrackPath {
   }
 
   @Override
-  public void updatePath(GoogleMap googleMap, ArrayList<Polyline> paths, int startIndex,
-      List<CachedLocation> locations) {
-    if (googleMap == null) {
-      return;
-    }
-    if (startIndex >= locations.size()) {
-      return;
-    }
-
-    boolean newSegment = startIndex == 0 || !locations.get(startIndex - 1).isValid();
-    ArrayList<LatLng> lastSegmentPoints = new ArrayList<LatLng>();
-    boolean useLastPolyline = true;
-    for (int i = startIndex; i < locations.size(); i++) {
-      CachedLocation cachedLocation = locations.get(i);
-
-      // If not valid, start a new segment
-      if (!cachedLocation.isValid()) {
-        newSegment = true;
-        continue;
-      }
-      LatLng latLng = cachedLocation.getLatLng();
-      if (newSegment) {
-        TrackPathUtils.addPath(googleMap, paths, lastSegmentPoints, color, useLastPolyline);
-        useLastPolyline = false;
-        newSegment = false;
-      }
-      lastSegmentPoints.add(latLng);
-    }
-    TrackPathUtils.addPath(googleMap, paths, lastSegmentPoints, color, useLastPolyline);
+  public int getColor(int speed) {
+    return color;
   }
-}
\ No newline at end of file
+}
@@ -16,28 +16,23 @@
 
 package com.google.android.apps.mytracks.maps;
 
-import com.google.android.apps.mytracks.MapOverlay.CachedLocation;
-import com.google.android.gms.maps.GoogleMap;
-import com.google.android.gms.maps.model.Polyline;
-
-import java.util.ArrayList;
-import java.util.List;
-
 /**
- * A track path.
+ * A track path, the colors of the track segments. The polylines are drawn by
+ * the {@link TrackPathOverlay}.
  * 
  * @author Jimmy Shih
  */
 public interface TrackPath {
 
+  /**
+   * Updates state. Returns true if the colors changed.
+   */
   public boolean updateState();
 
   /**
-   * Updates the path.
+   * Gets the color of the segment ending at a location.
    * 
-   * @param startIndex the start index
-   * @param points the points
+   * @param speed the speed at the location in kilometers per hour
    */
-  public void updatePath(GoogleMap googleMap, ArrayList<Polyline> paths, int startIndex,
-      List<CachedLocation> points);
+  public int getColor(int speed);
 }
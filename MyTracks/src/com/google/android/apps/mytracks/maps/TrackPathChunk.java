@@ -0,0 +1,354 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.maps;
+
+import com.google.android.apps.mytracks.util.UnitConversions;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A chunk of at most {@link #MAX_SIZE} consecutive locations of a track path
+ * and their polylines, a polyline per run of segments of the same color.
+ * <p>
+ * The polylines are simplified for the zoom level with the Douglas-Peucker
+ * algorithm, dropping the locations within a pixel of the simplified line.
+ * The simplification is computed once for all the zoom levels: each location
+ * gets the tolerance above which it is dropped, and a zoom level only filters
+ * the locations. The locations where the color changes are always kept.
+ */
+class TrackPathChunk {
+
+  static final int MAX_SIZE = 256;
+
+  // The tolerance of the simplification in pixels
+  private static final double PIXEL_TOLERANCE = 1.0;
+
+  // The width of the polylines
+  private static final float WIDTH = 5;
+
+  // The size of the world in pixels at zoom level 0
+  private static final double WORLD_SIZE = 256.0;
+
+  private final double[] latitudes = new double[MAX_SIZE];
+  private final double[] longitudes = new double[MAX_SIZE];
+  private final int[] speeds = new int[MAX_SIZE];
+  private final boolean[] valids = new boolean[MAX_SIZE];
+  private int size = 0;
+
+  // The bounds of the valid locations
+  private double south = Double.POSITIVE_INFINITY;
+  private double north = Double.NEGATIVE_INFINITY;
+  private double west = Double.POSITIVE_INFINITY;
+  private double east = Double.NEGATIVE_INFINITY;
+
+  /*
+   * The squared tolerance in degrees of latitude above which each location is
+   * dropped, valid until a location is added.
+   */
+  private final double[] tolerances = new double[MAX_SIZE];
+  private final int[] stack = new int[2 * MAX_SIZE];
+  private boolean simplified = false;
+
+  private final ArrayList<Polyline> polylines = new ArrayList<Polyline>();
+  private int polylinesZoom = -1;
+  private boolean polylinesVisible = true;
+
+  /**
+   * Returns true if no more locations can be added.
+   */
+  boolean isFull() {
+    return size == MAX_SIZE;
+  }
+
+  /**
+   * Adds a location.
+   *
+   * @param latitude the latitude
+   * @param longitude the longitude
+   * @param speed the speed in kilometers per hour
+   * @param valid false for an invalid location representing a segment split
+   */
+  void add(double latitude, double longitude, int speed, boolean valid) {
+    latitudes[size] = latitude;
+    longitudes[size] = longitude;
+    speeds[size] = speed;
+    valids[size] = valid;
+    size++;
+    if (valid) {
+      south = Math.min(south, latitude);
+      north = Math.max(north, latitude);
+      west = Math.min(west, longitude);
+      east = Math.max(east, longitude);
+    }
+    simplified = false;
+    polylinesZoom = -1;
+  }
+
+  /**
+   * Adds the last location of the previous chunk, if valid, so that the
+   * polylines of the chunks are connected.
+   *
+   * @param previous the previous chunk
+   */
+  void continueFrom(TrackPathChunk previous) {
+    int last = previous.size - 1;
+    if (last >= 0 && previous.valids[last]) {
+      add(previous.latitudes[last], previous.longitudes[last], previous.speeds[last], true);
+    }
+  }
+
+  /**
+   * Returns true if a valid location is inside bounds. The west longitude is
+   * greater than the east longitude if the bounds cross the 180th meridian.
+   *
+   * @param boundsSouth the south latitude of the bounds
+   * @param boundsWest the west longitude of the bounds
+   * @param boundsNorth the north latitude of the bounds
+   * @param boundsEast the east longitude of the bounds
+   */
+  boolean intersects(
+      double boundsSouth, double boundsWest, double boundsNorth, double boundsEast) {
+    if (south > boundsNorth || north < boundsSouth) {
+      return false;
+    }
+    if (boundsWest <= boundsEast) {
+      return west <= boundsEast && east >= boundsWest;
+    } else {
+      return west <= boundsEast || east >= boundsWest;
+    }
+  }
+
+  /**
+   * Redraws the polylines at the next update, e.g., after the colors changed.
+   */
+  void invalidate() {
+    polylinesZoom = -1;
+  }
+
+  /**
+   * Updates the polylines. A visible chunk is redrawn if its locations, its
+   * colors, or the zoom level changed. A hidden chunk is redrawn once visible.
+   *
+   * @param googleMap the google map
+   * @param trackPath the track path
+   * @param zoom the zoom level
+   * @param visible true if the chunk is visible
+   */
+  void update(GoogleMap googleMap, TrackPath trackPath, int zoom, boolean visible) {
+    if (visible && polylinesZoom != zoom) {
+      List<ArrayList<LatLng>> runs = new ArrayList<ArrayList<LatLng>>();
+      List<Integer> colors = new ArrayList<Integer>();
+      getRuns(trackPath, zoom, runs, colors);
+
+      // Reuse the polylines
+      for (int i = 0; i < runs.size(); i++) {
+        if (i < polylines.size()) {
+          Polyline polyline = polylines.get(i);
+          polyline.setPoints(runs.get(i));
+          polyline.setColor(colors.get(i));
+        } else {
+          polylines.add(googleMap.addPolyline(new PolylineOptions().addAll(runs.get(i))
+              .width(WIDTH).color(colors.get(i)).visible(polylinesVisible)));
+        }
+      }
+      while (polylines.size() > runs.size()) {
+        polylines.remove(polylines.size() - 1).remove();
+      }
+      polylinesZoom = zoom;
+    }
+    if (visible != polylinesVisible) {
+      for (Polyline polyline : polylines) {
+        polyline.setVisible(visible);
+      }
+      polylinesVisible = visible;
+    }
+  }
+
+  /**
+   * Removes the polylines from the map.
+   */
+  void remove() {
+    for (Polyline polyline : polylines) {
+      polyline.remove();
+    }
+    polylines.clear();
+    polylinesZoom = -1;
+  }
+
+  /**
+   * Gets the runs of segments of the same color, simplified for a zoom level.
+   * A run begins with the last location of the previous run if they are in
+   * the same segment.
+   *
+   * @param trackPath the track path
+   * @param zoom the zoom level
+   * @param runs the list to add the locations of each run to
+   * @param colors the list to add the color of each run to
+   */
+  @VisibleForTesting
+  void getRuns(
+      TrackPath trackPath, int zoom, List<ArrayList<LatLng>> runs, List<Integer> colors) {
+    if (!simplified) {
+      simplify();
+    }
+    double tolerance = getTolerance(zoom);
+    double toleranceSquared = tolerance * tolerance;
+
+    int[] locationColors = new int[size];
+    for (int i = 0; i < size; i++) {
+      locationColors[i] = valids[i] ? trackPath.getColor(speeds[i]) : 0;
+    }
+
+    ArrayList<LatLng> run = null;
+    int runColor = 0;
+    int lastKept = -1;
+    for (int i = 0; i < size; i++) {
+      if (!valids[i]) {
+        run = null;
+        lastKept = -1;
+        continue;
+      }
+      boolean colorChange = (i > 0 && valids[i - 1] && locationColors[i - 1] != locationColors[i])
+          || (i < size - 1 && valids[i + 1] && locationColors[i + 1] != locationColors[i]);
+      if (tolerances[i] <= toleranceSquared && !colorChange) {
+        continue;
+      }
+      LatLng latLng = new LatLng(latitudes[i], longitudes[i]);
+      if (run == null || locationColors[i] != runColor) {
+        ArrayList<LatLng> newRun = new ArrayList<LatLng>();
+        if (run != null) {
+          newRun.add(new LatLng(latitudes[lastKept], longitudes[lastKept]));
+        }
+        run = newRun;
+        runColor = locationColors[i];
+        runs.add(run);
+        colors.add(runColor);
+      }
+      run.add(latLng);
+      lastKept = i;
+    }
+
+    // Drop the runs of a single location
+    for (int i = runs.size() - 1; i >= 0; i--) {
+      if (runs.get(i).size() < 2) {
+        runs.remove(i);
+        colors.remove(i);
+      }
+    }
+  }
+
+  /**
+   * Gets the tolerance of the simplification for a zoom level, in degrees of
+   * latitude.
+   *
+   * @param zoom the zoom level
+   */
+  private double getTolerance(int zoom) {
+    double cosLatitude = Math.cos((south + north) / 2 * UnitConversions.DEG_TO_RAD);
+    return PIXEL_TOLERANCE * 360.0 * cosLatitude / (WORLD_SIZE * (1L << zoom));
+  }
+
+  /**
+   * Computes the tolerance above which each location is dropped. The first and
+   * last locations of each segment are never dropped. The tolerance of a
+   * location is at most the tolerance of the location splitting the range
+   * containing it, so the kept locations for a tolerance are the locations
+   * kept by the Douglas-Peucker algorithm.
+   */
+  private void simplify() {
+    int start = 0;
+    while (start < size) {
+      if (!valids[start]) {
+        start++;
+        continue;
+      }
+      int end = start;
+      while (end + 1 < size && valids[end + 1]) {
+        end++;
+      }
+      tolerances[start] = Double.MAX_VALUE;
+      tolerances[end] = Double.MAX_VALUE;
+
+      // Pushed ranges have disjoint, non-empty interiors
+      int top = 0;
+      if (end - start > 1) {
+        stack[top++] = start;
+        stack[top++] = end;
+      }
+      while (top > 0) {
+        int rangeEnd = stack[--top];
+        int rangeStart = stack[--top];
+        double cosLatitude = Math.cos(latitudes[rangeStart] * UnitConversions.DEG_TO_RAD);
+        double maxDistance = -1.0;
+        int maxIndex = rangeStart + 1;
+        for (int i = rangeStart + 1; i < rangeEnd; i++) {
+          double distance = distanceSquared(i, rangeStart, rangeEnd, cosLatitude);
+          if (distance > maxDistance) {
+            maxDistance = distance;
+            maxIndex = i;
+          }
+        }
+        tolerances[maxIndex] = Math.min(maxDistance,
+            Math.min(tolerances[rangeStart], tolerances[rangeEnd]));
+        if (maxIndex - rangeStart > 1) {
+          stack[top++] = rangeStart;
+          stack[top++] = maxIndex;
+        }
+        if (rangeEnd - maxIndex > 1) {
+          stack[top++] = maxIndex;
+          stack[top++] = rangeEnd;
+        }
+      }
+      start = end + 1;
+    }
+    simplified = true;
+  }
+
+  /**
+   * Computes the squared distance in degrees of latitude between a location
+   * and the line segment between two other locations.
+   *
+   * @param index the location index
+   * @param start the index of the beginning of the line segment
+   * @param end the index of the end of the line segment
+   * @param cosLatitude the cosine of the latitude to scale the longitudes
+   */
+  private double distanceSquared(int index, int start, int end, double cosLatitude) {
+    double x = (longitudes[index] - longitudes[start]) * cosLatitude;
+    double y = latitudes[index] - latitudes[start];
+    double segmentX = (longitudes[end] - longitudes[start]) * cosLatitude;
+    double segmentY = latitudes[end] - latitudes[start];
+    double lengthSquared = segmentX * segmentX + segmentY * segmentY;
+    if (lengthSquared > 0) {
+      double u = (x * segmentX + y * segmentY) / lengthSquared;
+      if (u >= 1) {
+        x -= segmentX;
+        y -= segmentY;
+      } else if (u > 0) {
+        x -= u * segmentX;
+        y -= u * segmentY;
+      }
+    }
+    return x * x + y * y;
+  }
+}
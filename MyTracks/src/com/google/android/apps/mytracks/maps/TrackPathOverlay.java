@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.maps;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLngBounds;
+
+import java.util.ArrayList;
+
+/**
+ * The polylines of a track path, kept in {@link TrackPathChunk}s. New
+ * locations are appended to the last chunk, so only the last chunk is redrawn
+ * while recording. The chunks outside the visible region are hidden and only
+ * redrawn once visible.
+ */
+public class TrackPathOverlay {
+
+  /*
+   * The margin around the visible region, as a fraction of its size, so that
+   * small camera moves don't redraw chunks.
+   */
+  private static final double MARGIN = 0.5;
+
+  private final ArrayList<TrackPathChunk> chunks = new ArrayList<TrackPathChunk>();
+
+  /**
+   * Removes all the locations and their polylines.
+   */
+  public void clear() {
+    for (TrackPathChunk chunk : chunks) {
+      chunk.remove();
+    }
+    chunks.clear();
+  }
+
+  /**
+   * Adds a location.
+   *
+   * @param latitude the latitude
+   * @param longitude the longitude
+   * @param speed the speed in kilometers per hour
+   * @param valid false for an invalid location representing a segment split
+   */
+  public void add(double latitude, double longitude, int speed, boolean valid) {
+    TrackPathChunk last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+    if (last == null || last.isFull()) {
+      TrackPathChunk chunk = new TrackPathChunk();
+      if (last != null) {
+        chunk.continueFrom(last);
+      }
+      chunks.add(chunk);
+      last = chunk;
+    }
+    last.add(latitude, longitude, speed, valid);
+  }
+
+  /**
+   * Redraws all the polylines at the next update, e.g., after the colors
+   * changed.
+   */
+  public void invalidate() {
+    for (TrackPathChunk chunk : chunks) {
+      chunk.invalidate();
+    }
+  }
+
+  /**
+   * Updates the polylines for the camera position of the map.
+   *
+   * @param googleMap the google map
+   * @param trackPath the track path
+   */
+  public void update(GoogleMap googleMap, TrackPath trackPath) {
+    int zoom = (int) googleMap.getCameraPosition().zoom;
+    LatLngBounds bounds = googleMap.getProjection().getVisibleRegion().latLngBounds;
+
+    double latitudeMargin = (bounds.northeast.latitude - bounds.southwest.latitude) * MARGIN;
+    double south = bounds.southwest.latitude - latitudeMargin;
+    double north = bounds.northeast.latitude + latitudeMargin;
+
+    double width = bounds.northeast.longitude - bounds.southwest.longitude;
+    if (width < 0) {
+      // Crosses the 180th meridian
+      width += 360.0;
+    }
+    double longitudeMargin = width * MARGIN;
+    double west;
+    double east;
+    if (width + 2 * longitudeMargin >= 360.0) {
+      west = -180.0;
+      east = 180.0;
+    } else {
+      west = bounds.southwest.longitude - longitudeMargin;
+      east = bounds.northeast.longitude + longitudeMargin;
+      if (west < -180.0) {
+        west += 360.0;
+      }
+      if (east > 180.0) {
+        east -= 360.0;
+      }
+    }
+
+    for (TrackPathChunk chunk : chunks) {
+      chunk.update(googleMap, trackPath, zoom, chunk.intersects(south, west, north, east));
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.services;
+
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.stats.TripStatistics;
+import com.google.android.apps.mytracks.Constants;
+import com.google.android.apps.mytracks.util.LocationUtils;
+
+import android.location.Location;
+
+/**
+ * The in-memory state of a recording session: the recording track, the last
+ * valid track point, and whether the current segment has a location. The state
+ * is read from the database only when the session is created, when starting,
+ * resuming, or restarting a track, so recording a location only writes to the
+ * database. Track points are buffered in a {@link TrackPointJournal} and
+ * written to the database in batches.
+ */
+class RecordingSession {
+
+  private final MyTracksProviderUtils myTracksProviderUtils;
+  private final TrackPointJournal trackPointJournal;
+  private final Track track;
+  private final long minTrackUpdateInterval;
+  private Location lastValidTrackPoint;
+  private boolean currentSegmentHasLocation;
+  private long lastTrackUpdateTime;
+
+  /**
+   * Creates a recording session.
+   *
+   * @param myTracksProviderUtils the my tracks provider utils
+   * @param trackPointJournal the track point journal
+   * @param track the recording track
+   * @param minTrackUpdateInterval the min time in milliseconds between two
+   *          updates of the recording track statistics in the database
+   */
+  RecordingSession(
+      MyTracksProviderUtils myTracksProviderUtils, TrackPointJournal trackPointJournal,
+      Track track, long minTrackUpdateInterval) {
+    this.myTracksProviderUtils = myTracksProviderUtils;
+    this.trackPointJournal = trackPointJournal;
+    this.track = track;
+    this.minTrackUpdateInterval = minTrackUpdateInterval;
+    lastValidTrackPoint = null;
+    currentSegmentHasLocation = false;
+    lastTrackUpdateTime = 0L;
+  }
+
+  /**
+   * Loads a recording session from the database. Returns null if the track
+   * doesn't exist.
+   *
+   * @param myTracksProviderUtils the my tracks provider utils
+   * @param trackPointJournal the track point journal
+   * @param trackId the recording track id
+   * @param minTrackUpdateInterval the min time in milliseconds between two
+   *          updates of the recording track statistics in the database
+   */
+  static RecordingSession load(MyTracksProviderUtils myTracksProviderUtils,
+      TrackPointJournal trackPointJournal, long trackId, long minTrackUpdateInterval) {
+    Track track = myTracksProviderUtils.getTrack(trackId);
+    return track != null ? new RecordingSession(
+        myTracksProviderUtils, trackPointJournal, track, minTrackUpdateInterval) : null;
+  }
+
+  /**
+   * Gets the recording track.
+   */
+  Track getTrack() {
+    return track;
+  }
+
+  /**
+   * Gets the recording track id.
+   */
+  long getTrackId() {
+    return track.getId();
+  }
+
+  /**
+   * Starts a new segment.
+   */
+  void startSegment() {
+    currentSegmentHasLocation = false;
+  }
+
+  /**
+   * Returns true if the current segment has a location.
+   */
+  boolean currentSegmentHasLocation() {
+    return currentSegmentHasLocation;
+  }
+
+  /**
+   * Sets the current segment has a location.
+   */
+  void setCurrentSegmentHasLocation() {
+    currentSegmentHasLocation = true;
+  }
+
+  /**
+   * Gets the last valid track point in the current segment. Returns null if not
+   * available.
+   */
+  Location getLastValidTrackPointInCurrentSegment() {
+    return currentSegmentHasLocation ? lastValidTrackPoint : null;
+  }
+
+  /**
+   * Adds a track point to the track point journal and updates the number of
+   * points of the recording track.
+   *
+   * @param location the location
+   */
+  void addTrackPoint(Location location) {
+    trackPointJournal.add(track.getId(), location);
+    if (LocationUtils.isValidLocation(location)) {
+      track.setNumberOfPoints(track.getNumberOfPoints() + 1);
+      lastValidTrackPoint = location;
+    }
+  }
+
+  /**
+   * Returns true if the buffered track points should be flushed, i.e., when
+   * there are {@link Constants#MAX_BUFFERED_TRACK_POINTS} of them or the
+   * oldest one is older than {@link Constants#MAX_BUFFERED_TRACK_POINTS_AGE},
+   * or if the recording track has pending changes and was last updated more
+   * than the min track update interval ago.
+   */
+  boolean shouldFlush() {
+    return trackPointJournal.size() >= Constants.MAX_BUFFERED_TRACK_POINTS
+        || trackPointJournal.getAge() >= Constants.MAX_BUFFERED_TRACK_POINTS_AGE
+        || (track.isDirty() && isTrackUpdateDue());
+  }
+
+  /**
+   * Flushes the buffered track points, then updates the start id, the stop id,
+   * and the statistics of the recording track in the database. Unless forced,
+   * the track is updated at most once every min track update interval, and
+   * only its modified columns are written.
+   *
+   * @param tripStatistics the trip statistics
+   * @param force true to update the track regardless of when it was last
+   *          updated
+   */
+  void flush(TripStatistics tripStatistics, boolean force) {
+    if (trackPointJournal.flush() > 0) {
+      if (track.getStartId() < 0) {
+        track.setStartId(myTracksProviderUtils.getFirstTrackPointId(track.getId()));
+      }
+      track.setStopId(myTracksProviderUtils.getLastTrackPointId(track.getId()));
+    }
+    track.setTripStatistics(tripStatistics);
+    if (force || isTrackUpdateDue()) {
+      if (myTracksProviderUtils.updateTrackStatistics(track)) {
+        lastTrackUpdateTime = System.currentTimeMillis();
+      }
+    }
+  }
+
+  /**
+   * Returns true if the last track update is older than the min track update
+   * interval.
+   */
+  private boolean isTrackUpdateDue() {
+    return System.currentTimeMillis() - lastTrackUpdateTime >= minTrackUpdateInterval;
+  }
+}
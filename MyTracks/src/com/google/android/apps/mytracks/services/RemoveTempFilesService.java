@@ -77,10 +77,9 @@ public class RemoveTempFilesService extends Service {
         // Can't do anything
         return null;
       }
-      cleanTempDirectory(TrackFileFormat.GPX.getExtension());
-      cleanTempDirectory(TrackFileFormat.KML.getExtension());
-      cleanTempDirectory(TrackFileFormat.CSV.getExtension());
-      cleanTempDirectory(TrackFileFormat.TCX.getExtension());
+      for (TrackFileFormat trackFileFormat : TrackFileFormat.values()) {
+        cleanTempDirectory(trackFileFormat.getExtension());
+      }
       return null;
     }
 
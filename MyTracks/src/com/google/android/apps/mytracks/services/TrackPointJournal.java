@@ -0,0 +1,427 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.services;
+
+import com.google.android.apps.mytracks.content.MyTracksLocation;
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
+import com.google.android.apps.mytracks.content.Sensor.SensorDataSet;
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.util.LocationUtils;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import android.database.Cursor;
+import android.location.Location;
+import android.location.LocationManager;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * A write-behind buffer of track points for the recording service. Buffered
+ * track points are written to the provider in a single bulk insert by
+ * {@link #flush()}. Until then, each track point is also appended to a journal
+ * file, which {@link #replay()} writes to the provider if the service is killed
+ * before flushing. Only the track points journaled before the journal is
+ * created are replayed, so the replay can run in the background while new
+ * track points are added.
+ */
+class TrackPointJournal {
+
+  private static final String TAG = TrackPointJournal.class.getSimpleName();
+
+  private static final int HAS_ALTITUDE = 1;
+  private static final int HAS_ACCURACY = 1 << 1;
+  private static final int HAS_SPEED = 1 << 2;
+  private static final int HAS_BEARING = 1 << 3;
+  private static final int HAS_SENSOR = 1 << 4;
+
+  private final MyTracksProviderUtils myTracksProviderUtils;
+  private final File file;
+  private final ArrayList<Location> locations = new ArrayList<Location>();
+  private long trackId = -1L;
+  private long firstAddTime = -1L;
+  private DataOutputStream outputStream;
+
+  // The length of the journal left by a previous instance of the service
+  private long replayLength;
+
+  /**
+   * Creates a track point journal.
+   *
+   * @param myTracksProviderUtils the my tracks provider utils
+   * @param file the journal file
+   */
+  TrackPointJournal(MyTracksProviderUtils myTracksProviderUtils, File file) {
+    this.myTracksProviderUtils = myTracksProviderUtils;
+    this.file = file;
+    replayLength = file.length();
+  }
+
+  /**
+   * Adds a track point. Flushes the track points of another track first, and
+   * updates the start id, the stop id, and the number of points of that track.
+   *
+   * @param id the track id
+   * @param location the location
+   */
+  synchronized void add(long id, Location location) {
+    if (trackId != id) {
+      if (!locations.isEmpty()) {
+        long otherTrackId = trackId;
+        Location[] otherLocations = locations.toArray(new Location[locations.size()]);
+        flush();
+        Track otherTrack = myTracksProviderUtils.getTrack(otherTrackId);
+        if (otherTrack != null) {
+          updateTrack(otherTrack, otherLocations);
+        }
+      }
+      trackId = id;
+    }
+    if (locations.isEmpty()) {
+      firstAddTime = System.currentTimeMillis();
+    }
+    locations.add(location);
+    try {
+      if (outputStream == null) {
+        outputStream = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file, true)));
+      }
+      write(outputStream, id, location);
+      outputStream.flush();
+    } catch (IOException e) {
+      // The track point is still buffered in memory
+      Log.e(TAG, "Unable to write to the journal", e);
+    }
+  }
+
+  /**
+   * Gets the number of buffered track points.
+   */
+  synchronized int size() {
+    return locations.size();
+  }
+
+  /**
+   * Gets the time in milliseconds since the oldest buffered track point was
+   * added. Returns 0 if no track point is buffered.
+   */
+  synchronized long getAge() {
+    return locations.isEmpty() ? 0L : System.currentTimeMillis() - firstAddTime;
+  }
+
+  /**
+   * Writes the buffered track points to the provider and clears the journal.
+   * Returns the number of track points written.
+   */
+  synchronized int flush() {
+    if (locations.isEmpty()) {
+      return 0;
+    }
+
+    // Clearing the journal must not drop the track points left to replay
+    if (replayLength > 0) {
+      replay();
+    }
+    int count = myTracksProviderUtils.bulkInsertTrackPoint(
+        locations.toArray(new Location[locations.size()]), -1, trackId);
+    locations.clear();
+    clear();
+    return count;
+  }
+
+  /**
+   * Writes the track points left in the journal by a previous instance of the
+   * service to the provider, then clears the journal unless track points were
+   * added since. Also updates the start id, the stop id, and the number of
+   * points of the affected tracks. Called when the service is created, before
+   * restarting the recording track.
+   */
+  synchronized void replay() {
+    if (replayLength <= 0) {
+      return;
+    }
+    DataInputStream inputStream = null;
+    try {
+      /*
+       * Only read the track points of the previous instance, the track points
+       * added since are still buffered in memory.
+       */
+      byte[] journal = new byte[(int) replayLength];
+      inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      inputStream.readFully(journal);
+      inputStream.close();
+      inputStream = new DataInputStream(new ByteArrayInputStream(journal));
+      ArrayList<Location> journalLocations = new ArrayList<Location>();
+      long journalTrackId = -1L;
+      while (true) {
+        long id;
+        Location location;
+        try {
+          id = inputStream.readLong();
+          location = read(inputStream);
+        } catch (EOFException e) {
+          // Done or a partially written track point
+          break;
+        }
+        if (id != journalTrackId) {
+          replay(journalTrackId, journalLocations);
+          journalLocations.clear();
+          journalTrackId = id;
+        }
+        journalLocations.add(location);
+      }
+      replay(journalTrackId, journalLocations);
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to replay the journal", e);
+    } finally {
+      if (inputStream != null) {
+        try {
+          inputStream.close();
+        } catch (IOException e) {
+          Log.e(TAG, "Unable to close the journal", e);
+        }
+      }
+      replayLength = 0L;
+      if (locations.isEmpty()) {
+        clear();
+      }
+    }
+  }
+
+  /**
+   * Closes the journal. The buffered track points must be flushed first.
+   */
+  synchronized void close() {
+    if (outputStream != null) {
+      try {
+        outputStream.close();
+      } catch (IOException e) {
+        Log.e(TAG, "Unable to close the journal", e);
+      }
+      outputStream = null;
+    }
+  }
+
+  /**
+   * Replays the journal track points of a track.
+   *
+   * @param id the track id
+   * @param journalLocations the journal track points
+   */
+  private void replay(long id, ArrayList<Location> journalLocations) {
+    if (journalLocations.isEmpty()) {
+      return;
+    }
+    Track track = myTracksProviderUtils.getTrack(id);
+    if (track == null) {
+      Log.w(TAG, "Track " + id + " no longer exists, dropping journal track points.");
+      return;
+    }
+
+    /*
+     * The service may have been killed after flushing but before clearing the
+     * journal. Skip the track points already in the provider.
+     */
+    int start = 0;
+    Location lastTrackPoint = getLastTrackPoint(id);
+    if (lastTrackPoint != null) {
+      while (start < journalLocations.size()
+          && isNotAfter(journalLocations.get(start), lastTrackPoint)) {
+        start++;
+      }
+    }
+    int length = journalLocations.size() - start;
+    if (length == 0) {
+      return;
+    }
+    Location[] replayLocations = journalLocations.subList(start, journalLocations.size())
+        .toArray(new Location[length]);
+    int count = myTracksProviderUtils.bulkInsertTrackPoint(replayLocations, length, id);
+    Log.i(TAG, "Replayed " + count + " track points for track " + id);
+    updateTrack(track, replayLocations);
+  }
+
+  /**
+   * Updates the start id, the stop id, and the number of points of a track
+   * after writing some of its track points.
+   *
+   * @param track the track
+   * @param trackPoints the written track points
+   */
+  private void updateTrack(Track track, Location[] trackPoints) {
+    int numberOfValidPoints = 0;
+    for (Location location : trackPoints) {
+      if (LocationUtils.isValidLocation(location)) {
+        numberOfValidPoints++;
+      }
+    }
+    if (track.getStartId() < 0) {
+      track.setStartId(myTracksProviderUtils.getFirstTrackPointId(track.getId()));
+    }
+    track.setStopId(myTracksProviderUtils.getLastTrackPointId(track.getId()));
+    track.setNumberOfPoints(track.getNumberOfPoints() + numberOfValidPoints);
+    myTracksProviderUtils.updateTrackStatistics(track);
+  }
+
+  /**
+   * Gets the last track point of a track, valid or not. Returns null if not
+   * available.
+   *
+   * @param id the track id
+   */
+  private Location getLastTrackPoint(long id) {
+    Cursor cursor = null;
+    try {
+      cursor = myTracksProviderUtils.getTrackPointCursor(id, -1L, 1, true);
+      if (cursor != null && cursor.moveToFirst()) {
+        return myTracksProviderUtils.createTrackPoint(cursor);
+      }
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if a journal track point is not after the last track point in
+   * the provider, i.e., it has already been written to the provider.
+   *
+   * @param location the journal track point
+   * @param lastTrackPoint the last track point in the provider
+   */
+  private boolean isNotAfter(Location location, Location lastTrackPoint) {
+    if (location.getTime() != lastTrackPoint.getTime()) {
+      return location.getTime() < lastTrackPoint.getTime();
+    }
+    // The provider stores the latitude and longitude as E6 integers
+    return (int) (location.getLatitude() * 1E6) == (int) (lastTrackPoint.getLatitude() * 1E6)
+        && (int) (location.getLongitude() * 1E6) == (int) (lastTrackPoint.getLongitude() * 1E6);
+  }
+
+  /**
+   * Deletes the journal file.
+   */
+  private void clear() {
+    close();
+    if (file.exists() && !file.delete()) {
+      Log.e(TAG, "Unable to delete the journal " + file.getAbsolutePath());
+    }
+  }
+
+  /**
+   * Writes a journal track point.
+   *
+   * @param dataOutputStream the output stream
+   * @param id the track id
+   * @param location the location
+   */
+  private static void write(DataOutputStream dataOutputStream, long id, Location location)
+      throws IOException {
+    SensorDataSet sensorDataSet = location instanceof MyTracksLocation
+        ? ((MyTracksLocation) location).getSensorDataSet() : null;
+    int flags = 0;
+    if (location.hasAltitude()) {
+      flags |= HAS_ALTITUDE;
+    }
+    if (location.hasAccuracy()) {
+      flags |= HAS_ACCURACY;
+    }
+    if (location.hasSpeed()) {
+      flags |= HAS_SPEED;
+    }
+    if (location.hasBearing()) {
+      flags |= HAS_BEARING;
+    }
+    if (sensorDataSet != null) {
+      flags |= HAS_SENSOR;
+    }
+
+    /*
+     * Write a track point in a single call so that a partially written track
+     * point can only be at the end of the journal.
+     */
+    byte[] sensor = sensorDataSet != null ? sensorDataSet.toByteArray() : null;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    DataOutputStream record = new DataOutputStream(bytes);
+    record.writeLong(id);
+    record.writeByte(flags);
+    record.writeDouble(location.getLatitude());
+    record.writeDouble(location.getLongitude());
+    record.writeLong(location.getTime());
+    record.writeDouble(location.getAltitude());
+    record.writeFloat(location.getAccuracy());
+    record.writeFloat(location.getSpeed());
+    record.writeFloat(location.getBearing());
+    if (sensor != null) {
+      record.writeInt(sensor.length);
+      record.write(sensor);
+    }
+    bytes.writeTo(dataOutputStream);
+  }
+
+  /**
+   * Reads a journal track point, after its track id.
+   *
+   * @param dataInputStream the input stream
+   */
+  private static Location read(DataInputStream dataInputStream) throws IOException {
+    int flags = dataInputStream.readByte();
+    MyTracksLocation location = new MyTracksLocation(LocationManager.GPS_PROVIDER);
+    location.setLatitude(dataInputStream.readDouble());
+    location.setLongitude(dataInputStream.readDouble());
+    location.setTime(dataInputStream.readLong());
+    double altitude = dataInputStream.readDouble();
+    float accuracy = dataInputStream.readFloat();
+    float speed = dataInputStream.readFloat();
+    float bearing = dataInputStream.readFloat();
+    if ((flags & HAS_ALTITUDE) != 0) {
+      location.setAltitude(altitude);
+    }
+    if ((flags & HAS_ACCURACY) != 0) {
+      location.setAccuracy(accuracy);
+    }
+    if ((flags & HAS_SPEED) != 0) {
+      location.setSpeed(speed);
+    }
+    if ((flags & HAS_BEARING) != 0) {
+      location.setBearing(bearing);
+    }
+    if ((flags & HAS_SENSOR) != 0) {
+      byte[] sensor = new byte[dataInputStream.readInt()];
+      dataInputStream.readFully(sensor);
+      try {
+        location.setSensorDataSet(SensorDataSet.parseFrom(sensor));
+      } catch (InvalidProtocolBufferException e) {
+        Log.w(TAG, "Failed to parse sensor data.", e);
+      }
+    }
+    return location;
+  }
+}
@@ -68,6 +68,7 @@ import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 import android.util.Log;
 
+import java.io.File;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ExecutorService;
@@ -91,10 +92,13 @@ public class TrackRecordingService extends Service {
   private static final long ONE_MINUTE = 60 * ONE_SECOND;
   @VisibleForTesting
   static final int MAX_AUTO_RESUME_TRACK_RETRY_ATTEMPTS = 3;
+  @VisibleForTesting
+  static final String TRACK_POINT_JOURNAL_NAME = "trackpoints.journal";
 
   // The following variables are set in onCreate:
   private Context context;
   private MyTracksProviderUtils myTracksProviderUtils;
+  private TrackPointJournal trackPointJournal;
   private MyTracksLocationManager myTracksLocationManager;
   private PeriodicTaskExecutor voiceExecutor;
   private PeriodicTaskExecutor splitExecutor;
@@ -107,6 +111,7 @@ public class TrackRecordingService extends Service {
   private int maxRecordingDistance;
   private int minRequiredAccuracy;
   private int autoResumeTrackTimeout;
+  private long minTrackUpdateInterval;
   private long currentRecordingInterval;
 
   // The following variables are set when recording:
@@ -114,8 +119,8 @@ public class TrackRecordingService extends Service {
   private TripStatisticsUpdater markerTripStatisticsUpdater;
   private WakeLock wakeLock;
   private SensorManager sensorManager;
+  private RecordingSession recordingSession;
   private Location lastLocation;
-  private boolean currentSegmentHasLocation;
 
   // Timer to periodically invoke checkLocationListener
   private final Timer timer = new Timer();
@@ -211,6 +216,12 @@ public class TrackRecordingService extends Service {
                 R.string.auto_resume_track_timeout_key,
                 PreferencesUtils.AUTO_RESUME_TRACK_TIMEOUT_DEFAULT);
           }
+          if (key == null || key.equals(
+              PreferencesUtils.getKey(context, R.string.min_track_update_interval_key))) {
+            minTrackUpdateInterval = PreferencesUtils.getInt(context,
+                R.string.min_track_update_interval_key,
+                PreferencesUtils.MIN_TRACK_UPDATE_INTERVAL_DEFAULT) * ONE_SECOND;
+          }
         }
       };
 
@@ -259,6 +270,24 @@ public class TrackRecordingService extends Service {
     }
   };
 
+  private TimerTask flushTrackPoints = new TimerTask() {
+      @Override
+    public void run() {
+      if (executorService == null || executorService.isShutdown()) {
+        return;
+      }
+      executorService.submit(new Runnable() {
+          @Override
+        public void run() {
+          RecordingSession session = recordingSession;
+          if (session != null && session.shouldFlush()) {
+            flushRecordingTrack(session, false);
+          }
+        }
+      });
+    }
+  };
+
   /*
    * Note that this service, through the AndroidManifest.xml, is configured to
    * allow both MyTracks and third party apps to invoke it. For the onCreate
@@ -271,6 +300,8 @@ public class TrackRecordingService extends Service {
     super.onCreate();
     context = this;
     myTracksProviderUtils = MyTracksProviderUtils.Factory.get(this);
+    trackPointJournal = new TrackPointJournal(
+        myTracksProviderUtils, new File(getFilesDir(), TRACK_POINT_JOURNAL_NAME));
     myTracksLocationManager = new MyTracksLocationManager(this);
     voiceExecutor = new PeriodicTaskExecutor(this, new AnnouncementPeriodicTaskFactory());
     splitExecutor = new PeriodicTaskExecutor(this, new SplitPeriodicTaskFactory());
@@ -285,6 +316,15 @@ public class TrackRecordingService extends Service {
     sharedPreferenceChangeListener.onSharedPreferenceChanged(sharedPreferences, null);
 
     timer.schedule(checkLocationListener, 0, ONE_MINUTE);
+    timer.schedule(flushTrackPoints, Constants.MAX_BUFFERED_TRACK_POINTS_AGE,
+        Constants.MAX_BUFFERED_TRACK_POINTS_AGE);
+
+    /*
+     * Write the track points buffered by a previous instance of the service
+     * before restarting its track, so that they are counted in the number of
+     * points and the statistics of the track.
+     */
+    trackPointJournal.replay();
 
     /*
      * Try to restart the previous recording track in case the service has been
@@ -332,6 +372,22 @@ public class TrackRecordingService extends Service {
     return binder;
   }
 
+  @Override
+  public void onLowMemory() {
+    if (executorService != null && !executorService.isShutdown()) {
+      executorService.submit(new Runnable() {
+          @Override
+        public void run() {
+          RecordingSession session = recordingSession;
+          if (session != null) {
+            flushRecordingTrack(session, true);
+          }
+        }
+      });
+    }
+    super.onLowMemory();
+  }
+
   @Override
   public void onDestroy() {
     showNotification();
@@ -339,6 +395,8 @@ public class TrackRecordingService extends Service {
     sharedPreferences.unregisterOnSharedPreferenceChangeListener(sharedPreferenceChangeListener);
     checkLocationListener.cancel();
     checkLocationListener = null;
+    flushTrackPoints.cancel();
+    flushTrackPoints = null;
     timer.cancel();
     timer.purge();
     unregisterLocationListener();
@@ -360,6 +418,13 @@ public class TrackRecordingService extends Service {
       sensorManager = null;
     }
 
+    // Write the buffered track points
+    RecordingSession session = recordingSession;
+    if (session != null && trackTripStatisticsUpdater != null) {
+      flushRecordingTrack(session, true);
+    }
+    trackPointJournal.close();
+
     // Make sure we have no indirect references to this service.
     myTracksProviderUtils = null;
     myTracksLocationManager.close();
@@ -451,11 +516,10 @@ public class TrackRecordingService extends Service {
     int type = isStatistics ? Waypoint.TYPE_STATISTICS : Waypoint.TYPE_WAYPOINT;
     long duration;
     double length;
-    Location location = getLastValidTrackPointInCurrentSegment(recordingTrackId);
+    Location location = getLastValidTrackPointInCurrentSegment();
     if (location != null && trackTripStatisticsUpdater != null) {
-      TripStatistics stats = trackTripStatisticsUpdater.getTripStatistics();
-      length = stats.getTotalDistance();
-      duration = stats.getTotalTime();
+      length = trackTripStatisticsUpdater.getTotalDistance();
+      duration = trackTripStatisticsUpdater.getTotalTime();
     } else {
       if (!waypointCreationRequest.isTrackStatistics()) {
         return -1L;
@@ -574,6 +638,8 @@ public class TrackRecordingService extends Service {
         this, R.string.default_activity_key, PreferencesUtils.DEFAULT_ACTIVITY_DEFAULT));
     track.setTripStatistics(trackTripStatisticsUpdater.getTripStatistics());
     myTracksProviderUtils.updateTrack(track);
+    recordingSession = new RecordingSession(
+        myTracksProviderUtils, trackPointJournal, track, minTrackUpdateInterval);
     insertWaypoint(WaypointCreationRequest.DEFAULT_START_TRACK);
 
     startRecording(true);
@@ -587,6 +653,8 @@ public class TrackRecordingService extends Service {
    */
   private void restartTrack(Track track) {
     Log.d(TAG, "Restarting track: " + track.getId());
+    recordingSession = new RecordingSession(
+        myTracksProviderUtils, trackPointJournal, track, minTrackUpdateInterval);
 
     TripStatistics tripStatistics = track.getTripStatistics();
     trackTripStatisticsUpdater = new TripStatisticsUpdater(tripStatistics.getStartTime());
@@ -642,13 +710,14 @@ public class TrackRecordingService extends Service {
     PreferencesUtils.setBoolean(this, R.string.recording_track_paused_key, false);
 
     // Update database
-    Track track = myTracksProviderUtils.getTrack(recordingTrackId);
-    if (track != null) {
+    recordingSession = RecordingSession.load(
+        myTracksProviderUtils, trackPointJournal, recordingTrackId, minTrackUpdateInterval);
+    if (recordingSession != null) {
       Location resume = new Location(LocationManager.GPS_PROVIDER);
       resume.setLongitude(0);
       resume.setLatitude(RESUME_LATITUDE);
       resume.setTime(System.currentTimeMillis());
-      insertLocation(track, resume, null);
+      insertLocation(recordingSession, resume, null);
     }
 
     startRecording(false);
@@ -666,7 +735,9 @@ public class TrackRecordingService extends Service {
     // Update instance variables
     sensorManager = SensorManagerFactory.getSystemSensorManager(this);
     lastLocation = null;
-    currentSegmentHasLocation = false;
+    if (recordingSession != null) {
+      recordingSession.startSegment();
+    }
 
     // Register notifications
     registerLocationListener();
@@ -698,11 +769,12 @@ public class TrackRecordingService extends Service {
     updateRecordingState(PreferencesUtils.RECORDING_TRACK_ID_DEFAULT, true);
 
     // Update database
-    Track track = myTracksProviderUtils.getTrack(trackId);
-    if (track != null && !paused) {
-      insertLocation(track, lastLocation, getLastValidTrackPointInCurrentSegment(trackId));
-      updateRecordingTrack(track, myTracksProviderUtils.getLastTrackPointId(trackId), false);
+    RecordingSession session = recordingSession;
+    if (session != null && !paused) {
+      insertLocation(session, lastLocation, session.getLastValidTrackPointInCurrentSegment());
+      flushRecordingTrack(session, true);
     }
+    recordingSession = null;
 
     endRecording(true, trackId);
     stopSelf();
@@ -710,14 +782,10 @@ public class TrackRecordingService extends Service {
 
   /**
    * Gets the last valid track point in the current segment. Returns null if not available.
-   * 
-   * @param trackId the track id
    */
-  private Location getLastValidTrackPointInCurrentSegment(long trackId) {
-    if (!currentSegmentHasLocation) {
-      return null;
-    }
-    return myTracksProviderUtils.getLastValidTrackPoint(trackId);
+  private Location getLastValidTrackPointInCurrentSegment() {
+    RecordingSession session = recordingSession;
+    return session != null ? session.getLastValidTrackPointInCurrentSegment() : null;
   }
 
   /**
@@ -734,15 +802,16 @@ public class TrackRecordingService extends Service {
     PreferencesUtils.setBoolean(this, R.string.recording_track_paused_key, true);
 
     // Update database
-    Track track = myTracksProviderUtils.getTrack(recordingTrackId);
-    if (track != null) {
-      insertLocation(track, lastLocation, getLastValidTrackPointInCurrentSegment(track.getId()));
+    RecordingSession session = recordingSession;
+    if (session != null) {
+      insertLocation(session, lastLocation, session.getLastValidTrackPointInCurrentSegment());
 
       Location pause = new Location(LocationManager.GPS_PROVIDER);
       pause.setLongitude(0);
       pause.setLatitude(PAUSE_LATITUDE);
       pause.setTime(System.currentTimeMillis());
-      insertLocation(track, pause, null);
+      insertLocation(session, pause, null);
+      flushRecordingTrack(session, true);
     }
 
     endRecording(false, recordingTrackId);
@@ -803,8 +872,8 @@ public class TrackRecordingService extends Service {
         return;
       }
 
-      Track track = myTracksProviderUtils.getTrack(recordingTrackId);
-      if (track == null) {
+      RecordingSession session = recordingSession;
+      if (session == null) {
         Log.w(TAG, "Ignore onLocationChangedAsync. No track.");
         return;
       }
@@ -819,7 +888,7 @@ public class TrackRecordingService extends Service {
         return;
       }
 
-      Location lastValidTrackPoint = getLastValidTrackPointInCurrentSegment(track.getId());
+      Location lastValidTrackPoint = session.getLastValidTrackPointInCurrentSegment();
       long idleTime = lastValidTrackPoint != null ? location.getTime() - lastValidTrackPoint.getTime()
           : 0L;
       locationListenerPolicy.updateIdleTime(idleTime);
@@ -833,9 +902,9 @@ public class TrackRecordingService extends Service {
       }
 
       // Always insert the first segment location
-      if (!currentSegmentHasLocation) {
-        insertLocation(track, location, null);
-        currentSegmentHasLocation = true;
+      if (!session.currentSegmentHasLocation()) {
+        insertLocation(session, location, null);
+        session.setCurrentSegmentHasLocation();
         lastLocation = location;
         return;
       }
@@ -845,7 +914,7 @@ public class TrackRecordingService extends Service {
          * Should not happen. The current segment should have a location. Just
          * insert the current location.
          */
-        insertLocation(track, location, null);
+        insertLocation(session, location, null);
         lastLocation = location;
         return;
       }
@@ -854,21 +923,21 @@ public class TrackRecordingService extends Service {
       if (distanceToLastTrackLocation < minRecordingDistance && sensorDataSet == null) {
         Log.d(TAG, "Not recording location due to min recording distance.");
       } else if (distanceToLastTrackLocation > maxRecordingDistance) {
-        insertLocation(track, lastLocation, lastValidTrackPoint);
+        insertLocation(session, lastLocation, lastValidTrackPoint);
         Location pause = new Location(LocationManager.GPS_PROVIDER);
         pause.setLongitude(0);
         pause.setLatitude(PAUSE_LATITUDE);
         pause.setTime(lastLocation.getTime());
-        insertLocation(track, pause, null);
+        insertLocation(session, pause, null);
 
-        insertLocation(track, location, null);
+        insertLocation(session, location, null);
       } else {
         /*
          * (distanceToLastTrackLocation >= minRecordingDistance ||
          * hasSensorData) && distanceToLastTrackLocation <= maxRecordingDistance
          */
-        insertLocation(track, lastLocation, lastValidTrackPoint);
-        insertLocation(track, location, null);
+        insertLocation(session, lastLocation, lastValidTrackPoint);
+        insertLocation(session, location, null);
       }
       lastLocation = location;
     } catch (Error e) {
@@ -883,11 +952,12 @@ public class TrackRecordingService extends Service {
   /**
    * Inserts a location.
    * 
-   * @param track the track
+   * @param session the recording session
    * @param location the location
    * @param lastValidTrackPoint the last valid track point, can be null
    */
-  private void insertLocation(Track track, Location location, Location lastValidTrackPoint) {
+  private void insertLocation(
+      RecordingSession session, Location location, Location lastValidTrackPoint) {
     if (location == null) {
       Log.w(TAG, "Ignore insertLocation. loation is null.");
       return;
@@ -898,40 +968,37 @@ public class TrackRecordingService extends Service {
       return;
     }
 
+    session.addTrackPoint(location);
+    trackTripStatisticsUpdater.addLocation(location, minRecordingDistance);
+    markerTripStatisticsUpdater.addLocation(location, minRecordingDistance);
+    if (session.shouldFlush()) {
+      flushRecordingTrack(session, false);
+    }
+    voiceExecutor.update();
+    splitExecutor.update();
+    sendTrackBroadcast(R.string.track_update_broadcast_action, session.getTrackId());
+  }
+
+  /**
+   * Flushes the buffered track points and updates the statistics of the
+   * recording track.
+   * 
+   * @param session the recording session
+   * @param force true to update the recording track regardless of when it was
+   *          last updated
+   */
+  private void flushRecordingTrack(RecordingSession session, boolean force) {
     try {
-      Uri uri = myTracksProviderUtils.insertTrackPoint(location, track.getId());
-      long trackPointId = Long.parseLong(uri.getLastPathSegment());
-      trackTripStatisticsUpdater.addLocation(location, minRecordingDistance);
-      markerTripStatisticsUpdater.addLocation(location, minRecordingDistance);
-      updateRecordingTrack(track, trackPointId, LocationUtils.isValidLocation(location));
+      trackTripStatisticsUpdater.updateTime(System.currentTimeMillis());
+      session.flush(trackTripStatisticsUpdater.getTripStatistics(), force);
     } catch (SQLiteException e) {
       /*
        * Insert failed, most likely because of SqlLite error code 5
-       * (SQLite_BUSY). This is expected to happen extremely rarely (if our
-       * listener gets invoked twice at about the same time).
+       * (SQLite_BUSY). The track points are still buffered and will be
+       * inserted by the next flush.
        */
       Log.w(TAG, "SQLiteException", e);
     }
-    voiceExecutor.update();
-    splitExecutor.update();
-    sendTrackBroadcast(R.string.track_update_broadcast_action, track.getId());
-  }
-
-  private void updateRecordingTrack(
-      Track track, long trackPointId, boolean isTrackPointNewAndValid) {
-    if (trackPointId >= 0) {
-      if (track.getStartId() < 0) {
-        track.setStartId(trackPointId);
-      }
-      track.setStopId(trackPointId);
-    }
-    if (isTrackPointNewAndValid) {
-      track.setNumberOfPoints(track.getNumberOfPoints() + 1);
-    }
-
-    trackTripStatisticsUpdater.updateTime(System.currentTimeMillis());
-    track.setTripStatistics(trackTripStatisticsUpdater.getTripStatistics());
-    myTracksProviderUtils.updateTrack(track);
   }
 
   private SensorDataSet getSensorDataSet() {
@@ -1157,7 +1224,7 @@ public class TrackRecordingService extends Service {
       if (!trackRecordingService.isPaused()) {
         updater.updateTime(System.currentTimeMillis());
       }
-      return updater.getTripStatistics().getTotalTime();
+      return updater.getTotalTime();
     }
 
     @Override
@@ -20,6 +20,15 @@ package com.google.android.apps.mytracks.stats;
  * This class maintains a buffer of doubles. This buffer is a convenient class
  * for storing a series of doubles and calculating information about them. This
  * is a FIFO buffer.
+ * <p>
+ * The sum of the buffered values and the sum of their squared differences from
+ * the average are kept up to date as values are added and overwritten, so the
+ * average and the variance are computed in constant time regardless of the
+ * buffer size. The sum uses Kahan summation to keep the rounding errors from
+ * adding up, and the squared differences use Welford's method, which doesn't
+ * subtract two large sums of squares.
+ * <p>
+ * NaN and infinite values are ignored, see {@link #setNext(double)}.
  * 
  * @author Sandor Dornbush
  */
@@ -34,6 +43,13 @@ public class DoubleBuffer {
   // True if the buffer is full
   private boolean isFull;
 
+  // The sum of the buffered values and its Kahan compensation
+  private double sum;
+  private double sumCompensation;
+
+  // The sum of the squared differences of the buffered values from the average
+  private double squaredDifferences;
+
   /**
    * Creates a buffer with a certain size.
    * 
@@ -53,6 +69,9 @@ public class DoubleBuffer {
   public void reset() {
     index = 0;
     isFull = false;
+    sum = 0;
+    sumCompensation = 0;
+    squaredDifferences = 0;
   }
 
   /**
@@ -70,47 +89,63 @@ public class DoubleBuffer {
     if (numberOfEntries == 0) {
       return 0;
     }
-    double sum = 0;
-    for (int i = 0; i < numberOfEntries; i++) {
-      sum += buffer[i];
-    }
     return sum / numberOfEntries;
   }
 
   /**
-   * Gets the average and the variance of the buffer.
-   * 
-   * @return an array of two elements - the first is the average, the second is
-   *         the variance
+   * Gets the variance of the buffer.
    */
-  public double[] getAverageAndVariance() {
+  public double getVariance() {
     int numberOfEntries = isFull ? buffer.length : index;
     if (numberOfEntries == 0) {
-      return new double[] { 0, 0 };
-    }
-
-    double sum = 0;
-    double sumSquares = 0;
-    for (int i = 0; i < numberOfEntries; i++) {
-      sum += buffer[i];
-      sumSquares += Math.pow(buffer[i], 2);
+      return 0;
     }
+    return squaredDifferences / numberOfEntries;
+  }
 
-    double average = sum / numberOfEntries;
-    double variance = sumSquares / numberOfEntries - Math.pow(average, 2);
-    return new double[] { average, variance };
+  /**
+   * Gets the average and the variance of the buffer. Prefer
+   * {@link #getAverage()} and {@link #getVariance()}, which don't allocate an
+   * array.
+   * 
+   * @return an array of two elements - the first is the average, the second is
+   *         the variance
+   */
+  public double[] getAverageAndVariance() {
+    return new double[] { getAverage(), getVariance() };
   }
 
   /**
    * Adds a double to the buffer. If the buffer is full the oldest element is
    * overwritten.
+   * <p>
+   * NaN and infinite values are ignored: the buffer, its average, and its
+   * variance stay unchanged. They would otherwise stay in the running sums
+   * after being overwritten. For instance, a NaN elevation doesn't change the
+   * smoothed elevation of {@link TripStatisticsUpdater}, nor add to the
+   * elevation gain.
    * 
    * @param value the double to add
    */
   public void setNext(double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      return;
+    }
     if (index == buffer.length) {
       index = 0;
     }
+    double oldAverage = getAverage();
+    if (isFull) {
+      double oldValue = buffer[index];
+      addToSum(-oldValue);
+      addToSum(value);
+      double average = sum / buffer.length;
+      squaredDifferences += (value - oldValue) * (value - average + oldValue - oldAverage);
+    } else {
+      addToSum(value);
+      double average = sum / (index + 1);
+      squaredDifferences += (value - oldAverage) * (value - average);
+    }
     buffer[index] = value;
     index++;
     if (index == buffer.length) {
@@ -118,6 +153,18 @@ public class DoubleBuffer {
     }
   }
 
+  /**
+   * Adds a value to the sum with Kahan summation.
+   * 
+   * @param value the value
+   */
+  private void addToSum(double value) {
+    double y = value - sumCompensation;
+    double t = sum + y;
+    sumCompensation = (t - sum) - y;
+    sum = t;
+  }
+
   @Override
   public String toString() {
     StringBuffer stringBuffer = new StringBuffer("Full: ");
@@ -42,11 +42,17 @@ public class TripStatisticsUpdater {
   // The current segment's trip statistics
   private TripStatistics currentSegment;
 
-  // Current segment's last location.
-  private Location lastLocation;
+  // Current segment's last location. A copy, since callers may reuse their
+  // location objects.
+  private final Location lastLocation = new Location("");
+  private boolean hasLastLocation = false;
 
-  // Current segment's last moving location
-  private Location lastMovingLocation;
+  // Current segment's last moving location. A copy, like lastLocation.
+  private final Location lastMovingLocation = new Location("");
+  private boolean hasLastMovingLocation = false;
+
+  // True if the last location is the last moving location
+  private boolean isLastLocationMoving = false;
 
   // A buffer of the recent speed readings (m/s) for calculating max speed
   private final DoubleBuffer speedBuffer = new DoubleBuffer(Constants.SPEED_SMOOTHING_FACTOR);
@@ -86,6 +92,30 @@ public class TripStatisticsUpdater {
     return stats;
   }
 
+  /**
+   * Gets the track's total distance in meters. Unlike
+   * {@link #getTripStatistics()}, doesn't allocate a snapshot.
+   */
+  public double getTotalDistance() {
+    return tripStatistics.getTotalDistance() + currentSegment.getTotalDistance();
+  }
+
+  /**
+   * Gets the track's total time in milliseconds. Unlike
+   * {@link #getTripStatistics()}, doesn't allocate a snapshot.
+   */
+  public long getTotalTime() {
+    return tripStatistics.getTotalTime() + currentSegment.getTotalTime();
+  }
+
+  /**
+   * Gets the track's moving time in milliseconds. Unlike
+   * {@link #getTripStatistics()}, doesn't allocate a snapshot.
+   */
+  public long getMovingTime() {
+    return tripStatistics.getMovingTime() + currentSegment.getMovingTime();
+  }
+
   /**
    * Adds a location. TODO: This assume location has a valid time.
    * 
@@ -96,15 +126,14 @@ public class TripStatisticsUpdater {
     if (!LocationUtils.isValidLocation(location)) {
       updateTime(location.getTime());
       if (location.getLatitude() == TrackRecordingService.PAUSE_LATITUDE) {
-        if (lastLocation != null && lastMovingLocation != null
-            && lastLocation != lastMovingLocation) {
+        if (hasLastLocation && hasLastMovingLocation && !isLastLocationMoving) {
           currentSegment.addTotalDistance(lastMovingLocation.distanceTo(lastLocation));
         }
         tripStatistics.merge(currentSegment);
       }
       currentSegment = init(location.getTime());
-      lastLocation = null;
-      lastMovingLocation = null;
+      hasLastLocation = false;
+      hasLastMovingLocation = false;
       speedBuffer.reset();
       elevationBuffer.reset();
       distanceBuffer.reset();
@@ -115,23 +144,22 @@ public class TripStatisticsUpdater {
     currentSegment.updateLatitudeExtremities(location.getLatitude());
     currentSegment.updateLongitudeExtremities(location.getLongitude());
 
-    if (lastLocation == null || lastMovingLocation == null) {
+    if (!hasLastLocation || !hasLastMovingLocation) {
       updateTime(location.getTime());
-      lastLocation = location;
-      lastMovingLocation = location;
+      setLastMovingLocation(location);
       return;
     }
     double movingDistance = lastMovingLocation.distanceTo(location);
     if (movingDistance < minRecordingDistance
         && location.getSpeed() < Constants.MAX_NO_MOVEMENT_SPEED) {
       updateTime(location.getTime());
-      lastLocation = location;
+      setLastLocation(location);
       return;
     }
     long movingTime = location.getTime() - lastLocation.getTime();
     if (movingTime < 0) {
       updateTime(location.getTime());
-      lastLocation = location;
+      setLastLocation(location);
       return;
     }
     currentSegment.addTotalDistance(movingDistance);
@@ -140,8 +168,31 @@ public class TripStatisticsUpdater {
         location.getTime(), location.getSpeed(), lastLocation.getTime(), lastLocation.getSpeed());
     updateGrade(lastLocation.distanceTo(location), elevationDifference);
     updateTime(location.getTime());
-    lastLocation = location;
-    lastMovingLocation = location;
+    setLastMovingLocation(location);
+  }
+
+  /**
+   * Sets the last location, not moving.
+   * 
+   * @param location the location
+   */
+  private void setLastLocation(Location location) {
+    lastLocation.set(location);
+    hasLastLocation = true;
+    isLastLocationMoving = false;
+  }
+
+  /**
+   * Sets the last location and the last moving location.
+   * 
+   * @param location the location
+   */
+  private void setLastMovingLocation(Location location) {
+    lastLocation.set(location);
+    lastMovingLocation.set(location);
+    hasLastLocation = true;
+    hasLastMovingLocation = true;
+    isLastLocationMoving = true;
   }
 
   /**
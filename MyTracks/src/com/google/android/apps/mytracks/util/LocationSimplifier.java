@@ -0,0 +1,281 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.util;
+
+import com.google.android.apps.mytracks.Constants;
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.content.TrackPointBuffer;
+
+import android.util.Log;
+
+/**
+ * Simplifies a sequence of locations with the Douglas-Peucker algorithm. Every
+ * dropped location is within the tolerance of the simplified line, and the
+ * first and last locations are always kept.
+ * <p>
+ * The locations are stored in primitive arrays which are reused and only grow,
+ * so no object is allocated per location. Distances are computed on a local
+ * equirectangular projection, which is accurate for the short distances
+ * between consecutive track points.
+ * <p>
+ * Besides simplifying a whole track with {@link #simplify(Track)}, locations
+ * can be streamed with {@link #add(double, double)} and {@link #flush()}. In
+ * streaming mode, the locations are simplified one window at a time, the last
+ * kept location of a window being the first location of the next window, so
+ * the tolerance still holds for the whole sequence.
+ * <p>
+ * Not thread safe.
+ */
+public class LocationSimplifier {
+
+  /**
+   * Listener for the locations kept in streaming mode.
+   */
+  public interface Listener {
+
+    /**
+     * Called when a location is kept, in the order the locations were added.
+     *
+     * @param index the index of the location, counting from 0 for the first
+     *          location added
+     */
+    public void onKeep(long index);
+  }
+
+  // The mean radius of the earth in meters
+  private static final double EARTH_RADIUS = 6371009.0;
+  private static final double METERS_PER_DEGREE = EARTH_RADIUS * UnitConversions.DEG_TO_RAD;
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final double toleranceSquared;
+  private final int windowSize;
+  private final Listener listener;
+
+  private double[] latitudes = new double[INITIAL_CAPACITY];
+  private double[] longitudes = new double[INITIAL_CAPACITY];
+  private boolean[] kept = new boolean[INITIAL_CAPACITY];
+  private int[] stack = new int[2 * INITIAL_CAPACITY];
+
+  // Streaming mode state
+  private int size = 0;
+  private long windowStart = 0L;
+
+  /**
+   * Creates a location simplifier for {@link #simplify(Track)}. In streaming
+   * mode, the locations are simplified at once when flushed and the kept
+   * locations are not reported.
+   *
+   * @param tolerance the tolerance in meters
+   */
+  public LocationSimplifier(double tolerance) {
+    double toleranceInDegrees = tolerance / METERS_PER_DEGREE;
+    this.toleranceSquared = toleranceInDegrees * toleranceInDegrees;
+    this.windowSize = Integer.MAX_VALUE;
+    this.listener = null;
+  }
+
+  /**
+   * Creates a location simplifier for streaming mode.
+   *
+   * @param tolerance the tolerance in meters
+   * @param windowSize the max number of locations simplified at once, at least
+   *          3. A larger window keeps fewer locations but delays reporting them.
+   * @param listener the listener for the kept locations, not null
+   */
+  public LocationSimplifier(double tolerance, int windowSize, Listener listener) {
+    if (windowSize < 3) {
+      throw new IllegalArgumentException("windowSize must be at least 3");
+    }
+    if (listener == null) {
+      throw new IllegalArgumentException("listener must not be null");
+    }
+    double toleranceInDegrees = tolerance / METERS_PER_DEGREE;
+    this.toleranceSquared = toleranceInDegrees * toleranceInDegrees;
+    this.windowSize = windowSize;
+    this.listener = listener;
+  }
+
+  /**
+   * Simplifies the locations of a track.
+   *
+   * @param track the track
+   */
+  public void simplify(Track track) {
+    TrackPointBuffer trackPointBuffer = track.getTrackPointBuffer();
+    int n = trackPointBuffer.size();
+    ensureCapacity(n);
+    for (int i = 0; i < n; i++) {
+      latitudes[i] = trackPointBuffer.getLatitude(i);
+      longitudes[i] = trackPointBuffer.getLongitude(i);
+    }
+    int count = markKept(n);
+    trackPointBuffer.retain(kept);
+    Log.d(Constants.TAG, "Simplified " + n + " locations to " + count);
+  }
+
+  /**
+   * Adds a location in streaming mode. Simplifies the current window when it
+   * is full, reporting its kept locations except the last one, which starts the
+   * next window.
+   *
+   * @param latitude the latitude
+   * @param longitude the longitude
+   */
+  public void add(double latitude, double longitude) {
+    ensureCapacity(size + 1);
+    latitudes[size] = latitude;
+    longitudes[size] = longitude;
+    size++;
+    if (size >= windowSize) {
+      markKept(size);
+      report(size - 1);
+      latitudes[0] = latitudes[size - 1];
+      longitudes[0] = longitudes[size - 1];
+      windowStart += size - 1;
+      size = 1;
+    }
+  }
+
+  /**
+   * Ends the sequence in streaming mode, reporting the kept locations of the
+   * current window, including the last location. The next added location
+   * starts a new sequence.
+   */
+  public void flush() {
+    markKept(size);
+    report(size);
+    windowStart += size;
+    size = 0;
+  }
+
+  /**
+   * Reports the kept locations of the current window to the listener.
+   *
+   * @param length the number of locations to report
+   */
+  private void report(int length) {
+    if (listener == null) {
+      return;
+    }
+    for (int i = 0; i < length; i++) {
+      if (kept[i]) {
+        listener.onKeep(windowStart + i);
+      }
+    }
+  }
+
+  /**
+   * Marks the locations to keep among the first n locations. Returns the number
+   * of locations kept.
+   *
+   * @param n the number of locations
+   */
+  private int markKept(int n) {
+    if (n <= 2) {
+      for (int i = 0; i < n; i++) {
+        kept[i] = true;
+      }
+      return n;
+    }
+    kept[0] = true;
+    kept[n - 1] = true;
+    for (int i = 1; i < n - 1; i++) {
+      kept[i] = false;
+    }
+    int count = 2;
+
+    // Pushed ranges have disjoint, non-empty interiors, so n pairs suffice
+    int top = 0;
+    stack[top++] = 0;
+    stack[top++] = n - 1;
+    while (top > 0) {
+      int end = stack[--top];
+      int start = stack[--top];
+      double maxDistance = 0.0;
+      int maxIndex = -1;
+      double cosLatitude = Math.cos(latitudes[start] * UnitConversions.DEG_TO_RAD);
+      for (int i = start + 1; i < end; i++) {
+        double distance = distanceSquared(i, start, end, cosLatitude);
+        if (distance > maxDistance) {
+          maxDistance = distance;
+          maxIndex = i;
+        }
+      }
+      if (maxDistance > toleranceSquared) {
+        kept[maxIndex] = true;
+        count++;
+        if (maxIndex - start > 1) {
+          stack[top++] = start;
+          stack[top++] = maxIndex;
+        }
+        if (end - maxIndex > 1) {
+          stack[top++] = maxIndex;
+          stack[top++] = end;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Computes the squared distance in degrees of latitude between a location
+   * and the line segment between two other locations.
+   *
+   * @param index the location index
+   * @param start the index of the beginning of the line segment
+   * @param end the index of the end of the line segment
+   * @param cosLatitude the cosine of the latitude to scale the longitudes
+   */
+  private double distanceSquared(int index, int start, int end, double cosLatitude) {
+    double x = (longitudes[index] - longitudes[start]) * cosLatitude;
+    double y = latitudes[index] - latitudes[start];
+    double segmentX = (longitudes[end] - longitudes[start]) * cosLatitude;
+    double segmentY = latitudes[end] - latitudes[start];
+    double lengthSquared = segmentX * segmentX + segmentY * segmentY;
+    if (lengthSquared > 0) {
+      double u = (x * segmentX + y * segmentY) / lengthSquared;
+      if (u >= 1) {
+        x -= segmentX;
+        y -= segmentY;
+      } else if (u > 0) {
+        x -= u * segmentX;
+        y -= u * segmentY;
+      }
+    }
+    return x * x + y * y;
+  }
+
+  /**
+   * Ensures the arrays can hold n locations.
+   *
+   * @param n the number of locations
+   */
+  private void ensureCapacity(int n) {
+    if (n <= latitudes.length) {
+      return;
+    }
+    int capacity = Math.max(n, 2 * latitudes.length);
+    double[] newLatitudes = new double[capacity];
+    double[] newLongitudes = new double[capacity];
+    System.arraycopy(latitudes, 0, newLatitudes, 0, size);
+    System.arraycopy(longitudes, 0, newLongitudes, 0, size);
+    latitudes = newLatitudes;
+    longitudes = newLongitudes;
+    kept = new boolean[capacity];
+    stack = new int[2 * capacity];
+  }
+}
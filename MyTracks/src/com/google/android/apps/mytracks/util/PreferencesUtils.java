@@ -65,6 +65,9 @@ public class PreferencesUtils {
   public static final int MIN_REQUIRED_ACCURACY_EXCELLENT = 10;
   public static final int MIN_REQUIRED_ACCURACY_POOR = 5000;
 
+  // In seconds
+  public static final int MIN_TRACK_UPDATE_INTERVAL_DEFAULT = 5;
+
   public static final boolean PICK_EXISTING_MAP_DEFAULT = false;
   public static final long RECORDING_TRACK_ID_DEFAULT = -1L;
   public static final boolean RECORDING_TRACK_PAUSED_DEFAULT = true;
@@ -50,6 +50,16 @@ public class StringUtils {
     ISO_8601_BASE.setTimeZone(TimeZone.getTimeZone("UTC"));
   }
 
+  // The powers of ten exactly represented as doubles
+  private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+      1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+  // Integers below this value are exactly represented as doubles
+  private static final long MAX_EXACT_INTEGER = 1L << 53;
+
+  // Returned when a date time is not in the common format
+  private static final long NOT_PARSED = Long.MIN_VALUE;
+
   private StringUtils() {}
 
   /**
@@ -322,6 +332,197 @@ public class StringUtils {
     return time;
   }
 
+  /**
+   * Gets the time, in milliseconds, from an XML date time in a range of a char
+   * sequence, ignoring leading and trailing whitespace. Same as
+   * {@link #getTime(String)}, but parses the common
+   * yyyy-MM-ddTHH:mm:ss[.S+][Z|(+|-)HH:mm] format without allocating.
+   * 
+   * @param xmlDateTime the char sequence
+   * @param start the start of the range
+   * @param end the end of the range, exclusive
+   */
+  public static long getTime(CharSequence xmlDateTime, int start, int end) {
+    while (start < end && Character.isWhitespace(xmlDateTime.charAt(start))) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(xmlDateTime.charAt(end - 1))) {
+      end--;
+    }
+    long time = parseTime(xmlDateTime, start, end);
+    if (time == NOT_PARSED) {
+      return getTime(xmlDateTime.subSequence(start, end).toString());
+    }
+    return time;
+  }
+
+  /**
+   * Parses an XML date time in the common format. Returns {@link #NOT_PARSED}
+   * if not in the common format.
+   * 
+   * @param xmlDateTime the char sequence
+   * @param start the start of the date time
+   * @param end the end of the date time, exclusive
+   */
+  private static long parseTime(CharSequence xmlDateTime, int start, int end) {
+    if (end - start < 19 || xmlDateTime.charAt(start + 4) != '-'
+        || xmlDateTime.charAt(start + 7) != '-' || xmlDateTime.charAt(start + 10) != 'T'
+        || xmlDateTime.charAt(start + 13) != ':' || xmlDateTime.charAt(start + 16) != ':') {
+      return NOT_PARSED;
+    }
+    int year = parseDigits(xmlDateTime, start, 4);
+    int month = parseDigits(xmlDateTime, start + 5, 2);
+    int day = parseDigits(xmlDateTime, start + 8, 2);
+    int hour = parseDigits(xmlDateTime, start + 11, 2);
+    int minute = parseDigits(xmlDateTime, start + 14, 2);
+    int second = parseDigits(xmlDateTime, start + 17, 2);
+    // Dates before the Gregorian calendar and out of range values are left to
+    // SimpleDateFormat
+    if (year < 1583 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+        || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      return NOT_PARSED;
+    }
+
+    int index = start + 19;
+    int millis = 0;
+    if (index < end && xmlDateTime.charAt(index) == '.') {
+      index++;
+      int digits = 0;
+      while (index < end && isDigit(xmlDateTime.charAt(index))) {
+        // Like getTime(String), truncates to milliseconds
+        if (digits < 3) {
+          millis = millis * 10 + xmlDateTime.charAt(index) - '0';
+        }
+        digits++;
+        index++;
+      }
+      if (digits == 0) {
+        return NOT_PARSED;
+      }
+      for (int i = digits; i < 3; i++) {
+        millis *= 10;
+      }
+    }
+
+    long offset = 0;
+    if (index < end) {
+      char c = xmlDateTime.charAt(index);
+      if (c == 'Z' && index + 1 == end) {
+        // Already UTC
+      } else if ((c == '+' || c == '-') && end - index == 6
+          && xmlDateTime.charAt(index + 3) == ':') {
+        int offsetHours = parseDigits(xmlDateTime, index + 1, 2);
+        int offsetMinutes = parseDigits(xmlDateTime, index + 4, 2);
+        if (offsetHours < 0 || offsetHours > 14 || offsetMinutes < 0 || offsetMinutes > 59) {
+          return NOT_PARSED;
+        }
+        // Convert to UTC
+        offset = (offsetMinutes + offsetHours * 60L) * 60000L;
+        if (c == '+') {
+          offset = -offset;
+        }
+      } else {
+        return NOT_PARSED;
+      }
+    }
+
+    long days = getDaysSinceEpoch(year, month, day);
+    return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L + millis + offset;
+  }
+
+  /**
+   * Parses a fixed number of decimal digits. Returns -1 if not all digits.
+   * 
+   * @param value the char sequence
+   * @param start the start of the digits
+   * @param length the number of digits
+   */
+  private static int parseDigits(CharSequence value, int start, int length) {
+    int result = 0;
+    for (int i = start; i < start + length; i++) {
+      char c = value.charAt(i);
+      if (!isDigit(c)) {
+        return -1;
+      }
+      result = result * 10 + c - '0';
+    }
+    return result;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * Gets the number of days from 1970-01-01 to a date in the Gregorian
+   * calendar.
+   * 
+   * @param year the year
+   * @param month the month, from 1 to 12
+   * @param day the day of the month, from 1
+   */
+  private static long getDaysSinceEpoch(int year, int month, int day) {
+    // Count the years from March so that the leap day is at the end
+    int marchYear = month <= 2 ? year - 1 : year;
+    int era = marchYear / 400;
+    int yearOfEra = marchYear - era * 400;
+    int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    // 719468 is the number of days from 0000-03-01 to 1970-01-01
+    return era * 146097L + dayOfEra - 719468L;
+  }
+
+  /**
+   * Parses a double in a range of a char sequence, ignoring leading and
+   * trailing whitespace. Same as {@link Double#parseDouble(String)}, but parses
+   * decimals with up to 15 digits and no exponent without allocating.
+   * 
+   * @param value the char sequence
+   * @param start the start of the range
+   * @param end the end of the range, exclusive
+   * @throws NumberFormatException if the value is not a valid double
+   */
+  public static double parseDouble(CharSequence value, int start, int end) {
+    while (start < end && Character.isWhitespace(value.charAt(start))) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(value.charAt(end - 1))) {
+      end--;
+    }
+    int index = start;
+    boolean negative = false;
+    if (index < end && (value.charAt(index) == '-' || value.charAt(index) == '+')) {
+      negative = value.charAt(index) == '-';
+      index++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int fractionDigits = 0;
+    boolean hasPoint = false;
+    boolean parsed = true;
+    for (; index < end; index++) {
+      char c = value.charAt(index);
+      if (isDigit(c) && mantissa < MAX_EXACT_INTEGER / 10) {
+        mantissa = mantissa * 10 + c - '0';
+        digits++;
+        if (hasPoint) {
+          fractionDigits++;
+        }
+      } else if (c == '.' && !hasPoint) {
+        hasPoint = true;
+      } else {
+        parsed = false;
+        break;
+      }
+    }
+    if (!parsed || digits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+      return Double.parseDouble(value.subSequence(start, end).toString());
+    }
+    // Both are exact, so the division is correctly rounded like parseDouble
+    double result = mantissa / POWERS_OF_TEN[fractionDigits];
+    return negative ? -result : result;
+  }
+
   /**
    * Gets the time as an array of three integers. Index 0 contains the number of
    * seconds, index 1 contains the number of minutes, and index 2 contains the
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.content;
+
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * Constants for the aggregates table, the trip statistics of the tracks
+ * aggregated overall, per category, per week, and per month. Read only, the
+ * content provider keeps it in sync with the tracks table.
+ */
+public interface AggregatesColumns extends BaseColumns {
+
+  public static final String TABLE_NAME = "aggregates";
+
+  public static final Uri CONTENT_URI = Uri.parse(
+      "content://com.google.android.maps.mytracks/aggregates");
+
+  public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.google.aggregate";
+
+  public static final String DEFAULT_SORT_ORDER = "type, key DESC";
+
+  // Types
+  public static final int TYPE_ALL = 0; // all the tracks, the key is 0
+  public static final int TYPE_CATEGORY = 1; // per category, the key is the category
+  public static final int TYPE_WEEK = 2; // per week, the key is the week start time
+  public static final int TYPE_MONTH = 3; // per month, the key is the month start time
+
+  // Columns
+  public static final String TYPE = "type"; // aggregate type
+  public static final String KEY = "key"; // aggregate key for the type
+  public static final String NUMTRACKS = "numtracks"; // number of tracks
+  public static final String STARTTIME = TracksColumns.STARTTIME; // first start time
+  public static final String STOPTIME = TracksColumns.STOPTIME; // last stop time
+  public static final String TOTALDISTANCE = TracksColumns.TOTALDISTANCE; // total distance
+  public static final String TOTALTIME = TracksColumns.TOTALTIME; // total time
+  public static final String MOVINGTIME = TracksColumns.MOVINGTIME; // moving time
+  public static final String MINLAT = TracksColumns.MINLAT; // minimum latitude
+  public static final String MAXLAT = TracksColumns.MAXLAT; // maximum latitude
+  public static final String MINLON = TracksColumns.MINLON; // minimum longitude
+  public static final String MAXLON = TracksColumns.MAXLON; // maximum longitude
+  public static final String MAXSPEED = TracksColumns.MAXSPEED; // maximum speed
+  public static final String MINELEVATION = TracksColumns.MINELEVATION; // minimum elevation
+  public static final String MAXELEVATION = TracksColumns.MAXELEVATION; // maximum elevation
+  public static final String ELEVATIONGAIN = TracksColumns.ELEVATIONGAIN; // elevation gain
+  public static final String MINGRADE = TracksColumns.MINGRADE; // minimum grade
+  public static final String MAXGRADE = TracksColumns.MAXGRADE; // maximum grade
+
+  // The key is a string for the categories and an integer for the periods
+  public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " ("
+      + _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+      + TYPE + " INTEGER, "
+      + KEY + ", "
+      + NUMTRACKS + " INTEGER, "
+      + STARTTIME + " INTEGER, "
+      + STOPTIME + " INTEGER, "
+      + TOTALDISTANCE + " FLOAT, "
+      + TOTALTIME + " INTEGER, "
+      + MOVINGTIME + " INTEGER, "
+      + MINLAT + " INTEGER, "
+      + MAXLAT + " INTEGER, "
+      + MINLON + " INTEGER, "
+      + MAXLON + " INTEGER, "
+      + MAXSPEED + " FLOAT, "
+      + MINELEVATION + " FLOAT, "
+      + MAXELEVATION + " FLOAT, "
+      + ELEVATIONGAIN + " FLOAT, "
+      + MINGRADE + " FLOAT, "
+      + MAXGRADE + " FLOAT, "
+      + "UNIQUE (" + TYPE + ", " + KEY + ")"
+      + ");";
+}
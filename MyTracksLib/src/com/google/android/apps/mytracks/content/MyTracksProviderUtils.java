@@ -16,6 +16,8 @@
 
 package com.google.android.apps.mytracks.content;
 
+import com.google.android.apps.mytracks.stats.TripStatistics;
+
 import android.content.Context;
 import android.database.Cursor;
 import android.location.Location;
@@ -38,6 +40,35 @@ public interface MyTracksProviderUtils {
    */
   public static final String AUTHORITY = "com.google.android.maps.mytracks";
 
+  /**
+   * The query parameter of the tracks and waypoints uris selecting the rows
+   * inside a bounding box with the spatial index. The value is the bottom,
+   * left, top, and right bounds in microdegrees, separated by commas.
+   */
+  public static final String BOUNDS_QUERY_PARAMETER = "bounds";
+
+  /**
+   * The query parameter of the track points uri notified when track points of
+   * a single track are inserted. The value is the track id, the min inserted
+   * track point id, and the max inserted track point id, separated by commas.
+   * A query parameter is not part of the path, so the uri is notified to all
+   * the observers of the track points uri, including the observers not
+   * observing its descendants. The uri is passed to
+   * {@link android.database.ContentObserver#onChange(boolean, Uri)} from API
+   * level 16.
+   */
+  public static final String INSERTED_QUERY_PARAMETER = "inserted";
+
+  /**
+   * The key of the content values inserting a chunk of track points of a track
+   * at once, e.g., by a {@link TrackImportSession}. The value is a
+   * {@link TrackPointBuffer} written to a marshalled
+   * {@link android.os.Parcel}, and the track id is required. The track points
+   * are inserted and set as the start and stop of their track, and the uri of
+   * the last inserted track point is returned.
+   */
+  public static final String TRACK_POINTS_CHUNK_KEY = "trackpoints_chunk";
+
   /**
    * Creates a {@link Track} from a cursor.
    * 
@@ -88,6 +119,53 @@ public interface MyTracksProviderUtils {
    */
   public Cursor getTrackCursor(String selection, String[] selectionArgs, String sortOrder);
 
+  /**
+   * Gets the tracks whose bounding box intersects a bounding box, ordered by
+   * id. Uses the spatial index, without reading the other tracks.
+   * 
+   * @param bottomE6 the minimum latitude of the bounding box in microdegrees
+   * @param leftE6 the minimum longitude of the bounding box in microdegrees
+   * @param topE6 the maximum latitude of the bounding box in microdegrees
+   * @param rightE6 the maximum longitude of the bounding box in microdegrees
+   * @param maxTracks the maximum number of tracks to return, -1 for no limit
+   */
+  public List<Track> getTracksInBounds(
+      int bottomE6, int leftE6, int topE6, int rightE6, int maxTracks);
+
+  /**
+   * Gets the tracks nearest to a location, ordered by the distance between
+   * the location and their bounding box. The distance is approximated on an
+   * equirectangular projection centered on the location.
+   * 
+   * @param latitudeE6 the latitude of the location in microdegrees
+   * @param longitudeE6 the longitude of the location in microdegrees
+   * @param maxTracks the maximum number of tracks to return
+   */
+  public List<Track> getNearestTracks(int latitudeE6, int longitudeE6, int maxTracks);
+
+  /**
+   * Creates the {@link TripStatistics} of an aggregate from a cursor.
+   * 
+   * @param cursor the cursor pointing to the aggregate
+   */
+  public TripStatistics createAggregatedTripStatistics(Cursor cursor);
+
+  /**
+   * Gets the trip statistics aggregated over all the tracks, read from the
+   * aggregates table without reading the tracks. Returns null if there are no
+   * tracks.
+   */
+  public TripStatistics getAggregatedTripStatistics();
+
+  /**
+   * Gets an aggregates cursor for a type of aggregates, ordered by descending
+   * key, thus the most recent periods first. The caller owns the returned
+   * cursor and is responsible for closing it.
+   * 
+   * @param type the type, one of the {@link AggregatesColumns} types
+   */
+  public Cursor getAggregatesCursor(int type);
+
   /**
    * Inserts a track.
    * <p>
@@ -107,6 +185,18 @@ public interface MyTracksProviderUtils {
    */
   public void updateTrack(Track track);
 
+  /**
+   * Updates the statistics of a track, i.e., the start id, the stop id, the
+   * number of points, and the trip statistics. Unlike
+   * {@link #updateTrack(Track)}, the other columns such as the name and the
+   * description are left untouched. Only the columns modified since the track
+   * was last read or written, see {@link Track#getDirtyColumns()}, are written.
+   * 
+   * @param track the track
+   * @return true if the track was written, false if nothing was modified.
+   */
+  public boolean updateTrackStatistics(Track track);
+
   /**
    * Creates a waypoint from a cursor.
    * 
@@ -178,6 +268,31 @@ public interface MyTracksProviderUtils {
    */
   public Cursor getWaypointCursor(long trackId, long minWaypointId, int maxWaypoints);
 
+  /**
+   * Gets the waypoints inside a bounding box, ordered by id. Uses the spatial
+   * index, without reading the other waypoints.
+   * 
+   * @param bottomE6 the minimum latitude of the bounding box in microdegrees
+   * @param leftE6 the minimum longitude of the bounding box in microdegrees
+   * @param topE6 the maximum latitude of the bounding box in microdegrees
+   * @param rightE6 the maximum longitude of the bounding box in microdegrees
+   * @param maxWaypoints the maximum number of waypoints to return, -1 for no
+   *          limit
+   */
+  public List<Waypoint> getWaypointsInBounds(
+      int bottomE6, int leftE6, int topE6, int rightE6, int maxWaypoints);
+
+  /**
+   * Gets the waypoints nearest to a location, ordered by distance. The
+   * distance is approximated on an equirectangular projection centered on the
+   * location.
+   * 
+   * @param latitudeE6 the latitude of the location in microdegrees
+   * @param longitudeE6 the longitude of the location in microdegrees
+   * @param maxWaypoints the maximum number of waypoints to return
+   */
+  public List<Waypoint> getNearestWaypoints(int latitudeE6, int longitudeE6, int maxWaypoints);
+
   /**
    * Inserts a waypoint.
    * 
@@ -271,6 +386,25 @@ public interface MyTracksProviderUtils {
   public LocationIterator getTrackPointLocationIterator(
       long trackId, long startTrackPointId, boolean descending, LocationFactory locationFactory);
 
+  /**
+   * Creates a new read-only iterator over a given track's points at a level of
+   * detail, i.e., over the track points with a {@link TrackPointsColumns#LEVEL}
+   * greater than or equal to minLevel. The level n has about 1 / 2^n of the
+   * track points, and always includes the first point of each segment and the
+   * segment splits. Otherwise the same as
+   * {@link #getTrackPointLocationIterator(long, long, boolean, LocationFactory)}.
+   * 
+   * @param trackId the track id
+   * @param startTrackPointId the start track point id or -1L to start from the
+   *          first point
+   * @param descending true to sort the result in descending order (latest
+   *          location first)
+   * @param minLevel the min level, 0 for all the track points
+   * @param locationFactory the location factory
+   */
+  public LocationIterator getTrackPointLocationIterator(long trackId, long startTrackPointId,
+      boolean descending, int minLevel, LocationFactory locationFactory);
+
   /**
    * Inserts a track point.
    * 
@@ -280,6 +414,12 @@ public interface MyTracksProviderUtils {
    */
   public Uri insertTrackPoint(Location location, long trackId);
 
+  /**
+   * Creates a session to import a track. The track and its track points are
+   * only written when the session is committed.
+   */
+  public TrackImportSession createTrackImportSession();
+
   /**
    * A lightweight wrapper around the original {@link Cursor} with a method to
    * clean up.
@@ -309,6 +449,50 @@ public interface MyTracksProviderUtils {
     public Location createLocation();
   }
 
+  /**
+   * A session importing a track. The track points are buffered in memory and
+   * written with the track when committed, in a single transaction, so that
+   * the track point ids are contiguous and no track row is written or seen for
+   * an unfinished track. The track points are sent to the provider in chunks,
+   * see {@link #TRACK_POINTS_CHUNK_KEY}, rather than as an operation per track
+   * point. Rolling back only discards the buffered track points.
+   * <p>
+   * Not thread safe, but a session can be committed on a different thread than
+   * the one buffering the track points.
+   */
+  public interface TrackImportSession {
+
+    /**
+     * Adds track points. The locations are copied.
+     * 
+     * @param locations an array of locations
+     * @param length the number of locations (from the beginning of the array)
+     *          to add
+     */
+    public void insertTrackPoints(Location[] locations, int length);
+
+    /**
+     * Gets the number of buffered track points.
+     */
+    public int getNumberOfTrackPoints();
+
+    /**
+     * Writes the track and the buffered track points. Sets the track id, start
+     * id, and stop id of the track.
+     * 
+     * @param track the track, with the statistics of the track points
+     * @return the track id
+     * @throws android.database.SQLException if the track cannot be written, in
+     *           which case nothing is written
+     */
+    public long commit(Track track);
+
+    /**
+     * Discards the buffered track points.
+     */
+    public void rollback();
+  }
+
   /**
    * The default {@link LocationFactory} which creates a location each time.
    */
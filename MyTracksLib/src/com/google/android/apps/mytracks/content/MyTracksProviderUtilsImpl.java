@@ -20,16 +20,26 @@ import com.google.android.apps.mytracks.content.Sensor.SensorDataSet;
 import com.google.android.apps.mytracks.stats.TripStatistics;
 import com.google.protobuf.InvalidProtocolBufferException;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.location.Location;
 import android.net.Uri;
+import android.os.Parcel;
+import android.os.RemoteException;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * {@link MyTracksProviderUtils} implementation.
@@ -41,6 +51,14 @@ public class MyTracksProviderUtilsImpl implements MyTracksProviderUtils {
   private static final String TAG = MyTracksProviderUtilsImpl.class.getSimpleName();
 
   private static final int MAX_LATITUDE = 90000000;
+  private static final int MAX_LONGITUDE = 180000000;
+
+  // The half size of the first bounding box searched for the nearest tracks
+  // and waypoints, about 1 km, in microdegrees of latitude
+  private static final long NEAREST_INITIAL_RADIUS = 10000L;
+
+  // The number of track points per chunk written by a track import session
+  private static final int TRACK_POINTS_PER_CHUNK = 1000;
 
   private final ContentResolver contentResolver;
   private int defaultCursorBatchSize = 2000;
@@ -150,6 +168,7 @@ public class MyTracksProviderUtilsImpl implements MyTracksProviderUtils {
     if (!cursor.isNull(iconIndex)) {
       track.setIcon(cursor.getString(iconIndex));
     }
+    track.clearDirtyColumns();
     return track;
   }
 
@@ -236,20 +255,286 @@ public class MyTracksProviderUtilsImpl implements MyTracksProviderUtils {
     return getTrackCursor(null, selection, selectionArgs, sortOrder);
   }
 
+  @Override
+  public List<Track> getTracksInBounds(
+      int bottomE6, int leftE6, int topE6, int rightE6, int maxTracks) {
+    return getTracks(getBoundsUri(TracksColumns.CONTENT_URI, bottomE6, leftE6, topE6, rightE6),
+        TracksColumns._ID, maxTracks);
+  }
+
+  @Override
+  public List<Track> getNearestTracks(int latitudeE6, int longitudeE6, int maxTracks) {
+    String sortOrder = getSquaredDistance(TracksColumns.MINLAT,
+        TracksColumns.MAXLAT, TracksColumns.MINLON, TracksColumns.MAXLON, latitudeE6,
+        longitudeE6) + ", " + TracksColumns._ID;
+    int[] bounds = new int[4];
+    for (long radius = NEAREST_INITIAL_RADIUS;; radius *= 4) {
+      boolean all = getNearestBounds(latitudeE6, longitudeE6, radius, bounds);
+      List<Track> tracks = getTracks(
+          getBoundsUri(TracksColumns.CONTENT_URI, bounds[0], bounds[1], bounds[2], bounds[3]),
+          sortOrder, maxTracks);
+      if (all) {
+        return tracks;
+      }
+      if (tracks.size() == maxTracks) {
+        // Done if the farthest track is inside the circle inside the bounds
+        TripStatistics tripStatistics = tracks.get(maxTracks - 1).getTripStatistics();
+        if (getDistance(tripStatistics.getBottom(), tripStatistics.getTop(),
+            tripStatistics.getLeft(), tripStatistics.getRight(), latitudeE6, longitudeE6)
+            <= radius) {
+          return tracks;
+        }
+      }
+    }
+  }
+
+  @Override
+  public TripStatistics createAggregatedTripStatistics(Cursor cursor) {
+    int startTimeIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.STARTTIME);
+    int stopTimeIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.STOPTIME);
+    int totalDistanceIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.TOTALDISTANCE);
+    int totalTimeIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.TOTALTIME);
+    int movingTimeIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.MOVINGTIME);
+    int minLatIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.MINLAT);
+    int maxLatIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.MAXLAT);
+    int minLonIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.MINLON);
+    int maxLonIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.MAXLON);
+    int maxSpeedIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.MAXSPEED);
+    int minElevationIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.MINELEVATION);
+    int maxElevationIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.MAXELEVATION);
+    int elevationGainIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.ELEVATIONGAIN);
+    int minGradeIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.MINGRADE);
+    int maxGradeIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.MAXGRADE);
+
+    TripStatistics tripStatistics = new TripStatistics();
+    if (!cursor.isNull(startTimeIndex)) {
+      tripStatistics.setStartTime(cursor.getLong(startTimeIndex));
+    }
+    if (!cursor.isNull(stopTimeIndex)) {
+      tripStatistics.setStopTime(cursor.getLong(stopTimeIndex));
+    }
+    if (!cursor.isNull(totalDistanceIndex)) {
+      tripStatistics.setTotalDistance(cursor.getDouble(totalDistanceIndex));
+    }
+    if (!cursor.isNull(totalTimeIndex)) {
+      tripStatistics.setTotalTime(cursor.getLong(totalTimeIndex));
+    }
+    if (!cursor.isNull(movingTimeIndex)) {
+      tripStatistics.setMovingTime(cursor.getLong(movingTimeIndex));
+    }
+    if (!cursor.isNull(minLatIndex) && !cursor.isNull(maxLatIndex) && !cursor.isNull(minLonIndex)
+        && !cursor.isNull(maxLonIndex)) {
+      int bottom = cursor.getInt(minLatIndex);
+      int top = cursor.getInt(maxLatIndex);
+      int left = cursor.getInt(minLonIndex);
+      int right = cursor.getInt(maxLonIndex);
+      tripStatistics.setBounds(left, top, right, bottom);
+    }
+    if (!cursor.isNull(maxSpeedIndex)) {
+      tripStatistics.setMaxSpeed(cursor.getFloat(maxSpeedIndex));
+    }
+    if (!cursor.isNull(minElevationIndex)) {
+      tripStatistics.setMinElevation(cursor.getFloat(minElevationIndex));
+    }
+    if (!cursor.isNull(maxElevationIndex)) {
+      tripStatistics.setMaxElevation(cursor.getFloat(maxElevationIndex));
+    }
+    if (!cursor.isNull(elevationGainIndex)) {
+      tripStatistics.setTotalElevationGain(cursor.getFloat(elevationGainIndex));
+    }
+    if (!cursor.isNull(minGradeIndex)) {
+      tripStatistics.setMinGrade(cursor.getFloat(minGradeIndex));
+    }
+    if (!cursor.isNull(maxGradeIndex)) {
+      tripStatistics.setMaxGrade(cursor.getFloat(maxGradeIndex));
+    }
+    return tripStatistics;
+  }
+
+  @Override
+  public TripStatistics getAggregatedTripStatistics() {
+    Cursor cursor = null;
+    try {
+      cursor = getAggregatesCursor(AggregatesColumns.TYPE_ALL);
+      if (cursor != null && cursor.moveToNext()) {
+        return createAggregatedTripStatistics(cursor);
+      }
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Cursor getAggregatesCursor(int type) {
+    return contentResolver.query(AggregatesColumns.CONTENT_URI, null,
+        AggregatesColumns.TYPE + "=?", new String[] { Integer.toString(type) },
+        AggregatesColumns.KEY + " DESC");
+  }
+
+  /**
+   * Gets the uri of the rows inside a bounding box, with the
+   * {@link MyTracksProviderUtils#BOUNDS_QUERY_PARAMETER}.
+   * 
+   * @param uri the tracks or waypoints uri
+   * @param bottomE6 the minimum latitude of the bounding box in microdegrees
+   * @param leftE6 the minimum longitude of the bounding box in microdegrees
+   * @param topE6 the maximum latitude of the bounding box in microdegrees
+   * @param rightE6 the maximum longitude of the bounding box in microdegrees
+   */
+  private Uri getBoundsUri(Uri uri, int bottomE6, int leftE6, int topE6, int rightE6) {
+    return uri.buildUpon().appendQueryParameter(BOUNDS_QUERY_PARAMETER,
+        bottomE6 + "," + leftE6 + "," + topE6 + "," + rightE6).build();
+  }
+
+  /**
+   * Gets tracks.
+   * 
+   * @param uri the tracks uri
+   * @param sortOrder the sort order
+   * @param maxTracks the maximum number of tracks to return, -1 for no limit
+   */
+  private List<Track> getTracks(Uri uri, String sortOrder, int maxTracks) {
+    if (maxTracks > 0) {
+      sortOrder += " LIMIT " + maxTracks;
+    }
+    Cursor cursor = contentResolver.query(uri, null, null, null, sortOrder);
+    ArrayList<Track> tracks = new ArrayList<Track>();
+    if (cursor != null) {
+      try {
+        tracks.ensureCapacity(cursor.getCount());
+        while (cursor.moveToNext()) {
+          tracks.add(createTrack(cursor));
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+    return tracks;
+  }
+
+  /**
+   * Gets the bounding box searched for the nearest tracks or waypoints, a
+   * square around a location in an equirectangular projection centered on
+   * the location. Returns true if the bounding box covers the whole world.
+   * 
+   * @param latitudeE6 the latitude of the location in microdegrees
+   * @param longitudeE6 the longitude of the location in microdegrees
+   * @param radius the half size of the square in microdegrees of latitude
+   * @param bounds the bounds to set: bottom, left, top and right
+   */
+  private boolean getNearestBounds(int latitudeE6, int longitudeE6, long radius, int[] bounds) {
+    double scale = getLongitudeScale(latitudeE6);
+    long longitudeRadius = scale > 0 ? (long) Math.ceil(radius / scale) : 2L * MAX_LONGITUDE;
+    long bottom = Math.max(latitudeE6 - radius, -MAX_LATITUDE);
+    long left = Math.max(longitudeE6 - longitudeRadius, -MAX_LONGITUDE);
+    long top = Math.min(latitudeE6 + radius, MAX_LATITUDE);
+    long right = Math.min(longitudeE6 + longitudeRadius, MAX_LONGITUDE);
+    bounds[0] = (int) bottom;
+    bounds[1] = (int) left;
+    bounds[2] = (int) top;
+    bounds[3] = (int) right;
+    return bottom == -MAX_LATITUDE && left == -MAX_LONGITUDE && top == MAX_LATITUDE
+        && right == MAX_LONGITUDE;
+  }
+
+  /**
+   * Gets an SQL expression for the distance between a location and the
+   * bounding box of a row, in microdegrees of latitude, on an equirectangular
+   * projection centered on the location. Accurate enough to rank nearby rows.
+   * 
+   * @param minLat the minimum latitude column
+   * @param maxLat the maximum latitude column
+   * @param minLon the minimum longitude column
+   * @param maxLon the maximum longitude column
+   * @param latitudeE6 the latitude of the location in microdegrees
+   * @param longitudeE6 the longitude of the location in microdegrees
+   */
+  private static String getSquaredDistance(String minLat, String maxLat, String minLon,
+      String maxLon, int latitudeE6, int longitudeE6) {
+    String dy = "max(" + minLat + " - " + latitudeE6 + ", 0, " + latitudeE6 + " - " + maxLat
+        + ")";
+    String dx = "(max(" + minLon + " - " + longitudeE6 + ", 0, " + longitudeE6 + " - " + maxLon
+        + ") * " + getLongitudeScale(latitudeE6) + ")";
+    return "(" + dy + " * " + dy + " + " + dx + " * " + dx + ")";
+  }
+
+  /**
+   * Gets the distance between a location and a bounding box, as
+   * {@link #getSquaredDistance(String, String, String, String, int, int)}
+   * without the square.
+   * 
+   * @param bottomE6 the minimum latitude of the bounding box in microdegrees
+   * @param topE6 the maximum latitude of the bounding box in microdegrees
+   * @param leftE6 the minimum longitude of the bounding box in microdegrees
+   * @param rightE6 the maximum longitude of the bounding box in microdegrees
+   * @param latitudeE6 the latitude of the location in microdegrees
+   * @param longitudeE6 the longitude of the location in microdegrees
+   */
+  private static double getDistance(
+      int bottomE6, int topE6, int leftE6, int rightE6, int latitudeE6, int longitudeE6) {
+    double dy = Math.max(Math.max(bottomE6 - latitudeE6, 0), latitudeE6 - topE6);
+    double dx = Math.max(Math.max(leftE6 - longitudeE6, 0), longitudeE6 - rightE6)
+        * getLongitudeScale(latitudeE6);
+    return Math.sqrt(dy * dy + dx * dx);
+  }
+
+  /**
+   * Gets the length of a microdegree of longitude in microdegrees of latitude
+   * at a latitude.
+   * 
+   * @param latitudeE6 the latitude in microdegrees
+   */
+  private static double getLongitudeScale(int latitudeE6) {
+    return Math.cos(Math.toRadians(latitudeE6 / 1E6));
+  }
+
   @Override
   public Uri insertTrack(Track track) {
-    return contentResolver.insert(TracksColumns.CONTENT_URI, createContentValues(track));
+    Uri uri = contentResolver.insert(TracksColumns.CONTENT_URI, createContentValues(track));
+    track.clearDirtyColumns();
+    return uri;
   }
 
   @Override
   public void updateTrack(Track track) {
     contentResolver.update(TracksColumns.CONTENT_URI, createContentValues(track),
         TracksColumns._ID + "=?", new String[] { Long.toString(track.getId()) });
+    track.clearDirtyColumns();
+  }
+
+  @Override
+  public boolean updateTrackStatistics(Track track) {
+    ContentValues values = new ContentValues();
+    putStatistics(values, track);
+
+    // Only write the dirty columns
+    Set<String> dirtyColumns = track.getDirtyColumns();
+    Set<String> cleanColumns = new HashSet<String>();
+    Set<String> writtenColumns = new HashSet<String>();
+    for (Map.Entry<String, Object> entry : values.valueSet()) {
+      if (dirtyColumns.contains(entry.getKey())) {
+        writtenColumns.add(entry.getKey());
+      } else {
+        cleanColumns.add(entry.getKey());
+      }
+    }
+    if (writtenColumns.isEmpty()) {
+      return false;
+    }
+    for (String column : cleanColumns) {
+      values.remove(column);
+    }
+    contentResolver.update(TracksColumns.CONTENT_URI, values, TracksColumns._ID + "=?",
+        new String[] { Long.toString(track.getId()) });
+    track.clearDirtyColumns(writtenColumns);
+    return true;
   }
 
   private ContentValues createContentValues(Track track) {
     ContentValues values = new ContentValues();
-    TripStatistics tripStatistics = track.getTripStatistics();
 
     // Value < 0 indicates no id is available
     if (track.getId() >= 0) {
@@ -258,6 +543,22 @@ public class MyTracksProviderUtilsImpl implements MyTracksProviderUtils {
     values.put(TracksColumns.NAME, track.getName());
     values.put(TracksColumns.DESCRIPTION, track.getDescription());
     values.put(TracksColumns.CATEGORY, track.getCategory());
+    putStatistics(values, track);
+    values.put(TracksColumns.MAPID, track.getMapId());
+    values.put(TracksColumns.TABLEID, track.getTableId());
+    values.put(TracksColumns.ICON, track.getIcon());
+    return values;
+  }
+
+  /**
+   * Puts the statistics columns of a track, i.e., the start id, the stop id,
+   * the number of points, and the trip statistics.
+   * 
+   * @param values the content values
+   * @param track the track
+   */
+  private void putStatistics(ContentValues values, Track track) {
+    TripStatistics tripStatistics = track.getTripStatistics();
     values.put(TracksColumns.STARTID, track.getStartId());
     values.put(TracksColumns.STOPID, track.getStopId());
     values.put(TracksColumns.STARTTIME, tripStatistics.getStartTime());
@@ -278,10 +579,6 @@ public class MyTracksProviderUtilsImpl implements MyTracksProviderUtils {
     values.put(TracksColumns.ELEVATIONGAIN, tripStatistics.getTotalElevationGain());
     values.put(TracksColumns.MINGRADE, tripStatistics.getMinGrade());
     values.put(TracksColumns.MAXGRADE, tripStatistics.getMaxGrade());
-    values.put(TracksColumns.MAPID, track.getMapId());
-    values.put(TracksColumns.TABLEID, track.getTableId());
-    values.put(TracksColumns.ICON, track.getIcon());
-    return values;
   }
 
   /**
@@ -571,6 +868,68 @@ public class MyTracksProviderUtilsImpl implements MyTracksProviderUtils {
     return getWaypointCursor(null, selection, selectionArgs, WaypointsColumns._ID, maxWaypoints);
   }
 
+  @Override
+  public List<Waypoint> getWaypointsInBounds(
+      int bottomE6, int leftE6, int topE6, int rightE6, int maxWaypoints) {
+    return getWaypoints(
+        getBoundsUri(WaypointsColumns.CONTENT_URI, bottomE6, leftE6, topE6, rightE6),
+        WaypointsColumns._ID, maxWaypoints);
+  }
+
+  @Override
+  public List<Waypoint> getNearestWaypoints(int latitudeE6, int longitudeE6, int maxWaypoints) {
+    String sortOrder = getSquaredDistance(WaypointsColumns.LATITUDE,
+        WaypointsColumns.LATITUDE, WaypointsColumns.LONGITUDE, WaypointsColumns.LONGITUDE,
+        latitudeE6, longitudeE6) + ", " + WaypointsColumns._ID;
+    int[] bounds = new int[4];
+    for (long radius = NEAREST_INITIAL_RADIUS;; radius *= 4) {
+      boolean all = getNearestBounds(latitudeE6, longitudeE6, radius, bounds);
+      List<Waypoint> waypoints = getWaypoints(
+          getBoundsUri(WaypointsColumns.CONTENT_URI, bounds[0], bounds[1], bounds[2], bounds[3]),
+          sortOrder, maxWaypoints);
+      if (all) {
+        return waypoints;
+      }
+      if (waypoints.size() == maxWaypoints) {
+        // Done if the farthest waypoint is inside the circle inside the bounds
+        Location location = waypoints.get(maxWaypoints - 1).getLocation();
+        int waypointLatitudeE6 = (int) (location.getLatitude() * 1E6);
+        int waypointLongitudeE6 = (int) (location.getLongitude() * 1E6);
+        if (getDistance(waypointLatitudeE6, waypointLatitudeE6, waypointLongitudeE6,
+            waypointLongitudeE6, latitudeE6, longitudeE6) <= radius) {
+          return waypoints;
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets waypoints.
+   * 
+   * @param uri the waypoints uri
+   * @param sortOrder the sort order
+   * @param maxWaypoints the maximum number of waypoints to return, -1 for no
+   *          limit
+   */
+  private List<Waypoint> getWaypoints(Uri uri, String sortOrder, int maxWaypoints) {
+    if (maxWaypoints > 0) {
+      sortOrder += " LIMIT " + maxWaypoints;
+    }
+    Cursor cursor = contentResolver.query(uri, null, null, null, sortOrder);
+    ArrayList<Waypoint> waypoints = new ArrayList<Waypoint>();
+    if (cursor != null) {
+      try {
+        waypoints.ensureCapacity(cursor.getCount());
+        while (cursor.moveToNext()) {
+          waypoints.add(createWaypoint(cursor));
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+    return waypoints;
+  }
+
   @Override
   public Uri insertWaypoint(Waypoint waypoint) {
     waypoint.setId(-1L);
@@ -769,23 +1128,45 @@ public class MyTracksProviderUtilsImpl implements MyTracksProviderUtils {
   @Override
   public Cursor getTrackPointCursor(
       long trackId, long startTrackPointId, int maxLocations, boolean descending) {
+    return getTrackPointCursor(trackId, startTrackPointId, maxLocations, descending, 0);
+  }
+
+  /**
+   * Gets a track point cursor at a level of detail.
+   * 
+   * @param trackId the track id
+   * @param startTrackPointId the starting track point id
+   * @param maxLocations maximum number of locations to return
+   * @param descending true to sort the result in descending order
+   * @param minLevel the min level, 0 for all the track points
+   */
+  private Cursor getTrackPointCursor(
+      long trackId, long startTrackPointId, int maxLocations, boolean descending, int minLevel) {
     if (trackId < 0) {
       return null;
     }
 
+    /*
+     * For a level of detail, the unary + prevents SQLite from using the trackid
+     * index to scan the whole track in _id order. SQLite then uses the level
+     * index to only read the track points of the level, and sorts them.
+     */
+    String idColumn = minLevel > 0 ? "+" + TrackPointsColumns._ID : TrackPointsColumns._ID;
     String selection;
     String[] selectionArgs;
     if (startTrackPointId >= 0) {
       String comparison = descending ? "<=" : ">=";
-      selection = TrackPointsColumns.TRACKID + "=? AND " + TrackPointsColumns._ID + comparison
-          + "?";
+      selection = TrackPointsColumns.TRACKID + "=? AND " + idColumn + comparison + "?";
       selectionArgs = new String[] { Long.toString(trackId), Long.toString(startTrackPointId) };
     } else {
       selection = TrackPointsColumns.TRACKID + "=?";
       selectionArgs = new String[] { Long.toString(trackId) };
     }
+    if (minLevel > 0) {
+      selection += " AND " + TrackPointsColumns.LEVEL + ">=" + minLevel;
+    }
 
-    String sortOrder = TrackPointsColumns._ID;
+    String sortOrder = idColumn;
     if (descending) {
       sortOrder += " DESC";
     }
@@ -795,9 +1176,16 @@ public class MyTracksProviderUtilsImpl implements MyTracksProviderUtils {
     return getTrackPointCursor(null, selection, selectionArgs, sortOrder);
   }
 
+  @Override
+  public LocationIterator getTrackPointLocationIterator(long trackId, long startTrackPointId,
+      boolean descending, LocationFactory locationFactory) {
+    return getTrackPointLocationIterator(
+        trackId, startTrackPointId, descending, 0, locationFactory);
+  }
+
   @Override
   public LocationIterator getTrackPointLocationIterator(final long trackId,
-      final long startTrackPointId, final boolean descending,
+      final long startTrackPointId, final boolean descending, final int minLevel,
       final LocationFactory locationFactory) {
     if (locationFactory == null) {
       throw new IllegalArgumentException("locationFactory is null");
@@ -815,7 +1203,8 @@ public class MyTracksProviderUtilsImpl implements MyTracksProviderUtils {
        * @param trackPointId the starting track point id
        */
       private Cursor getCursor(long trackPointId) {
-        return getTrackPointCursor(trackId, trackPointId, defaultCursorBatchSize, descending);
+        return getTrackPointCursor(
+            trackId, trackPointId, defaultCursorBatchSize, descending, minLevel);
       }
 
       /**
@@ -889,6 +1278,11 @@ public class MyTracksProviderUtilsImpl implements MyTracksProviderUtils {
         TrackPointsColumns.CONTENT_URI, createContentValues(location, trackId));
   }
 
+  @Override
+  public TrackImportSession createTrackImportSession() {
+    return new TrackImportSessionImpl();
+  }
+
   /**
    * Creates the {@link ContentValues} for a {@link Location}.
    * 
@@ -929,6 +1323,47 @@ public class MyTracksProviderUtilsImpl implements MyTracksProviderUtils {
     return values;
   }
 
+  /**
+   * Creates the {@link ContentValues} for a track point of a
+   * {@link TrackPointBuffer}. Also used by the provider to insert a chunk of
+   * track points.
+   * 
+   * @param trackPointBuffer the track point buffer
+   * @param index the track point index
+   * @param trackId the track id
+   */
+  static ContentValues createContentValues(
+      TrackPointBuffer trackPointBuffer, int index, long trackId) {
+    ContentValues values = new ContentValues();
+    values.put(TrackPointsColumns.TRACKID, trackId);
+    values.put(TrackPointsColumns.LONGITUDE, trackPointBuffer.getLongitudeE6(index));
+    values.put(TrackPointsColumns.LATITUDE, trackPointBuffer.getLatitudeE6(index));
+
+    // Hack for Samsung phones that don't properly populate the time field
+    long time = trackPointBuffer.getTime(index);
+    if (time == 0) {
+      time = System.currentTimeMillis();
+    }
+    values.put(TrackPointsColumns.TIME, time);
+    if (trackPointBuffer.hasAltitude(index)) {
+      values.put(TrackPointsColumns.ALTITUDE, trackPointBuffer.getAltitude(index));
+    }
+    if (trackPointBuffer.hasAccuracy(index)) {
+      values.put(TrackPointsColumns.ACCURACY, trackPointBuffer.getAccuracy(index));
+    }
+    if (trackPointBuffer.hasSpeed(index)) {
+      values.put(TrackPointsColumns.SPEED, trackPointBuffer.getSpeed(index));
+    }
+    if (trackPointBuffer.hasBearing(index)) {
+      values.put(TrackPointsColumns.BEARING, trackPointBuffer.getBearing(index));
+    }
+    SensorDataSet sensorDataSet = trackPointBuffer.getSensorDataSet(index);
+    if (sensorDataSet != null) {
+      values.put(TrackPointsColumns.SENSOR, sensorDataSet.toByteArray());
+    }
+    return values;
+  }
+
   /**
    * Fills a track point from a cursor.
    * 
@@ -1000,6 +1435,81 @@ public class MyTracksProviderUtilsImpl implements MyTracksProviderUtils {
         TrackPointsColumns.CONTENT_URI, projection, selection, selectionArgs, sortOrder);
   }
 
+  /**
+   * {@link TrackImportSession} implementation. Writes the track and chunks of
+   * its track points with a single
+   * {@link ContentResolver#applyBatch(String, ArrayList)}, which the provider
+   * runs in a single transaction.
+   */
+  private class TrackImportSessionImpl implements TrackImportSession {
+
+    private final TrackPointBuffer trackPointBuffer = new TrackPointBuffer();
+
+      @Override
+    public void insertTrackPoints(Location[] locations, int length) {
+      for (int i = 0; i < length; i++) {
+        trackPointBuffer.add(locations[i]);
+      }
+    }
+
+      @Override
+    public int getNumberOfTrackPoints() {
+      return trackPointBuffer.size();
+    }
+
+      @Override
+    public long commit(Track track) {
+      int size = trackPointBuffer.size();
+      ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(
+          1 + (size + TRACK_POINTS_PER_CHUNK - 1) / TRACK_POINTS_PER_CHUNK);
+
+      // Insert the track without start and stop ids, set by the track points
+      track.setStartId(-1L);
+      track.setStopId(-1L);
+      operations.add(ContentProviderOperation.newInsert(TracksColumns.CONTENT_URI)
+          .withValues(createContentValues(track)).build());
+      Parcel parcel = Parcel.obtain();
+      try {
+        for (int start = 0; start < size; start += TRACK_POINTS_PER_CHUNK) {
+          parcel.setDataSize(0);
+          parcel.setDataPosition(0);
+          trackPointBuffer.writeToParcel(
+              parcel, start, Math.min(start + TRACK_POINTS_PER_CHUNK, size));
+          operations.add(ContentProviderOperation.newInsert(TrackPointsColumns.CONTENT_URI)
+              .withValue(TRACK_POINTS_CHUNK_KEY, parcel.marshall())
+              .withValueBackReference(TrackPointsColumns.TRACKID, 0).build());
+        }
+      } finally {
+        parcel.recycle();
+      }
+
+      ContentProviderResult[] results;
+      try {
+        results = contentResolver.applyBatch(AUTHORITY, operations);
+      } catch (RemoteException e) {
+        Log.e(TAG, "Unable to write the track.", e);
+        throw new SQLException("Unable to write the track: " + e.getMessage());
+      } catch (OperationApplicationException e) {
+        Log.e(TAG, "Unable to write the track.", e);
+        throw new SQLException("Unable to write the track: " + e.getMessage());
+      }
+      long trackId = ContentUris.parseId(results[0].uri);
+      track.setId(trackId);
+      if (size > 0) {
+        track.setStartId(getFirstTrackPointId(trackId));
+        track.setStopId(ContentUris.parseId(results[results.length - 1].uri));
+      }
+      track.clearDirtyColumns();
+      trackPointBuffer.clear();
+      return trackId;
+    }
+
+      @Override
+    public void rollback() {
+      trackPointBuffer.clear();
+    }
+  }
+
   /**
    * A cache of track points indexes.
    */
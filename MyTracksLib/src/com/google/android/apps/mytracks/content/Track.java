@@ -23,6 +23,10 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * A track.
@@ -49,7 +53,21 @@ public class Track implements Parcelable {
   private TripStatistics tripStatistics = new TripStatistics();
 
   // Location points (which may not have been loaded)
-  private ArrayList<Location> locations = new ArrayList<Location>();
+  private TrackPointBuffer trackPointBuffer = new TrackPointBuffer();
+
+  // The columns modified since the last call to clearDirtyColumns
+  private final HashSet<String> dirtyColumns = new HashSet<String>();
+
+  // The columns storing the trip statistics
+  private static final Set<String> TRIP_STATISTICS_COLUMNS = new HashSet<String>();
+  static {
+    Collections.addAll(TRIP_STATISTICS_COLUMNS, TracksColumns.STARTTIME, TracksColumns.STOPTIME,
+        TracksColumns.TOTALDISTANCE, TracksColumns.TOTALTIME, TracksColumns.MOVINGTIME,
+        TracksColumns.MINLAT, TracksColumns.MAXLAT, TracksColumns.MINLON, TracksColumns.MAXLON,
+        TracksColumns.AVGSPEED, TracksColumns.AVGMOVINGSPEED, TracksColumns.MAXSPEED,
+        TracksColumns.MINELEVATION, TracksColumns.MAXELEVATION, TracksColumns.ELEVATIONGAIN,
+        TracksColumns.MINGRADE, TracksColumns.MAXGRADE);
+  }
 
   public Track() {}
 
@@ -67,11 +85,10 @@ public class Track implements Parcelable {
 
     ClassLoader classLoader = getClass().getClassLoader();
     tripStatistics = in.readParcelable(classLoader);
+    trackPointBuffer = in.readParcelable(classLoader);
 
-    for (int i = 0; i < numberOfPoints; ++i) {
-      Location loc = in.readParcelable(classLoader);
-      locations.add(loc);
-    }
+    // The columns modified in the parceled track are not parceled
+    dirtyColumns.clear();
   }
 
   @Override
@@ -92,9 +109,7 @@ public class Track implements Parcelable {
     dest.writeString(tableId);
     dest.writeString(icon);
     dest.writeParcelable(tripStatistics, 0);
-    for (int i = 0; i < numberOfPoints; ++i) {
-      dest.writeParcelable(locations.get(i), 0);
-    }
+    dest.writeParcelable(trackPointBuffer, 0);
   }
 
   public static final Parcelable.Creator<Track> CREATOR = new Parcelable.Creator<Track>() {
@@ -122,6 +137,9 @@ public class Track implements Parcelable {
   }
 
   public void setName(String name) {
+    if (!equals(this.name, name)) {
+      dirtyColumns.add(TracksColumns.NAME);
+    }
     this.name = name;
   }
 
@@ -130,6 +148,9 @@ public class Track implements Parcelable {
   }
 
   public void setDescription(String description) {
+    if (!equals(this.description, description)) {
+      dirtyColumns.add(TracksColumns.DESCRIPTION);
+    }
     this.description = description;
   }
 
@@ -138,6 +159,9 @@ public class Track implements Parcelable {
   }
 
   public void setCategory(String category) {
+    if (!equals(this.category, category)) {
+      dirtyColumns.add(TracksColumns.CATEGORY);
+    }
     this.category = category;
   }
 
@@ -146,6 +170,9 @@ public class Track implements Parcelable {
   }
 
   public void setStartId(long startId) {
+    if (this.startId != startId) {
+      dirtyColumns.add(TracksColumns.STARTID);
+    }
     this.startId = startId;
   }
 
@@ -154,6 +181,9 @@ public class Track implements Parcelable {
   }
 
   public void setStopId(long stopId) {
+    if (this.stopId != stopId) {
+      dirtyColumns.add(TracksColumns.STOPID);
+    }
     this.stopId = stopId;
   }
 
@@ -162,6 +192,9 @@ public class Track implements Parcelable {
   }
 
   public void setNumberOfPoints(int numberOfPoints) {
+    if (this.numberOfPoints != numberOfPoints) {
+      dirtyColumns.add(TracksColumns.NUMPOINTS);
+    }
     this.numberOfPoints = numberOfPoints;
   }
 
@@ -170,6 +203,9 @@ public class Track implements Parcelable {
   }
 
   public void setMapId(String mapId) {
+    if (!equals(this.mapId, mapId)) {
+      dirtyColumns.add(TracksColumns.MAPID);
+    }
     this.mapId = mapId;
   }
 
@@ -178,6 +214,9 @@ public class Track implements Parcelable {
   }
 
   public void setTableId(String tableId) {
+    if (!equals(this.tableId, tableId)) {
+      dirtyColumns.add(TracksColumns.TABLEID);
+    }
     this.tableId = tableId;
   }
 
@@ -186,6 +225,9 @@ public class Track implements Parcelable {
   }
 
   public void setIcon(String icon) {
+    if (!equals(this.icon, icon)) {
+      dirtyColumns.add(TracksColumns.ICON);
+    }
     this.icon = icon;
   }
 
@@ -194,18 +236,151 @@ public class Track implements Parcelable {
   }
 
   public void setTripStatistics(TripStatistics tripStatistics) {
+    addDirtyColumns(this.tripStatistics, tripStatistics);
     this.tripStatistics = tripStatistics;
   }
 
   public void addLocation(Location l) {
-    locations.add(l);
+    trackPointBuffer.add(l);
   }
 
-  public ArrayList<Location> getLocations() {
-    return locations;
+  public TrackPointBuffer getTrackPointBuffer() {
+    return trackPointBuffer;
   }
 
+  /**
+   * Gets a read-only copy of the locations of the track points. Changing the
+   * copy wouldn't change the track, so the list is unmodifiable.
+   *
+   * @deprecated use {@link #getTrackPointBuffer()}, which doesn't allocate a
+   *             {@link Location} per track point
+   */
+  @Deprecated
+  public List<Location> getLocations() {
+    ArrayList<Location> locations = new ArrayList<Location>(trackPointBuffer.size());
+    for (int i = 0; i < trackPointBuffer.size(); i++) {
+      locations.add(trackPointBuffer.createLocation(i));
+    }
+    return Collections.unmodifiableList(locations);
+  }
+
+  /**
+   * Replaces the track points with locations.
+   *
+   * @deprecated use {@link #getTrackPointBuffer()} and
+   *             {@link #addLocation(Location)}
+   */
+  @Deprecated
   public void setLocations(ArrayList<Location> locations) {
-    this.locations = locations;
+    trackPointBuffer.clear();
+    for (Location location : locations) {
+      trackPointBuffer.add(location);
+    }
+  }
+
+  /**
+   * Gets the {@link TracksColumns} modified by the setters since the last call
+   * to {@link #clearDirtyColumns()}. Note that modifying the
+   * {@link TripStatistics} returned by {@link #getTripStatistics()} in place
+   * is not tracked.
+   */
+  public Set<String> getDirtyColumns() {
+    return Collections.unmodifiableSet(dirtyColumns);
+  }
+
+  /**
+   * Returns true if any column has been modified since the last call to
+   * {@link #clearDirtyColumns()}.
+   */
+  public boolean isDirty() {
+    return !dirtyColumns.isEmpty();
+  }
+
+  /**
+   * Clears the dirty columns, e.g., after reading the track from or writing the
+   * track to the provider.
+   */
+  public void clearDirtyColumns() {
+    dirtyColumns.clear();
+  }
+
+  /**
+   * Clears some of the dirty columns.
+   * 
+   * @param columns the columns
+   */
+  public void clearDirtyColumns(Set<String> columns) {
+    dirtyColumns.removeAll(columns);
+  }
+
+  /**
+   * Adds the trip statistics columns that differ between two trip statistics
+   * to the dirty columns.
+   * 
+   * @param oldStatistics the old trip statistics
+   * @param newStatistics the new trip statistics
+   */
+  private void addDirtyColumns(TripStatistics oldStatistics, TripStatistics newStatistics) {
+    if (oldStatistics == null || newStatistics == null) {
+      if (oldStatistics != newStatistics) {
+        dirtyColumns.addAll(TRIP_STATISTICS_COLUMNS);
+      }
+      return;
+    }
+    if (oldStatistics.getStartTime() != newStatistics.getStartTime()) {
+      dirtyColumns.add(TracksColumns.STARTTIME);
+    }
+    if (oldStatistics.getStopTime() != newStatistics.getStopTime()) {
+      dirtyColumns.add(TracksColumns.STOPTIME);
+    }
+    if (oldStatistics.getTotalDistance() != newStatistics.getTotalDistance()) {
+      dirtyColumns.add(TracksColumns.TOTALDISTANCE);
+    }
+    if (oldStatistics.getTotalTime() != newStatistics.getTotalTime()) {
+      dirtyColumns.add(TracksColumns.TOTALTIME);
+    }
+    if (oldStatistics.getMovingTime() != newStatistics.getMovingTime()) {
+      dirtyColumns.add(TracksColumns.MOVINGTIME);
+    }
+    if (oldStatistics.getBottom() != newStatistics.getBottom()) {
+      dirtyColumns.add(TracksColumns.MINLAT);
+    }
+    if (oldStatistics.getTop() != newStatistics.getTop()) {
+      dirtyColumns.add(TracksColumns.MAXLAT);
+    }
+    if (oldStatistics.getLeft() != newStatistics.getLeft()) {
+      dirtyColumns.add(TracksColumns.MINLON);
+    }
+    if (oldStatistics.getRight() != newStatistics.getRight()) {
+      dirtyColumns.add(TracksColumns.MAXLON);
+    }
+    if (oldStatistics.getAverageSpeed() != newStatistics.getAverageSpeed()) {
+      dirtyColumns.add(TracksColumns.AVGSPEED);
+    }
+    if (oldStatistics.getAverageMovingSpeed() != newStatistics.getAverageMovingSpeed()) {
+      dirtyColumns.add(TracksColumns.AVGMOVINGSPEED);
+    }
+    if (oldStatistics.getMaxSpeed() != newStatistics.getMaxSpeed()) {
+      dirtyColumns.add(TracksColumns.MAXSPEED);
+    }
+    if (oldStatistics.getMinElevation() != newStatistics.getMinElevation()) {
+      dirtyColumns.add(TracksColumns.MINELEVATION);
+    }
+    if (oldStatistics.getMaxElevation() != newStatistics.getMaxElevation()) {
+      dirtyColumns.add(TracksColumns.MAXELEVATION);
+    }
+    if (oldStatistics.getTotalElevationGain() != newStatistics.getTotalElevationGain()) {
+      dirtyColumns.add(TracksColumns.ELEVATIONGAIN);
+    }
+    if (oldStatistics.getMinGrade() != newStatistics.getMinGrade()) {
+      dirtyColumns.add(TracksColumns.MINGRADE);
+    }
+    if (oldStatistics.getMaxGrade() != newStatistics.getMaxGrade()) {
+      dirtyColumns.add(TracksColumns.MAXGRADE);
+    }
+  }
+
+  private static boolean equals(String a, String b) {
+    return a == null ? b == null : a.equals(b);
   }
 }
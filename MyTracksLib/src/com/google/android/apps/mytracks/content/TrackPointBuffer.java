@@ -0,0 +1,374 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.content;
+
+import com.google.android.apps.mytracks.content.Sensor.SensorDataSet;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.Log;
+
+/**
+ * A growable buffer of track points stored in parallel primitive arrays, one
+ * per field, instead of one {@link Location} object per track point. Like in
+ * the database, the latitude and longitude are stored as E6 integers, see
+ * {@link TrackPointsColumns}. The sensor data column is only allocated once a
+ * track point with sensor data is added.
+ * <p>
+ * Not thread safe.
+ */
+public class TrackPointBuffer implements Parcelable {
+
+  private static final String TAG = TrackPointBuffer.class.getSimpleName();
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final byte HAS_ALTITUDE = 1;
+  private static final byte HAS_ACCURACY = 1 << 1;
+  private static final byte HAS_SPEED = 1 << 2;
+  private static final byte HAS_BEARING = 1 << 3;
+
+  private int size = 0;
+  private int[] latitudes;
+  private int[] longitudes;
+  private long[] times;
+  private double[] altitudes;
+  private float[] accuracies;
+  private float[] speeds;
+  private float[] bearings;
+  private byte[] flags;
+  private SensorDataSet[] sensorDataSets = null;
+
+  public TrackPointBuffer() {
+    this(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Creates a track point buffer.
+   *
+   * @param capacity the initial capacity
+   */
+  public TrackPointBuffer(int capacity) {
+    allocate(Math.max(capacity, 1));
+  }
+
+  /**
+   * Gets the number of track points.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Removes all the track points. Keeps the allocated arrays.
+   */
+  public void clear() {
+    if (sensorDataSets != null) {
+      for (int i = 0; i < size; i++) {
+        sensorDataSets[i] = null;
+      }
+    }
+    size = 0;
+  }
+
+  /**
+   * Adds a track point.
+   *
+   * @param location the location
+   */
+  public void add(Location location) {
+    ensureCapacity(size + 1);
+    latitudes[size] = (int) Math.round(location.getLatitude() * 1E6);
+    longitudes[size] = (int) Math.round(location.getLongitude() * 1E6);
+    times[size] = location.getTime();
+    altitudes[size] = location.getAltitude();
+    accuracies[size] = location.getAccuracy();
+    speeds[size] = location.getSpeed();
+    bearings[size] = location.getBearing();
+    byte flag = 0;
+    if (location.hasAltitude()) {
+      flag |= HAS_ALTITUDE;
+    }
+    if (location.hasAccuracy()) {
+      flag |= HAS_ACCURACY;
+    }
+    if (location.hasSpeed()) {
+      flag |= HAS_SPEED;
+    }
+    if (location.hasBearing()) {
+      flag |= HAS_BEARING;
+    }
+    flags[size] = flag;
+    if (location instanceof MyTracksLocation) {
+      SensorDataSet sensorDataSet = ((MyTracksLocation) location).getSensorDataSet();
+      if (sensorDataSet != null) {
+        if (sensorDataSets == null) {
+          sensorDataSets = new SensorDataSet[latitudes.length];
+        }
+        sensorDataSets[size] = sensorDataSet;
+      }
+    }
+    size++;
+  }
+
+  public int getLatitudeE6(int index) {
+    return latitudes[index];
+  }
+
+  public int getLongitudeE6(int index) {
+    return longitudes[index];
+  }
+
+  public double getLatitude(int index) {
+    return latitudes[index] / 1E6;
+  }
+
+  public double getLongitude(int index) {
+    return longitudes[index] / 1E6;
+  }
+
+  public long getTime(int index) {
+    return times[index];
+  }
+
+  public boolean hasAltitude(int index) {
+    return (flags[index] & HAS_ALTITUDE) != 0;
+  }
+
+  public double getAltitude(int index) {
+    return altitudes[index];
+  }
+
+  public boolean hasAccuracy(int index) {
+    return (flags[index] & HAS_ACCURACY) != 0;
+  }
+
+  public float getAccuracy(int index) {
+    return accuracies[index];
+  }
+
+  public boolean hasSpeed(int index) {
+    return (flags[index] & HAS_SPEED) != 0;
+  }
+
+  public float getSpeed(int index) {
+    return speeds[index];
+  }
+
+  public boolean hasBearing(int index) {
+    return (flags[index] & HAS_BEARING) != 0;
+  }
+
+  public float getBearing(int index) {
+    return bearings[index];
+  }
+
+  /**
+   * Gets the sensor data set of a track point. Returns null if not available.
+   *
+   * @param index the track point index
+   */
+  public SensorDataSet getSensorDataSet(int index) {
+    return sensorDataSets != null ? sensorDataSets[index] : null;
+  }
+
+  /**
+   * Creates a location from a track point. Only use it where a
+   * {@link Location} is required since it allocates a new object.
+   *
+   * @param index the track point index
+   */
+  public Location createLocation(int index) {
+    MyTracksLocation location = new MyTracksLocation(LocationManager.GPS_PROVIDER);
+    location.setLatitude(getLatitude(index));
+    location.setLongitude(getLongitude(index));
+    location.setTime(times[index]);
+    if (hasAltitude(index)) {
+      location.setAltitude(altitudes[index]);
+    }
+    if (hasAccuracy(index)) {
+      location.setAccuracy(accuracies[index]);
+    }
+    if (hasSpeed(index)) {
+      location.setSpeed(speeds[index]);
+    }
+    if (hasBearing(index)) {
+      location.setBearing(bearings[index]);
+    }
+    location.setSensorDataSet(getSensorDataSet(index));
+    return location;
+  }
+
+  /**
+   * Removes the track points not retained, keeping the order of the others.
+   *
+   * @param retained for each track point, true to keep it. Must have at least
+   *          {@link #size()} elements.
+   */
+  public void retain(boolean[] retained) {
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (!retained[i]) {
+        continue;
+      }
+      if (count != i) {
+        latitudes[count] = latitudes[i];
+        longitudes[count] = longitudes[i];
+        times[count] = times[i];
+        altitudes[count] = altitudes[i];
+        accuracies[count] = accuracies[i];
+        speeds[count] = speeds[i];
+        bearings[count] = bearings[i];
+        flags[count] = flags[i];
+        if (sensorDataSets != null) {
+          sensorDataSets[count] = sensorDataSets[i];
+        }
+      }
+      count++;
+    }
+    if (sensorDataSets != null) {
+      for (int i = count; i < size; i++) {
+        sensorDataSets[i] = null;
+      }
+    }
+    size = count;
+  }
+
+  /**
+   * Ensures the buffer can hold n track points.
+   *
+   * @param n the number of track points
+   */
+  private void ensureCapacity(int n) {
+    if (n <= latitudes.length) {
+      return;
+    }
+    int[] oldLatitudes = latitudes;
+    int[] oldLongitudes = longitudes;
+    long[] oldTimes = times;
+    double[] oldAltitudes = altitudes;
+    float[] oldAccuracies = accuracies;
+    float[] oldSpeeds = speeds;
+    float[] oldBearings = bearings;
+    byte[] oldFlags = flags;
+    allocate(Math.max(n, 2 * latitudes.length));
+    System.arraycopy(oldLatitudes, 0, latitudes, 0, size);
+    System.arraycopy(oldLongitudes, 0, longitudes, 0, size);
+    System.arraycopy(oldTimes, 0, times, 0, size);
+    System.arraycopy(oldAltitudes, 0, altitudes, 0, size);
+    System.arraycopy(oldAccuracies, 0, accuracies, 0, size);
+    System.arraycopy(oldSpeeds, 0, speeds, 0, size);
+    System.arraycopy(oldBearings, 0, bearings, 0, size);
+    System.arraycopy(oldFlags, 0, flags, 0, size);
+    if (sensorDataSets != null) {
+      SensorDataSet[] oldSensorDataSets = sensorDataSets;
+      sensorDataSets = new SensorDataSet[latitudes.length];
+      System.arraycopy(oldSensorDataSets, 0, sensorDataSets, 0, size);
+    }
+  }
+
+  /**
+   * Allocates the arrays, except the sensor data column.
+   *
+   * @param capacity the capacity
+   */
+  private void allocate(int capacity) {
+    latitudes = new int[capacity];
+    longitudes = new int[capacity];
+    times = new long[capacity];
+    altitudes = new double[capacity];
+    accuracies = new float[capacity];
+    speeds = new float[capacity];
+    bearings = new float[capacity];
+    flags = new byte[capacity];
+  }
+
+  @Override
+  public int describeContents() {
+    return 0;
+  }
+
+  @Override
+  public void writeToParcel(Parcel dest, int parcelableFlags) {
+    writeToParcel(dest, 0, size);
+  }
+
+  /**
+   * Writes a range of track points to a parcel, read back as a
+   * {@link TrackPointBuffer} by {@link #CREATOR}.
+   *
+   * @param dest the parcel
+   * @param start the index of the first track point
+   * @param end the index after the last track point
+   */
+  public void writeToParcel(Parcel dest, int start, int end) {
+    dest.writeInt(end - start);
+    for (int i = start; i < end; i++) {
+      dest.writeInt(latitudes[i]);
+      dest.writeInt(longitudes[i]);
+      dest.writeLong(times[i]);
+      dest.writeDouble(altitudes[i]);
+      dest.writeFloat(accuracies[i]);
+      dest.writeFloat(speeds[i]);
+      dest.writeFloat(bearings[i]);
+      dest.writeByte(flags[i]);
+      SensorDataSet sensorDataSet = getSensorDataSet(i);
+      dest.writeByteArray(sensorDataSet != null ? sensorDataSet.toByteArray() : null);
+    }
+  }
+
+  public static final Parcelable.Creator<TrackPointBuffer> CREATOR =
+      new Parcelable.Creator<TrackPointBuffer>() {
+          @Override
+        public TrackPointBuffer createFromParcel(Parcel source) {
+          int size = source.readInt();
+          TrackPointBuffer trackPointBuffer = new TrackPointBuffer(size);
+          for (int i = 0; i < size; i++) {
+            trackPointBuffer.latitudes[i] = source.readInt();
+            trackPointBuffer.longitudes[i] = source.readInt();
+            trackPointBuffer.times[i] = source.readLong();
+            trackPointBuffer.altitudes[i] = source.readDouble();
+            trackPointBuffer.accuracies[i] = source.readFloat();
+            trackPointBuffer.speeds[i] = source.readFloat();
+            trackPointBuffer.bearings[i] = source.readFloat();
+            trackPointBuffer.flags[i] = source.readByte();
+            byte[] sensor = source.createByteArray();
+            if (sensor != null) {
+              try {
+                if (trackPointBuffer.sensorDataSets == null) {
+                  trackPointBuffer.sensorDataSets =
+                      new SensorDataSet[trackPointBuffer.latitudes.length];
+                }
+                trackPointBuffer.sensorDataSets[i] = SensorDataSet.parseFrom(sensor);
+              } catch (InvalidProtocolBufferException e) {
+                Log.w(TAG, "Failed to parse sensor data.", e);
+              }
+            }
+            trackPointBuffer.size++;
+          }
+          return trackPointBuffer;
+        }
+
+          @Override
+        public TrackPointBuffer[] newArray(int size) {
+          return new TrackPointBuffer[size];
+        }
+      };
+}
@@ -49,6 +49,18 @@ public interface TrackPointsColumns extends BaseColumns {
   public static final String BEARING = "bearing"; // bearing
   public static final String SENSOR = "sensor"; // sensor
 
+  /*
+   * Level of detail. Track points with level >= n form the level n of a
+   * multi-resolution pyramid of the track, with about 1 / 2^n of the track
+   * points of each segment. Assigned by the provider on insert from the ordinal
+   * of the track point in its segment, i.e., the number of trailing zeros of the
+   * ordinal. The first track point of each segment and the invalid track points
+   * marking segment splits get MAX_LEVEL and are in every level. Derived from
+   * the other columns, thus not part of COLUMNS.
+   */
+  public static final String LEVEL = "level";
+  public static final int MAX_LEVEL = 30;
+
   public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " ("
       + _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
       + TRACKID + " INTEGER, "
@@ -59,9 +71,18 @@ public interface TrackPointsColumns extends BaseColumns {
       + ACCURACY + " FLOAT, "
       + SPEED + " FLOAT, "
       + BEARING + " FLOAT, "
-      + SENSOR + " BLOB" 
+      + SENSOR + " BLOB, "
+      + LEVEL + " INTEGER"
       + ");";
 
+  public static final String TRACKID_INDEX = TABLE_NAME + "_" + TRACKID + "_index";
+  public static final String CREATE_TRACKID_INDEX = "CREATE INDEX IF NOT EXISTS "
+      + TRACKID_INDEX + " ON " + TABLE_NAME + " (" + TRACKID + ", " + _ID + ");";
+
+  public static final String LEVEL_INDEX = TABLE_NAME + "_" + LEVEL + "_index";
+  public static final String CREATE_LEVEL_INDEX = "CREATE INDEX IF NOT EXISTS " + LEVEL_INDEX
+      + " ON " + TABLE_NAME + " (" + TRACKID + ", " + LEVEL + ", " + _ID + ");";
+
   public static final String[] COLUMNS = {
       _ID,
       TRACKID,
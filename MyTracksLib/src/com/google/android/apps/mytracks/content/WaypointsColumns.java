@@ -103,6 +103,10 @@ public interface WaypointsColumns extends BaseColumns {
       + MINGRADE + " FLOAT, "
       + MAXGRADE + " FLOAT" 
       + ");";
+
+  public static final String TRACKID_INDEX = TABLE_NAME + "_" + TRACKID + "_index";
+  public static final String CREATE_TRACKID_INDEX = "CREATE INDEX IF NOT EXISTS "
+      + TRACKID_INDEX + " ON " + TABLE_NAME + " (" + TRACKID + ", " + _ID + ");";
   
   public static final String[] COLUMNS = {
       _ID,
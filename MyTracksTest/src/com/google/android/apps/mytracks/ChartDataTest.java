@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link ChartData}.
+ */
+public class ChartDataTest extends TestCase {
+
+  /**
+   * Tests adding data points beyond the initial capacity.
+   */
+  public void testAdd() {
+    ChartData chartData = new ChartData(2);
+    assertEquals(0, chartData.size());
+    for (int i = 0; i < 1000; i++) {
+      chartData.add(new double[] { i, i * 2.0, i % 2 == 0 ? Double.NaN : i * 3.0 });
+    }
+    assertEquals(1000, chartData.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals((double) i, chartData.getX(i));
+      assertEquals(i * 2.0, chartData.getValue(0, i));
+      if (i % 2 == 0) {
+        assertTrue(Double.isNaN(chartData.getValue(1, i)));
+      } else {
+        assertEquals(i * 3.0, chartData.getValue(1, i));
+      }
+    }
+  }
+
+  /**
+   * Tests adding the data points of another chart data beyond the capacity.
+   */
+  public void testAddAll() {
+    ChartData chartData = new ChartData(1);
+    chartData.add(new double[] { -1.0, -2.0 });
+    ChartData other = new ChartData(1);
+    for (int i = 0; i < 300; i++) {
+      other.add(new double[] { i, i * 2.0 });
+    }
+    chartData.addAll(other);
+    assertEquals(301, chartData.size());
+    assertEquals(-1.0, chartData.getX(0));
+    assertEquals(-2.0, chartData.getValue(0, 0));
+    for (int i = 0; i < 300; i++) {
+      assertEquals((double) i, chartData.getX(i + 1));
+      assertEquals(i * 2.0, chartData.getValue(0, i + 1));
+    }
+  }
+
+  /**
+   * Tests clearing the data points.
+   */
+  public void testClear() {
+    ChartData chartData = new ChartData(1);
+    chartData.add(new double[] { 1.0, 2.0 });
+    chartData.clear();
+    assertEquals(0, chartData.size());
+    chartData.add(new double[] { 3.0, 4.0 });
+    assertEquals(1, chartData.size());
+    assertEquals(3.0, chartData.getX(0));
+    assertEquals(4.0, chartData.getValue(0, 0));
+  }
+
+  /**
+   * Tests finding the index of a x value.
+   */
+  public void testGetIndex() {
+    ChartData chartData = new ChartData(1);
+    assertEquals(0, chartData.getIndex(1.0));
+    chartData.add(new double[] { 1.0, 0.0 });
+    chartData.add(new double[] { 2.0, 0.0 });
+    chartData.add(new double[] { 2.0, 0.0 });
+    chartData.add(new double[] { 4.0, 0.0 });
+    assertEquals(0, chartData.getIndex(0.0));
+    assertEquals(0, chartData.getIndex(1.0));
+    assertEquals(1, chartData.getIndex(1.5));
+    assertEquals(1, chartData.getIndex(2.0));
+    assertEquals(3, chartData.getIndex(3.0));
+    assertEquals(4, chartData.getIndex(5.0));
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks;
+
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link ChartDownsampler}.
+ */
+public class ChartDownsamplerTest extends TestCase {
+
+  private static final int NUMBER_OF_VALUES = 100000;
+  private static final int NUMBER_OF_COLUMNS = 500;
+
+  private ChartDownsampler chartDownsampler;
+  private ChartData chartData;
+  private Path path;
+  private double min;
+  private double max;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    chartDownsampler = new ChartDownsampler();
+    chartData = new ChartData(1);
+    path = new Path();
+  }
+
+  /**
+   * Tests that the whole chart is downsampled to at most 4 vertices per pixel
+   * column, keeping the first, last, min, and max values.
+   */
+  public void testBuildPath_zoomedOut() {
+    addValues();
+    double columnWidth = (double) NUMBER_OF_VALUES / NUMBER_OF_COLUMNS;
+    chartDownsampler.buildPath(path, chartData, 0, 0.0, NUMBER_OF_VALUES, columnWidth);
+
+    assertTrue(chartDownsampler.hasPath());
+    assertTrue(chartDownsampler.getNumberOfVertices() <= 4 * (NUMBER_OF_COLUMNS + 1));
+    assertEquals(0.0, chartDownsampler.getPathFirstX());
+    assertEquals(getValue(0), chartDownsampler.getPathFirstValue());
+    assertEquals(NUMBER_OF_VALUES - 1.0, chartDownsampler.getPathLastX());
+    assertExtremes();
+  }
+
+  /**
+   * Tests that a zoomed in window is built from the values in the window.
+   */
+  public void testBuildPath_zoomedIn() {
+    addValues();
+    chartDownsampler.buildPath(path, chartData, 0, 1000.0, 2000.0, 0.5);
+
+    assertTrue(chartDownsampler.hasPath());
+    // The values in the window and one value on each side
+    assertEquals(1003, chartDownsampler.getNumberOfVertices());
+    assertEquals(999.0, chartDownsampler.getPathFirstX());
+    assertEquals(2001.0, chartDownsampler.getPathLastX());
+  }
+
+  /**
+   * Tests that the NaN values are skipped and that reset removes the values.
+   */
+  public void testBuildPath_reset() {
+    chartDownsampler.buildPath(path, chartData, 0, 0.0, 10.0, 1.0);
+    assertFalse(chartDownsampler.hasPath());
+
+    chartDownsampler.add(0.0, 1.0);
+    chartDownsampler.add(1.0, 2.0);
+    chartDownsampler.buildPath(path, chartData, 0, 0.0, 10.0, 1.0);
+    assertEquals(2, chartDownsampler.getNumberOfVertices());
+
+    chartDownsampler.reset();
+    chartDownsampler.buildPath(path, chartData, 0, 0.0, 10.0, 1.0);
+    assertFalse(chartDownsampler.hasPath());
+  }
+
+  /**
+   * Adds values to the chart data and the downsampler, a slowly rising sine
+   * wave with one value at each x.
+   */
+  private void addValues() {
+    min = Double.POSITIVE_INFINITY;
+    max = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+      double value = getValue(i);
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+      chartData.add(new double[] { i, value });
+      chartDownsampler.add(i, value);
+    }
+  }
+
+  private double getValue(int i) {
+    if (i == 12345) {
+      return -100.0;
+    }
+    return 50.0 * Math.sin(i / 10.0) + i * 0.001;
+  }
+
+  /**
+   * Asserts that the path keeps the min and max values.
+   */
+  private void assertExtremes() {
+    RectF bounds = new RectF();
+    path.computeBounds(bounds, true);
+    assertEquals(min, bounds.top, 1E-3);
+    assertEquals(max, bounds.bottom, 1E-3);
+  }
+}
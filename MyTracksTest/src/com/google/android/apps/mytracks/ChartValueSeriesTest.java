@@ -17,6 +17,8 @@ package com.google.android.apps.mytracks;
 
 import com.google.android.maps.mytracks.R;
 
+import android.graphics.Matrix;
+import android.graphics.RectF;
 import android.test.AndroidTestCase;
 
 /**
@@ -77,4 +79,34 @@ public class ChartValueSeriesTest extends AndroidTestCase {
     assertEquals(200, series.getMinMarkerValue());
     assertEquals(700, series.getMaxMarkerValue());
   }
+
+  /**
+   * Tests that the path is closed at the bottom after the values are appended.
+   */
+  public void testUpdatePath() {
+    series.appendToPath(0, 10);
+    series.appendToPath(5, 30);
+    series.appendToPath(10, 20);
+    Matrix matrix = new Matrix();
+    matrix.setScale(2f, 1f);
+    series.updatePath(matrix, 100f, new ChartData(1), 0, 0.0, 10.0, 0.01);
+
+    RectF bounds = new RectF();
+    series.getPath().computeBounds(bounds, true);
+    assertEquals(0f, bounds.left);
+    assertEquals(20f, bounds.right);
+    assertEquals(10f, bounds.top);
+    assertEquals(100f, bounds.bottom);
+  }
+
+  /**
+   * Tests that resetting the path removes the appended values.
+   */
+  public void testResetPath() {
+    series.appendToPath(0, 10);
+    series.appendToPath(5, 30);
+    series.resetPath();
+    series.updatePath(new Matrix(), 100f, new ChartData(1), 0, 0.0, 10.0, 0.01);
+    assertTrue(series.getPath().isEmpty());
+  }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.benchmark;
+
+import android.os.Bundle;
+import android.test.InstrumentationTestRunner;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * A test runner to run the benchmarks with real track sizes, e.g.,
+ * <p>
+ * adb shell am instrument -w -e sizes 10000,100000,1000000 -e gpxFileSize 52428800
+ * -e output /sdcard/mytracks-benchmark.json
+ * com.google.android.maps.mytracks.test/com.google.android.apps.mytracks.benchmark.BenchmarkTestRunner
+ * <p>
+ * Each result is logged and appended to the output file as a JSON object per
+ * line. Unless a class or a package is specified, only the benchmarks run.
+ * <p>
+ * The benchmarks are {@link LargeTest}s, excluded from the regular test suite
+ * with
+ * <p>
+ * adb shell am instrument -w -e notAnnotation android.test.suitebuilder.annotation.LargeTest
+ * com.google.android.maps.mytracks.test/android.test.InstrumentationTestRunner
+ * <p>
+ * and run as smoke tests on small tracks with "-e size large".
+ */
+public class BenchmarkTestRunner extends InstrumentationTestRunner {
+
+  // The arguments of the InstrumentationTestRunner
+  private static final String ARGUMENT_CLASS = "class";
+  private static final String ARGUMENT_PACKAGE = "package";
+
+  @Override
+  public void onCreate(Bundle arguments) {
+    String sizes = arguments.getString("sizes");
+    if (sizes != null) {
+      try {
+        String[] values = sizes.split(",");
+        int[] sizeValues = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+          sizeValues[i] = Integer.parseInt(values[i].trim());
+        }
+        BenchmarkUtils.sizes = sizeValues;
+      } catch (NumberFormatException e) {
+        Log.e(BenchmarkUtils.TAG, "Unable to parse sizes parameter, use default value.", e);
+      }
+    } else {
+      BenchmarkUtils.sizes = BenchmarkUtils.DEFAULT_SIZES;
+    }
+
+    String gpxFileSize = arguments.getString("gpxFileSize");
+    if (gpxFileSize != null) {
+      try {
+        BenchmarkUtils.gpxFileSize = Long.parseLong(gpxFileSize.trim());
+      } catch (NumberFormatException e) {
+        Log.e(BenchmarkUtils.TAG, "Unable to parse gpxFileSize parameter, use default value.", e);
+        BenchmarkUtils.gpxFileSize = BenchmarkUtils.DEFAULT_GPX_FILE_SIZE;
+      }
+    } else {
+      BenchmarkUtils.gpxFileSize = BenchmarkUtils.DEFAULT_GPX_FILE_SIZE;
+    }
+
+    String output = arguments.getString("output");
+    BenchmarkUtils.outputFile = output != null ? new File(output) : null;
+
+    Log.i(BenchmarkUtils.TAG, "Output file: " + output);
+
+    if (arguments.getString(ARGUMENT_CLASS) == null
+        && arguments.getString(ARGUMENT_PACKAGE) == null) {
+      arguments.putString(ARGUMENT_PACKAGE, BenchmarkTestRunner.class.getPackage().getName());
+    }
+    super.onCreate(arguments);
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.benchmark;
+
+import com.google.android.apps.mytracks.content.MyTracksProvider;
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.services.TrackRecordingServiceTest.MockContext;
+import com.google.android.apps.mytracks.stats.TripStatistics;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Build;
+import android.os.Debug;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Utilities for the benchmarks: synthetic tracks, timing, and reporting.
+ */
+public class BenchmarkUtils {
+
+  static final String TAG = "MyTracksBenchmark";
+
+  // The sizes used by the BenchmarkTestRunner if not specified
+  static final int[] DEFAULT_SIZES = { 10000, 100000 };
+
+  // The sizes used by the default test runner, to run as smoke tests
+  private static final int[] SMOKE_TEST_SIZES = { 100 };
+
+  // The number of measured iterations, after one warm up iteration
+  private static final int ITERATIONS = 5;
+
+  private static final long START_TIME = 1262304000000L;
+
+  // The number of track points, set by the BenchmarkTestRunner
+  static int[] sizes = SMOKE_TEST_SIZES;
+
+  // The GPX file size in bytes used by the BenchmarkTestRunner if not specified
+  static final long DEFAULT_GPX_FILE_SIZE = 50L * 1024 * 1024;
+
+  // The size in bytes of the large GPX file, set by the BenchmarkTestRunner
+  static long gpxFileSize = 64L * 1024;
+
+  // The file to append the results to, set by the BenchmarkTestRunner
+  static File outputFile = null;
+
+  private BenchmarkUtils() {}
+
+  /**
+   * A benchmark. Only {@link #run()} is measured.
+   */
+  public abstract static class Benchmark {
+
+    /**
+     * Prepares an iteration.
+     */
+    protected void setUp() throws Exception {}
+
+    /**
+     * Runs an iteration.
+     */
+    protected abstract void run() throws Exception;
+
+    /**
+     * Cleans up after an iteration.
+     */
+    protected void tearDown() throws Exception {}
+  }
+
+  /**
+   * Measures a benchmark and reports the result. The number of objects
+   * allocated is counted in an extra iteration, since counting allocations
+   * slows down the benchmark.
+   *
+   * @param name the benchmark name
+   * @param size the number of track points
+   * @param benchmark the benchmark
+   */
+  static void measure(String name, int size, Benchmark benchmark) throws Exception {
+    runOnce(benchmark);
+    long[] times = new long[ITERATIONS];
+    for (int i = 0; i < ITERATIONS; i++) {
+      times[i] = runOnce(benchmark);
+    }
+    Arrays.sort(times);
+    report(name, size, times, countAllocations(benchmark));
+  }
+
+  /**
+   * Runs an iteration of a benchmark. Returns the number of objects allocated
+   * by the current thread.
+   *
+   * @param benchmark the benchmark
+   */
+  private static int countAllocations(Benchmark benchmark) throws Exception {
+    benchmark.setUp();
+    try {
+      Debug.resetThreadAllocCount();
+      Debug.startAllocCounting();
+      try {
+        benchmark.run();
+      } finally {
+        Debug.stopAllocCounting();
+      }
+      return Debug.getThreadAllocCount();
+    } finally {
+      benchmark.tearDown();
+    }
+  }
+
+  /**
+   * Runs an iteration of a benchmark. Returns the elapsed time in nanoseconds.
+   *
+   * @param benchmark the benchmark
+   */
+  private static long runOnce(Benchmark benchmark) throws Exception {
+    benchmark.setUp();
+    try {
+      long start = System.nanoTime();
+      benchmark.run();
+      return System.nanoTime() - start;
+    } finally {
+      benchmark.tearDown();
+    }
+  }
+
+  /**
+   * Reports a result as a JSON object in the log and the output file.
+   *
+   * @param name the benchmark name
+   * @param size the number of track points
+   * @param times the sorted elapsed times in nanoseconds
+   * @param allocations the number of objects allocated in an iteration
+   */
+  private static synchronized void report(String name, int size, long[] times, int allocations)
+      throws IOException {
+    long median = times[times.length / 2];
+    String result = String.format(Locale.US, "{\"benchmark\":\"%s\",\"points\":%d,"
+        + "\"iterations\":%d,\"minNanos\":%d,\"medianNanos\":%d,\"maxNanos\":%d,"
+        + "\"nanosPerPoint\":%.1f,\"allocations\":%d,\"device\":\"%s\",\"sdk\":%d}", name,
+        size, times.length, times[0], median, times[times.length - 1],
+        (double) median / Math.max(size, 1), allocations, Build.MODEL, Build.VERSION.SDK_INT);
+    write(result);
+  }
+
+  /**
+   * Reports the output size of a benchmark as a JSON object in the log and the
+   * output file.
+   *
+   * @param name the benchmark name
+   * @param size the number of track points
+   * @param bytes the output size in bytes
+   */
+  static synchronized void reportSize(String name, int size, long bytes) throws IOException {
+    write(String.format(Locale.US, "{\"benchmark\":\"%s\",\"points\":%d,\"bytes\":%d,"
+        + "\"bytesPerPoint\":%.1f,\"device\":\"%s\",\"sdk\":%d}", name, size, bytes,
+        (double) bytes / Math.max(size, 1), Build.MODEL, Build.VERSION.SDK_INT));
+  }
+
+  /**
+   * Writes a result to the log and the output file.
+   *
+   * @param result the result
+   */
+  private static void write(String result) throws IOException {
+    Log.i(TAG, result);
+    if (outputFile == null) {
+      return;
+    }
+    Writer writer = new FileWriter(outputFile, true);
+    try {
+      writer.write(result);
+      writer.write('\n');
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Sets the values of a synthetic track point, walking about 3 meters per
+   * second along a wavy line with a varying elevation.
+   *
+   * @param location the location to set
+   * @param i the index of the track point
+   */
+  static void setLocation(Location location, int i) {
+    location.setLatitude(37.0 + i * 2E-5 + 1E-4 * Math.sin(i / 50.0));
+    location.setLongitude(-122.0 + i * 1E-5 + 1E-4 * Math.cos(i / 50.0));
+    location.setAltitude(100.0 + 20.0 * Math.sin(i / 200.0));
+    location.setTime(START_TIME + i * 1000L);
+    location.setSpeed(3.0f);
+    location.setAccuracy(5.0f);
+    location.setBearing(i % 360);
+  }
+
+  /**
+   * Creates a track with the statistics of a synthetic track, without any
+   * track points.
+   *
+   * @param size the number of track points
+   */
+  static Track createTrack(int size) {
+    Track track = new Track();
+    track.setName("Benchmark " + size);
+    track.setDescription("A synthetic track");
+    track.setCategory("Benchmark");
+    track.setNumberOfPoints(size);
+    TripStatistics tripStatistics = new TripStatistics();
+    tripStatistics.setStartTime(START_TIME);
+    tripStatistics.setStopTime(START_TIME + size * 1000L);
+    tripStatistics.setTotalTime(size * 1000L);
+    tripStatistics.setMovingTime(size * 1000L);
+    tripStatistics.setTotalDistance(size * 3.0);
+    track.setTripStatistics(tripStatistics);
+    return track;
+  }
+
+  /**
+   * Creates a context with a new provider, backed by a database prefixed with
+   * "benchmark.".
+   *
+   * @param context the context
+   */
+  static Context createProviderContext(Context context) {
+    MockContentResolver mockContentResolver = new MockContentResolver();
+    RenamingDelegatingContext targetContext = new RenamingDelegatingContext(
+        context, context, "benchmark.");
+    MockContext mockContext = new MockContext(mockContentResolver, targetContext);
+    MyTracksProvider provider = new MyTracksProvider();
+    provider.attachInfo(mockContext, null);
+    mockContentResolver.addProvider(MyTracksProviderUtils.AUTHORITY, provider);
+    return mockContext;
+  }
+}
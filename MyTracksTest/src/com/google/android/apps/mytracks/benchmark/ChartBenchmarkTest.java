@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.benchmark;
+
+import com.google.android.apps.mytracks.ChartData;
+import com.google.android.apps.mytracks.ChartDownsampler;
+import com.google.android.apps.mytracks.benchmark.BenchmarkUtils.Benchmark;
+
+import android.graphics.Path;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+/**
+ * Benchmarks for {@link ChartDownsampler}.
+ */
+@LargeTest
+public class ChartBenchmarkTest extends AndroidTestCase {
+
+  // The number of pixel columns of the chart
+  private static final int NUMBER_OF_COLUMNS = 1000;
+
+  /**
+   * Benchmarks adding the values of a track and building the path of the whole
+   * track, as done when loading the chart.
+   */
+  public void testChartDownsampler() throws Exception {
+    for (final int size : BenchmarkUtils.sizes) {
+      final ChartData chartData = new ChartData(1);
+      for (int i = 0; i < size; i++) {
+        chartData.add(new double[] { i, getElevation(i) });
+      }
+      final ChartDownsampler chartDownsampler = new ChartDownsampler();
+      final Path path = new Path();
+      BenchmarkUtils.measure("ChartDownsampler.add", size, new Benchmark() {
+          @Override
+        protected void run() {
+          chartDownsampler.reset();
+          for (int i = 0; i < size; i++) {
+            chartDownsampler.add(i, getElevation(i));
+          }
+        }
+      });
+      BenchmarkUtils.measure("ChartDownsampler.buildPath", size, new Benchmark() {
+          @Override
+        protected void run() {
+          chartDownsampler.buildPath(
+              path, chartData, 0, 0.0, size, (double) size / NUMBER_OF_COLUMNS);
+          assertTrue(chartDownsampler.hasPath());
+        }
+      });
+    }
+  }
+
+  private static double getElevation(int i) {
+    return 100.0 + 20.0 * Math.sin(i / 200.0);
+  }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.benchmark;
+
+import com.google.android.apps.mytracks.benchmark.BenchmarkUtils.Benchmark;
+import com.google.android.apps.mytracks.content.MyTracksLocation;
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.content.TrackPointsColumns;
+import com.google.android.apps.mytracks.io.backup.DatabaseDumper;
+import com.google.android.apps.mytracks.io.backup.DatabaseImporter;
+import com.google.android.apps.mytracks.io.file.GpxImporter;
+import com.google.android.apps.mytracks.io.file.GpxTrackWriter;
+import com.google.android.apps.mytracks.io.file.ParallelGpxImporter;
+import com.google.android.apps.mytracks.util.PreferencesUtils;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.location.Location;
+import android.location.LocationManager;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks for the {@link GpxImporter}, the {@link ParallelGpxImporter}, the
+ * {@link DatabaseDumper}, and the {@link DatabaseImporter}, against a separate
+ * database.
+ */
+@LargeTest
+public class ImportBenchmarkTest extends AndroidTestCase {
+
+  private static final int BULK_SIZE = 1000;
+  private static final int NUMBER_OF_FILES = 8;
+
+  private ContentResolver contentResolver;
+  private MyTracksProviderUtils myTracksProviderUtils;
+  private File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    Context context = BenchmarkUtils.createProviderContext(getContext());
+    contentResolver = context.getContentResolver();
+    myTracksProviderUtils = MyTracksProviderUtils.Factory.get(context);
+    myTracksProviderUtils.deleteAllTracks();
+    file = new File(getContext().getCacheDir(), "benchmark");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myTracksProviderUtils.deleteAllTracks();
+    file.delete();
+    super.tearDown();
+  }
+
+  /**
+   * Benchmarks {@link GpxImporter#importGPXFile(InputStream,
+   * MyTracksProviderUtils, int)} with a file written by the
+   * {@link GpxTrackWriter}.
+   */
+  public void testGpxImporter() throws Exception {
+    for (int size : BenchmarkUtils.sizes) {
+      writeGpxFile(file, size);
+      BenchmarkUtils.measure("GpxImporter.importGPXFile", size, new Benchmark() {
+          @Override
+        protected void run() throws Exception {
+          InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+          try {
+            assertEquals(1, GpxImporter.importGPXFile(inputStream, myTracksProviderUtils,
+                PreferencesUtils.MIN_RECORDING_DISTANCE_DEFAULT).length);
+          } finally {
+            inputStream.close();
+          }
+        }
+
+          @Override
+        protected void tearDown() {
+          myTracksProviderUtils.deleteAllTracks();
+        }
+      });
+    }
+  }
+
+  /**
+   * Benchmarks {@link GpxImporter#importGPXFile(InputStream,
+   * MyTracksProviderUtils, int)} with a large GPX file, of about
+   * {@link BenchmarkUtils#gpxFileSize} bytes.
+   */
+  public void testGpxImporterLargeFile() throws Exception {
+    // Estimate the number of track points from the size of a smaller file
+    writeGpxFile(file, BULK_SIZE);
+    double bytesPerPoint = (double) file.length() / BULK_SIZE;
+    int size = (int) Math.max(BenchmarkUtils.gpxFileSize / bytesPerPoint, 1);
+    writeGpxFile(file, size);
+    BenchmarkUtils.measure("GpxImporter.importGPXFile.largeFile", size, new Benchmark() {
+        @Override
+      protected void run() throws Exception {
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+        try {
+          assertEquals(1, GpxImporter.importGPXFile(inputStream, myTracksProviderUtils,
+              PreferencesUtils.MIN_RECORDING_DISTANCE_DEFAULT).length);
+        } finally {
+          inputStream.close();
+        }
+      }
+
+        @Override
+      protected void tearDown() {
+        myTracksProviderUtils.deleteAllTracks();
+      }
+    });
+  }
+
+  /**
+   * Benchmarks {@link ParallelGpxImporter#importFiles(List,
+   * ParallelGpxImporter.Listener)} with {@link #NUMBER_OF_FILES} files, on one
+   * parsing thread and on the default number of parsing threads.
+   */
+  public void testParallelGpxImporter() throws Exception {
+    final List<File> files = new ArrayList<File>();
+    for (int i = 0; i < NUMBER_OF_FILES; i++) {
+      files.add(new File(getContext().getCacheDir(), "benchmark" + i + ".gpx"));
+    }
+    try {
+      for (int size : BenchmarkUtils.sizes) {
+        int sizePerFile = Math.max(size / NUMBER_OF_FILES, 1);
+        for (File gpxFile : files) {
+          writeGpxFile(gpxFile, sizePerFile);
+        }
+        measureParallelGpxImporter("ParallelGpxImporter.importFiles.1thread", size, files,
+            new ParallelGpxImporter(
+                myTracksProviderUtils, PreferencesUtils.MIN_RECORDING_DISTANCE_DEFAULT, 1));
+        measureParallelGpxImporter("ParallelGpxImporter.importFiles", size, files,
+            new ParallelGpxImporter(
+                myTracksProviderUtils, PreferencesUtils.MIN_RECORDING_DISTANCE_DEFAULT));
+      }
+    } finally {
+      for (File gpxFile : files) {
+        gpxFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Measures a {@link ParallelGpxImporter}.
+   *
+   * @param name the benchmark name
+   * @param size the total number of track points
+   * @param files the files
+   * @param parallelGpxImporter the parallel GPX importer
+   */
+  private void measureParallelGpxImporter(String name, int size, final List<File> files,
+      final ParallelGpxImporter parallelGpxImporter) throws Exception {
+    BenchmarkUtils.measure(name, size, new Benchmark() {
+        @Override
+      protected void run() throws Exception {
+        assertEquals(files.size(), parallelGpxImporter.importFiles(files, null));
+      }
+
+        @Override
+      protected void tearDown() {
+        myTracksProviderUtils.deleteAllTracks();
+      }
+    });
+  }
+
+  /**
+   * Benchmarks dumping the track points table with the {@link DatabaseDumper}
+   * and importing it back with the {@link DatabaseImporter}, as in a backup and
+   * a restore.
+   */
+  public void testDatabaseDumperAndImporter() throws Exception {
+    for (int size : BenchmarkUtils.sizes) {
+      insertTrack(size);
+      BenchmarkUtils.measure("DatabaseDumper.writeAllRows", size, new Benchmark() {
+          @Override
+        protected void run() throws Exception {
+          DatabaseDumper databaseDumper = new DatabaseDumper(
+              TrackPointsColumns.COLUMNS, TrackPointsColumns.COLUMN_TYPES, false);
+          DataOutputStream outputStream = new DataOutputStream(
+              new BufferedOutputStream(new FileOutputStream(file)));
+          Cursor cursor = contentResolver.query(
+              TrackPointsColumns.CONTENT_URI, null, null, null, null);
+          try {
+            databaseDumper.writeAllRows(cursor, outputStream);
+          } finally {
+            cursor.close();
+            outputStream.close();
+          }
+        }
+      });
+      BenchmarkUtils.measure("DatabaseImporter.importAllRows", size, new Benchmark() {
+          @Override
+        protected void setUp() {
+          contentResolver.delete(TrackPointsColumns.CONTENT_URI, null, null);
+        }
+
+          @Override
+        protected void run() throws Exception {
+          DatabaseImporter databaseImporter = new DatabaseImporter(
+              TrackPointsColumns.CONTENT_URI, contentResolver, false);
+          DataInputStream inputStream = new DataInputStream(
+              new BufferedInputStream(new FileInputStream(file)));
+          try {
+            databaseImporter.importAllRows(inputStream);
+          } finally {
+            inputStream.close();
+          }
+        }
+      });
+      myTracksProviderUtils.deleteAllTracks();
+    }
+  }
+
+  /**
+   * Writes a synthetic track to a GPX file.
+   *
+   * @param gpxFile the GPX file
+   * @param size the number of track points
+   */
+  private void writeGpxFile(File gpxFile, int size) throws Exception {
+    Location location = new MyTracksLocation(LocationManager.GPS_PROVIDER);
+    Location lastLocation = new MyTracksLocation(LocationManager.GPS_PROVIDER);
+    BenchmarkUtils.setLocation(location, 0);
+    BenchmarkUtils.setLocation(lastLocation, size - 1);
+    GpxTrackWriter writer = new GpxTrackWriter(getContext());
+    OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(gpxFile));
+    try {
+      writer.prepare(BenchmarkUtils.createTrack(size), outputStream);
+      writer.writeHeader();
+      writer.writeBeginTrack(location);
+      writer.writeOpenSegment();
+      for (int i = 0; i < size; i++) {
+        BenchmarkUtils.setLocation(location, i);
+        writer.writeLocation(location);
+      }
+      writer.writeCloseSegment();
+      writer.writeEndTrack(lastLocation);
+      writer.writeFooter();
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Inserts a synthetic track with its track points.
+   *
+   * @param size the number of track points
+   */
+  private void insertTrack(int size) {
+    Track track = BenchmarkUtils.createTrack(size);
+    long trackId = ContentUris.parseId(myTracksProviderUtils.insertTrack(track));
+    Location[] locations = new Location[BULK_SIZE];
+    for (int i = 0; i < locations.length; i++) {
+      locations[i] = new MyTracksLocation(LocationManager.GPS_PROVIDER);
+    }
+    for (int i = 0; i < size; i += BULK_SIZE) {
+      int length = Math.min(BULK_SIZE, size - i);
+      for (int j = 0; j < length; j++) {
+        BenchmarkUtils.setLocation(locations[j], i + j);
+      }
+      myTracksProviderUtils.bulkInsertTrackPoint(locations, length, trackId);
+    }
+  }
+}
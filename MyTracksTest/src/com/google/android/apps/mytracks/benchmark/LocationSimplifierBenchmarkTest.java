@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.benchmark;
+
+import com.google.android.apps.mytracks.benchmark.BenchmarkUtils.Benchmark;
+import com.google.android.apps.mytracks.content.MyTracksLocation;
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.util.LocationSimplifier;
+
+import android.location.Location;
+import android.location.LocationManager;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+/**
+ * Benchmarks for {@link LocationSimplifier}.
+ */
+@LargeTest
+public class LocationSimplifierBenchmarkTest extends AndroidTestCase {
+
+  // The tolerance used to upload to Google Maps and Google Fusion Tables
+  private static final double TOLERANCE = 2.0;
+
+  /**
+   * Benchmarks {@link LocationSimplifier#simplify(Track)}.
+   */
+  public void testSimplify() throws Exception {
+    for (final int size : BenchmarkUtils.sizes) {
+      BenchmarkUtils.measure("LocationSimplifier.simplify", size, new Benchmark() {
+        private Track track;
+
+          @Override
+        protected void setUp() {
+          track = BenchmarkUtils.createTrack(size);
+          Location location = new MyTracksLocation(LocationManager.GPS_PROVIDER);
+          for (int i = 0; i < size; i++) {
+            BenchmarkUtils.setLocation(location, i);
+            track.addLocation(location);
+          }
+        }
+
+          @Override
+        protected void run() {
+          new LocationSimplifier(TOLERANCE).simplify(track);
+          assertTrue(track.getTrackPointBuffer().size() >= 2);
+        }
+
+          @Override
+        protected void tearDown() {
+          track = null;
+        }
+      });
+    }
+  }
+
+  /**
+   * Benchmarks {@link LocationSimplifier#add(double, double)} in streaming
+   * mode.
+   */
+  public void testAdd() throws Exception {
+    final Location location = new MyTracksLocation(LocationManager.GPS_PROVIDER);
+    for (final int size : BenchmarkUtils.sizes) {
+      BenchmarkUtils.measure("LocationSimplifier.add", size, new Benchmark() {
+        private long kept;
+
+          @Override
+        protected void run() {
+          kept = 0;
+          LocationSimplifier locationSimplifier = new LocationSimplifier(
+              TOLERANCE, 100, new LocationSimplifier.Listener() {
+                  @Override
+                public void onKeep(long index) {
+                  kept++;
+                }
+              });
+          for (int i = 0; i < size; i++) {
+            BenchmarkUtils.setLocation(location, i);
+            locationSimplifier.add(location.getLatitude(), location.getLongitude());
+          }
+          locationSimplifier.flush();
+          assertTrue(kept >= 2);
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.benchmark;
+
+import com.google.android.apps.mytracks.benchmark.BenchmarkUtils.Benchmark;
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
+import com.google.android.apps.mytracks.content.SearchEngine;
+import com.google.android.apps.mytracks.content.SearchEngine.SearchQuery;
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.content.Waypoint;
+
+import android.content.ContentUris;
+import android.location.Location;
+import android.location.LocationManager;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+/**
+ * Benchmarks for the {@link SearchEngine}, against a separate database. A
+ * size of n track points is benchmarked with n / 100 tracks and as many
+ * waypoints.
+ */
+@LargeTest
+public class SearchEngineBenchmarkTest extends AndroidTestCase {
+
+  private static final int POINTS_PER_RECORD = 100;
+  private static final int LARGE_NUMBER_OF_TRACKS = 5000;
+  private static final int LARGE_WAYPOINTS_PER_TRACK = 10;
+  private static final String[] WORDS = { "morning", "run", "hike", "ride", "commute", "lake" };
+
+  private MyTracksProviderUtils myTracksProviderUtils;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myTracksProviderUtils = MyTracksProviderUtils.Factory.get(
+        BenchmarkUtils.createProviderContext(getContext()));
+    myTracksProviderUtils.deleteAllTracks();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myTracksProviderUtils.deleteAllTracks();
+    super.tearDown();
+  }
+
+  /**
+   * Benchmarks {@link SearchEngine#search(SearchQuery)}.
+   */
+  public void testSearch() throws Exception {
+    for (int size : BenchmarkUtils.sizes) {
+      int numberOfRecords = Math.max(size / POINTS_PER_RECORD, 1);
+      insertRecords(numberOfRecords, 1);
+      measureSearch("SearchEngine.search", size, "run");
+      myTracksProviderUtils.deleteAllTracks();
+    }
+  }
+
+  /**
+   * Benchmarks {@link SearchEngine#search(SearchQuery)} as typed, one prefix
+   * per keystroke, on a database with 5k tracks and 50k waypoints.
+   */
+  public void testSearch_largeDatabase() throws Exception {
+    insertRecords(LARGE_NUMBER_OF_TRACKS, LARGE_WAYPOINTS_PER_TRACK);
+    int size = LARGE_NUMBER_OF_TRACKS * (1 + LARGE_WAYPOINTS_PER_TRACK);
+    measureSearch("SearchEngine.search(m)", size, "m");
+    measureSearch("SearchEngine.search(morn)", size, "morn");
+    measureSearch("SearchEngine.search(morning l)", size, "morning l");
+  }
+
+  /**
+   * Measures a search with results.
+   *
+   * @param name the benchmark name
+   * @param size the benchmark size
+   * @param textQuery the text query
+   */
+  private void measureSearch(String name, int size, final String textQuery) {
+    final SearchEngine searchEngine = new SearchEngine(myTracksProviderUtils);
+    final Location location = new Location(LocationManager.GPS_PROVIDER);
+    BenchmarkUtils.setLocation(location, 0);
+    BenchmarkUtils.measure(name, size, new Benchmark() {
+        @Override
+      protected void run() {
+        SearchQuery query = new SearchQuery(
+            textQuery, location, -1L, location.getTime() + 1000L * 60L * 60L);
+        assertFalse(searchEngine.search(query).isEmpty());
+      }
+    });
+  }
+
+  /**
+   * Inserts tracks with waypoints.
+   *
+   * @param numberOfRecords the number of tracks
+   * @param waypointsPerTrack the number of waypoints per track
+   */
+  private void insertRecords(int numberOfRecords, int waypointsPerTrack) {
+    for (int i = 0; i < numberOfRecords; i++) {
+      Track track = BenchmarkUtils.createTrack(POINTS_PER_RECORD);
+      track.setName(WORDS[i % WORDS.length] + " " + i);
+      track.setDescription(WORDS[(i + 1) % WORDS.length]);
+      Location location = new Location(LocationManager.GPS_PROVIDER);
+      BenchmarkUtils.setLocation(location, i * POINTS_PER_RECORD);
+      int latitude = (int) (location.getLatitude() * 1E6);
+      int longitude = (int) (location.getLongitude() * 1E6);
+      track.getTripStatistics().setBounds(longitude, latitude, longitude, latitude);
+      long trackId = ContentUris.parseId(myTracksProviderUtils.insertTrack(track));
+
+      for (int j = 0; j < waypointsPerTrack; j++) {
+        Waypoint waypoint = new Waypoint();
+        waypoint.setName(WORDS[(i + j + 2) % WORDS.length] + " " + i);
+        waypoint.setDescription(WORDS[(i + j + 3) % WORDS.length]);
+        waypoint.setTrackId(trackId);
+        waypoint.setLocation(location);
+        myTracksProviderUtils.insertWaypoint(waypoint);
+      }
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.benchmark;
+
+import com.google.android.apps.mytracks.Constants;
+import com.google.android.apps.mytracks.benchmark.BenchmarkUtils.Benchmark;
+import com.google.android.apps.mytracks.content.MyTracksLocation;
+import com.google.android.apps.mytracks.stats.DoubleBuffer;
+import com.google.android.apps.mytracks.stats.TripStatistics;
+import com.google.android.apps.mytracks.stats.TripStatisticsUpdater;
+import com.google.android.apps.mytracks.util.PreferencesUtils;
+
+import android.location.Location;
+import android.location.LocationManager;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+/**
+ * Benchmarks for {@link TripStatisticsUpdater} and {@link DoubleBuffer}.
+ */
+@LargeTest
+public class StatsBenchmarkTest extends AndroidTestCase {
+
+  // TripStatisticsUpdater keeps references to the last locations
+  private static final int NUMBER_OF_LOCATIONS = 16;
+
+  /**
+   * Benchmarks {@link TripStatisticsUpdater#addLocation(Location, int)}.
+   */
+  public void testTripStatisticsUpdater() throws Exception {
+    final Location[] locations = new Location[NUMBER_OF_LOCATIONS];
+    for (int i = 0; i < locations.length; i++) {
+      locations[i] = new MyTracksLocation(LocationManager.GPS_PROVIDER);
+    }
+    for (final int size : BenchmarkUtils.sizes) {
+      BenchmarkUtils.measure("TripStatisticsUpdater.addLocation", size, new Benchmark() {
+          @Override
+        protected void run() {
+          TripStatisticsUpdater updater = new TripStatisticsUpdater(0L);
+          for (int i = 0; i < size; i++) {
+            Location location = locations[i % NUMBER_OF_LOCATIONS];
+            BenchmarkUtils.setLocation(location, i);
+            updater.addLocation(location, PreferencesUtils.MIN_RECORDING_DISTANCE_DEFAULT);
+          }
+          assertTrue(updater.getTripStatistics().getTotalDistance() > 0);
+        }
+      });
+    }
+  }
+
+  /**
+   * Benchmarks reading the statistics for each location as the chart does, with
+   * a {@link TripStatisticsUpdater#getTripStatistics()} snapshot per location
+   * and with the allocation free accessors.
+   */
+  public void testChartDataPoints() throws Exception {
+    final Location[] locations = new Location[NUMBER_OF_LOCATIONS];
+    for (int i = 0; i < locations.length; i++) {
+      locations[i] = new MyTracksLocation(LocationManager.GPS_PROVIDER);
+    }
+    for (final int size : BenchmarkUtils.sizes) {
+      BenchmarkUtils.measure("TripStatisticsUpdater.getTripStatistics", size, new Benchmark() {
+          @Override
+        protected void run() {
+          TripStatisticsUpdater updater = new TripStatisticsUpdater(0L);
+          double sum = 0.0;
+          for (int i = 0; i < size; i++) {
+            Location location = locations[i % NUMBER_OF_LOCATIONS];
+            BenchmarkUtils.setLocation(location, i);
+            updater.addLocation(location, PreferencesUtils.MIN_RECORDING_DISTANCE_DEFAULT);
+            TripStatistics tripStatistics = updater.getTripStatistics();
+            sum += tripStatistics.getTotalDistance() + tripStatistics.getTotalTime()
+                + updater.getSmoothedElevation() + updater.getSmoothedSpeed();
+          }
+          assertTrue(sum > 0);
+        }
+      });
+      BenchmarkUtils.measure("TripStatisticsUpdater.getTotalDistance", size, new Benchmark() {
+          @Override
+        protected void run() {
+          TripStatisticsUpdater updater = new TripStatisticsUpdater(0L);
+          double sum = 0.0;
+          for (int i = 0; i < size; i++) {
+            Location location = locations[i % NUMBER_OF_LOCATIONS];
+            BenchmarkUtils.setLocation(location, i);
+            updater.addLocation(location, PreferencesUtils.MIN_RECORDING_DISTANCE_DEFAULT);
+            sum += updater.getTotalDistance() + updater.getTotalTime()
+                + updater.getSmoothedElevation() + updater.getSmoothedSpeed();
+          }
+          assertTrue(sum > 0);
+        }
+      });
+    }
+  }
+
+  /**
+   * Benchmarks {@link DoubleBuffer#getAverage()},
+   * {@link DoubleBuffer#getVariance()}, and
+   * {@link DoubleBuffer#getAverageAndVariance()}, as called for each location.
+   */
+  public void testDoubleBuffer() throws Exception {
+    for (final int size : BenchmarkUtils.sizes) {
+      BenchmarkUtils.measure("DoubleBuffer.getAverage", size, new Benchmark() {
+          @Override
+        protected void run() {
+          DoubleBuffer doubleBuffer = new DoubleBuffer(Constants.ELEVATION_SMOOTHING_FACTOR);
+          double sum = 0.0;
+          for (int i = 0; i < size; i++) {
+            doubleBuffer.setNext(100.0 + 20.0 * Math.sin(i / 200.0));
+            sum += doubleBuffer.getAverage();
+          }
+          assertTrue(sum > 0);
+        }
+      });
+      BenchmarkUtils.measure("DoubleBuffer.getVariance", size, new Benchmark() {
+          @Override
+        protected void run() {
+          DoubleBuffer doubleBuffer = new DoubleBuffer(Constants.SPEED_SMOOTHING_FACTOR);
+          double sum = 0.0;
+          for (int i = 0; i < size; i++) {
+            doubleBuffer.setNext(3.0 + Math.sin(i / 10.0));
+            sum += doubleBuffer.getVariance();
+          }
+          assertTrue(sum > 0);
+        }
+      });
+      BenchmarkUtils.measure("DoubleBuffer.getAverageAndVariance", size, new Benchmark() {
+          @Override
+        protected void run() {
+          DoubleBuffer doubleBuffer = new DoubleBuffer(Constants.SPEED_SMOOTHING_FACTOR);
+          double sum = 0.0;
+          for (int i = 0; i < size; i++) {
+            doubleBuffer.setNext(3.0 + Math.sin(i / 10.0));
+            sum += doubleBuffer.getAverageAndVariance()[1];
+          }
+          assertTrue(sum > 0);
+        }
+      });
+    }
+  }
+}
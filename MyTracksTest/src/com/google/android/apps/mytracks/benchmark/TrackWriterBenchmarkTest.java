@@ -0,0 +1,168 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.benchmark;
+
+import com.google.android.apps.mytracks.benchmark.BenchmarkUtils.Benchmark;
+import com.google.android.apps.mytracks.content.MyTracksLocation;
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.io.file.CompressedTrackFormatWriter;
+import com.google.android.apps.mytracks.io.file.CsvTrackWriter;
+import com.google.android.apps.mytracks.io.file.GpxTrackWriter;
+import com.google.android.apps.mytracks.io.file.KmlTrackWriter;
+import com.google.android.apps.mytracks.io.file.TcxTrackWriter;
+import com.google.android.apps.mytracks.io.file.TrackFormatWriter;
+
+import android.location.Location;
+import android.location.LocationManager;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Benchmarks for the {@link TrackFormatWriter}s, making the same calls as the
+ * TrackWriterImpl for a track with a single segment. The output size of each
+ * format is reported too.
+ */
+@LargeTest
+public class TrackWriterBenchmarkTest extends AndroidTestCase {
+
+  /**
+   * An output stream which only counts the bytes written.
+   */
+  private static class CountingOutputStream extends OutputStream {
+    private long count = 0;
+
+    @Override
+    public void write(int oneByte) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) {
+      count += length;
+    }
+  }
+
+  public void testGpxTrackWriter() throws Exception {
+    benchmark("GpxTrackWriter", new GpxTrackWriter(getContext()));
+  }
+
+  public void testKmlTrackWriter() throws Exception {
+    benchmark("KmlTrackWriter", new KmlTrackWriter(getContext()));
+  }
+
+  public void testCsvTrackWriter() throws Exception {
+    benchmark("CsvTrackWriter", new CsvTrackWriter(getContext()));
+  }
+
+  public void testTcxTrackWriter() throws Exception {
+    benchmark("TcxTrackWriter", new TcxTrackWriter(getContext()));
+  }
+
+  public void testKmzTrackWriter() throws Exception {
+    benchmarkCompressionLevels("KmzTrackWriter", new CompressedWriterFactory() {
+        @Override
+      public TrackFormatWriter newWriter(int compressionLevel) {
+        return CompressedTrackFormatWriter.newZipWriter(
+            new KmlTrackWriter(getContext()), "kmz", "doc.kml", compressionLevel);
+      }
+    });
+  }
+
+  public void testGpxGzTrackWriter() throws Exception {
+    benchmarkCompressionLevels("GpxGzTrackWriter", new CompressedWriterFactory() {
+        @Override
+      public TrackFormatWriter newWriter(int compressionLevel) {
+        return CompressedTrackFormatWriter.newGzipWriter(
+            new GpxTrackWriter(getContext()), compressionLevel);
+      }
+    });
+  }
+
+  public void testCsvGzTrackWriter() throws Exception {
+    benchmarkCompressionLevels("CsvGzTrackWriter", new CompressedWriterFactory() {
+        @Override
+      public TrackFormatWriter newWriter(int compressionLevel) {
+        return CompressedTrackFormatWriter.newGzipWriter(
+            new CsvTrackWriter(getContext()), compressionLevel);
+      }
+    });
+  }
+
+  /**
+   * A factory of compressed track format writers.
+   */
+  private interface CompressedWriterFactory {
+    TrackFormatWriter newWriter(int compressionLevel);
+  }
+
+  /**
+   * Benchmarks a compressed track format writer with the fastest, the default,
+   * and the best compression levels.
+   *
+   * @param name the benchmark name
+   * @param factory the factory of the compressed track format writer
+   */
+  private void benchmarkCompressionLevels(String name, CompressedWriterFactory factory)
+      throws Exception {
+    benchmark(name + "_speed", factory.newWriter(Deflater.BEST_SPEED));
+    benchmark(name, factory.newWriter(Deflater.DEFAULT_COMPRESSION));
+    benchmark(name + "_best", factory.newWriter(Deflater.BEST_COMPRESSION));
+  }
+
+  /**
+   * Benchmarks a track format writer.
+   *
+   * @param name the benchmark name
+   * @param writer the track format writer
+   */
+  private void benchmark(String name, final TrackFormatWriter writer) throws Exception {
+    final Location location = new MyTracksLocation(LocationManager.GPS_PROVIDER);
+    final Location firstLocation = new MyTracksLocation(LocationManager.GPS_PROVIDER);
+    final Location lastLocation = new MyTracksLocation(LocationManager.GPS_PROVIDER);
+    for (final int size : BenchmarkUtils.sizes) {
+      final Track track = BenchmarkUtils.createTrack(size);
+      BenchmarkUtils.setLocation(firstLocation, 0);
+      BenchmarkUtils.setLocation(lastLocation, size - 1);
+      final CountingOutputStream[] outputStreams = new CountingOutputStream[1];
+      BenchmarkUtils.measure(name, size, new Benchmark() {
+          @Override
+        protected void run() {
+          CountingOutputStream outputStream = new CountingOutputStream();
+          outputStreams[0] = outputStream;
+          writer.prepare(track, outputStream);
+          writer.writeHeader();
+          writer.writeBeginWaypoints();
+          writer.writeEndWaypoints();
+          writer.writeBeginTrack(firstLocation);
+          writer.writeOpenSegment();
+          for (int i = 0; i < size; i++) {
+            BenchmarkUtils.setLocation(location, i);
+            writer.writeLocation(location);
+          }
+          writer.writeCloseSegment();
+          writer.writeEndTrack(lastLocation);
+          writer.writeFooter();
+          writer.close();
+          assertTrue(outputStream.count > size);
+        }
+      });
+      BenchmarkUtils.reportSize(name, size, outputStreams[0].count);
+    }
+  }
+}
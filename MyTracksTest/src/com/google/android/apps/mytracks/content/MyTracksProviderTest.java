@@ -17,8 +17,12 @@ package com.google.android.apps.mytracks.content;
 
 import com.google.android.apps.mytracks.content.MyTracksProvider.DatabaseHelper;
 
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.provider.BaseColumns;
 import android.test.AndroidTestCase;
 
 /**
@@ -60,7 +64,7 @@ public class MyTracksProviderTest extends AndroidTestCase {
     dropTable(TrackPointsColumns.TABLE_NAME);
     dropTable(TracksColumns.TABLE_NAME);
     dropTable(WaypointsColumns.TABLE_NAME);
-    databaseHelper.onUpgrade(db, 16, 20);
+    databaseHelper.onUpgrade(db, 16, 22);
     assertTrue(checkTable(TrackPointsColumns.TABLE_NAME));
     assertTrue(checkTable(TracksColumns.TABLE_NAME));
     assertTrue(checkTable(WaypointsColumns.TABLE_NAME));
@@ -74,12 +78,12 @@ public class MyTracksProviderTest extends AndroidTestCase {
   public void testDatabaseHelper_onUpgrade_Version17() {
     DatabaseHelper databaseHelper = new DatabaseHelper(getContext());
 
-    // Make two table is only contains one normal integer column.
+    // Make the tables of an old version.
     dropTable(TrackPointsColumns.TABLE_NAME);
     dropTable(TracksColumns.TABLE_NAME);
     createEmptyTable(TrackPointsColumns.TABLE_NAME);
-    createEmptyTable(TracksColumns.TABLE_NAME);
-    databaseHelper.onUpgrade(db, 17, 20);
+    createOldTracksTable();
+    databaseHelper.onUpgrade(db, 17, 22);
     assertTrue(isColumnExisted(TrackPointsColumns.TABLE_NAME, TrackPointsColumns.SENSOR));
     assertTrue(isColumnExisted(TracksColumns.TABLE_NAME, TracksColumns.TABLEID));
     assertTrue(isColumnExisted(TracksColumns.TABLE_NAME, TracksColumns.ICON));
@@ -93,12 +97,12 @@ public class MyTracksProviderTest extends AndroidTestCase {
   public void testDatabaseHelper_onUpgrade_Version18() {
     DatabaseHelper databaseHelper = new DatabaseHelper(getContext());
 
-    // Make two table is only contains one normal integer column.
+    // Make the tables of an old version.
     dropTable(TrackPointsColumns.TABLE_NAME);
     dropTable(TracksColumns.TABLE_NAME);
     createEmptyTable(TrackPointsColumns.TABLE_NAME);
-    createEmptyTable(TracksColumns.TABLE_NAME);
-    databaseHelper.onUpgrade(db, 18, 20);
+    createOldTracksTable();
+    databaseHelper.onUpgrade(db, 18, 22);
     assertFalse(isColumnExisted(TrackPointsColumns.TABLE_NAME, TrackPointsColumns.SENSOR));
     assertTrue(isColumnExisted(TracksColumns.TABLE_NAME, TracksColumns.TABLEID));
     assertTrue(isColumnExisted(TracksColumns.TABLE_NAME, TracksColumns.ICON));
@@ -112,17 +116,211 @@ public class MyTracksProviderTest extends AndroidTestCase {
   public void testDatabaseHelper_onUpgrade_Version19() {
     DatabaseHelper databaseHelper = new DatabaseHelper(getContext());
 
-    // Make two table is only contains one normal integer column.
+    // Make the tables of an old version.
     dropTable(TrackPointsColumns.TABLE_NAME);
     dropTable(TracksColumns.TABLE_NAME);
     createEmptyTable(TrackPointsColumns.TABLE_NAME);
-    createEmptyTable(TracksColumns.TABLE_NAME);
-    databaseHelper.onUpgrade(db, 19, 20);
+    createOldTracksTable();
+    databaseHelper.onUpgrade(db, 19, 22);
     assertFalse(isColumnExisted(TrackPointsColumns.TABLE_NAME, TrackPointsColumns.SENSOR));
     assertFalse(isColumnExisted(TracksColumns.TABLE_NAME, TracksColumns.TABLEID));
     assertTrue(isColumnExisted(TracksColumns.TABLE_NAME, TracksColumns.ICON));
   }
 
+  /**
+   * Tests the method
+   * {@link MyTracksProvider.DatabaseHelper#onUpgrade(SQLiteDatabase, int, int)}
+   * when version is 20.
+   */
+  public void testDatabaseHelper_onUpgrade_Version20() {
+    DatabaseHelper databaseHelper = new DatabaseHelper(getContext());
+
+    // Recreate the tables without any index.
+    dropTable(TrackPointsColumns.TABLE_NAME);
+    dropTable(WaypointsColumns.TABLE_NAME);
+    createEmptyTable(TrackPointsColumns.TABLE_NAME);
+    db.execSQL(WaypointsColumns.CREATE_TABLE);
+    assertFalse(isIndexExisted(TrackPointsColumns.TRACKID_INDEX));
+    assertFalse(isIndexExisted(WaypointsColumns.TRACKID_INDEX));
+
+    databaseHelper.onUpgrade(db, 20, 22);
+    assertTrue(isIndexExisted(TrackPointsColumns.TRACKID_INDEX));
+    assertTrue(isIndexExisted(WaypointsColumns.TRACKID_INDEX));
+  }
+
+  /**
+   * Tests the method
+   * {@link MyTracksProvider.DatabaseHelper#onUpgrade(SQLiteDatabase, int, int)}
+   * when version is 21. Checks the levels of the existing track points.
+   */
+  public void testDatabaseHelper_onUpgrade_Version21() {
+    DatabaseHelper databaseHelper = new DatabaseHelper(getContext());
+
+    // Recreate the track points table without the level column.
+    dropTable(TrackPointsColumns.TABLE_NAME);
+    createEmptyTable(TrackPointsColumns.TABLE_NAME);
+    db.execSQL(TrackPointsColumns.CREATE_TRACKID_INDEX);
+    insertTrackPoint(1, 1L, 1);
+    insertTrackPoint(2, 2L, 1);
+    insertTrackPoint(3, 1L, 1);
+    insertTrackPoint(4, 1L, 100);
+    insertTrackPoint(5, 1L, 1);
+    insertTrackPoint(6, 1L, 1);
+    insertTrackPoint(7, 2L, 1);
+    assertFalse(isColumnExisted(TrackPointsColumns.TABLE_NAME, TrackPointsColumns.LEVEL));
+
+    databaseHelper.onUpgrade(db, 21, 22);
+    assertTrue(isIndexExisted(TrackPointsColumns.LEVEL_INDEX));
+    int max = TrackPointsColumns.MAX_LEVEL;
+    long[] expected = { max, max, 0, max, max, 0, 0 };
+    Cursor cursor = db.rawQuery("SELECT " + TrackPointsColumns.LEVEL + " FROM "
+        + TrackPointsColumns.TABLE_NAME + " ORDER BY " + TrackPointsColumns._ID, null);
+    try {
+      assertEquals(expected.length, cursor.getCount());
+      for (int i = 0; i < expected.length; i++) {
+        assertTrue(cursor.moveToNext());
+        assertEquals(expected[i], cursor.getLong(0));
+      }
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Tests the method
+   * {@link MyTracksProvider.DatabaseHelper#onUpgrade(SQLiteDatabase, int, int)}
+   * when version is 22. Checks the existing tracks and waypoints are indexed
+   * once, and the new tracks are indexed by the triggers.
+   */
+  public void testDatabaseHelper_onUpgrade_Version22() {
+    DatabaseHelper databaseHelper = new DatabaseHelper(getContext());
+    insertRow(TracksColumns.TABLE_NAME, 1L, TracksColumns.NAME, "morning run");
+    insertRow(WaypointsColumns.TABLE_NAME, 1L, WaypointsColumns.NAME, "summit");
+
+    // Empty the search indexes, as before the upgrade.
+    db.execSQL("DELETE FROM " + SearchIndex.TRACKS_INDEX);
+    db.execSQL("DELETE FROM " + SearchIndex.WAYPOINTS_INDEX);
+    assertEquals(0, getSearchCount(TracksColumns.TABLE_NAME, SearchIndex.TRACKS_INDEX, "run"));
+
+    databaseHelper.onUpgrade(db, 22, 26);
+    assertEquals(1, getSearchCount(TracksColumns.TABLE_NAME, SearchIndex.TRACKS_INDEX, "run"));
+    assertEquals(1,
+        getSearchCount(WaypointsColumns.TABLE_NAME, SearchIndex.WAYPOINTS_INDEX, "summit"));
+    assertEquals(1, DatabaseUtils.queryNumEntries(db, SearchIndex.TRACKS_INDEX));
+
+    insertRow(TracksColumns.TABLE_NAME, 2L, TracksColumns.NAME, "evening run");
+    assertEquals(2, getSearchCount(TracksColumns.TABLE_NAME, SearchIndex.TRACKS_INDEX, "run"));
+    assertEquals(2, DatabaseUtils.queryNumEntries(db, SearchIndex.TRACKS_INDEX));
+  }
+
+  /**
+   * Tests the method
+   * {@link MyTracksProvider.DatabaseHelper#onUpgrade(SQLiteDatabase, int, int)}
+   * when version is 23. Checks the existing tracks are indexed once, and the
+   * new tracks are indexed by the triggers.
+   */
+  public void testDatabaseHelper_onUpgrade_Version23() {
+    DatabaseHelper databaseHelper = new DatabaseHelper(getContext());
+    insertTrackBounds(1L, 1000000, 1000000, 2000000, 2000000);
+
+    // Empty the spatial index, as before the upgrade.
+    db.execSQL("DELETE FROM " + SpatialIndex.TRACKS_INDEX);
+    int[] bounds = { 1500000, 1500000, 1600000, 1600000 };
+    assertEquals(0, getSpatialCount(bounds));
+
+    databaseHelper.onUpgrade(db, 23, 26);
+    assertEquals(1, getSpatialCount(bounds));
+    assertEquals(1, DatabaseUtils.queryNumEntries(db, SpatialIndex.TRACKS_INDEX));
+
+    insertTrackBounds(2L, 1550000, 1550000, 1560000, 1560000);
+    insertTrackBounds(3L, -2000000, -2000000, -1000000, -1000000);
+    assertEquals(2, getSpatialCount(bounds));
+    assertEquals(3, DatabaseUtils.queryNumEntries(db, SpatialIndex.TRACKS_INDEX));
+  }
+
+  /**
+   * Tests the method
+   * {@link MyTracksProvider.DatabaseHelper#onUpgrade(SQLiteDatabase, int, int)}
+   * when version is 24. Checks the existing tracks are aggregated once, and
+   * the new tracks are aggregated by the triggers.
+   */
+  public void testDatabaseHelper_onUpgrade_Version24() {
+    DatabaseHelper databaseHelper = new DatabaseHelper(getContext());
+    insertRow(TracksColumns.TABLE_NAME, 1L, TracksColumns.CATEGORY, "run");
+    insertRow(TracksColumns.TABLE_NAME, 2L, TracksColumns.CATEGORY, "run");
+
+    // Empty the aggregates, as before the upgrade.
+    db.execSQL("DELETE FROM " + AggregatesColumns.TABLE_NAME);
+
+    databaseHelper.onUpgrade(db, 24, 26);
+    assertEquals(2, getNumTracks(AggregatesColumns.TYPE_ALL));
+    assertEquals(2, getNumTracks(AggregatesColumns.TYPE_CATEGORY));
+
+    insertRow(TracksColumns.TABLE_NAME, 3L, TracksColumns.CATEGORY, "run");
+    assertEquals(3, getNumTracks(AggregatesColumns.TYPE_ALL));
+    assertEquals(3, getNumTracks(AggregatesColumns.TYPE_CATEGORY));
+    assertEquals(2, DatabaseUtils.queryNumEntries(db, AggregatesColumns.TABLE_NAME));
+  }
+
+  /**
+   * Tests the {@link MyTracksProvider.LevelCounter}.
+   */
+  public void testLevelCounter() {
+    MyTracksProvider.LevelCounter levelCounter = new MyTracksProvider.LevelCounter(0L);
+    int max = TrackPointsColumns.MAX_LEVEL;
+    assertEquals(max, levelCounter.next(1, 1));
+    assertEquals(0, levelCounter.next(1, 1));
+    assertEquals(1, levelCounter.next(1, 1));
+    assertEquals(0, levelCounter.next(1, 1));
+    assertEquals(2, levelCounter.next(1, 1));
+
+    // A segment split and a new segment
+    assertEquals(max, levelCounter.next(100000000, 0));
+    assertEquals(max, levelCounter.next(1, 1));
+    assertEquals(0, levelCounter.next(1, 1));
+
+    // Resumes from an ordinal
+    levelCounter = new MyTracksProvider.LevelCounter(8L);
+    assertEquals(3, levelCounter.next(1, 1));
+    assertEquals(0, levelCounter.next(1, 1));
+  }
+
+  /**
+   * Tests that the track point queries by track id use the trackid index
+   * instead of scanning the whole table.
+   */
+  public void testTrackPointsQueryPlan() {
+    String plan = getQueryPlan("SELECT max(" + TrackPointsColumns._ID + ") FROM "
+        + TrackPointsColumns.TABLE_NAME + " WHERE " + TrackPointsColumns.TRACKID + "=1");
+    assertTrue(plan, plan.contains(TrackPointsColumns.TRACKID_INDEX));
+
+    plan = getQueryPlan("SELECT * FROM " + TrackPointsColumns.TABLE_NAME + " WHERE "
+        + TrackPointsColumns.TRACKID + "=1 AND " + TrackPointsColumns._ID + ">=10 ORDER BY "
+        + TrackPointsColumns._ID + " LIMIT 100");
+    assertTrue(plan, plan.contains(TrackPointsColumns.TRACKID_INDEX));
+  }
+
+  /**
+   * Tests that the track point queries at a level of detail use the level
+   * index instead of scanning the whole track.
+   */
+  public void testTrackPointsLevelQueryPlan() {
+    String plan = getQueryPlan("SELECT * FROM " + TrackPointsColumns.TABLE_NAME + " WHERE "
+        + TrackPointsColumns.TRACKID + "=1 AND +" + TrackPointsColumns._ID + ">=10 AND "
+        + TrackPointsColumns.LEVEL + ">=3 ORDER BY +" + TrackPointsColumns._ID + " LIMIT 100");
+    assertTrue(plan, plan.contains(TrackPointsColumns.LEVEL_INDEX));
+  }
+
+  /**
+   * Tests that the waypoint queries by track id use the trackid index instead
+   * of scanning the whole table.
+   */
+  public void testWaypointsQueryPlan() {
+    String plan = getQueryPlan("SELECT * FROM " + WaypointsColumns.TABLE_NAME + " WHERE "
+        + WaypointsColumns.TRACKID + "=1 ORDER BY " + WaypointsColumns._ID);
+    assertTrue(plan, plan.contains(WaypointsColumns.TRACKID_INDEX));
+  }
+
   /**
    * Tests the method {@link MyTracksProvider#onCreate()}.
    */
@@ -142,12 +340,104 @@ public class MyTracksProviderTest extends AndroidTestCase {
   }
 
   /**
-   * Creates an table only contains one column.
+   * Creates an table only contains the id, track id, latitude, and longitude
+   * columns.
    * 
    * @param table the name of table
    */
   private void createEmptyTable(String table) {
-    db.execSQL("CREATE TABLE " + table + " (test INTEGER)");
+    db.execSQL("CREATE TABLE " + table + " (" + BaseColumns._ID + " INTEGER PRIMARY KEY, "
+        + TrackPointsColumns.TRACKID + " INTEGER, " + TrackPointsColumns.LATITUDE + " INTEGER, "
+        + TrackPointsColumns.LONGITUDE + " INTEGER)");
+  }
+
+  /**
+   * Creates a tracks table without the tableid and icon columns, added by the
+   * upgrades from versions 18 and 19.
+   */
+  private void createOldTracksTable() {
+    db.execSQL(TracksColumns.CREATE_TABLE
+        .replace(", " + TracksColumns.TABLEID + " STRING", "")
+        .replace(", " + TracksColumns.ICON + " STRING", ""));
+  }
+
+  /**
+   * Inserts a row with an id and a text column.
+   * 
+   * @param table the table
+   * @param id the id
+   * @param column the text column
+   * @param value the text value
+   */
+  private void insertRow(String table, long id, String column, String value) {
+    db.execSQL("INSERT INTO " + table + " (" + BaseColumns._ID + ", " + column + ") VALUES ("
+        + id + ", " + DatabaseUtils.sqlEscapeString(value) + ")");
+  }
+
+  /**
+   * Gets the number of rows of a table matching a search.
+   * 
+   * @param table the table
+   * @param index the search index of the table
+   * @param text the searched text
+   */
+  private long getSearchCount(String table, String index, String text) {
+    return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + table + " WHERE "
+        + SearchIndex.getSelection(index), new String[] { SearchIndex.getMatchQuery(text) });
+  }
+
+  /**
+   * Inserts a track with a bounding box.
+   * 
+   * @param id the track id
+   * @param bottom the minimum latitude in microdegrees
+   * @param left the minimum longitude in microdegrees
+   * @param top the maximum latitude in microdegrees
+   * @param right the maximum longitude in microdegrees
+   */
+  private void insertTrackBounds(long id, int bottom, int left, int top, int right) {
+    ContentValues values = new ContentValues();
+    values.put(TracksColumns._ID, id);
+    values.put(TracksColumns.MINLAT, bottom);
+    values.put(TracksColumns.MINLON, left);
+    values.put(TracksColumns.MAXLAT, top);
+    values.put(TracksColumns.MAXLON, right);
+    db.insertOrThrow(TracksColumns.TABLE_NAME, null, values);
+  }
+
+  /**
+   * Gets the number of tracks intersecting a bounding box.
+   * 
+   * @param bounds the bottom, left, top, and right bounds in microdegrees
+   */
+  private long getSpatialCount(int[] bounds) {
+    return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + TracksColumns.TABLE_NAME
+        + " WHERE " + SpatialIndex.getTracksSelection(bounds), null);
+  }
+
+  /**
+   * Gets the number of tracks of the aggregates of a type, summed over the
+   * keys.
+   * 
+   * @param type the aggregate type
+   */
+  private long getNumTracks(int type) {
+    return DatabaseUtils.longForQuery(db, "SELECT SUM(" + AggregatesColumns.NUMTRACKS
+        + ") FROM " + AggregatesColumns.TABLE_NAME + " WHERE " + AggregatesColumns.TYPE + "="
+        + type, null);
+  }
+
+  /**
+   * Inserts a track point into a table created by
+   * {@link #createEmptyTable(String)}.
+   * 
+   * @param id the track point id
+   * @param trackId the track id
+   * @param latitude the latitude in degrees
+   */
+  private void insertTrackPoint(long id, long trackId, int latitude) {
+    db.execSQL("INSERT INTO " + TrackPointsColumns.TABLE_NAME + " VALUES (" + id + ", " + trackId
+        + ", " + latitude * 1000000 + ", 0)");
   }
 
   /**
@@ -174,6 +464,42 @@ public class MyTracksProviderTest extends AndroidTestCase {
     }
   }
 
+  /**
+   * Checks whether an index is existed.
+   * 
+   * @param index the name of index
+   * @return true means the index has existed
+   */
+  private boolean isIndexExisted(String index) {
+    Cursor cursor = db.rawQuery(
+        "SELECT name FROM sqlite_master WHERE type='index' AND name=?", new String[] { index });
+    try {
+      return cursor.moveToFirst();
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Gets the query plan of a query, concatenating the details of all the
+   * steps.
+   * 
+   * @param query the query
+   */
+  private String getQueryPlan(String query) {
+    Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + query, null);
+    try {
+      StringBuilder plan = new StringBuilder();
+      int detailIndex = cursor.getColumnIndexOrThrow("detail");
+      while (cursor.moveToNext()) {
+        plan.append(cursor.getString(detailIndex)).append('\n');
+      }
+      return plan.toString();
+    } finally {
+      cursor.close();
+    }
+  }
+
   /**
    * Checks whether a column in a table is existed by whether can order by the
    * column.
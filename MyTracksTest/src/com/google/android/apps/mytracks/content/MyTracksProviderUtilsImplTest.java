@@ -17,12 +17,14 @@ package com.google.android.apps.mytracks.content;
 
 import com.google.android.apps.mytracks.content.MyTracksProviderUtils.LocationFactory;
 import com.google.android.apps.mytracks.content.MyTracksProviderUtils.LocationIterator;
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils.TrackImportSession;
 import com.google.android.apps.mytracks.services.TrackRecordingServiceTest.MockContext;
 import com.google.android.apps.mytracks.stats.TripStatistics;
 import com.google.android.testing.mocking.AndroidMock;
 import com.google.android.testing.mocking.UsesMocks;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
@@ -32,6 +34,7 @@ import android.test.RenamingDelegatingContext;
 import android.test.mock.MockContentResolver;
 
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.List;
 import java.util.Vector;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -337,6 +340,43 @@ public class MyTracksProviderUtilsImplTest extends AndroidTestCase {
     providerUtils.updateTrack(track);
     assertEquals(nameNew, providerUtils.getTrack(trackId).getName()); 
   }
+
+  /**
+   * Tests the method {@link MyTracksProviderUtilsImpl#updateTrackStatistics(Track)}.
+   */
+  public void testUpdateTrackStatistics() {
+    long trackId = System.currentTimeMillis();
+    Track track = getTrack(trackId, 0);
+    track.setName("name1");
+    providerUtils.insertTrack(track);
+    assertFalse(track.isDirty());
+
+    // Nothing modified, nothing written
+    assertFalse(providerUtils.updateTrackStatistics(track));
+
+    // Only the statistics columns are written
+    Track otherTrack = providerUtils.getTrack(trackId);
+    otherTrack.setName("name2");
+    providerUtils.updateTrack(otherTrack);
+
+    TripStatistics tripStatistics = new TripStatistics(track.getTripStatistics());
+    tripStatistics.setTotalDistance(1000.0);
+    track.setTripStatistics(tripStatistics);
+    track.setStopId(10L);
+    track.setNumberOfPoints(5);
+    assertTrue(track.getDirtyColumns().contains(TracksColumns.TOTALDISTANCE));
+    assertTrue(track.getDirtyColumns().contains(TracksColumns.STOPID));
+    assertTrue(track.getDirtyColumns().contains(TracksColumns.NUMPOINTS));
+    assertFalse(track.getDirtyColumns().contains(TracksColumns.MAXSPEED));
+    assertTrue(providerUtils.updateTrackStatistics(track));
+    assertFalse(track.isDirty());
+
+    Track updatedTrack = providerUtils.getTrack(trackId);
+    assertEquals("name2", updatedTrack.getName());
+    assertEquals(1000.0, updatedTrack.getTripStatistics().getTotalDistance());
+    assertEquals(10L, updatedTrack.getStopId());
+    assertEquals(5, updatedTrack.getNumberOfPoints());
+  }
   
   /**
    * Tests the method {@link MyTracksProviderUtilsImpl#createContentValues(Waypoint)}.
@@ -644,12 +684,88 @@ public class MyTracksProviderUtilsImplTest extends AndroidTestCase {
     Track track = getTrack(trackId, 10);
     insertTrackWithLocations(track);
   
-    providerUtils.bulkInsertTrackPoint(track.getLocations().toArray(new Location[0]), -1, trackId);
+    providerUtils.bulkInsertTrackPoint(createLocations(10), -1, trackId);
     assertEquals(20, providerUtils.getTrackPointCursor(trackId, 0, 1000, false).getCount());
-    providerUtils.bulkInsertTrackPoint(track.getLocations().toArray(new Location[0]), 8, trackId);
+    providerUtils.bulkInsertTrackPoint(createLocations(10), 8, trackId);
     assertEquals(28, providerUtils.getTrackPointCursor(trackId, 0, 1000, false).getCount());
   }
 
+  /**
+   * Tests committing a {@link TrackImportSession}. The track and its track
+   * points are written with contiguous ids.
+   */
+  public void testTrackImportSession_commit() {
+    testTrackImportSession(10);
+  }
+
+  /**
+   * Tests committing a {@link TrackImportSession} with a large track, written
+   * in a single transaction.
+   */
+  public void testTrackImportSession_commitLargeTrack() {
+    testTrackImportSession(10000);
+  }
+
+  /**
+   * Tests committing a {@link TrackImportSession} without track points.
+   */
+  public void testTrackImportSession_commitEmptyTrack() {
+    TrackImportSession trackImportSession = providerUtils.createTrackImportSession();
+    Track track = new Track();
+    track.setName(NAME_PREFIX);
+    long trackId = trackImportSession.commit(track);
+    Track savedTrack = providerUtils.getTrack(trackId);
+    assertEquals(NAME_PREFIX, savedTrack.getName());
+    assertEquals(-1L, savedTrack.getStartId());
+    assertEquals(-1L, savedTrack.getStopId());
+  }
+
+  /**
+   * Tests rolling back a {@link TrackImportSession}. Nothing is written.
+   */
+  public void testTrackImportSession_rollback() {
+    TrackImportSession trackImportSession = providerUtils.createTrackImportSession();
+    trackImportSession.insertTrackPoints(createLocations(10), 10);
+    assertEquals(10, trackImportSession.getNumberOfTrackPoints());
+    trackImportSession.rollback();
+    assertEquals(0, trackImportSession.getNumberOfTrackPoints());
+    assertTrue(providerUtils.getAllTracks().isEmpty());
+  }
+
+  private void testTrackImportSession(int numPoints) {
+    TrackImportSession trackImportSession = providerUtils.createTrackImportSession();
+    Location[] locations = createLocations(numPoints);
+    trackImportSession.insertTrackPoints(locations, locations.length);
+    assertEquals(numPoints, trackImportSession.getNumberOfTrackPoints());
+
+    Track track = new Track();
+    track.setName(NAME_PREFIX);
+    track.setNumberOfPoints(numPoints);
+    long trackId = trackImportSession.commit(track);
+    assertEquals(trackId, track.getId());
+    assertEquals(0, trackImportSession.getNumberOfTrackPoints());
+
+    Track savedTrack = providerUtils.getTrack(trackId);
+    assertEquals(NAME_PREFIX, savedTrack.getName());
+    assertEquals(numPoints, savedTrack.getNumberOfPoints());
+    assertEquals(track.getStartId(), savedTrack.getStartId());
+    assertEquals(track.getStopId(), savedTrack.getStopId());
+    assertEquals(providerUtils.getFirstTrackPointId(trackId), savedTrack.getStartId());
+    assertEquals(providerUtils.getLastTrackPointId(trackId), savedTrack.getStopId());
+    assertEquals(numPoints - 1, savedTrack.getStopId() - savedTrack.getStartId());
+
+    LocationIterator locationIterator = providerUtils.getTrackPointLocationIterator(
+        trackId, -1L, false, MyTracksProviderUtils.DEFAULT_LOCATION_FACTORY);
+    for (int i = 0; i < numPoints; i++) {
+      assertTrue(locationIterator.hasNext());
+      Location location = locationIterator.next();
+      assertEquals(INITIAL_LATITUDE + (double) i / 10000.0, location.getLatitude(), 1E-6);
+      assertEquals(INITIAL_LONGITUDE - (double) i / 10000.0, location.getLongitude(), 1E-6);
+    }
+    assertFalse(locationIterator.hasNext());
+    locationIterator.close();
+  }
+
   /**
    * Tests the method {@link MyTracksProviderUtilsImpl#createTrackPoint(Cursor)}.
    */
@@ -847,6 +963,291 @@ public class MyTracksProviderUtilsImplTest extends AndroidTestCase {
     assertFalse(locationIterator.hasNext());
   }
 
+  /**
+   * Tests the method
+   * {@link MyTracksProviderUtilsImpl#getTrackPointLocationIterator(long, long, boolean, int, LocationFactory)}
+   * at a level of detail.
+   */
+  public void testGetTrackPointLocationIterator_level() {
+    long trackId = System.currentTimeMillis();
+    Track track = getTrack(trackId, 10);
+    insertTrackWithLocations(track);
+
+    // Level 1 has every other track point, level 2 every fourth track point
+    int[][] expected = { { 0, 2, 4, 6, 8 }, { 0, 4, 8 }, { 0, 8 } };
+    for (int level = 1; level <= 3; level++) {
+      LocationIterator locationIterator = providerUtils.getTrackPointLocationIterator(
+          trackId, -1L, false, level, MyTracksProviderUtils.DEFAULT_LOCATION_FACTORY);
+      for (int i : expected[level - 1]) {
+        assertTrue(locationIterator.hasNext());
+        checkLocation(i, locationIterator.next());
+      }
+      assertFalse(locationIterator.hasNext());
+      locationIterator.close();
+    }
+  }
+
+  /**
+   * Tests the method
+   * {@link MyTracksProviderUtilsImpl#getTracksInBounds(int, int, int, int, int)}
+   * with tracks of different sizes, and after updating and deleting tracks.
+   */
+  public void testGetTracksInBounds() {
+    long smallId = insertTrackWithBounds(37000000, -57000000, 37001000, -56999000);
+    long largeId = insertTrackWithBounds(30000000, -60000000, 40000000, -50000000);
+    long farId = insertTrackWithBounds(-10000000, 100000000, -9990000, 100010000);
+    // A track without locations isn't in any bounds
+    providerUtils.insertTrack(getTrack(System.currentTimeMillis(), 0));
+
+    assertTrackIds(providerUtils.getTracksInBounds(36990000, -57010000, 37010000, -56990000, -1),
+        smallId, largeId);
+    assertTrackIds(providerUtils.getTracksInBounds(39000000, -51000000, 41000000, -49000000, -1),
+        largeId);
+    assertTrackIds(providerUtils.getTracksInBounds(-90000000, -180000000, 90000000, 180000000, 2),
+        smallId, largeId);
+
+    Track track = providerUtils.getTrack(farId);
+    track.getTripStatistics().setBounds(-56999500, 37000500, -56999500, 37000500);
+    providerUtils.updateTrack(track);
+    providerUtils.deleteTrack(smallId);
+    assertTrackIds(providerUtils.getTracksInBounds(36990000, -57010000, 37010000, -56990000, -1),
+        largeId, farId);
+  }
+
+  /**
+   * Tests the method
+   * {@link MyTracksProviderUtilsImpl#getNearestTracks(int, int, int)}.
+   */
+  public void testGetNearestTracks() {
+    long farId = insertTrackWithBounds(-10000000, 100000000, -9990000, 100010000);
+    long nearId = insertTrackWithBounds(37010000, -57000000, 37020000, -56990000);
+    long aroundId = insertTrackWithBounds(36000000, -58000000, 38000000, -56000000);
+
+    assertTrackIds(providerUtils.getNearestTracks(37000000, -57000000, 2), aroundId, nearId);
+    assertTrackIds(providerUtils.getNearestTracks(37000000, -57000000, 5), aroundId, nearId, farId);
+    assertTrackIds(providerUtils.getNearestTracks(-10000000, 100000000, 1), farId);
+  }
+
+  /**
+   * Tests the method
+   * {@link MyTracksProviderUtilsImpl#getWaypointsInBounds(int, int, int, int, int)}
+   * and {@link MyTracksProviderUtilsImpl#getNearestWaypoints(int, int, int)}.
+   */
+  public void testGetWaypointsInBoundsAndNearest() {
+    long trackId = System.currentTimeMillis();
+    providerUtils.insertTrack(getTrack(trackId, 0));
+    long[] waypointIds = new long[5];
+    for (int i = 0; i < waypointIds.length; i++) {
+      waypointIds[i] = insertWaypoint(trackId, INITIAL_LATITUDE + i * 0.01, INITIAL_LONGITUDE);
+    }
+
+    List<Waypoint> waypoints = providerUtils.getWaypointsInBounds(
+        37015000, -57001000, 37035000, -56999000, -1);
+    assertEquals(2, waypoints.size());
+    assertEquals(waypointIds[2], waypoints.get(0).getId());
+    assertEquals(waypointIds[3], waypoints.get(1).getId());
+
+    providerUtils.deleteWaypoint(waypointIds[2], null);
+    waypoints = providerUtils.getNearestWaypoints(37021000, -57000000, 3);
+    assertEquals(3, waypoints.size());
+    assertEquals(waypointIds[3], waypoints.get(0).getId());
+    assertEquals(waypointIds[1], waypoints.get(1).getId());
+    assertEquals(waypointIds[4], waypoints.get(2).getId());
+  }
+
+  /**
+   * Tests the aggregates are kept in sync with the inserted, updated, and
+   * deleted tracks.
+   */
+  public void testAggregates() {
+    assertNull(providerUtils.getAggregatedTripStatistics());
+
+    long march = getTime(Calendar.MARCH, 1);
+    long april = getTime(Calendar.APRIL, 1);
+    Track track1 = insertTrackWithStatistics("run", getTime(Calendar.MARCH, 10), 1);
+    Track track2 = insertTrackWithStatistics("run", getTime(Calendar.APRIL, 20), 2);
+    Track track3 = insertTrackWithStatistics("bike", getTime(Calendar.APRIL, 5), 3);
+    assertAggregatedTripStatistics(providerUtils.getAggregatedTripStatistics(), track1, track2,
+        track3);
+    assertAggregates(AggregatesColumns.TYPE_CATEGORY, new Object[] { "run", "bike" },
+        new Track[][] { { track1, track2 }, { track3 } });
+    assertAggregates(AggregatesColumns.TYPE_MONTH, new Object[] { april, march },
+        new Track[][] { { track2, track3 }, { track1 } });
+
+    // Update the statistics and move the track to another category and month
+    TripStatistics tripStatistics = new TripStatistics(track2.getTripStatistics());
+    tripStatistics.setStartTime(getTime(Calendar.MARCH, 30));
+    tripStatistics.setTotalDistance(10000.0);
+    tripStatistics.setMaxSpeed(100.0);
+    track2.setTripStatistics(tripStatistics);
+    track2.setCategory("bike");
+    providerUtils.updateTrack(track2);
+    assertAggregatedTripStatistics(providerUtils.getAggregatedTripStatistics(), track1, track2,
+        track3);
+    assertAggregates(AggregatesColumns.TYPE_CATEGORY, new Object[] { "run", "bike" },
+        new Track[][] { { track1 }, { track2, track3 } });
+    assertAggregates(AggregatesColumns.TYPE_MONTH, new Object[] { april, march },
+        new Track[][] { { track3 }, { track1, track2 } });
+
+    // Delete the track with the maximum speed
+    providerUtils.deleteTrack(track2.getId());
+    assertAggregatedTripStatistics(providerUtils.getAggregatedTripStatistics(), track1, track3);
+    assertAggregates(AggregatesColumns.TYPE_CATEGORY, new Object[] { "run", "bike" },
+        new Track[][] { { track1 }, { track3 } });
+    assertAggregates(AggregatesColumns.TYPE_MONTH, new Object[] { april, march },
+        new Track[][] { { track3 }, { track1 } });
+
+    providerUtils.deleteAllTracks();
+    assertNull(providerUtils.getAggregatedTripStatistics());
+    assertAggregates(AggregatesColumns.TYPE_MONTH, new Object[0], new Track[0][]);
+  }
+
+  /**
+   * Gets a time in 2013, in the local time zone.
+   * 
+   * @param month the month
+   * @param day the day of the month
+   */
+  private long getTime(int month, int day) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(2013, month, day);
+    return calendar.getTimeInMillis();
+  }
+
+  /**
+   * Inserts a track with trip statistics.
+   * 
+   * @param category the category
+   * @param startTime the start time
+   * @param i the index of the track, to vary the statistics
+   * @return the inserted track.
+   */
+  private Track insertTrackWithStatistics(String category, long startTime, int i) {
+    Track track = new Track();
+    track.setCategory(category);
+    TripStatistics tripStatistics = track.getTripStatistics();
+    tripStatistics.setStartTime(startTime);
+    tripStatistics.setStopTime(startTime + i * 1000L);
+    tripStatistics.setTotalDistance(i * 100.5);
+    tripStatistics.setTotalTime(i * 1000L);
+    tripStatistics.setMovingTime(i * 500L);
+    tripStatistics.setBounds(-i * 1000, i * 2000, i * 1000, -i * 2000);
+    tripStatistics.setMaxSpeed(i * 1.5);
+    tripStatistics.setMinElevation(-i * 10.0);
+    tripStatistics.setMaxElevation(i * 10.0);
+    tripStatistics.setTotalElevationGain(i * 5.0);
+    tripStatistics.setMinGrade(-i * 0.5);
+    tripStatistics.setMaxGrade(i * 0.5);
+    track.setId(ContentUris.parseId(providerUtils.insertTrack(track)));
+    return track;
+  }
+
+  /**
+   * Checks the aggregates of a type.
+   * 
+   * @param type the aggregate type
+   * @param keys the expected keys, in the cursor order
+   * @param tracks the expected tracks of each key
+   */
+  private void assertAggregates(int type, Object[] keys, Track[][] tracks) {
+    Cursor cursor = providerUtils.getAggregatesCursor(type);
+    try {
+      assertEquals(keys.length, cursor.getCount());
+      int keyIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.KEY);
+      int numTracksIndex = cursor.getColumnIndexOrThrow(AggregatesColumns.NUMTRACKS);
+      for (int i = 0; i < keys.length; i++) {
+        assertTrue(cursor.moveToNext());
+        if (keys[i] instanceof Long) {
+          assertEquals(keys[i], cursor.getLong(keyIndex));
+        } else {
+          assertEquals(keys[i], cursor.getString(keyIndex));
+        }
+        assertEquals(tracks[i].length, cursor.getInt(numTracksIndex));
+        assertAggregatedTripStatistics(
+            providerUtils.createAggregatedTripStatistics(cursor), tracks[i]);
+      }
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Checks aggregated trip statistics are the merged trip statistics of
+   * tracks.
+   * 
+   * @param tripStatistics the aggregated trip statistics
+   * @param tracks the tracks
+   */
+  private void assertAggregatedTripStatistics(TripStatistics tripStatistics, Track... tracks) {
+    TripStatistics expected = new TripStatistics(tracks[0].getTripStatistics());
+    for (int i = 1; i < tracks.length; i++) {
+      expected.merge(tracks[i].getTripStatistics());
+    }
+    assertNotNull(tripStatistics);
+    assertEquals(expected.getStartTime(), tripStatistics.getStartTime());
+    assertEquals(expected.getStopTime(), tripStatistics.getStopTime());
+    assertEquals(expected.getTotalDistance(), tripStatistics.getTotalDistance(), 0.01);
+    assertEquals(expected.getTotalTime(), tripStatistics.getTotalTime());
+    assertEquals(expected.getMovingTime(), tripStatistics.getMovingTime());
+    assertEquals(expected.getBottom(), tripStatistics.getBottom());
+    assertEquals(expected.getLeft(), tripStatistics.getLeft());
+    assertEquals(expected.getTop(), tripStatistics.getTop());
+    assertEquals(expected.getRight(), tripStatistics.getRight());
+    assertEquals(expected.getMaxSpeed(), tripStatistics.getMaxSpeed(), 0.01);
+    assertEquals(expected.getMinElevation(), tripStatistics.getMinElevation(), 0.01);
+    assertEquals(expected.getMaxElevation(), tripStatistics.getMaxElevation(), 0.01);
+    assertEquals(expected.getTotalElevationGain(), tripStatistics.getTotalElevationGain(), 0.01);
+    assertEquals(expected.getMinGrade(), tripStatistics.getMinGrade(), 0.01);
+    assertEquals(expected.getMaxGrade(), tripStatistics.getMaxGrade(), 0.01);
+  }
+
+  /**
+   * Inserts a track with a bounding box.
+   * 
+   * @param bottomE6 the minimum latitude in microdegrees
+   * @param leftE6 the minimum longitude in microdegrees
+   * @param topE6 the maximum latitude in microdegrees
+   * @param rightE6 the maximum longitude in microdegrees
+   * @return the track id.
+   */
+  private long insertTrackWithBounds(int bottomE6, int leftE6, int topE6, int rightE6) {
+    Track track = new Track();
+    track.getTripStatistics().setBounds(leftE6, topE6, rightE6, bottomE6);
+    return ContentUris.parseId(providerUtils.insertTrack(track));
+  }
+
+  /**
+   * Inserts a waypoint at a location.
+   * 
+   * @param trackId the track id
+   * @param latitude the latitude
+   * @param longitude the longitude
+   * @return the waypoint id.
+   */
+  private long insertWaypoint(long trackId, double latitude, double longitude) {
+    Waypoint waypoint = new Waypoint();
+    waypoint.setTrackId(trackId);
+    Location location = new Location("test");
+    location.setLatitude(latitude);
+    location.setLongitude(longitude);
+    waypoint.setLocation(location);
+    return ContentUris.parseId(providerUtils.insertWaypoint(waypoint));
+  }
+
+  /**
+   * Checks the ids of tracks.
+   * 
+   * @param tracks the tracks
+   * @param trackIds the expected track ids
+   */
+  private void assertTrackIds(List<Track> tracks, long... trackIds) {
+    assertEquals(trackIds.length, tracks.size());
+    for (int i = 0; i < trackIds.length; i++) {
+      assertEquals(trackIds[i], tracks.get(i).getId());
+    }
+  }
+
   /**
    * Simulates a track which is used for testing.
    * 
@@ -859,11 +1260,22 @@ public class MyTracksProviderUtilsImplTest extends AndroidTestCase {
     track.setId(id);
     track.setName("Test: " + id);
     track.setNumberOfPoints(numPoints);
-    for(int i = 0; i < numPoints; i++) {
-      track.addLocation(createLocation(i));
-    }
     return track;
   }
+
+  /**
+   * Creates locations.
+   * 
+   * @param numPoints the number of locations
+   * @return created locations
+   */
+  private Location[] createLocations(int numPoints) {
+    Location[] locations = new Location[numPoints];
+    for (int i = 0; i < numPoints; i++) {
+      locations[i] = createLocation(i);
+    }
+    return locations;
+  }
   
   /**
    * Creates a location.
@@ -884,7 +1296,7 @@ public class MyTracksProviderUtilsImplTest extends AndroidTestCase {
    * Checks the value of a location.
    * 
    * @param i the index of this location which created in the method
-   *          {@link MyTracksProviderUtilsImplTest#getTrack(long, int)}
+   *          {@link MyTracksProviderUtilsImplTest#createLocation(int)}
    * @param location the location to be checked
    */
   private void checkLocation(int i, Location location) {
@@ -901,7 +1313,7 @@ public class MyTracksProviderUtilsImplTest extends AndroidTestCase {
    */
   private void insertTrackWithLocations(Track track) {
     providerUtils.insertTrack(track);
-    providerUtils.bulkInsertTrackPoint(track.getLocations().toArray(new Location[0]), track
-        .getLocations().size(), track.getId());
+    Location[] locations = createLocations(track.getNumberOfPoints());
+    providerUtils.bulkInsertTrackPoint(locations, locations.length, track.getId());
   }
 }
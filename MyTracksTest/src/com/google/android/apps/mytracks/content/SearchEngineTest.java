@@ -152,9 +152,9 @@ public class SearchEngineTest extends AndroidTestCase {
     long descriptionMatchId = insertTrack("bb", "aa", "cc");
     long categoryMatchId = insertTrack("bb", "cc", "aa");
     long titleMatchId = insertTrack("aa", "bb", "cc");
-    long titleCategoryMatchId = insertTrack("aa", "bb", "ca");
-    long titleDescriptionMatchId = insertTrack("aa", "ba", "cc");
-    long allMatchId = insertTrack("aa", "ba", "ca");
+    long titleCategoryMatchId = insertTrack("aa", "bb", "ac");
+    long titleDescriptionMatchId = insertTrack("aa", "ab", "cc");
+    long allMatchId = insertTrack("aa", "ab", "ac");
 
     SearchQuery query = new SearchQuery("a", null, -1, NOW);
     ArrayList<ScoredResult> results = new ArrayList<ScoredResult>(engine.search(query));
@@ -178,9 +178,9 @@ public class SearchEngineTest extends AndroidTestCase {
     long descriptionMatchId = insertWaypoint("bb", "aa", "cc");
     long categoryMatchId = insertWaypoint("bb", "cc", "aa");
     long titleMatchId = insertWaypoint("aa", "bb", "cc");
-    long titleCategoryMatchId = insertWaypoint("aa", "bb", "ca");
-    long titleDescriptionMatchId = insertWaypoint("aa", "ba", "cc");
-    long allMatchId = insertWaypoint("aa", "ba", "ca");
+    long titleCategoryMatchId = insertWaypoint("aa", "bb", "ac");
+    long titleDescriptionMatchId = insertWaypoint("aa", "ab", "cc");
+    long allMatchId = insertWaypoint("aa", "ab", "ac");
 
     SearchQuery query = new SearchQuery("a", null, -1, NOW);
     ArrayList<ScoredResult> results = new ArrayList<ScoredResult>(engine.search(query));
@@ -290,6 +290,51 @@ public class SearchEngineTest extends AndroidTestCase {
     assertWaypointResults(results, currentId, otherId);
   }
 
+  public void testSearchWordPrefixes() {
+    // Each query word must be the prefix of a word, in any field.
+    insertTrack("morning run", "around the lake", "");
+    long splitId = insertTrack("evening", "Lakeside", "riding");
+    long titleId = insertTrack("Ride to the lake", "", "");
+
+    SearchQuery query = new SearchQuery("rid LAKE", null, -1, NOW);
+    ArrayList<ScoredResult> results = new ArrayList<ScoredResult>(engine.search(query));
+
+    // All words in the title > words in different fields.
+    assertTrackResults(results, titleId, splitId);
+  }
+
+  public void testSearchUpdatedTrack() {
+    long trackId = insertTrack("aa", "bb", "cc");
+    Track track = providerUtils.getTrack(trackId);
+    track.setName("dd");
+    providerUtils.updateTrack(track);
+
+    assertEquals(0, engine.search(new SearchQuery("a", null, -1, NOW)).size());
+    ArrayList<ScoredResult> results = new ArrayList<ScoredResult>(
+        engine.search(new SearchQuery("d", null, -1, NOW)));
+    assertTrackResults(results, trackId);
+  }
+
+  public void testSearchDeletedWaypoint() {
+    long deletedId = insertWaypoint("aa", "bb", "cc");
+    long waypointId = insertWaypoint("ab", "bb", "cc");
+    providerUtils.deleteWaypoint(deletedId, null);
+
+    ArrayList<ScoredResult> results = new ArrayList<ScoredResult>(
+        engine.search(new SearchQuery("a", null, -1, NOW)));
+    assertWaypointResults(results, waypointId);
+  }
+
+  public void testSearchNoWords() {
+    // Queries without words match the text anywhere.
+    insertTrack("aa", "bb", "cc");
+    long trackId = insertTrack("a-b", "bb", "cc");
+
+    ArrayList<ScoredResult> results = new ArrayList<ScoredResult>(
+        engine.search(new SearchQuery("-", null, -1, NOW)));
+    assertTrackResults(results, trackId);
+  }
+
   private void assertTrackResult(long trackId, ScoredResult result) {
     assertNotNull("Not a track", result.track);
     assertNull("Ambiguous result", result.waypoint);
@@ -49,12 +49,17 @@ import android.test.RenamingDelegatingContext;
 import android.test.mock.MockContentResolver;
 
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.easymock.Capture;
+import org.easymock.EasyMock;
 import org.easymock.IAnswer;
+import org.easymock.IArgumentMatcher;
 
 /**
  * Tests for {@link TrackDataHub}.
@@ -289,8 +294,10 @@ public class TrackDataHubTest extends AndroidTestCase {
 
     FixedSizeLocationIterator locationIterator = new FixedSizeLocationIterator(1, 10, 5);
     expect(myTracksProviderUtils.getTrackPointLocationIterator(
-        eq(TRACK_ID), eq(0L), eq(false), isA(LocationFactory.class))).andReturn(locationIterator);
+        eq(TRACK_ID), eq(0L), eq(false), eq(0), isA(LocationFactory.class)))
+        .andReturn(locationIterator);
     expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID)).andReturn(10L);
+    expectNumberOfPoints(TRACK_ID, 10);
     trackDataListener1.clearTrackPoints();
     locationIterator.expectLocationsDelivered(trackDataListener1);
     trackDataListener1.onNewTrackPointsDone();
@@ -304,8 +311,10 @@ public class TrackDataHubTest extends AndroidTestCase {
     // Register a second listener
     locationIterator = new FixedSizeLocationIterator(1, 10, 5);
     expect(myTracksProviderUtils.getTrackPointLocationIterator(
-        eq(TRACK_ID), eq(0L), eq(false), isA(LocationFactory.class))).andReturn(locationIterator);
+        eq(TRACK_ID), eq(0L), eq(false), eq(0), isA(LocationFactory.class)))
+        .andReturn(locationIterator);
     expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID)).andReturn(10L);
+    expectNumberOfPoints(TRACK_ID, 10);
     trackDataListener2.clearTrackPoints();
     locationIterator.expectLocationsDelivered(trackDataListener2);
     trackDataListener2.onNewTrackPointsDone();
@@ -319,8 +328,10 @@ public class TrackDataHubTest extends AndroidTestCase {
     ContentObserver contentObserver = contentObserverCapture.getValue();
     locationIterator = new FixedSizeLocationIterator(11, 10, 1);
     expect(myTracksProviderUtils.getTrackPointLocationIterator(
-        eq(TRACK_ID), eq(11L), eq(false), isA(LocationFactory.class))).andReturn(locationIterator);
+        eq(TRACK_ID), eq(11L), eq(false), eq(0), isA(LocationFactory.class)))
+        .andReturn(locationIterator);
     expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID)).andReturn(20L);
+    expectNumberOfPoints(TRACK_ID, 20);
     locationIterator.expectLocationsDelivered(trackDataListener1);
     locationIterator.expectLocationsDelivered(trackDataListener2);
     trackDataListener1.onNewTrackPointsDone();
@@ -333,9 +344,10 @@ public class TrackDataHubTest extends AndroidTestCase {
     // Unregister one listener and change track
     locationIterator = new FixedSizeLocationIterator(101, 10);
     expect(myTracksProviderUtils.getTrackPointLocationIterator(
-        eq(TRACK_ID + 1), eq(0L), eq(false), isA(LocationFactory.class)))
+        eq(TRACK_ID + 1), eq(0L), eq(false), eq(0), isA(LocationFactory.class)))
         .andReturn(locationIterator);
     expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID + 1)).andReturn(110L);
+    expectNumberOfPoints(TRACK_ID + 1, 10);
     trackDataListener2.clearTrackPoints();
     locationIterator.expectLocationsDelivered(trackDataListener2);
     trackDataListener2.onNewTrackPointsDone();
@@ -346,6 +358,58 @@ public class TrackDataHubTest extends AndroidTestCase {
     verifyAndReset();
   }
 
+  /**
+   * Tests track points inserted notifications. Inserts into other tracks are
+   * ignored, and inserts into the selected track only load the new track
+   * points, without querying the last track point id.
+   */
+  public void testTrackPointsInserted() {
+    // Register one listener
+    Capture<ContentObserver> contentObserverCapture = new Capture<ContentObserver>();
+    dataSource.registerOnSharedPreferenceChangeListener(capture(preferenceChangeListenerCapture));
+    dataSource.registerContentObserver(
+        eq(TrackPointsColumns.CONTENT_URI), capture(contentObserverCapture));
+
+    FixedSizeLocationIterator locationIterator = new FixedSizeLocationIterator(1, 10, 5);
+    expect(myTracksProviderUtils.getTrackPointLocationIterator(
+        eq(TRACK_ID), eq(0L), eq(false), eq(0), isA(LocationFactory.class)))
+        .andReturn(locationIterator);
+    expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID)).andReturn(10L);
+    expectNumberOfPoints(TRACK_ID, 10);
+    trackDataListener1.clearTrackPoints();
+    locationIterator.expectLocationsDelivered(trackDataListener1);
+    trackDataListener1.onNewTrackPointsDone();
+    replay();
+
+    trackDataHub.start();
+    trackDataHub.registerTrackDataListener(
+        trackDataListener1, EnumSet.of(TrackDataType.SAMPLED_IN_TRACK_POINTS_TABLE));
+    verifyAndReset();
+
+    // Insert into another track and insert already loaded points
+    ContentObserver contentObserver = contentObserverCapture.getValue();
+    replay();
+
+    contentObserver.onChange(
+        false, MyTracksProvider.getTrackPointsInsertedUri(TRACK_ID + 1, 11L, 20L));
+    contentObserver.onChange(false, MyTracksProvider.getTrackPointsInsertedUri(TRACK_ID, 9L, 10L));
+    verifyAndReset();
+
+    // Insert into the selected track
+    locationIterator = new FixedSizeLocationIterator(11, 10);
+    expect(myTracksProviderUtils.getTrackPointLocationIterator(
+        eq(TRACK_ID), eq(11L), eq(false), eq(0), isA(LocationFactory.class)))
+        .andReturn(locationIterator);
+    expectNumberOfPoints(TRACK_ID, 20);
+    locationIterator.expectLocationsDelivered(trackDataListener1);
+    trackDataListener1.onNewTrackPointsDone();
+    replay();
+
+    contentObserver.onChange(
+        false, MyTracksProvider.getTrackPointsInsertedUri(TRACK_ID, 11L, 20L));
+    verifyAndReset();
+  }
+
   /**
    * Tests track points table update with registering the same listener.
    */
@@ -359,8 +423,10 @@ public class TrackDataHubTest extends AndroidTestCase {
 
     FixedSizeLocationIterator locationIterator = new FixedSizeLocationIterator(1, 10, 5);
     expect(myTracksProviderUtils.getTrackPointLocationIterator(
-        eq(TRACK_ID), eq(0L), eq(false), isA(LocationFactory.class))).andReturn(locationIterator);
+        eq(TRACK_ID), eq(0L), eq(false), eq(0), isA(LocationFactory.class)))
+        .andReturn(locationIterator);
     expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID)).andReturn(10L);
+    expectNumberOfPoints(TRACK_ID, 10);
 
     trackDataListener1.clearTrackPoints();
     locationIterator.expectLocationsDelivered(trackDataListener1);
@@ -385,8 +451,10 @@ public class TrackDataHubTest extends AndroidTestCase {
         eq(TrackPointsColumns.CONTENT_URI), capture(contentObserverCapture));
     locationIterator = new FixedSizeLocationIterator(1, 10, 5);
     expect(myTracksProviderUtils.getTrackPointLocationIterator(
-        eq(TRACK_ID), eq(0L), eq(false), isA(LocationFactory.class))).andReturn(locationIterator);
+        eq(TRACK_ID), eq(0L), eq(false), eq(0), isA(LocationFactory.class)))
+        .andReturn(locationIterator);
     expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID)).andReturn(10L);
+    expectNumberOfPoints(TRACK_ID, 10);
     trackDataListener1.clearTrackPoints();
     locationIterator.expectLocationsDelivered(trackDataListener1);
     trackDataListener1.onNewTrackPointsDone();
@@ -410,8 +478,10 @@ public class TrackDataHubTest extends AndroidTestCase {
 
     FixedSizeLocationIterator locationIterator = new FixedSizeLocationIterator(1, 10, 5);
     expect(myTracksProviderUtils.getTrackPointLocationIterator(
-        eq(TRACK_ID), eq(0L), eq(false), isA(LocationFactory.class))).andReturn(locationIterator);
+        eq(TRACK_ID), eq(0L), eq(false), eq(0), isA(LocationFactory.class)))
+        .andReturn(locationIterator);
     expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID)).andReturn(10L);
+    expectNumberOfPoints(TRACK_ID, 10);
     trackDataListener1.clearTrackPoints();
     locationIterator.expectLocationsDelivered(trackDataListener1);
     trackDataListener1.onNewTrackPointsDone();
@@ -435,9 +505,10 @@ public class TrackDataHubTest extends AndroidTestCase {
         eq(TrackPointsColumns.CONTENT_URI), capture(observerCapture));
     locationIterator = new FixedSizeLocationIterator(1, 10);
     expect(myTracksProviderUtils.getTrackPointLocationIterator(
-        eq(TRACK_ID + 1), eq(0L), eq(false), isA(LocationFactory.class)))
+        eq(TRACK_ID + 1), eq(0L), eq(false), eq(0), isA(LocationFactory.class)))
         .andReturn(locationIterator);
     expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID + 1)).andReturn(10L);
+    expectNumberOfPoints(TRACK_ID + 1, 10);
     trackDataListener1.clearTrackPoints();
     locationIterator.expectLocationsDelivered(trackDataListener1);
     trackDataListener1.onNewTrackPointsDone();
@@ -450,7 +521,9 @@ public class TrackDataHubTest extends AndroidTestCase {
   }
 
   /**
-   * Tests track points table update with large track sampling.
+   * Tests track points table update with large track sampling. The sampled-in
+   * only listener reads a level of detail, while the listener with sampled-out
+   * track points reads all the track points.
    */
   public void testTrackPointsTableUpdate_largeTrackSampling() {
     Capture<ContentObserver> contentObserverCapture = new Capture<ContentObserver>();
@@ -460,17 +533,20 @@ public class TrackDataHubTest extends AndroidTestCase {
 
     expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID)).andReturn(200L);
     AndroidMock.expectLastCall().anyTimes();
-    FixedSizeLocationIterator locationIterator1 = new FixedSizeLocationIterator(
-        1, 200, 4, 25, 71, 120);
+    expectNumberOfPoints(TRACK_ID, 199);
+
+    // 199 points at level 2 is less than 50 points
+    FixedSizeLocationIterator locationIterator1 = new FixedSizeLocationIterator(1, 50, 4, 25);
     expect(myTracksProviderUtils.getTrackPointLocationIterator(
-        eq(TRACK_ID), eq(0L), eq(false), isA(LocationFactory.class))).andReturn(locationIterator1);
+        eq(TRACK_ID), eq(0L), eq(false), eq(2), isA(LocationFactory.class)))
+        .andReturn(locationIterator1);
     FixedSizeLocationIterator locationIterator2 = new FixedSizeLocationIterator(
         1, 200, 4, 25, 71, 120);
     expect(myTracksProviderUtils.getTrackPointLocationIterator(
         eq(TRACK_ID), eq(0L), eq(false), isA(LocationFactory.class))).andReturn(locationIterator2);
 
     trackDataListener1.clearTrackPoints();
-    locationIterator1.expectSampledLocationsDelivered(trackDataListener1, 4, false);
+    locationIterator1.expectLocationsDelivered(trackDataListener1);
     trackDataListener1.onNewTrackPointsDone();
     trackDataListener2.clearTrackPoints();
     locationIterator2.expectSampledLocationsDelivered(trackDataListener2, 4, true);
@@ -497,8 +573,10 @@ public class TrackDataHubTest extends AndroidTestCase {
     // Deliver 30 points (no sampling happens)
     FixedSizeLocationIterator locationIterator = new FixedSizeLocationIterator(1, 30, 5);
     expect(myTracksProviderUtils.getTrackPointLocationIterator(
-        eq(TRACK_ID), eq(0L), eq(false), isA(LocationFactory.class))).andReturn(locationIterator);
+        eq(TRACK_ID), eq(0L), eq(false), eq(0), isA(LocationFactory.class)))
+        .andReturn(locationIterator);
     expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID)).andReturn(30L);
+    expectNumberOfPoints(TRACK_ID, 30);
 
     trackDataListener1.clearTrackPoints();
     locationIterator.expectLocationsDelivered(trackDataListener1);
@@ -510,26 +588,42 @@ public class TrackDataHubTest extends AndroidTestCase {
         trackDataListener1, EnumSet.of(TrackDataType.SAMPLED_IN_TRACK_POINTS_TABLE));
     verifyAndReset();
 
-    // Now deliver 30 more (incrementally sampled)
+    // Now deliver 30 more (still at level 0, without reading the track again)
     ContentObserver observer = observerCapture.getValue();
     locationIterator = new FixedSizeLocationIterator(31, 30);
     expect(myTracksProviderUtils.getTrackPointLocationIterator(
-        eq(TRACK_ID), eq(31L), eq(false), isA(LocationFactory.class))).andReturn(locationIterator);
+        eq(TRACK_ID), eq(31L), eq(false), eq(0), isA(LocationFactory.class)))
+        .andReturn(locationIterator);
     expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID)).andReturn(60L);
-    locationIterator.expectSampledLocationsDelivered(trackDataListener1, 2, false);
+    locationIterator.expectLocationsDelivered(trackDataListener1);
     trackDataListener1.onNewTrackPointsDone();
     replay();
 
     observer.onChange(false);
     verifyAndReset();
 
-    // Now another 30 (triggers resampling)
-    locationIterator = new FixedSizeLocationIterator(1, 90);
+    // Now another 10, past the target number of points (triggers resampling)
+    locationIterator = new FixedSizeLocationIterator(1, 35, 5);
     expect(myTracksProviderUtils.getTrackPointLocationIterator(
-        eq(TRACK_ID), eq(0L), eq(false), isA(LocationFactory.class))).andReturn(locationIterator);
-    expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID)).andReturn(90L);
+        eq(TRACK_ID), eq(0L), eq(false), eq(1), isA(LocationFactory.class)))
+        .andReturn(locationIterator);
+    expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID)).andReturn(70L);
+    expectNumberOfPoints(TRACK_ID, 70);
     trackDataListener1.clearTrackPoints();
-    locationIterator.expectSampledLocationsDelivered(trackDataListener1, 2, false);
+    locationIterator.expectLocationsDelivered(trackDataListener1);
+    trackDataListener1.onNewTrackPointsDone();
+    replay();
+
+    observer.onChange(false);
+    verifyAndReset();
+
+    // Now another 20 (incrementally sampled at level 1)
+    locationIterator = new FixedSizeLocationIterator(71, 10);
+    expect(myTracksProviderUtils.getTrackPointLocationIterator(
+        eq(TRACK_ID), eq(71L), eq(false), eq(1), isA(LocationFactory.class)))
+        .andReturn(locationIterator);
+    expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID)).andReturn(90L);
+    locationIterator.expectLocationsDelivered(trackDataListener1);
     trackDataListener1.onNewTrackPointsDone();
     replay();
 
@@ -672,6 +766,18 @@ public class TrackDataHubTest extends AndroidTestCase {
     AndroidMock.replay(myTracksProviderUtils, dataSource, trackDataListener1, trackDataListener2);
   }
 
+  /**
+   * Expects the track to be read for its number of points.
+   * 
+   * @param trackId the track id
+   * @param numberOfPoints the number of points of the track
+   */
+  private void expectNumberOfPoints(long trackId, int numberOfPoints) {
+    Track track = new Track();
+    track.setNumberOfPoints(numberOfPoints);
+    expect(myTracksProviderUtils.getTrack(trackId)).andStubReturn(track);
+  }
+
   /**
    * Verifies and resets mocks.
    */
@@ -680,6 +786,44 @@ public class TrackDataHubTest extends AndroidTestCase {
     AndroidMock.reset(myTracksProviderUtils, dataSource, trackDataListener1, trackDataListener2);
   }
 
+  /**
+   * Expects a {@link TrackPointBlock} with track points of some types and
+   * locations. The block is checked when the listener is called, since it is
+   * reused for the next track points.
+   * 
+   * @param types the track point types
+   * @param locations the locations
+   */
+  private static TrackPointBlock trackPointBlockEq(
+      final byte[] types, final Location[] locations) {
+    EasyMock.reportMatcher(new IArgumentMatcher() {
+        @Override
+      public boolean matches(Object argument) {
+        if (!(argument instanceof TrackPointBlock)) {
+          return false;
+        }
+        TrackPointBlock block = (TrackPointBlock) argument;
+        if (block.getSize() != types.length) {
+          return false;
+        }
+        for (int i = 0; i < types.length; i++) {
+          if (block.getType(i) != types[i] || block.getLocation(i) != locations[i]
+              || block.getLatitude(i) != locations[i].getLatitude()
+              || block.getLongitude(i) != locations[i].getLongitude()) {
+            return false;
+          }
+        }
+        return true;
+      }
+
+        @Override
+      public void appendTo(StringBuffer buffer) {
+        buffer.append("trackPointBlockEq(").append(Arrays.toString(types)).append(")");
+      }
+    });
+    return null;
+  }
+
   /**
    * Fixed size cursor answer.
    * 
@@ -741,29 +885,39 @@ public class TrackDataHubTest extends AndroidTestCase {
     }
 
     public void expectLocationsDelivered(TrackDataListener listener) {
+      byte[] types = new byte[locations.length];
       for (int i = 0; i < locations.length; i++) {
-        if (splitIndexSet.contains(i)) {
-          listener.onSegmentSplit(locations[i]);
-        } else {
-          listener.onSampledInTrackPoint(locations[i]);
-        }
+        types[i] = splitIndexSet.contains(i) ? TrackPointBlock.SEGMENT_SPLIT
+            : TrackPointBlock.SAMPLED_IN;
       }
+      listener.onNewTrackPoints(trackPointBlockEq(types, locations));
     }
 
     public void expectSampledLocationsDelivered(
         TrackDataListener listener, int sampleFrequency, boolean includeSampledOut) {
+      List<Byte> types = new ArrayList<Byte>();
+      List<Location> deliveredLocations = new ArrayList<Location>();
       boolean includeNext = false;
       for (int i = 0; i < locations.length; i++) {
         if (splitIndexSet.contains(i)) {
-          listener.onSegmentSplit(locations[i]);
+          types.add(TrackPointBlock.SEGMENT_SPLIT);
           includeNext = true;
         } else if (includeNext || (i % sampleFrequency == 0)) {
-          listener.onSampledInTrackPoint(locations[i]);
+          types.add(TrackPointBlock.SAMPLED_IN);
           includeNext = false;
         } else if (includeSampledOut) {
-          listener.onSampledOutTrackPoint(locations[i]);
+          types.add(TrackPointBlock.SAMPLED_OUT);
+        } else {
+          continue;
         }
+        deliveredLocations.add(locations[i]);
+      }
+      byte[] typesArray = new byte[types.size()];
+      for (int i = 0; i < typesArray.length; i++) {
+        typesArray[i] = types.get(i);
       }
+      listener.onNewTrackPoints(trackPointBlockEq(
+          typesArray, deliveredLocations.toArray(new Location[deliveredLocations.size()])));
     }
 
     @Override
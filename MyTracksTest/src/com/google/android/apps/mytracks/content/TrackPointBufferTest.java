@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.content;
+
+import com.google.android.apps.mytracks.content.Sensor.SensorDataSet;
+
+import android.location.Location;
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for {@link TrackPointBuffer}.
+ */
+public class TrackPointBufferTest extends AndroidTestCase {
+
+  /**
+   * Tests adding track points beyond the initial capacity.
+   */
+  public void testAdd() {
+    TrackPointBuffer trackPointBuffer = new TrackPointBuffer(2);
+    for (int i = 0; i < 10; i++) {
+      trackPointBuffer.add(createLocation(i));
+    }
+    assertEquals(10, trackPointBuffer.size());
+    for (int i = 0; i < 10; i++) {
+      checkTrackPoint(i, trackPointBuffer, i);
+    }
+  }
+
+  /**
+   * Tests that the missing values are not set.
+   */
+  public void testAdd_noValues() {
+    TrackPointBuffer trackPointBuffer = new TrackPointBuffer();
+    Location location = new Location("test");
+    location.setLatitude(100.0);
+    trackPointBuffer.add(location);
+    assertEquals(100000000, trackPointBuffer.getLatitudeE6(0));
+    assertFalse(trackPointBuffer.hasAltitude(0));
+    assertFalse(trackPointBuffer.hasAccuracy(0));
+    assertFalse(trackPointBuffer.hasSpeed(0));
+    assertFalse(trackPointBuffer.hasBearing(0));
+    assertNull(trackPointBuffer.getSensorDataSet(0));
+
+    Location created = trackPointBuffer.createLocation(0);
+    assertEquals(100.0, created.getLatitude());
+    assertFalse(created.hasAltitude());
+    assertFalse(created.hasAccuracy());
+    assertFalse(created.hasSpeed());
+    assertFalse(created.hasBearing());
+  }
+
+  /**
+   * Tests {@link TrackPointBuffer#createLocation(int)}.
+   */
+  public void testCreateLocation() {
+    TrackPointBuffer trackPointBuffer = new TrackPointBuffer();
+    trackPointBuffer.add(createLocation(1));
+    Location location = trackPointBuffer.createLocation(0);
+    assertTrue(location instanceof MyTracksLocation);
+    assertEquals(37.000001, location.getLatitude());
+    assertEquals(-122.000001, location.getLongitude());
+    assertEquals(1001L, location.getTime());
+    assertEquals(1.5, location.getAltitude());
+    assertEquals(1.0f, location.getAccuracy());
+    assertEquals(2.0f, location.getSpeed());
+    assertEquals(3.0f, location.getBearing());
+    assertEquals(1, ((MyTracksLocation) location).getSensorDataSet().getHeartRate().getValue());
+  }
+
+  /**
+   * Tests {@link TrackPointBuffer#retain(boolean[])}.
+   */
+  public void testRetain() {
+    TrackPointBuffer trackPointBuffer = new TrackPointBuffer();
+    for (int i = 0; i < 5; i++) {
+      trackPointBuffer.add(createLocation(i));
+    }
+    trackPointBuffer.retain(new boolean[] { true, false, false, true, true });
+    assertEquals(3, trackPointBuffer.size());
+    checkTrackPoint(0, trackPointBuffer, 0);
+    checkTrackPoint(1, trackPointBuffer, 3);
+    checkTrackPoint(2, trackPointBuffer, 4);
+  }
+
+  /**
+   * Tests {@link TrackPointBuffer#clear()}.
+   */
+  public void testClear() {
+    TrackPointBuffer trackPointBuffer = new TrackPointBuffer();
+    trackPointBuffer.add(createLocation(1));
+    trackPointBuffer.clear();
+    assertEquals(0, trackPointBuffer.size());
+    trackPointBuffer.add(createLocation(2));
+    assertEquals(1, trackPointBuffer.size());
+    checkTrackPoint(0, trackPointBuffer, 2);
+  }
+
+  /**
+   * Tests writing to and reading from a parcel.
+   */
+  public void testParcel() {
+    TrackPointBuffer trackPointBuffer = new TrackPointBuffer();
+    for (int i = 0; i < 3; i++) {
+      trackPointBuffer.add(createLocation(i));
+    }
+    trackPointBuffer.add(new Location("test"));
+
+    Parcel parcel = Parcel.obtain();
+    trackPointBuffer.writeToParcel(parcel, 0);
+    parcel.setDataPosition(0);
+    TrackPointBuffer result = TrackPointBuffer.CREATOR.createFromParcel(parcel);
+    parcel.recycle();
+
+    assertEquals(4, result.size());
+    for (int i = 0; i < 3; i++) {
+      checkTrackPoint(i, result, i);
+    }
+    assertNull(result.getSensorDataSet(3));
+  }
+
+  /**
+   * Creates a location.
+   * 
+   * @param i the index to set the values of the location
+   */
+  private MyTracksLocation createLocation(int i) {
+    Location location = new Location("test");
+    location.setLatitude(37.0 + i / 1E6);
+    location.setLongitude(-122.0 - i / 1E6);
+    location.setTime(1000L + i);
+    location.setAltitude(i + 0.5);
+    location.setAccuracy(i);
+    location.setSpeed(i + 1);
+    location.setBearing(i + 2);
+    SensorDataSet sensorDataSet = SensorDataSet.newBuilder()
+        .setHeartRate(Sensor.SensorData.newBuilder()
+            .setValue(i).setState(Sensor.SensorState.SENDING))
+        .build();
+    return new MyTracksLocation(location, sensorDataSet);
+  }
+
+  /**
+   * Checks a track point.
+   * 
+   * @param index the track point index
+   * @param trackPointBuffer the track point buffer
+   * @param i the index used to create the location
+   */
+  private void checkTrackPoint(int index, TrackPointBuffer trackPointBuffer, int i) {
+    assertEquals(37000000 + i, trackPointBuffer.getLatitudeE6(index));
+    assertEquals(-122000000 - i, trackPointBuffer.getLongitudeE6(index));
+    assertEquals(1000L + i, trackPointBuffer.getTime(index));
+    assertTrue(trackPointBuffer.hasAltitude(index));
+    assertEquals(i + 0.5, trackPointBuffer.getAltitude(index));
+    assertTrue(trackPointBuffer.hasAccuracy(index));
+    assertEquals((float) i, trackPointBuffer.getAccuracy(index));
+    assertTrue(trackPointBuffer.hasSpeed(index));
+    assertEquals(i + 1.0f, trackPointBuffer.getSpeed(index));
+    assertTrue(trackPointBuffer.hasBearing(index));
+    assertEquals(i + 2.0f, trackPointBuffer.getBearing(index));
+    assertEquals(i, trackPointBuffer.getSensorDataSet(index).getHeartRate().getValue());
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.io.backup;
+
+import com.google.android.apps.mytracks.content.MyTracksProvider;
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.services.TrackRecordingServiceTest.MockContext;
+
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.location.Location;
+import android.location.LocationManager;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for the full and incremental backups of {@link ExternalFileBackup}.
+ */
+public class ExternalFileBackupTest extends AndroidTestCase {
+
+  private static final int NUMBER_OF_POINTS = 1500;
+  private static final long BACKUP_TIME = 1262304000000L;
+  private static final long ONE_DAY = 24L * 60 * 60 * 1000;
+
+  private MyTracksProviderUtils myTracksProviderUtils;
+  private File directory;
+  private ExternalFileBackup externalFileBackup;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    MockContentResolver mockContentResolver = new MockContentResolver();
+    RenamingDelegatingContext targetContext = new RenamingDelegatingContext(
+        getContext(), getContext(), "test.");
+    MockContext context = new MockContext(mockContentResolver, targetContext);
+    MyTracksProvider provider = new MyTracksProvider();
+    provider.attachInfo(context, null);
+    mockContentResolver.addProvider(MyTracksProviderUtils.AUTHORITY, provider);
+    setContext(context);
+
+    myTracksProviderUtils = MyTracksProviderUtils.Factory.get(context);
+    myTracksProviderUtils.deleteAllTracks();
+    directory = new File(getContext().getCacheDir(), "backups");
+    deleteFiles();
+    externalFileBackup = new ExternalFileBackup(context, directory);
+    assertTrue(externalFileBackup.isBackupsDirectoryAvailable(true));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    deleteFiles();
+    myTracksProviderUtils.deleteAllTracks();
+    super.tearDown();
+  }
+
+  /**
+   * Tests that an incremental backup only has the new track points, and that
+   * restoring it replays the full backup.
+   */
+  public void testIncrementalBackup() throws Exception {
+    long trackId1 = insertTrack("track1", NUMBER_OF_POINTS);
+    Date fullDate = new Date(BACKUP_TIME);
+    externalFileBackup.writeToDate(fullDate);
+
+    long trackId2 = insertTrack("track2", 10);
+    Date incrementalDate = new Date(BACKUP_TIME + ONE_DAY);
+    externalFileBackup.writeToDate(incrementalDate);
+    assertTrue(externalFileBackup.getFileForDate(incrementalDate).length()
+        < externalFileBackup.getFileForDate(fullDate).length() / 10);
+
+    myTracksProviderUtils.deleteAllTracks();
+    externalFileBackup.restoreFromDate(incrementalDate);
+    List<Track> tracks = myTracksProviderUtils.getAllTracks();
+    assertEquals(2, tracks.size());
+    assertEquals(NUMBER_OF_POINTS, getNumberOfPoints(trackId1));
+    assertEquals(10, getNumberOfPoints(trackId2));
+
+    externalFileBackup.restoreFromDate(fullDate);
+    assertEquals(1, myTracksProviderUtils.getAllTracks().size());
+    assertEquals(NUMBER_OF_POINTS, getNumberOfPoints(trackId1));
+    assertEquals(0, getNumberOfPoints(trackId2));
+  }
+
+  /**
+   * Tests that the points of a track deleted after the full backup are not
+   * restored.
+   */
+  public void testIncrementalBackup_deletedTrack() throws Exception {
+    long trackId1 = insertTrack("track1", 100);
+    long trackId2 = insertTrack("track2", 100);
+    externalFileBackup.writeToDate(new Date(BACKUP_TIME));
+
+    myTracksProviderUtils.deleteTrack(trackId1);
+    Date incrementalDate = new Date(BACKUP_TIME + ONE_DAY);
+    externalFileBackup.writeToDate(incrementalDate);
+
+    myTracksProviderUtils.deleteAllTracks();
+    externalFileBackup.restoreFromDate(incrementalDate);
+    assertEquals(1, myTracksProviderUtils.getAllTracks().size());
+    assertEquals(0, getNumberOfPoints(trackId1));
+    assertEquals(100, getNumberOfPoints(trackId2));
+  }
+
+  /**
+   * Tests that a full backup is written after the max number of incremental
+   * backups, and that a missing backup of the chain fails the restore.
+   */
+  public void testIncrementalBackup_chain() throws Exception {
+    insertTrack("track", 100);
+    Date fullDate = new Date(BACKUP_TIME);
+    externalFileBackup.writeToDate(fullDate);
+    for (int i = 1; i <= 7; i++) {
+      externalFileBackup.writeToDate(new Date(BACKUP_TIME + i * ONE_DAY));
+    }
+    // The last backup is a new full backup, with the track points
+    long incrementalLength = externalFileBackup.getFileForDate(
+        new Date(BACKUP_TIME + 6 * ONE_DAY)).length();
+    assertTrue(externalFileBackup.getFileForDate(
+        new Date(BACKUP_TIME + 7 * ONE_DAY)).length() > incrementalLength);
+
+    // An incremental backup needs the full backup
+    assertTrue(externalFileBackup.getFileForDate(fullDate).delete());
+    try {
+      externalFileBackup.restoreFromDate(new Date(BACKUP_TIME + ONE_DAY));
+      fail("Expected an IOException");
+    } catch (IOException e) {
+      // Expected
+    }
+    assertEquals(1, myTracksProviderUtils.getAllTracks().size());
+  }
+
+  /**
+   * Inserts a track.
+   *
+   * @param name the track name
+   * @param numberOfPoints the number of track points
+   * @return the track id.
+   */
+  private long insertTrack(String name, int numberOfPoints) {
+    Track track = new Track();
+    track.setName(name);
+    long trackId = ContentUris.parseId(myTracksProviderUtils.insertTrack(track));
+    Location[] locations = new Location[numberOfPoints];
+    for (int i = 0; i < numberOfPoints; i++) {
+      Location location = new Location(LocationManager.GPS_PROVIDER);
+      location.setLatitude(48.0 + i * 1E-4);
+      location.setLongitude(9.0 + i * 1E-4);
+      location.setAltitude(300.0 + i % 10);
+      location.setTime(1272000000000L + i * 1000L);
+      locations[i] = location;
+    }
+    myTracksProviderUtils.bulkInsertTrackPoint(locations, numberOfPoints, trackId);
+    return trackId;
+  }
+
+  /**
+   * Gets the number of track points of a track.
+   *
+   * @param trackId the track id
+   */
+  private int getNumberOfPoints(long trackId) {
+    Cursor cursor = myTracksProviderUtils.getTrackPointCursor(
+        trackId, 0, Integer.MAX_VALUE, false);
+    try {
+      return cursor.getCount();
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Deletes the backup files.
+   */
+  private void deleteFiles() {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.io.file;
+
+import com.google.android.apps.mytracks.io.file.TrackWriterFactory.TrackFileFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Tests for {@link CompressedTrackFormatWriter}. The uncompressed output must
+ * be the same as the output of the compressed format writer.
+ */
+public class CompressedTrackFormatWriterTest extends TrackFormatWriterTest {
+
+  /**
+   * Tests a KMZ file.
+   */
+  public void testKmz() throws Exception {
+    TrackFormatWriter writer = TrackFileFormat.KMZ.newFormatWriter(getContext());
+    assertEquals("kmz", writer.getExtension());
+    ZipInputStream zipInputStream = new ZipInputStream(
+        new ByteArrayInputStream(writeTrackBytes(writer)));
+    ZipEntry zipEntry = zipInputStream.getNextEntry();
+    assertEquals("doc.kml", zipEntry.getName());
+    byte[] expected = writeTrackBytes(new KmlTrackWriter(getContext()));
+    assertTrue(Arrays.equals(expected, readFully(zipInputStream)));
+    assertNull(zipInputStream.getNextEntry());
+  }
+
+  /**
+   * Tests a gzip GPX file.
+   */
+  public void testGpxGz() throws Exception {
+    TrackFormatWriter writer = TrackFileFormat.GPX_GZ.newFormatWriter(getContext());
+    assertEquals("gpx.gz", writer.getExtension());
+    byte[] expected = writeTrackBytes(new GpxTrackWriter(getContext()));
+    assertTrue(Arrays.equals(expected, gunzip(writeTrackBytes(writer))));
+  }
+
+  /**
+   * Tests a gzip CSV file.
+   */
+  public void testCsvGz() throws Exception {
+    TrackFormatWriter writer = TrackFileFormat.CSV_GZ.newFormatWriter(getContext());
+    assertEquals("csv.gz", writer.getExtension());
+    byte[] expected = writeTrackBytes(new CsvTrackWriter(getContext()));
+    assertTrue(Arrays.equals(expected, gunzip(writeTrackBytes(writer))));
+  }
+
+  /**
+   * Tests the compression levels. A better compression level never gives a
+   * bigger file.
+   */
+  public void testCompressionLevels() throws Exception {
+    byte[] expected = writeTrackBytes(new GpxTrackWriter(getContext()));
+    int[] levels = { Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION };
+    int lastLength = Integer.MAX_VALUE;
+    for (int level : levels) {
+      byte[] compressed = writeTrackBytes(
+          CompressedTrackFormatWriter.newGzipWriter(new GpxTrackWriter(getContext()), level));
+      assertTrue(Arrays.equals(expected, gunzip(compressed)));
+      assertTrue(compressed.length <= lastLength);
+      lastLength = compressed.length;
+    }
+  }
+
+  /**
+   * Decompresses gzip bytes.
+   *
+   * @param bytes the gzip bytes
+   */
+  private byte[] gunzip(byte[] bytes) throws IOException {
+    return readFully(new GZIPInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  /**
+   * Reads an input stream till the end.
+   *
+   * @param inputStream the input stream
+   */
+  private byte[] readFully(InputStream inputStream) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int count;
+    while ((count = inputStream.read(buffer)) != -1) {
+      outputStream.write(buffer, 0, count);
+    }
+    return outputStream.toByteArray();
+  }
+}
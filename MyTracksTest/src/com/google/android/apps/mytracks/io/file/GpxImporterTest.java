@@ -15,35 +15,31 @@
  */
 package com.google.android.apps.mytracks.io.file;
 
-import static com.google.android.testing.mocking.AndroidMock.eq;
 import static com.google.android.testing.mocking.AndroidMock.expect;
 
 import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
 import com.google.android.apps.mytracks.content.MyTracksProviderUtils.Factory;
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils.TrackImportSession;
 import com.google.android.apps.mytracks.content.Track;
-import com.google.android.apps.mytracks.content.TracksColumns;
 import com.google.android.apps.mytracks.testing.TestingProviderUtilsFactory;
 import com.google.android.apps.mytracks.util.PreferencesUtils;
 import com.google.android.testing.mocking.AndroidMock;
 import com.google.android.testing.mocking.UsesMocks;
 
-import android.content.ContentUris;
 import android.location.Location;
 import android.location.LocationManager;
-import android.net.Uri;
 import android.test.AndroidTestCase;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.SimpleTimeZone;
 
 import javax.xml.parsers.ParserConfigurationException;
 
-import org.easymock.Capture;
-import org.easymock.IArgumentMatcher;
 import org.xml.sax.SAXException;
 
 /**
@@ -133,12 +129,6 @@ public class GpxImporterTest extends AndroidTestCase {
   private static final long TRACK_ID_1 = 2;
   private static final long TRACK_POINT_ID_0 = 1;
   private static final long TRACK_POINT_ID_1 = 2;
-  private static final long TRACK_POINT_ID_3 = 4;
-
-  private static final Uri TRACK_ID_0_URI = ContentUris.appendId(
-      TracksColumns.CONTENT_URI.buildUpon(), TRACK_ID_0).build();
-  private static final Uri TRACK_ID_1_URI = ContentUris.appendId(
-      TracksColumns.CONTENT_URI.buildUpon(), TRACK_ID_1).build();
 
   private MyTracksProviderUtils myTracksProviderUtils;
 
@@ -164,26 +154,8 @@ public class GpxImporterTest extends AndroidTestCase {
    * Tests one track with one segment.
    */
   public void testOneTrackOneSegment() throws Exception {
-    Capture<Track> track = new Capture<Track>();
-
-    Location location0 = createLocation(0, DATE_FORMAT_0.parse(TRACK_TIME_0).getTime());
-    Location location1 = createLocation(1, DATE_FORMAT_1.parse(TRACK_TIME_1).getTime());
-
-    expect(myTracksProviderUtils.insertTrack((Track) AndroidMock.anyObject()))
-        .andReturn(TRACK_ID_0_URI);
-
-    // A flush happens before getting the start point ID
-    expect(myTracksProviderUtils.bulkInsertTrackPoint(
-        LocationsMatcher.eqLoc(location0), eq(1), eq(TRACK_ID_0))).andReturn(1);
-    expect(myTracksProviderUtils.getFirstTrackPointId(TRACK_ID_0)).andReturn(TRACK_POINT_ID_0);
-
-    // A flush happens at the end
-    expect(myTracksProviderUtils.bulkInsertTrackPoint(
-        LocationsMatcher.eqLoc(location1), eq(1), eq(TRACK_ID_0))).andReturn(1);
-    expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID_0)).andReturn(TRACK_POINT_ID_1);
-
-    myTracksProviderUtils.updateTrack(AndroidMock.capture(track));
-
+    TestTrackImportSession session = new TestTrackImportSession(TRACK_ID_0, TRACK_POINT_ID_0);
+    expect(myTracksProviderUtils.createTrackImportSession()).andReturn(session);
     AndroidMock.replay(myTracksProviderUtils);
 
     InputStream inputStream = new ByteArrayInputStream(VALID_ONE_TRACK_ONE_SEGMENT_GPX.getBytes());
@@ -194,33 +166,22 @@ public class GpxImporterTest extends AndroidTestCase {
 
     long time0 = DATE_FORMAT_0.parse(TRACK_TIME_0).getTime();
     long time1 = DATE_FORMAT_1.parse(TRACK_TIME_1).getTime();
-    assertEquals(time1 - time0, track.getValue().getTripStatistics().getTotalTime());
+    assertEquals(2, session.locations.size());
+    assertTrue(locationsMatch(createLocation(0, time0), session.locations.get(0)));
+    assertTrue(locationsMatch(createLocation(1, time1), session.locations.get(1)));
+    assertEquals(time1 - time0, session.track.getTripStatistics().getTotalTime());
+    assertEquals(TRACK_POINT_ID_0, session.track.getStartId());
+    assertEquals(TRACK_POINT_ID_1, session.track.getStopId());
     AndroidMock.verify(myTracksProviderUtils);
-    verifyTrack(track.getValue(), TRACK_NAME_0, TRACK_DESCRIPTION_0, time0);
+    verifyTrack(session.track, TRACK_NAME_0, TRACK_DESCRIPTION_0, time0);
   }
 
   /**
    * Tests one track with two segments.
    */
   public void testOneTrackTwoSegments() throws Exception {
-    Capture<Track> track = new Capture<Track>();
-
-    Location location0 = createLocation(0, DATE_FORMAT_0.parse(TRACK_TIME_0).getTime());
-
-    expect(myTracksProviderUtils.insertTrack((Track) AndroidMock.anyObject()))
-        .andReturn(TRACK_ID_0_URI);
-    // A flush happens before getting the start point ID
-    expect(myTracksProviderUtils.bulkInsertTrackPoint(
-        LocationsMatcher.eqLoc(location0), eq(1), eq(TRACK_ID_0))).andReturn(1);
-    expect(myTracksProviderUtils.getFirstTrackPointId(TRACK_ID_0)).andReturn(TRACK_POINT_ID_0);
-
-    // A flush happens at the end
-    expect(myTracksProviderUtils.bulkInsertTrackPoint(
-        (Location[]) AndroidMock.anyObject(), eq(5), eq(TRACK_ID_0))).andStubReturn(5);
-    expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID_0)).andReturn(TRACK_POINT_ID_3);
-
-    myTracksProviderUtils.updateTrack(AndroidMock.capture(track));
-
+    TestTrackImportSession session = new TestTrackImportSession(TRACK_ID_0, TRACK_POINT_ID_0);
+    expect(myTracksProviderUtils.createTrackImportSession()).andReturn(session);
     AndroidMock.replay(myTracksProviderUtils);
 
     InputStream inputStream = new ByteArrayInputStream(VALID_ONE_TRACK_TWO_SEGMENTS_GPX.getBytes());
@@ -234,33 +195,23 @@ public class GpxImporterTest extends AndroidTestCase {
     long time2 = DATE_FORMAT_1.parse(TRACK_TIME_2).getTime();
     long time3 = DATE_FORMAT_1.parse(TRACK_TIME_3).getTime();
     assertEquals(
-        time1 - time0 + time3 - time2, track.getValue().getTripStatistics().getTotalTime());
+        time1 - time0 + time3 - time2, session.track.getTripStatistics().getTotalTime());
+
+    // 4 track points with a pause and a resume separator between the segments
+    assertEquals(6, session.locations.size());
+    assertEquals(TRACK_POINT_ID_0, session.track.getStartId());
+    assertEquals(TRACK_POINT_ID_0 + 5, session.track.getStopId());
 
     AndroidMock.verify(myTracksProviderUtils);
-    verifyTrack(track.getValue(), TRACK_NAME_0, TRACK_DESCRIPTION_0,
-        DATE_FORMAT_0.parse(TRACK_TIME_0).getTime());
+    verifyTrack(session.track, TRACK_NAME_0, TRACK_DESCRIPTION_0, time0);
   }
 
   /**
    * Tests one track with two segments, but no time in the track points.
    */
   public void testOneTrackTwoSegmentsNoTime() throws Exception {
-    Capture<Track> capturedTrack = new Capture<Track>();
-
-    expect(myTracksProviderUtils.insertTrack((Track) AndroidMock.anyObject()))
-        .andReturn(TRACK_ID_0_URI);
-    // A flush happens before getting the start point ID
-    expect(myTracksProviderUtils.bulkInsertTrackPoint(
-      (Location[]) AndroidMock.anyObject(), eq(1), eq(TRACK_ID_0))).andReturn(1);
-    expect(myTracksProviderUtils.getFirstTrackPointId(TRACK_ID_0)).andReturn(TRACK_POINT_ID_0);
-
-    // A flush happens at the end
-    expect(myTracksProviderUtils.bulkInsertTrackPoint(
-        (Location[]) AndroidMock.anyObject(), eq(5), eq(TRACK_ID_0))).andStubReturn(5);
-    expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID_0)).andReturn(TRACK_POINT_ID_3);
-
-    myTracksProviderUtils.updateTrack(AndroidMock.capture(capturedTrack));
-
+    TestTrackImportSession session = new TestTrackImportSession(TRACK_ID_0, TRACK_POINT_ID_0);
+    expect(myTracksProviderUtils.createTrackImportSession()).andReturn(session);
     AndroidMock.replay(myTracksProviderUtils);
 
     InputStream inputStream = new ByteArrayInputStream(
@@ -270,40 +221,21 @@ public class GpxImporterTest extends AndroidTestCase {
     assertEquals(1, trackIds.length);
     assertEquals(TRACK_ID_0, trackIds[0]);
 
-    assertEquals(0, capturedTrack.getValue().getTripStatistics().getTotalTime());
+    assertEquals(6, session.locations.size());
+    assertEquals(0, session.track.getTripStatistics().getTotalTime());
 
     AndroidMock.verify(myTracksProviderUtils);
-    verifyTrack(capturedTrack.getValue(), TRACK_NAME_0, TRACK_DESCRIPTION_0, -1L);
+    verifyTrack(session.track, TRACK_NAME_0, TRACK_DESCRIPTION_0, -1L);
   }
 
   /**
    * Tests two tracks.
    */
   public void testTwoTracks() throws Exception {
-    Capture<Track> track0 = new Capture<Track>();
-    Capture<Track> track1 = new Capture<Track>();
-
-    Location location0 = createLocation(0, DATE_FORMAT_0.parse(TRACK_TIME_0).getTime());
-    Location location1 = createLocation(1, DATE_FORMAT_1.parse(TRACK_TIME_1).getTime());
-
-    expect(myTracksProviderUtils.insertTrack((Track) AndroidMock.anyObject()))
-        .andReturn(TRACK_ID_0_URI);
-    // A flush happens before getting the start point ID
-    expect(myTracksProviderUtils.bulkInsertTrackPoint(
-        LocationsMatcher.eqLoc(location0), eq(1), eq(TRACK_ID_0))).andReturn(1);
-    expect(myTracksProviderUtils.getFirstTrackPointId(TRACK_ID_0)).andReturn(TRACK_POINT_ID_0);
-    expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID_0)).andReturn(TRACK_POINT_ID_0);
-    myTracksProviderUtils.updateTrack(AndroidMock.capture(track0));
-
-    expect(myTracksProviderUtils.insertTrack((Track) AndroidMock.anyObject()))
-        .andReturn(TRACK_ID_1_URI);
-    // A flush happens before getting the start point ID
-    expect(myTracksProviderUtils.bulkInsertTrackPoint(
-        LocationsMatcher.eqLoc(location1), eq(1), eq(TRACK_ID_1))).andReturn(1);
-    expect(myTracksProviderUtils.getFirstTrackPointId(TRACK_ID_1)).andReturn(TRACK_POINT_ID_1);
-    expect(myTracksProviderUtils.getLastTrackPointId(TRACK_ID_1)).andReturn(TRACK_POINT_ID_1);
-    myTracksProviderUtils.updateTrack(AndroidMock.capture(track1));
-
+    TestTrackImportSession session0 = new TestTrackImportSession(TRACK_ID_0, TRACK_POINT_ID_0);
+    TestTrackImportSession session1 = new TestTrackImportSession(TRACK_ID_1, TRACK_POINT_ID_1);
+    expect(myTracksProviderUtils.createTrackImportSession()).andReturn(session0);
+    expect(myTracksProviderUtils.createTrackImportSession()).andReturn(session1);
     AndroidMock.replay(myTracksProviderUtils);
 
     InputStream inputStream = new ByteArrayInputStream(VALID_TWO_TRACKS_GPX.getBytes());
@@ -313,6 +245,15 @@ public class GpxImporterTest extends AndroidTestCase {
     assertEquals(TRACK_ID_0, trackIds[0]);
     assertEquals(TRACK_ID_1, trackIds[1]);
 
+    long time0 = DATE_FORMAT_0.parse(TRACK_TIME_0).getTime();
+    long time1 = DATE_FORMAT_1.parse(TRACK_TIME_1).getTime();
+    assertEquals(1, session0.locations.size());
+    assertTrue(locationsMatch(createLocation(0, time0), session0.locations.get(0)));
+    assertEquals(1, session1.locations.size());
+    assertTrue(locationsMatch(createLocation(1, time1), session1.locations.get(0)));
+    verifyTrack(session0.track, TRACK_NAME_0, TRACK_DESCRIPTION_0, time0);
+    verifyTrack(session1.track, TRACK_NAME_1, TRACK_DESCRIPTION_1, time1);
+
     AndroidMock.verify(myTracksProviderUtils);
   }
 
@@ -378,13 +319,8 @@ public class GpxImporterTest extends AndroidTestCase {
   }
 
   private void testInvalidGpx(String xml) throws ParserConfigurationException, IOException {
-    expect(myTracksProviderUtils.insertTrack((Track) AndroidMock.anyObject()))
-        .andReturn(TRACK_ID_0_URI);
-    expect(myTracksProviderUtils.bulkInsertTrackPoint(
-        (Location[]) AndroidMock.anyObject(), AndroidMock.anyInt(), AndroidMock.anyLong()))
-        .andStubReturn(1);
-    expect(myTracksProviderUtils.getFirstTrackPointId(TRACK_ID_0)).andStubReturn(TRACK_POINT_ID_0);
-    myTracksProviderUtils.deleteTrack(TRACK_ID_0);
+    TestTrackImportSession session = new TestTrackImportSession(TRACK_ID_0, TRACK_POINT_ID_0);
+    expect(myTracksProviderUtils.createTrackImportSession()).andReturn(session);
     AndroidMock.replay(myTracksProviderUtils);
 
     InputStream inputStream = new ByteArrayInputStream(xml.getBytes());
@@ -394,60 +330,58 @@ public class GpxImporterTest extends AndroidTestCase {
     } catch (SAXException e) {
       // expected
     }
+    assertTrue(session.rolledBack);
+    assertNull(session.track);
     AndroidMock.verify(myTracksProviderUtils);
   }
 
+  private static boolean locationsMatch(Location loc1, Location loc2) {
+    return (loc1.getTime() == loc2.getTime()) && (loc1.getLatitude() == loc2.getLatitude())
+        && (loc1.getLongitude() == loc2.getLongitude())
+        && (loc1.getAltitude() == loc2.getAltitude());
+  }
+
   /**
-   * Workaround because of capture bug 2617107 in easymock:
-   * http://sourceforge.net
-   * /tracker/?func=detail&aid=2617107&group_id=82958&atid=567837
+   * A {@link TrackImportSession} keeping the track points and the committed
+   * track in memory.
    */
-  private static class LocationsMatcher implements IArgumentMatcher {
-    private final Location[] matchLocs;
-
-    private LocationsMatcher(Location[] expected) {
-      this.matchLocs = expected;
-    }
-
-    public static Location[] eqLoc(Location[] expected) {
-      IArgumentMatcher matcher = new LocationsMatcher(expected);
-      AndroidMock.reportMatcher(matcher);
-      return null;
+  private static class TestTrackImportSession implements TrackImportSession {
+    private final long trackId;
+    private final long startId;
+    private final List<Location> locations = new ArrayList<Location>();
+    private Track track = null;
+    private boolean rolledBack = false;
+
+    private TestTrackImportSession(long trackId, long startId) {
+      this.trackId = trackId;
+      this.startId = startId;
     }
 
-    public static Location[] eqLoc(Location expected) {
-      return eqLoc(new Location[] { expected });
+    @Override
+    public void insertTrackPoints(Location[] locs, int length) {
+      for (int i = 0; i < length; i++) {
+        locations.add(new Location(locs[i]));
+      }
     }
 
     @Override
-    public void appendTo(StringBuffer buf) {
-      buf.append("eqLoc(").append(Arrays.toString(matchLocs)).append(")");
+    public int getNumberOfTrackPoints() {
+      return locations.size();
     }
 
     @Override
-    public boolean matches(Object obj) {
-      if (!(obj instanceof Location[])) {
-        return false;
-      }
-      Location[] locs = (Location[]) obj;
-      if (locs.length < matchLocs.length) {
-        return false;
-      }
-
-      // Only check the first elements (those that will be taken into account)
-      for (int i = 0; i < matchLocs.length; i++) {
-        if (!locationsMatch(locs[i], matchLocs[i])) {
-          return false;
-        }
-      }
-
-      return true;
+    public long commit(Track committedTrack) {
+      track = committedTrack;
+      track.setId(trackId);
+      track.setStartId(startId);
+      track.setStopId(startId + locations.size() - 1);
+      return trackId;
     }
 
-    private boolean locationsMatch(Location loc1, Location loc2) {
-      return (loc1.getTime() == loc2.getTime()) && (loc1.getLatitude() == loc2.getLatitude())
-          && (loc1.getLongitude() == loc2.getLongitude())
-          && (loc1.getAltitude() == loc2.getAltitude());
+    @Override
+    public void rollback() {
+      rolledBack = true;
+      locations.clear();
     }
   }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.io.file;
+
+import com.google.android.apps.mytracks.content.MyTracksProvider;
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.services.TrackRecordingServiceTest.MockContext;
+import com.google.android.apps.mytracks.util.PreferencesUtils;
+
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tests for the {@link ParallelGpxImporter}.
+ */
+public class ParallelGpxImporterTest extends AndroidTestCase {
+
+  private static final int NUMBER_OF_FILES = 6;
+  private static final int NUMBER_OF_POINTS = 1200;
+
+  private MyTracksProviderUtils myTracksProviderUtils;
+  private List<File> files;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    MockContentResolver mockContentResolver = new MockContentResolver();
+    RenamingDelegatingContext targetContext = new RenamingDelegatingContext(
+        getContext(), getContext(), "test.");
+    MockContext context = new MockContext(mockContentResolver, targetContext);
+    MyTracksProvider provider = new MyTracksProvider();
+    provider.attachInfo(context, null);
+    mockContentResolver.addProvider(MyTracksProviderUtils.AUTHORITY, provider);
+    setContext(context);
+
+    myTracksProviderUtils = MyTracksProviderUtils.Factory.get(context);
+    myTracksProviderUtils.deleteAllTracks();
+    files = new ArrayList<File>();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File file : files) {
+      file.delete();
+    }
+    myTracksProviderUtils.deleteAllTracks();
+    super.tearDown();
+  }
+
+  /**
+   * Tests importing valid files, each with a track of more points than a bulk
+   * insert.
+   */
+  public void testImportFiles() throws Exception {
+    for (int i = 0; i < NUMBER_OF_FILES; i++) {
+      writeFile("valid" + i, getTrack("track" + i, NUMBER_OF_POINTS));
+    }
+    final Set<Long> importedTrackIds = new HashSet<Long>();
+    final int[] numbers = new int[1];
+    ParallelGpxImporter parallelGpxImporter = new ParallelGpxImporter(
+        myTracksProviderUtils, PreferencesUtils.MIN_RECORDING_DISTANCE_DEFAULT, 3);
+    int successCount = parallelGpxImporter.importFiles(files, new ParallelGpxImporter.Listener() {
+        @Override
+      public void onFileDone(File file, long[] trackIds, int number, int total) {
+        assertNotNull(trackIds);
+        assertEquals(1, trackIds.length);
+        importedTrackIds.add(trackIds[0]);
+        numbers[0]++;
+        assertEquals(numbers[0], number);
+        assertEquals(NUMBER_OF_FILES, total);
+      }
+    });
+    assertEquals(NUMBER_OF_FILES, successCount);
+    assertEquals(NUMBER_OF_FILES, importedTrackIds.size());
+
+    List<Track> tracks = myTracksProviderUtils.getAllTracks();
+    assertEquals(NUMBER_OF_FILES, tracks.size());
+    for (Track track : tracks) {
+      assertTrue(importedTrackIds.contains(track.getId()));
+      assertTrue(track.getName().startsWith("track"));
+      assertEquals(NUMBER_OF_POINTS, track.getNumberOfPoints());
+      assertEquals(track.getStartId(), myTracksProviderUtils.getFirstTrackPointId(track.getId()));
+      assertEquals(track.getStopId(), myTracksProviderUtils.getLastTrackPointId(track.getId()));
+      assertEquals(NUMBER_OF_POINTS - 1, track.getStopId() - track.getStartId());
+    }
+  }
+
+  /**
+   * Tests importing an invalid file among valid files. The unfinished track of
+   * the invalid file is never written.
+   */
+  public void testImportFiles_invalid() throws Exception {
+    writeFile("valid0", getTrack("track0", NUMBER_OF_POINTS));
+    String invalid = getTrack("invalid", NUMBER_OF_POINTS);
+    writeFile("invalid", invalid.substring(0, invalid.length() - 50));
+    writeFile("valid1", getTrack("track1", NUMBER_OF_POINTS));
+
+    final List<File> failedFiles = new ArrayList<File>();
+    ParallelGpxImporter parallelGpxImporter = new ParallelGpxImporter(
+        myTracksProviderUtils, PreferencesUtils.MIN_RECORDING_DISTANCE_DEFAULT, 2);
+    int successCount = parallelGpxImporter.importFiles(files, new ParallelGpxImporter.Listener() {
+        @Override
+      public void onFileDone(File file, long[] trackIds, int number, int total) {
+        if (trackIds == null) {
+          failedFiles.add(file);
+        }
+      }
+    });
+    assertEquals(2, successCount);
+    assertEquals(1, failedFiles.size());
+    assertEquals(files.get(1), failedFiles.get(0));
+
+    List<Track> tracks = myTracksProviderUtils.getAllTracks();
+    assertEquals(2, tracks.size());
+    for (Track track : tracks) {
+      assertTrue(track.getName().startsWith("track"));
+    }
+  }
+
+  /**
+   * Gets a GPX track.
+   *
+   * @param name the track name
+   * @param numberOfPoints the number of track points
+   */
+  private String getTrack(String name, int numberOfPoints) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("<gpx><trk><name>").append(name).append("</name><trkseg>");
+    for (int i = 0; i < numberOfPoints; i++) {
+      builder.append("<trkpt lat=\"").append(48.0 + i * 1E-4).append("\" lon=\"")
+          .append(9.0 + i * 1E-4).append("\"><ele>").append(300.0 + i % 10)
+          .append("</ele><time>2010-04-22T18:")
+          .append(String.format(Locale.US, "%02d:%02d", i / 60 % 60, i % 60))
+          .append("Z</time></trkpt>");
+    }
+    builder.append("</trkseg></trk></gpx>");
+    return builder.toString();
+  }
+
+  /**
+   * Writes a file in the cache directory.
+   *
+   * @param name the file name
+   * @param content the file content
+   */
+  private void writeFile(String name, String content) throws IOException {
+    File file = new File(getContext().getCacheDir(), name + ".gpx");
+    Writer writer = new FileWriter(file);
+    try {
+      writer.write(content);
+    } finally {
+      writer.close();
+    }
+    files.add(file);
+  }
+}
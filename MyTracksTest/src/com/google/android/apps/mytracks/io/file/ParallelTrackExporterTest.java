@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.io.file;
+
+import com.google.android.apps.mytracks.content.MyTracksProvider;
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.io.file.TrackWriterFactory.TrackFileFormat;
+import com.google.android.apps.mytracks.services.TrackRecordingServiceTest.MockContext;
+import com.google.android.maps.mytracks.R;
+
+import android.content.ContentUris;
+import android.location.Location;
+import android.location.LocationManager;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the {@link ParallelTrackExporter}.
+ */
+public class ParallelTrackExporterTest extends AndroidTestCase {
+
+  private static final int NUMBER_OF_TRACKS = 5;
+  private static final int NUMBER_OF_POINTS = 600;
+  private static final TrackFileFormat[] TRACK_FILE_FORMATS = { TrackFileFormat.GPX,
+      TrackFileFormat.KML, TrackFileFormat.CSV, TrackFileFormat.TCX };
+
+  private MyTracksProviderUtils myTracksProviderUtils;
+  private File directory;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    MockContentResolver mockContentResolver = new MockContentResolver();
+    RenamingDelegatingContext targetContext = new RenamingDelegatingContext(
+        getContext(), getContext(), "test.");
+    MockContext context = new MockContext(mockContentResolver, targetContext);
+    MyTracksProvider provider = new MyTracksProvider();
+    provider.attachInfo(context, null);
+    mockContentResolver.addProvider(MyTracksProviderUtils.AUTHORITY, provider);
+    setContext(context);
+
+    myTracksProviderUtils = MyTracksProviderUtils.Factory.get(context);
+    myTracksProviderUtils.deleteAllTracks();
+    directory = new File(getContext().getCacheDir(), "export");
+    deleteFiles();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    deleteFiles();
+    myTracksProviderUtils.deleteAllTracks();
+    super.tearDown();
+  }
+
+  /**
+   * Tests exporting tracks with the same name to all the formats.
+   */
+  public void testExportTracks() throws Exception {
+    long[] trackIds = new long[NUMBER_OF_TRACKS];
+    for (int i = 0; i < NUMBER_OF_TRACKS; i++) {
+      trackIds[i] = insertTrack("track", NUMBER_OF_POINTS);
+    }
+    final int[] numbers = new int[1];
+    ParallelTrackExporter parallelTrackExporter = new ParallelTrackExporter(
+        getContext(), myTracksProviderUtils, TRACK_FILE_FORMATS, 3);
+    parallelTrackExporter.setDirectory(directory);
+    int successCount = parallelTrackExporter.exportTracks(
+        trackIds, new ParallelTrackExporter.Listener() {
+            @Override
+          public void onTrackDone(
+              long trackId, boolean success, int messageId, int number, int total) {
+            assertTrue(success);
+            assertEquals(R.string.external_storage_save_success, messageId);
+            numbers[0]++;
+            assertEquals(numbers[0], number);
+            assertEquals(NUMBER_OF_TRACKS, total);
+          }
+        });
+    assertEquals(NUMBER_OF_TRACKS, successCount);
+
+    // Each track has a unique file per format
+    File[] files = directory.listFiles();
+    assertEquals(NUMBER_OF_TRACKS * TRACK_FILE_FORMATS.length, files.length);
+    for (TrackFileFormat trackFileFormat : TRACK_FILE_FORMATS) {
+      List<File> formatFiles = new ArrayList<File>();
+      for (File file : files) {
+        if (file.getName().endsWith("." + trackFileFormat.getExtension())) {
+          formatFiles.add(file);
+        }
+      }
+      assertEquals(NUMBER_OF_TRACKS, formatFiles.size());
+      for (File file : formatFiles) {
+        assertTrue(file.length() > 0);
+      }
+    }
+  }
+
+  /**
+   * Tests exporting a missing track among valid tracks.
+   */
+  public void testExportTracks_missingTrack() throws Exception {
+    long trackId = insertTrack("track", NUMBER_OF_POINTS);
+    long[] trackIds = { trackId, trackId + 1000 };
+    final List<Long> failedTrackIds = new ArrayList<Long>();
+    ParallelTrackExporter parallelTrackExporter = new ParallelTrackExporter(
+        getContext(), myTracksProviderUtils, TRACK_FILE_FORMATS, 2);
+    parallelTrackExporter.setDirectory(directory);
+    int successCount = parallelTrackExporter.exportTracks(
+        trackIds, new ParallelTrackExporter.Listener() {
+            @Override
+          public void onTrackDone(
+              long id, boolean success, int messageId, int number, int total) {
+            if (!success) {
+              failedTrackIds.add(id);
+              assertEquals(R.string.external_storage_save_error, messageId);
+            }
+          }
+        });
+    assertEquals(1, successCount);
+    assertEquals(1, failedTrackIds.size());
+    assertEquals(trackId + 1000, failedTrackIds.get(0).longValue());
+    assertEquals(TRACK_FILE_FORMATS.length, directory.listFiles().length);
+  }
+
+  /**
+   * Tests that an interrupted export throws an {@link InterruptedException}
+   * and doesn't leave partial files.
+   */
+  public void testExportTracks_interrupted() throws Exception {
+    long[] trackIds = new long[NUMBER_OF_TRACKS];
+    for (int i = 0; i < NUMBER_OF_TRACKS; i++) {
+      trackIds[i] = insertTrack("track", NUMBER_OF_POINTS);
+    }
+    ParallelTrackExporter parallelTrackExporter = new ParallelTrackExporter(
+        getContext(), myTracksProviderUtils, TRACK_FILE_FORMATS, 1);
+    parallelTrackExporter.setDirectory(directory);
+    Thread.currentThread().interrupt();
+    try {
+      parallelTrackExporter.exportTracks(trackIds, null);
+      fail("Expected an InterruptedException");
+    } catch (InterruptedException e) {
+      // Expected
+    }
+    assertTrue(Thread.interrupted());
+
+    // Only completed tracks have files
+    File[] files = directory.listFiles();
+    assertEquals(0, files.length % TRACK_FILE_FORMATS.length);
+  }
+
+  /**
+   * Inserts a track.
+   *
+   * @param name the track name
+   * @param numberOfPoints the number of track points
+   * @return the track id.
+   */
+  private long insertTrack(String name, int numberOfPoints) {
+    Track track = new Track();
+    track.setName(name);
+    long trackId = ContentUris.parseId(myTracksProviderUtils.insertTrack(track));
+    Location[] locations = new Location[numberOfPoints];
+    for (int i = 0; i < numberOfPoints; i++) {
+      Location location = new Location(LocationManager.GPS_PROVIDER);
+      location.setLatitude(48.0 + i * 1E-4);
+      location.setLongitude(9.0 + i * 1E-4);
+      location.setAltitude(300.0 + i % 10);
+      location.setTime(1272000000000L + i * 1000L);
+      locations[i] = location;
+    }
+    myTracksProviderUtils.bulkInsertTrackPoint(locations, numberOfPoints, trackId);
+    return trackId;
+  }
+
+  /**
+   * Deletes the exported files.
+   */
+  private void deleteFiles() {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.io.file;
+
+import com.google.android.apps.mytracks.util.StringUtils;
+
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Tests for {@link TrackFormatEmitter}. The output is compared to the output of
+ * a {@link PrintWriter}.
+ */
+public class TrackFormatEmitterTest extends AndroidTestCase {
+
+  private ByteArrayOutputStream outputStream;
+  private TrackFormatEmitter emitter;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    outputStream = new ByteArrayOutputStream();
+    emitter = new TrackFormatEmitter(outputStream);
+  }
+
+  /**
+   * Tests {@link TrackFormatEmitter#writeDouble(double)} with special values.
+   */
+  public void testWriteDouble() throws Exception {
+    double[] values = { 0.0, -0.0, 1.0, -1.0, 0.1, 0.3, 1.0 / 3, 0.001, 0.0001, 1234567.5,
+        9999999.99, 1e7, 324.0, 48.768364, -122.084095, 12.3f, Double.NaN,
+        Double.NEGATIVE_INFINITY, Double.MAX_VALUE, Double.MIN_VALUE };
+    for (double value : values) {
+      emitter.writeDouble(value);
+      emitter.newLine();
+    }
+    StringBuilder builder = new StringBuilder();
+    for (double value : values) {
+      builder.append(value).append('\n');
+    }
+    assertOutput(builder.toString());
+  }
+
+  /**
+   * Tests {@link TrackFormatEmitter#writeDouble(double)} with random
+   * coordinates, altitudes, and float values.
+   */
+  public void testWriteDouble_random() throws Exception {
+    Random random = new Random(0);
+    double[] values = new double[10000];
+    for (int i = 0; i < values.length; i++) {
+      switch (i % 4) {
+        case 0:
+          values[i] = (random.nextInt(360000000) - 180000000) / 1E6;
+          break;
+        case 1:
+          values[i] = (random.nextInt(100000) - 10000) / 10.0;
+          break;
+        case 2:
+          values[i] = random.nextFloat() * 360;
+          break;
+        default:
+          values[i] = random.nextDouble() * Math.pow(10, random.nextInt(12) - 4);
+      }
+    }
+    StringBuilder builder = new StringBuilder();
+    for (double value : values) {
+      emitter.writeDouble(value);
+      emitter.newLine();
+      builder.append(value).append('\n');
+    }
+    assertOutput(builder.toString());
+  }
+
+  /**
+   * Tests {@link TrackFormatEmitter#writeLong(long)}.
+   */
+  public void testWriteLong() throws Exception {
+    long[] values = { 0L, 7L, -7L, 10L, Long.MAX_VALUE, Long.MIN_VALUE };
+    for (long value : values) {
+      emitter.writeLong(value);
+      emitter.newLine();
+    }
+    StringBuilder builder = new StringBuilder();
+    for (long value : values) {
+      builder.append(value).append('\n');
+    }
+    assertOutput(builder.toString());
+  }
+
+  /**
+   * Tests {@link TrackFormatEmitter#writeDateTimeIso8601(long)}.
+   */
+  public void testWriteDateTimeIso8601() throws Exception {
+    // Includes leap days and out of range times
+    long[] times = { 0L, 12345L, 86399999L, 951782400000L, 951868800000L, 1262304000000L,
+        4107542400000L, 253402300799999L, 253402300800000L, -1L };
+    for (long time : times) {
+      emitter.writeDateTimeIso8601(time);
+      emitter.newLine();
+    }
+    StringBuilder builder = new StringBuilder();
+    for (long time : times) {
+      builder.append(StringUtils.formatDateTimeIso8601(time)).append('\n');
+    }
+    assertOutput(builder.toString());
+  }
+
+  /**
+   * Tests {@link TrackFormatEmitter#writeCData(String)}.
+   */
+  public void testWriteCData() throws Exception {
+    String[] texts = { "", "Home]]>", "]]>a]]>]]>", "The long ]]> journey home" };
+    StringBuilder builder = new StringBuilder();
+    for (String text : texts) {
+      emitter.writeCData(text);
+      builder.append(StringUtils.formatCData(text));
+    }
+    assertOutput(builder.toString());
+  }
+
+  /**
+   * Tests {@link TrackFormatEmitter#writeCsvValue(String)}.
+   */
+  public void testWriteCsvValue() throws Exception {
+    emitter.writeCsvValue("a\"b\"\"");
+    emitter.writeCsvValue(null);
+    emitter.writeCsvValue("");
+    assertOutput("\"a\"\"b\"\"\"\"\"\"\"\"\"");
+  }
+
+  /**
+   * Tests {@link TrackFormatEmitter#writeFormatted(NumberFormat, double)}.
+   */
+  public void testWriteFormatted() throws Exception {
+    NumberFormat numberFormat = NumberFormat.getInstance(Locale.US);
+    numberFormat.setMaximumFractionDigits(1);
+    numberFormat.setGroupingUsed(false);
+    emitter.writeFormatted(numberFormat, 1234.56);
+    emitter.writeFormatted(numberFormat, -0.04);
+    assertOutput(numberFormat.format(1234.56) + numberFormat.format(-0.04));
+  }
+
+  /**
+   * Tests writing non ASCII text and more text than the buffer.
+   */
+  public void testWriteLine() throws Exception {
+    String[] texts = { "été", "中文", "😀", "unpaired \ud83d" };
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      String text = texts[i % texts.length];
+      emitter.writeLine(text);
+      builder.append(text).append('\n');
+    }
+    assertOutput(builder.toString());
+  }
+
+  /**
+   * Asserts the emitter output is the same as the output of a
+   * {@link PrintWriter} printing the expected text, with the platform line
+   * separator instead of '\n'.
+   *
+   * @param expected the expected text
+   */
+  private void assertOutput(String expected) throws Exception {
+    emitter.close();
+    assertFalse(emitter.checkError());
+    ByteArrayOutputStream expectedOutputStream = new ByteArrayOutputStream();
+    PrintWriter printWriter = new PrintWriter(
+        new OutputStreamWriter(expectedOutputStream, "UTF-8"));
+    String[] lines = expected.split("\n", -1);
+    for (int i = 0; i < lines.length; i++) {
+      if (i > 0) {
+        printWriter.println();
+      }
+      printWriter.print(lines[i]);
+    }
+    printWriter.close();
+    byte[] expectedBytes = expectedOutputStream.toByteArray();
+    byte[] bytes = outputStream.toByteArray();
+    assertTrue(new String(bytes, "UTF-8"), Arrays.equals(expectedBytes, bytes));
+  }
+}
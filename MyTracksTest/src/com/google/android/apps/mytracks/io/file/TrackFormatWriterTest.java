@@ -10,7 +10,6 @@ import android.test.AndroidTestCase;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
@@ -114,7 +113,18 @@ public abstract class TrackFormatWriterTest extends AndroidTestCase {
    * @return the written contents
    */
   protected String writeTrack(TrackFormatWriter writer) throws Exception {
-    OutputStream output = new ByteArrayOutputStream(BUFFER_SIZE);
+    return new String(writeTrackBytes(writer));
+  }
+
+  /**
+   * Makes the right sequence of calls to the writer in order to write the fake
+   * track in {@link #track}.
+   *
+   * @param writer the writer to write to
+   * @return the written bytes
+   */
+  protected byte[] writeTrackBytes(TrackFormatWriter writer) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(BUFFER_SIZE);
     writer.prepare(track, output);
     writer.writeHeader();
     writer.writeBeginWaypoints();
@@ -133,7 +143,7 @@ public abstract class TrackFormatWriterTest extends AndroidTestCase {
     writer.writeEndTrack(location4);
     writer.writeFooter();
     writer.close();
-    return output.toString();
+    return output.toByteArray();
   }
 
   /**
@@ -16,13 +16,13 @@
 package com.google.android.apps.mytracks.io.fusiontables;
 
 import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.content.TrackPointBuffer;
 import com.google.android.apps.mytracks.stats.TripStatistics;
 
 import android.location.Location;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.util.ArrayList;
 
 import junit.framework.TestCase;
 
@@ -143,8 +143,8 @@ public class SendFusionTablesUtilsTest extends TestCase {
   }
 
   /**
-   * Tests {@link SendFusionTablesUtils#getKmlLineString(ArrayList)} with a null
-   * locations.
+   * Tests {@link SendFusionTablesUtils#getKmlLineString(TrackPointBuffer)} with a null
+   * buffer.
    */
   public void testKmlLineString_null_locations() {
     assertEquals("<LineString><coordinates></coordinates></LineString>",
@@ -152,50 +152,50 @@ public class SendFusionTablesUtilsTest extends TestCase {
   }
 
   /**
-   * Tests {@link SendFusionTablesUtils#getKmlLineString(ArrayList)} with no
+   * Tests {@link SendFusionTablesUtils#getKmlLineString(TrackPointBuffer)} with no
    * location.
    */
   public void testKmlLineString_no_location() {
-    ArrayList<Location> locations = new ArrayList<Location>();
+    TrackPointBuffer trackPointBuffer = new TrackPointBuffer();
     assertEquals("<LineString><coordinates></coordinates></LineString>",
-        SendFusionTablesUtils.getKmlLineString(locations));
+        SendFusionTablesUtils.getKmlLineString(trackPointBuffer));
   }
 
   /**
-   * Tests {@link SendFusionTablesUtils#getKmlLineString(ArrayList)} with one
+   * Tests {@link SendFusionTablesUtils#getKmlLineString(TrackPointBuffer)} with one
    * location.
    */
   public void testKmlLineString_one_location() {
-    ArrayList<Location> locations = new ArrayList<Location>();
+    TrackPointBuffer trackPointBuffer = new TrackPointBuffer();
     Location location = new Location("test");
     location.setLongitude(10.1);
     location.setLatitude(20.2);
     location.setAltitude(30.3);
-    locations.add(location);
+    trackPointBuffer.add(location);
     assertEquals("<LineString><coordinates>10.1,20.2,30.3</coordinates></LineString>",
-        SendFusionTablesUtils.getKmlLineString(locations));
+        SendFusionTablesUtils.getKmlLineString(trackPointBuffer));
   }
 
   /**
-   * Tests {@link SendFusionTablesUtils#getKmlLineString(ArrayList)} with two
+   * Tests {@link SendFusionTablesUtils#getKmlLineString(TrackPointBuffer)} with two
    * locations.
    */
   public void testKmlLineString_two_locations() {
-    ArrayList<Location> locations = new ArrayList<Location>();
+    TrackPointBuffer trackPointBuffer = new TrackPointBuffer();
     Location location1 = new Location("test");
     location1.setLongitude(10.1);
     location1.setLatitude(20.2);
     location1.setAltitude(30.3);
-    locations.add(location1);
+    trackPointBuffer.add(location1);
 
     Location location2 = new Location("test");
     location2.setLongitude(1.1);
     location2.setLatitude(2.2);
     location2.removeAltitude();
-    locations.add(location2);
+    trackPointBuffer.add(location2);
 
     assertEquals("<LineString><coordinates>10.1,20.2,30.3 1.1,2.2</coordinates></LineString>",
-        SendFusionTablesUtils.getKmlLineString(locations));
+        SendFusionTablesUtils.getKmlLineString(trackPointBuffer));
   }
 
   /**
@@ -16,12 +16,11 @@
 package com.google.android.apps.mytracks.io.maps;
 
 import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.content.TrackPointBuffer;
 import com.google.android.apps.mytracks.io.gdata.maps.MapsFeature;
 
 import android.location.Location;
 
-import java.util.ArrayList;
-
 import junit.framework.TestCase;
 
 /**
@@ -114,16 +113,16 @@ public class SendMapsUtilsTest extends TestCase {
   }
 
   /**
-   * Test {@link SendMapsUtils#buildMapsLineFeature(String, ArrayList)} with a
+   * Test {@link SendMapsUtils#buildMapsLineFeature(String, TrackPointBuffer)} with a
    * title.
    */
   public void testBuildMapsLineFeature_with_title() {
-    ArrayList<Location> locations = new ArrayList<Location>();
+    TrackPointBuffer trackPointBuffer = new TrackPointBuffer();
     Location location = new Location("test");
     location.setLatitude(50.0);
     location.setLongitude(100.0);
-    locations.add(location);
-    MapsFeature mapFeature = SendMapsUtils.buildMapsLineFeature("name", locations);
+    trackPointBuffer.add(location);
+    MapsFeature mapFeature = SendMapsUtils.buildMapsLineFeature("name", trackPointBuffer);
 
     assertEquals(MapsFeature.LINE, mapFeature.getType());
     assertNotNull(mapFeature.getAndroidId());
@@ -134,16 +133,16 @@ public class SendMapsUtilsTest extends TestCase {
   }
 
   /**
-   * Test {@link SendMapsUtils#buildMapsLineFeature(String, ArrayList)} with an
+   * Test {@link SendMapsUtils#buildMapsLineFeature(String, TrackPointBuffer)} with an
    * empty title.
    */
   public void testBuildMapsLineFeature_empty_title() {
-    ArrayList<Location> locations = new ArrayList<Location>();
+    TrackPointBuffer trackPointBuffer = new TrackPointBuffer();
     Location location = new Location("test");
     location.setLatitude(50.0);
     location.setLongitude(100.0);
-    locations.add(location);
-    MapsFeature mapFeature = SendMapsUtils.buildMapsLineFeature("", locations);
+    trackPointBuffer.add(location);
+    MapsFeature mapFeature = SendMapsUtils.buildMapsLineFeature("", trackPointBuffer);
 
     assertEquals(MapsFeature.LINE, mapFeature.getType());
     assertNotNull(mapFeature.getAndroidId());
@@ -154,16 +153,16 @@ public class SendMapsUtilsTest extends TestCase {
   }
 
   /**
-   * Test {@link SendMapsUtils#buildMapsLineFeature(String, ArrayList)} with a
+   * Test {@link SendMapsUtils#buildMapsLineFeature(String, TrackPointBuffer)} with a
    * null title.
    */
   public void testBuildMapsLineFeature_null_title() {
-    ArrayList<Location> locations = new ArrayList<Location>();
+    TrackPointBuffer trackPointBuffer = new TrackPointBuffer();
     Location location = new Location("test");
     location.setLatitude(50.0);
     location.setLongitude(100.0);
-    locations.add(location);
-    MapsFeature mapFeature = SendMapsUtils.buildMapsLineFeature(null, locations);
+    trackPointBuffer.add(location);
+    MapsFeature mapFeature = SendMapsUtils.buildMapsLineFeature(null, trackPointBuffer);
 
     assertEquals(MapsFeature.LINE, mapFeature.getType());
     assertNotNull(mapFeature.getAndroidId());
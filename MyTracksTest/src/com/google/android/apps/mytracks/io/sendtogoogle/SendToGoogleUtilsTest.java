@@ -23,6 +23,7 @@ package com.google.android.apps.mytracks.io.sendtogoogle;
 import com.google.android.apps.mytracks.TrackStubUtils;
 import com.google.android.apps.mytracks.content.MyTracksLocation;
 import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.content.TrackPointBuffer;
 
 import android.location.Location;
 
@@ -60,11 +61,11 @@ public class SendToGoogleUtilsTest extends TestCase {
 
     ArrayList<Track> tracksArray = new ArrayList<Track>();
     assertTrue(SendToGoogleUtils.endSegment(
-        segment, segment.getLocations().get(1).getTime(), tracksArray));
+        segment, segment.getTrackPointBuffer().getTime(1), tracksArray));
     assertEquals(segment, tracksArray.get(0));
     // The stop time should be the time of last location
     assertEquals(
-        segment.getLocations().get(1).getTime(), segment.getTripStatistics().getStopTime());
+        segment.getTrackPointBuffer().getTime(1), segment.getTripStatistics().getStopTime());
   }
 
   /**
@@ -81,7 +82,7 @@ public class SendToGoogleUtilsTest extends TestCase {
     // Adds 100 location to List.
     for (int i = 0; i < 100; i++) {
       // Use this variable as a flag to make all points in the track can be kept
-      // after run the LocationUtils#decimate(Track, double) with
+      // after run the LocationSimplifier#simplify(Track) with
       // Ramer–Douglas–Peucker algorithm.
       double latitude = TrackStubUtils.INITIAL_LATITUDE;
       if (i % 2 == 0) {
@@ -113,12 +114,13 @@ public class SendToGoogleUtilsTest extends TestCase {
       if (j % 2 == 0) {
         latitude -= DIFFERENCE * (j % 10);
       }
-      Location oneLocation = result.get(0).getLocations().get(j);
+      // The latitude and longitude are stored as E6 integers
+      TrackPointBuffer trackPointBuffer = result.get(0).getTrackPointBuffer();
       assertEquals(TrackStubUtils.createMyTracksLocation().getAltitude() + DIFFERENCE * (j % 10),
-          oneLocation.getAltitude());
-      assertEquals(latitude, oneLocation.getLatitude());
+          trackPointBuffer.getAltitude(j));
+      assertEquals(latitude, trackPointBuffer.getLatitude(j), 1E-6);
       assertEquals(TrackStubUtils.createMyTracksLocation().getLongitude() + DIFFERENCE * (j % 10),
-          oneLocation.getLongitude());
+          trackPointBuffer.getLongitude(j), 1E-6);
     }
   }
 }
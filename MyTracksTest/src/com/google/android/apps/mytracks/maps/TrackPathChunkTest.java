@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.maps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link TrackPathChunk}.
+ */
+public class TrackPathChunkTest extends TestCase {
+
+  private static final int SLOW_COLOR = 1;
+  private static final int FAST_COLOR = 2;
+
+  // A track path with the slow color below 10 km/h
+  private static final TrackPath TRACK_PATH = new TrackPath() {
+      @Override
+    public boolean updateState() {
+      return false;
+    }
+
+      @Override
+    public int getColor(int speed) {
+      return speed < 10 ? SLOW_COLOR : FAST_COLOR;
+    }
+  };
+
+  private TrackPathChunk chunk;
+  private List<ArrayList<LatLng>> runs;
+  private List<Integer> colors;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    chunk = new TrackPathChunk();
+    runs = new ArrayList<ArrayList<LatLng>>();
+    colors = new ArrayList<Integer>();
+  }
+
+  /**
+   * Tests that a straight line is simplified to its end points.
+   */
+  public void testGetRuns_straightLine() {
+    for (int i = 0; i < 10; i++) {
+      chunk.add(0.0, i * 0.001, 0, true);
+    }
+    chunk.getRuns(TRACK_PATH, 15, runs, colors);
+    assertEquals(1, runs.size());
+    assertRun(new int[] { 0, 9 }, runs.get(0));
+    assertEquals(SLOW_COLOR, colors.get(0).intValue());
+  }
+
+  /**
+   * Tests that a zigzag is kept at a high zoom level and simplified at a low
+   * zoom level.
+   */
+  public void testGetRuns_zoom() {
+    for (int i = 0; i < 10; i++) {
+      chunk.add((i % 2) * 0.001, i * 0.001, 0, true);
+    }
+    chunk.getRuns(TRACK_PATH, 21, runs, colors);
+    assertEquals(1, runs.size());
+    assertEquals(10, runs.get(0).size());
+
+    runs.clear();
+    colors.clear();
+    chunk.getRuns(TRACK_PATH, 0, runs, colors);
+    assertEquals(1, runs.size());
+    assertRun(new int[] { 0, 9 }, runs.get(0));
+  }
+
+  /**
+   * Tests that the locations where the color changes are kept and that a run
+   * begins with the last location of the previous run.
+   */
+  public void testGetRuns_colorChange() {
+    for (int i = 0; i < 10; i++) {
+      chunk.add(0.0, i * 0.001, i < 5 ? 0 : 20, true);
+    }
+    chunk.getRuns(TRACK_PATH, 15, runs, colors);
+    assertEquals(2, runs.size());
+    assertRun(new int[] { 0, 4 }, runs.get(0));
+    assertEquals(SLOW_COLOR, colors.get(0).intValue());
+    assertRun(new int[] { 4, 5, 9 }, runs.get(1));
+    assertEquals(FAST_COLOR, colors.get(1).intValue());
+  }
+
+  /**
+   * Tests that the segments are not connected.
+   */
+  public void testGetRuns_segmentSplit() {
+    for (int i = 0; i < 9; i++) {
+      chunk.add(0.0, i * 0.001, 0, i != 4);
+    }
+    chunk.getRuns(TRACK_PATH, 15, runs, colors);
+    assertEquals(2, runs.size());
+    assertRun(new int[] { 0, 3 }, runs.get(0));
+    assertRun(new int[] { 5, 8 }, runs.get(1));
+  }
+
+  /**
+   * Tests that a chunk begins with the last location of the previous chunk.
+   */
+  public void testContinueFrom() {
+    TrackPathChunk previous = new TrackPathChunk();
+    for (int i = 0; i < 5; i++) {
+      previous.add(0.0, i * 0.001, 0, true);
+    }
+    chunk.continueFrom(previous);
+    for (int i = 5; i < 10; i++) {
+      chunk.add(0.0, i * 0.001, 0, true);
+    }
+    chunk.getRuns(TRACK_PATH, 15, runs, colors);
+    assertEquals(1, runs.size());
+    assertRun(new int[] { 4, 9 }, runs.get(0));
+  }
+
+  /**
+   * Tests {@link TrackPathChunk#intersects(double, double, double, double)},
+   * including bounds crossing the 180th meridian.
+   */
+  public void testIntersects() {
+    assertFalse(chunk.intersects(-90.0, -180.0, 90.0, 180.0));
+
+    chunk.add(10.0, 170.0, 0, true);
+    chunk.add(11.0, 175.0, 0, true);
+    chunk.add(50.0, -170.0, 0, false);
+    assertTrue(chunk.intersects(0.0, 160.0, 20.0, 180.0));
+    assertTrue(chunk.intersects(10.5, 172.0, 10.6, 173.0));
+    assertFalse(chunk.intersects(12.0, 160.0, 20.0, 180.0));
+    assertFalse(chunk.intersects(0.0, -180.0, 20.0, 160.0));
+    assertTrue(chunk.intersects(0.0, 174.0, 20.0, -170.0));
+    assertFalse(chunk.intersects(0.0, 176.0, 20.0, -170.0));
+  }
+
+  /**
+   * Asserts the locations of a run.
+   *
+   * @param expected the expected location indexes, the location i being at
+   *          the longitude i / 1000
+   * @param run the run
+   */
+  private void assertRun(int[] expected, List<LatLng> run) {
+    assertEquals(expected.length, run.size());
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i] * 0.001, run.get(i).longitude, 1E-9);
+    }
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.android.apps.mytracks.services;
+
+import com.google.android.apps.mytracks.content.MyTracksProvider;
+import com.google.android.apps.mytracks.content.MyTracksProviderUtils;
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.services.TrackRecordingServiceTest.MockContext;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.location.Location;
+import android.location.LocationManager;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+
+import java.io.File;
+
+/**
+ * Tests for {@link TrackPointJournal}.
+ */
+public class TrackPointJournalTest extends AndroidTestCase {
+
+  private MyTracksProviderUtils myTracksProviderUtils;
+  private File file;
+  private TrackPointJournal trackPointJournal;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    MockContentResolver mockContentResolver = new MockContentResolver();
+    RenamingDelegatingContext targetContext = new RenamingDelegatingContext(
+        getContext(), getContext(), "test.");
+    Context context = new MockContext(mockContentResolver, targetContext);
+    MyTracksProvider provider = new MyTracksProvider();
+    provider.attachInfo(context, null);
+    mockContentResolver.addProvider(MyTracksProviderUtils.AUTHORITY, provider);
+    setContext(context);
+
+    myTracksProviderUtils = MyTracksProviderUtils.Factory.get(context);
+    myTracksProviderUtils.deleteAllTracks();
+    file = new File(getContext().getCacheDir(), "test.trackpoints.journal");
+    file.delete();
+    trackPointJournal = new TrackPointJournal(myTracksProviderUtils, file);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    trackPointJournal.close();
+    file.delete();
+    super.tearDown();
+  }
+
+  /**
+   * Tests that added track points are appended to the journal and buffered
+   * without writing them to the provider.
+   */
+  public void testAdd() {
+    long trackId = insertTrack();
+    addTrackPoints(trackPointJournal, trackId, 0, 3);
+    assertEquals(3, trackPointJournal.size());
+    assertTrue(file.length() > 0);
+    assertEquals(0, getNumberOfTrackPoints(trackId));
+  }
+
+  /**
+   * Tests that flushing writes the buffered track points to the provider and
+   * clears the journal.
+   */
+  public void testFlush() {
+    long trackId = insertTrack();
+    addTrackPoints(trackPointJournal, trackId, 0, 3);
+    assertEquals(3, trackPointJournal.flush());
+    assertEquals(0, trackPointJournal.size());
+    assertFalse(file.exists());
+    assertEquals(3, getNumberOfTrackPoints(trackId));
+    assertEquals(0, trackPointJournal.flush());
+  }
+
+  /**
+   * Tests that adding a track point of another track flushes the buffered
+   * track points and updates their track.
+   */
+  public void testAdd_otherTrack() {
+    long trackId = insertTrack();
+    long otherTrackId = insertTrack();
+    addTrackPoints(trackPointJournal, trackId, 0, 2);
+    addTrackPoints(trackPointJournal, otherTrackId, 2, 1);
+    assertEquals(1, trackPointJournal.size());
+    assertEquals(2, getNumberOfTrackPoints(trackId));
+    assertEquals(0, getNumberOfTrackPoints(otherTrackId));
+
+    Track track = myTracksProviderUtils.getTrack(trackId);
+    assertEquals(2, track.getNumberOfPoints());
+    assertEquals(myTracksProviderUtils.getFirstTrackPointId(trackId), track.getStartId());
+    assertEquals(myTracksProviderUtils.getLastTrackPointId(trackId), track.getStopId());
+  }
+
+  /**
+   * Tests replaying the track points of a killed service.
+   */
+  public void testReplay() {
+    long trackId = insertTrack();
+    addTrackPoints(trackPointJournal, trackId, 0, 3);
+    trackPointJournal.close();
+
+    TrackPointJournal newTrackPointJournal = new TrackPointJournal(myTracksProviderUtils, file);
+    newTrackPointJournal.replay();
+    assertFalse(file.exists());
+    assertEquals(3, getNumberOfTrackPoints(trackId));
+
+    Track track = myTracksProviderUtils.getTrack(trackId);
+    assertEquals(3, track.getNumberOfPoints());
+    assertEquals(myTracksProviderUtils.getFirstTrackPointId(trackId), track.getStartId());
+    assertEquals(myTracksProviderUtils.getLastTrackPointId(trackId), track.getStopId());
+
+    // Replaying again does nothing
+    newTrackPointJournal.replay();
+    assertEquals(3, getNumberOfTrackPoints(trackId));
+  }
+
+  /**
+   * Tests that replaying skips the track points already written to the
+   * provider, i.e., when the service was killed after flushing but before
+   * clearing the journal.
+   */
+  public void testReplay_skipWrittenTrackPoints() {
+    long trackId = insertTrack();
+    Location[] locations = addTrackPoints(trackPointJournal, trackId, 0, 3);
+    myTracksProviderUtils.bulkInsertTrackPoint(locations, 2, trackId);
+    trackPointJournal.close();
+
+    new TrackPointJournal(myTracksProviderUtils, file).replay();
+    assertEquals(3, getNumberOfTrackPoints(trackId));
+    Track track = myTracksProviderUtils.getTrack(trackId);
+    assertEquals(1, track.getNumberOfPoints());
+  }
+
+  /**
+   * Tests that replaying only writes the track points of the killed service,
+   * keeping the track points added since.
+   */
+  public void testReplay_afterAdd() {
+    long trackId = insertTrack();
+    addTrackPoints(trackPointJournal, trackId, 0, 2);
+    trackPointJournal.close();
+
+    TrackPointJournal newTrackPointJournal = new TrackPointJournal(myTracksProviderUtils, file);
+    addTrackPoints(newTrackPointJournal, trackId, 2, 1);
+    newTrackPointJournal.replay();
+    assertEquals(2, getNumberOfTrackPoints(trackId));
+    assertEquals(1, newTrackPointJournal.size());
+    assertTrue(file.exists());
+
+    assertEquals(1, newTrackPointJournal.flush());
+    assertEquals(3, getNumberOfTrackPoints(trackId));
+    newTrackPointJournal.close();
+  }
+
+  /**
+   * Tests that flushing before replaying writes the track points of the killed
+   * service first.
+   */
+  public void testFlush_beforeReplay() {
+    long trackId = insertTrack();
+    addTrackPoints(trackPointJournal, trackId, 0, 2);
+    trackPointJournal.close();
+
+    TrackPointJournal newTrackPointJournal = new TrackPointJournal(myTracksProviderUtils, file);
+    addTrackPoints(newTrackPointJournal, trackId, 2, 1);
+    assertEquals(1, newTrackPointJournal.flush());
+    assertFalse(file.exists());
+    assertEquals(3, getNumberOfTrackPoints(trackId));
+    newTrackPointJournal.close();
+  }
+
+  /**
+   * Inserts a track. Returns the track id.
+   */
+  private long insertTrack() {
+    return ContentUris.parseId(myTracksProviderUtils.insertTrack(new Track()));
+  }
+
+  /**
+   * Adds track points to a journal. Returns the added track points.
+   *
+   * @param journal the journal
+   * @param trackId the track id
+   * @param start the index of the first track point, the track point i being at
+   *          the time i + 1 seconds
+   * @param length the number of track points
+   */
+  private Location[] addTrackPoints(
+      TrackPointJournal journal, long trackId, int start, int length) {
+    Location[] locations = new Location[length];
+    for (int i = 0; i < length; i++) {
+      Location location = new Location(LocationManager.GPS_PROVIDER);
+      location.setLatitude(37.0 + (start + i) * 0.001);
+      location.setLongitude(-57.0);
+      location.setTime((start + i + 1) * 1000L);
+      journal.add(trackId, location);
+      locations[i] = location;
+    }
+    return locations;
+  }
+
+  /**
+   * Gets the number of track points of a track in the provider.
+   *
+   * @param trackId the track id
+   */
+  private int getNumberOfTrackPoints(long trackId) {
+    Cursor cursor = null;
+    try {
+      cursor = myTracksProviderUtils.getTrackPointCursor(trackId, -1L, 100, false);
+      return cursor != null ? cursor.getCount() : 0;
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+  }
+}
@@ -37,6 +37,7 @@ import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.location.Location;
+import android.location.LocationManager;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.IBinder;
@@ -51,6 +52,7 @@ import android.test.suitebuilder.annotation.MediumTest;
 import android.test.suitebuilder.annotation.SmallTest;
 import android.util.Log;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -236,6 +238,37 @@ public class TrackRecordingServiceTest extends ServiceTestCase<TestRecordingServ
     assertEquals(123L, service.getRecordingTrackId());
   }
 
+  @MediumTest
+  public void testResumeAfterReboot_replayJournal() throws Exception {
+    // Insert a dummy track and mark it as recording track.
+    createDummyTrack(123L, System.currentTimeMillis(), true);
+
+    // Journal track points without flushing them, as a killed service.
+    File file = new File(context.getFilesDir(), TrackRecordingService.TRACK_POINT_JOURNAL_NAME);
+    TrackPointJournal trackPointJournal = new TrackPointJournal(providerUtils, file);
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 3; i++) {
+      Location location = new Location(LocationManager.GPS_PROVIDER);
+      location.setLatitude(37.0 + i * 0.001);
+      location.setLongitude(-57.0);
+      location.setTime(now + i * 1000L);
+      trackPointJournal.add(123L, location);
+    }
+    trackPointJournal.close();
+
+    updateAutoResumePrefs(PreferencesUtils.AUTO_RESUME_TRACK_CURRENT_RETRY_DEFAULT,
+        PreferencesUtils.AUTO_RESUME_TRACK_TIMEOUT_DEFAULT);
+    Intent startIntent = createStartIntent();
+    startIntent.putExtra(RESUME_TRACK_EXTRA_NAME, true);
+    startService(startIntent);
+    assertTrue(getService().isRecording());
+
+    // The journaled track points are written before restarting the track.
+    assertFalse(file.exists());
+    assertEquals(3, providerUtils.getTrack(123L).getNumberOfPoints());
+    assertTrue(getService().getTripStatistics().getTotalDistance() > 0.0);
+  }
+
   // TODO: shutdownService() has a bug and doesn't set mServiceCreated
   // to false, thus preventing from a second call to onCreate().
   // Report the bug to Android team.  Until then, the following tests
@@ -674,6 +707,19 @@ public class TrackRecordingServiceTest extends ServiceTestCase<TestRecordingServ
     fullRecordingSession();
   }
 
+  @MediumTest
+  public void testWithProperties_minTrackUpdateIntervalDefault() throws Exception {
+    PreferencesUtils.setInt(context, R.string.min_track_update_interval_key,
+        PreferencesUtils.MIN_TRACK_UPDATE_INTERVAL_DEFAULT);
+    fullRecordingSession();
+  }
+
+  @MediumTest
+  public void testWithProperties_minTrackUpdateInterval() throws Exception {
+    PreferencesUtils.setInt(context, R.string.min_track_update_interval_key, 0);
+    fullRecordingSession();
+  }
+
   @MediumTest
   public void testWithProperties_sensorTypeDefault() throws Exception {
     PreferencesUtils.setString(
@@ -114,4 +114,74 @@ public class DoubleBufferTest extends TestCase {
     }
   }
 
+  /**
+   * Tests that the running average and variance match the values computed from
+   * the window after many non-integer values are inserted in a large buffer.
+   */
+  public void testLargeBuffer() {
+    int size = 1000;
+    DoubleBuffer buffer = new DoubleBuffer(size);
+    double[] values = new double[100000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = 1000.0 + 100.0 * Math.sin(i / 7.0) + i * 0.001;
+      buffer.setNext(values[i]);
+    }
+
+    double sum = 0.0;
+    for (int i = values.length - size; i < values.length; i++) {
+      sum += values[i];
+    }
+    double average = sum / size;
+    double sumOfSquaredDifferences = 0.0;
+    for (int i = values.length - size; i < values.length; i++) {
+      sumOfSquaredDifferences += (values[i] - average) * (values[i] - average);
+    }
+    double variance = sumOfSquaredDifferences / size;
+
+    assertEquals(average, buffer.getAverage(), 1E-9);
+    assertEquals(variance, buffer.getVariance(), 1E-6);
+  }
+
+  /**
+   * Tests that the variance of a constant window is not negative.
+   */
+  public void testVarianceNotNegative() {
+    DoubleBuffer buffer = new DoubleBuffer(7);
+    for (int i = 0; i < 100; i++) {
+      buffer.setNext(i * 0.1);
+    }
+    for (int i = 0; i < 7; i++) {
+      buffer.setNext(0.1);
+    }
+    assertEquals(0.1, buffer.getAverage(), 1E-12);
+    assertTrue(buffer.getVariance() >= 0.0);
+    assertEquals(0.0, buffer.getVariance(), 1E-12);
+  }
+
+  /**
+   * Tests that NaN and infinite values are ignored and don't spoil the average
+   * and the variance once overwritten.
+   */
+  public void testNonFiniteValues() {
+    DoubleBuffer buffer = new DoubleBuffer(3);
+    buffer.setNext(Double.NaN);
+    buffer.setNext(Double.POSITIVE_INFINITY);
+    buffer.setNext(Double.NEGATIVE_INFINITY);
+    assertFalse(buffer.isFull());
+    assertEquals(0.0, buffer.getAverage());
+    assertEquals(0.0, buffer.getVariance());
+
+    buffer.setNext(1.0);
+    buffer.setNext(Double.NaN);
+    buffer.setNext(3.0);
+    assertEquals(2.0, buffer.getAverage());
+    assertEquals(1.0, buffer.getVariance());
+
+    for (int i = 0; i < 3; i++) {
+      buffer.setNext(5.0);
+    }
+    assertTrue(buffer.isFull());
+    assertEquals(5.0, buffer.getAverage());
+    assertEquals(0.0, buffer.getVariance(), 1E-12);
+  }
 }
@@ -3,6 +3,7 @@
 package com.google.android.apps.mytracks.stats;
 
 import com.google.android.apps.mytracks.Constants;
+import com.google.android.apps.mytracks.services.TrackRecordingService;
 import com.google.android.apps.mytracks.util.PreferencesUtils;
 
 import android.location.Location;
@@ -80,6 +81,36 @@ public class TripStatisticsUpdaterTest extends TestCase {
     }
   }
 
+  /**
+   * Tests that {@link TripStatisticsUpdater#getTotalDistance()},
+   * {@link TripStatisticsUpdater#getTotalTime()}, and
+   * {@link TripStatisticsUpdater#getMovingTime()} match the trip statistics
+   * snapshot, across a pause.
+   */
+  public void testTotals() throws Exception {
+    long startTime = 1000;
+    tripStatisticsUpdater = new TripStatisticsUpdater(startTime);
+    for (int i = 0; i < 100; i++) {
+      Location location = new Location("test");
+      if (i == 50) {
+        location.setLatitude(TrackRecordingService.PAUSE_LATITUDE);
+      } else {
+        location.setAccuracy(1.0f);
+        location.setLongitude(45.0);
+        location.setLatitude(i * .001);
+        location.setSpeed(11.1f);
+      }
+      location.setTime(startTime + i * TEN_SECONDS);
+      tripStatisticsUpdater.addLocation(location, PreferencesUtils.MIN_RECORDING_DISTANCE_DEFAULT);
+
+      TripStatistics tripStatistics = tripStatisticsUpdater.getTripStatistics();
+      assertEquals(tripStatistics.getTotalDistance(), tripStatisticsUpdater.getTotalDistance());
+      assertEquals(tripStatistics.getTotalTime(), tripStatisticsUpdater.getTotalTime());
+      assertEquals(tripStatistics.getMovingTime(), tripStatisticsUpdater.getMovingTime());
+    }
+    assertTrue(tripStatisticsUpdater.getTotalDistance() > 0);
+  }
+
   /**
    * Tests {@link TripStatisticsUpdater#updateElevation(double)} with constant
    * elevations.
@@ -99,6 +130,30 @@ public class TripStatisticsUpdaterTest extends TestCase {
     }
   }
 
+  /**
+   * Tests {@link TripStatisticsUpdater#updateElevation(double)} with NaN and
+   * infinite elevations, which are ignored.
+   */
+  public void testElevationIgnoreNonFinite() throws Exception {
+    for (int i = 0; i < Constants.ELEVATION_SMOOTHING_FACTOR; i++) {
+      tripStatisticsUpdater.updateElevation(100.0);
+    }
+    assertEquals(0.0, tripStatisticsUpdater.updateElevation(Double.NaN));
+    assertEquals(0.0, tripStatisticsUpdater.updateElevation(Double.POSITIVE_INFINITY));
+    assertEquals(0.0, tripStatisticsUpdater.updateElevation(Double.NEGATIVE_INFINITY));
+    assertEquals(100.0, tripStatisticsUpdater.getSmoothedElevation());
+
+    TripStatistics tripStatistics = tripStatisticsUpdater.getTripStatistics();
+    assertEquals(100.0, tripStatistics.getMinElevation());
+    assertEquals(100.0, tripStatistics.getMaxElevation());
+    assertEquals(0.0, tripStatistics.getTotalElevationGain());
+
+    // The ignored values take no place in the buffer
+    assertEquals(
+        1.0 / Constants.ELEVATION_SMOOTHING_FACTOR, tripStatisticsUpdater.updateElevation(101.0),
+        1E-9);
+  }
+
   /**
    * Tests {@link TripStatisticsUpdater#updateGrade(double, double)} with
    * elevation gain.
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.android.apps.mytracks.util;
+
+import com.google.android.apps.mytracks.content.Track;
+import com.google.android.apps.mytracks.content.TrackPointBuffer;
+
+import android.location.Location;
+import android.location.LocationManager;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+
+/**
+ * Tests for {@link LocationSimplifier}.
+ */
+public class LocationSimplifierTest extends AndroidTestCase {
+
+  private static final double LATITUDE = 37.0;
+  private static final double LONGITUDE = -122.0;
+
+  // About 1.1 meters
+  private static final double SMALL_DIFFERENCE = 0.00001;
+
+  // About 111 meters
+  private static final double LARGE_DIFFERENCE = 0.001;
+
+  /**
+   * Tests that {@link LocationSimplifier#simplify(Track)} drops the locations
+   * within the tolerance of a straight line.
+   */
+  public void testSimplify_straightLine() {
+    Track track = new Track();
+    for (int i = 0; i < 100; i++) {
+      track.addLocation(createLocation(LATITUDE + i * LARGE_DIFFERENCE,
+          LONGITUDE + (i % 2) * SMALL_DIFFERENCE));
+    }
+    new LocationSimplifier(2.0).simplify(track);
+    TrackPointBuffer trackPointBuffer = track.getTrackPointBuffer();
+    assertEquals(2, trackPointBuffer.size());
+    assertEquals(LATITUDE, trackPointBuffer.getLatitude(0), 1E-6);
+    assertEquals(LATITUDE + 99 * LARGE_DIFFERENCE, trackPointBuffer.getLatitude(1), 1E-6);
+    assertEquals(LONGITUDE + SMALL_DIFFERENCE, trackPointBuffer.getLongitude(1), 1E-6);
+  }
+
+  /**
+   * Tests that {@link LocationSimplifier#simplify(Track)} keeps the locations
+   * beyond the tolerance.
+   */
+  public void testSimplify_zigzag() {
+    Track track = new Track();
+    for (int i = 0; i < 100; i++) {
+      track.addLocation(createLocation(LATITUDE + i * LARGE_DIFFERENCE,
+          LONGITUDE + (i % 2) * LARGE_DIFFERENCE));
+    }
+    new LocationSimplifier(2.0).simplify(track);
+    assertEquals(100, track.getTrackPointBuffer().size());
+  }
+
+  /**
+   * Tests that {@link LocationSimplifier#simplify(Track)} keeps the corner of
+   * an L shaped track.
+   */
+  public void testSimplify_corner() {
+    Track track = new Track();
+    for (int i = 0; i < 10; i++) {
+      track.addLocation(createLocation(LATITUDE + i * LARGE_DIFFERENCE, LONGITUDE));
+    }
+    for (int i = 1; i < 10; i++) {
+      track.addLocation(
+          createLocation(LATITUDE + 9 * LARGE_DIFFERENCE, LONGITUDE + i * LARGE_DIFFERENCE));
+    }
+    new LocationSimplifier(2.0).simplify(track);
+    TrackPointBuffer trackPointBuffer = track.getTrackPointBuffer();
+    assertEquals(3, trackPointBuffer.size());
+    assertEquals(LATITUDE + 9 * LARGE_DIFFERENCE, trackPointBuffer.getLatitude(1), 1E-6);
+    assertEquals(LONGITUDE, trackPointBuffer.getLongitude(1), 1E-6);
+  }
+
+  /**
+   * Tests that {@link LocationSimplifier#simplify(Track)} keeps tracks with
+   * less than 3 locations.
+   */
+  public void testSimplify_short() {
+    Track track = new Track();
+    new LocationSimplifier(2.0).simplify(track);
+    assertEquals(0, track.getTrackPointBuffer().size());
+
+    track.addLocation(createLocation(LATITUDE, LONGITUDE));
+    track.addLocation(createLocation(LATITUDE, LONGITUDE));
+    new LocationSimplifier(2.0).simplify(track);
+    assertEquals(2, track.getTrackPointBuffer().size());
+  }
+
+  /**
+   * Tests the streaming mode with a window smaller than the number of
+   * locations. The kept locations are reported in order and the first and last
+   * locations are always kept.
+   */
+  public void testAdd() {
+    final ArrayList<Long> indexes = new ArrayList<Long>();
+    LocationSimplifier locationSimplifier = new LocationSimplifier(
+        2.0, 4, new LocationSimplifier.Listener() {
+            @Override
+          public void onKeep(long index) {
+            indexes.add(index);
+          }
+        });
+
+    // A straight line, then a corner at index 9
+    for (int i = 0; i < 10; i++) {
+      locationSimplifier.add(LATITUDE + i * LARGE_DIFFERENCE, LONGITUDE);
+    }
+    for (int i = 1; i < 10; i++) {
+      locationSimplifier.add(LATITUDE + 9 * LARGE_DIFFERENCE, LONGITUDE + i * LARGE_DIFFERENCE);
+    }
+    locationSimplifier.flush();
+
+    /*
+     * The windows are [0, 3], [3, 6], [6, 9], [9, 12], [12, 15], [15, 18], so
+     * each window end is kept.
+     */
+    assertEquals(7, indexes.size());
+    for (int i = 0; i < indexes.size(); i++) {
+      assertEquals(3L * i, indexes.get(i).longValue());
+    }
+
+    // A new sequence after flush
+    indexes.clear();
+    locationSimplifier.add(LATITUDE, LONGITUDE);
+    locationSimplifier.add(LATITUDE + LARGE_DIFFERENCE, LONGITUDE);
+    locationSimplifier.flush();
+    assertEquals(2, indexes.size());
+    assertEquals(19L, indexes.get(0).longValue());
+    assertEquals(20L, indexes.get(1).longValue());
+  }
+
+  /**
+   * Tests the streaming mode of a location simplifier created without a
+   * listener. The locations are simplified without being reported.
+   */
+  public void testAdd_noListener() {
+    LocationSimplifier locationSimplifier = new LocationSimplifier(2.0);
+    for (int i = 0; i < 10; i++) {
+      locationSimplifier.add(LATITUDE + i * LARGE_DIFFERENCE, LONGITUDE);
+    }
+    locationSimplifier.flush();
+  }
+
+  /**
+   * Tests that the streaming mode requires a listener.
+   */
+  public void testConstructor_nullListener() {
+    try {
+      new LocationSimplifier(2.0, 4, null);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
+  /**
+   * Creates a location.
+   * 
+   * @param latitude the latitude
+   * @param longitude the longitude
+   */
+  private Location createLocation(double latitude, double longitude) {
+    Location location = new Location(LocationManager.GPS_PROVIDER);
+    location.setLatitude(latitude);
+    location.setLongitude(longitude);
+    return location;
+  }
+}
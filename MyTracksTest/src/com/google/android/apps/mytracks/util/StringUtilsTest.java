@@ -162,6 +162,61 @@ public class StringUtilsTest extends AndroidTestCase {
     assertGetTime("2010-05-04T03:02:01.8-05:30", 2010, 5, 4, 8, 32, 1, 800);
   }
 
+  /**
+   * Tests {@link StringUtils#getTime(CharSequence, int, int)} returns the same
+   * values as {@link StringUtils#getTime(String)}.
+   */
+  public void testGetTime_charSequence() {
+    String[] values = { "2010-05-04T03:02:01", "2010-05-04T03:02:01.352Z",
+        "2010-05-04T03:02:01.5791+03:00", "2010-05-04T03:02:01.8-05:30", "1970-01-01T00:00:00Z",
+        "1969-12-31T23:59:59.999Z", "2000-02-29T12:00:00Z", "1492-10-12T00:00:00Z" };
+    for (String value : values) {
+      StringBuilder builder = new StringBuilder("  ").append(value).append("\n");
+      assertEquals(value, StringUtils.getTime(value),
+          StringUtils.getTime(builder, 0, builder.length()));
+    }
+  }
+
+  /**
+   * Tests {@link StringUtils#getTime(CharSequence, int, int)} with an invalid
+   * value.
+   */
+  public void testGetTime_charSequenceInvalid() {
+    try {
+      StringUtils.getTime("2010-05-04 invalid", 0, 18);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
+  /**
+   * Tests {@link StringUtils#parseDouble(CharSequence, int, int)} returns the
+   * same values as {@link Double#parseDouble(String)}.
+   */
+  public void testParseDouble() {
+    String[] values = { "0", "-0.0", "37.422006", "-122.084095", "1234.5", "+12.75", ".5",
+        "0.1234567890123456789", "1e3", "-2.5E-7", "123456789012345678901234", "NaN" };
+    for (String value : values) {
+      assertEquals(value, Double.parseDouble(value),
+          StringUtils.parseDouble(value, 0, value.length()));
+    }
+    assertEquals(12.5, StringUtils.parseDouble("x12.5x", 1, 5));
+  }
+
+  /**
+   * Tests {@link StringUtils#parseDouble(CharSequence, int, int)} with an
+   * invalid value.
+   */
+  public void testParseDouble_invalid() {
+    try {
+      StringUtils.parseDouble("12a", 0, 3);
+      fail();
+    } catch (NumberFormatException e) {
+      // Expected
+    }
+  }
+
   /**
    * Asserts the {@link StringUtils#getTime(String)} returns the expected
    * values.